@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.aggregation;
+
+import de.isas.mztab2.model.Parameter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Functions to compute the <code>abundance_study_variable</code> value from
+ * the assay abundances of a study variable, as referenced by
+ * <code>study_variable[1-n]-average_function</code>.
+ *
+ * @author nilshoffmann
+ */
+public enum AverageFunction {
+    /**
+     * The arithmetic mean, the default if no function is defined.
+     */
+    ARITHMETIC_MEAN("MS:1002962", "arithmetic mean") {
+        @Override
+        public double apply(double[] values, int n) {
+            double sum = 0.0d;
+            for (int i = 0; i < n; i++) {
+                sum += values[i];
+            }
+            return sum / n;
+        }
+    },
+    /**
+     * The median.
+     */
+    MEDIAN("MS:1002883", "median") {
+        @Override
+        public double apply(double[] values, int n) {
+            Arrays.sort(values, 0, n);
+            int mid = n >>> 1;
+            return (n & 1) == 1 ? values[mid] : (values[mid - 1] + values[mid]) / 2.0d;
+        }
+    };
+
+    private final String cvAccession;
+    private final String name;
+
+    private AverageFunction(String cvAccession, String name) {
+        this.cvAccession = cvAccession;
+        this.name = name;
+    }
+
+    /**
+     * Returns the PSI-MS accession of this function.
+     *
+     * @return the accession.
+     */
+    public String getCvAccession() {
+        return cvAccession;
+    }
+
+    /**
+     * Returns the name of this function.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Computes the average of the first n values. The order of the values may
+     * be changed.
+     *
+     * @param values the values, without missing values.
+     * @param n the number of values, greater than zero.
+     * @return the average.
+     */
+    public abstract double apply(double[] values, int n);
+
+    /**
+     * Returns the function for the given metadata parameter, matched by
+     * accession or by name.
+     *
+     * @param parameter the parameter, may be null.
+     * @return the function, {@link #ARITHMETIC_MEAN} if the parameter is null.
+     * @throws IllegalArgumentException if the function is not supported.
+     */
+    public static AverageFunction forParameter(Parameter parameter) {
+        if (parameter == null) {
+            return ARITHMETIC_MEAN;
+        }
+        for (AverageFunction function : values()) {
+            if (function.cvAccession.equals(parameter.getCvAccession())) {
+                return function;
+            }
+        }
+        String parameterName = parameter.getName() == null ? "" : parameter.
+            getName().
+            toLowerCase(Locale.ROOT);
+        if (parameterName.contains(MEDIAN.name)) {
+            return MEDIAN;
+        }
+        if (parameterName.equals("mean") || parameterName.contains(
+            ARITHMETIC_MEAN.name)) {
+            return ARITHMETIC_MEAN;
+        }
+        throw new IllegalArgumentException(
+            "Unsupported average function " + parameter);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The study variable abundances and variations computed for a list of rows.
+ * Values are stored row by row in primitive arrays, missing values are
+ * returned as null.
+ *
+ * @author nilshoffmann
+ */
+public final class StudyVariableAbundances {
+
+    private final int rowCount;
+    private final int studyVariableCount;
+    private final double[] averages;
+    private final double[] variations;
+
+    StudyVariableAbundances(int rowCount, int studyVariableCount,
+        double[] averages, double[] variations) {
+        this.rowCount = rowCount;
+        this.studyVariableCount = studyVariableCount;
+        this.averages = averages;
+        this.variations = variations;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of study variables.
+     *
+     * @return the number of study variables.
+     */
+    public int getStudyVariableCount() {
+        return studyVariableCount;
+    }
+
+    /**
+     * Returns the abundance of the study variable in the row.
+     *
+     * @param row the row position.
+     * @param studyVariable the study variable position, in metadata order.
+     * @return the abundance, or null if none of the assays had a value.
+     */
+    public Double getAverage(int row, int studyVariable) {
+        return valueOf(averages[index(row, studyVariable)]);
+    }
+
+    /**
+     * Returns the abundance variation of the study variable in the row.
+     *
+     * @param row the row position.
+     * @param studyVariable the study variable position, in metadata order.
+     * @return the variation, or null if less than two assays had a value or
+     * the variation is undefined.
+     */
+    public Double getVariation(int row, int studyVariable) {
+        return valueOf(variations[index(row, studyVariable)]);
+    }
+
+    /**
+     * Returns the abundances of all study variables in the row, as for
+     * <code>abundance_study_variable[1-n]</code>.
+     *
+     * @param row the row position.
+     * @return the abundances, empty if there are no study variables.
+     */
+    public List<Double> getAverages(int row) {
+        return toList(averages, row);
+    }
+
+    /**
+     * Returns the abundance variations of all study variables in the row, as
+     * for <code>abundance_variation_study_variable[1-n]</code>.
+     *
+     * @param row the row position.
+     * @return the variations, empty if there are no study variables.
+     */
+    public List<Double> getVariations(int row) {
+        return toList(variations, row);
+    }
+
+    private int index(int row, int studyVariable) {
+        if (row < 0 || row >= rowCount || studyVariable < 0 || studyVariable >= studyVariableCount) {
+            throw new IndexOutOfBoundsException(
+                "Row " + row + ", study variable " + studyVariable);
+        }
+        return row * studyVariableCount + studyVariable;
+    }
+
+    private List<Double> toList(double[] values, int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row " + row);
+        }
+        // empty if the metadata declares no study variables
+        int offset = row * studyVariableCount;
+        List<Double> list = new ArrayList<>(studyVariableCount);
+        for (int i = 0; i < studyVariableCount; i++) {
+            list.add(valueOf(values[offset + i]));
+        }
+        return list;
+    }
+
+    private static Double valueOf(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+}
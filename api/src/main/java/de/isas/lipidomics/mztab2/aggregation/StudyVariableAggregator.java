@@ -0,0 +1,334 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.aggregation;
+
+import de.isas.mztab2.model.Assay;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import de.isas.mztab2.model.StudyVariable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * Computes study variable abundances and their variation from the
+ * <code>abundance_assay</code> values of small molecule summary and feature
+ * rows. The assays of each study variable are taken from
+ * <code>study_variable[1-n]-assay_refs</code>, the functions from
+ * <code>study_variable[1-n]-average_function</code> and
+ * <code>study_variable[1-n]-variation_function</code>, defaulting to the
+ * arithmetic mean and the coefficient of variation.</p>
+ *
+ * <p>
+ * Rows are processed in partitions of {@link #PARTITION_SIZE} rows, either on
+ * the provided executor or on the common fork join pool. Within a partition,
+ * values are gathered into a primitive buffer. Null and NaN assay values are
+ * treated as missing.</p>
+ *
+ * <p>
+ * To fill the study variable columns of the summary rows before writing:</p>
+ * {@code StudyVariableAggregator.of(mzTab.getMetadata()).fill(mzTab, null);}
+ *
+ * @author nilshoffmann
+ */
+public final class StudyVariableAggregator {
+
+    /**
+     * The number of rows processed by one task.
+     */
+    public static final int PARTITION_SIZE = 4096;
+
+    private final int[][] assayColumns;
+    private final AverageFunction[] averageFunctions;
+    private final VariationFunction[] variationFunctions;
+    private final int maxAssayCount;
+
+    private StudyVariableAggregator(int[][] assayColumns,
+        AverageFunction[] averageFunctions,
+        VariationFunction[] variationFunctions) {
+        this.assayColumns = assayColumns;
+        this.averageFunctions = averageFunctions;
+        this.variationFunctions = variationFunctions;
+        this.maxAssayCount = Arrays.stream(assayColumns).
+            mapToInt((columns) -> columns.length).
+            max().
+            orElse(0);
+    }
+
+    /**
+     * Create an aggregator for the study variables of the metadata, using
+     * their average and variation functions.
+     *
+     * @param metadata the metadata.
+     * @return the aggregator.
+     * @throws IllegalArgumentException if a study variable references an
+     * unknown assay or uses an unsupported function.
+     */
+    public static StudyVariableAggregator of(Metadata metadata) {
+        return of(metadata, null, null);
+    }
+
+    /**
+     * Create an aggregator for the study variables of the metadata, using the
+     * given functions for all study variables.
+     *
+     * @param metadata the metadata.
+     * @param averageFunction the average function, or null to use the
+     * function of each study variable.
+     * @param variationFunction the variation function, or null to use the
+     * function of each study variable.
+     * @return the aggregator.
+     * @throws IllegalArgumentException if a study variable references an
+     * unknown assay or uses an unsupported function.
+     */
+    public static StudyVariableAggregator of(Metadata metadata,
+        AverageFunction averageFunction, VariationFunction variationFunction) {
+        List<Assay> assays = Optional.ofNullable(metadata.getAssay()).
+            orElse(Collections.emptyList());
+        Map<Integer, Integer> assayColumnById = new HashMap<>();
+        for (int i = 0; i < assays.size(); i++) {
+            assayColumnById.putIfAbsent(assays.get(i).
+                getId(), i);
+        }
+        List<StudyVariable> studyVariables = Optional.ofNullable(metadata.
+            getStudyVariable()).
+            orElse(Collections.emptyList());
+        int[][] assayColumns = new int[studyVariables.size()][];
+        AverageFunction[] averageFunctions = new AverageFunction[studyVariables.
+            size()];
+        VariationFunction[] variationFunctions = new VariationFunction[studyVariables.
+            size()];
+        for (int i = 0; i < studyVariables.size(); i++) {
+            StudyVariable studyVariable = studyVariables.get(i);
+            List<Assay> assayRefs = Optional.ofNullable(studyVariable.
+                getAssayRefs()).
+                orElse(Collections.emptyList());
+            assayColumns[i] = new int[assayRefs.size()];
+            for (int j = 0; j < assayRefs.size(); j++) {
+                Integer column = assayColumnById.get(assayRefs.get(j).
+                    getId());
+                if (column == null) {
+                    throw new IllegalArgumentException(
+                        "Study variable " + studyVariable.getId() + " references unknown assay " + assayRefs.
+                            get(j).
+                            getId());
+                }
+                assayColumns[i][j] = column;
+            }
+            averageFunctions[i] = averageFunction != null ? averageFunction : AverageFunction.
+                forParameter(studyVariable.getAverageFunction());
+            variationFunctions[i] = variationFunction != null ? variationFunction : VariationFunction.
+                forParameter(studyVariable.getVariationFunction());
+        }
+        return new StudyVariableAggregator(assayColumns, averageFunctions,
+            variationFunctions);
+    }
+
+    /**
+     * Returns the number of study variables.
+     *
+     * @return the number of study variables.
+     */
+    public int getStudyVariableCount() {
+        return assayColumns.length;
+    }
+
+    /**
+     * Compute the study variable abundances of the summary rows and set
+     * <code>abundance_study_variable</code> and
+     * <code>abundance_variation_study_variable</code> of each row.
+     *
+     * @param mzTab the mzTab object.
+     * @param executor the executor to run on, or null to use the common fork
+     * join pool.
+     */
+    public void fill(MzTab mzTab, ExecutorService executor) {
+        fill(Optional.ofNullable(mzTab.getSmallMoleculeSummary()).
+            orElse(Collections.emptyList()), executor);
+    }
+
+    /**
+     * Compute the study variable abundances of the summary rows and set
+     * <code>abundance_study_variable</code> and
+     * <code>abundance_variation_study_variable</code> of each row. Each row
+     * is written back with {@link ListIterator#set(Object)}, so that the
+     * values are kept by lists that page their rows in from disk, like the
+     * section lists of a parser with a heap budget.
+     *
+     * @param summaries the small molecule summaries, the list must support
+     * setting rows.
+     * @param executor the executor to run on, or null to use the common fork
+     * join pool.
+     */
+    public void fill(List<SmallMoleculeSummary> summaries,
+        ExecutorService executor) {
+        StudyVariableAbundances abundances = aggregateSummaries(summaries,
+            executor);
+        // rows are written back, lists may page them in as copies
+        ListIterator<SmallMoleculeSummary> iterator = summaries.listIterator();
+        while (iterator.hasNext()) {
+            int row = iterator.nextIndex();
+            SmallMoleculeSummary summary = iterator.next();
+            summary.abundanceStudyVariable(abundances.getAverages(row));
+            summary.abundanceVariationStudyVariable(abundances.
+                getVariations(row));
+            iterator.set(summary);
+        }
+    }
+
+    /**
+     * Compute the study variable abundances of the summary rows.
+     *
+     * @param summaries the small molecule summaries.
+     * @param executor the executor to run on, or null to use the common fork
+     * join pool.
+     * @return the study variable abundances, by row position.
+     */
+    public StudyVariableAbundances aggregateSummaries(
+        List<SmallMoleculeSummary> summaries, ExecutorService executor) {
+        return aggregate(summaries, SmallMoleculeSummary::getAbundanceAssay,
+            executor);
+    }
+
+    /**
+     * Compute the study variable abundances of the feature rows. The feature
+     * section has no study variable columns, so the values are only
+     * returned.
+     *
+     * @param features the small molecule features.
+     * @param executor the executor to run on, or null to use the common fork
+     * join pool.
+     * @return the study variable abundances, by row position.
+     */
+    public StudyVariableAbundances aggregateFeatures(
+        List<SmallMoleculeFeature> features, ExecutorService executor) {
+        return aggregate(features, SmallMoleculeFeature::getAbundanceAssay,
+            executor);
+    }
+
+    /**
+     * Compute the study variable abundances of the rows.
+     *
+     * @param <T> the row type.
+     * @param rows the rows.
+     * @param assayAbundances the accessor for the assay abundances of a row,
+     * in assay order. May return null.
+     * @param executor the executor to run on, or null to use the common fork
+     * join pool.
+     * @return the study variable abundances, by row position.
+     */
+    public <T> StudyVariableAbundances aggregate(List<T> rows,
+        Function<? super T, List<Double>> assayAbundances,
+        ExecutorService executor) {
+        List<T> randomAccessRows = rows instanceof RandomAccess ? rows : new ArrayList<>(
+            rows);
+        int rowCount = randomAccessRows.size();
+        int studyVariableCount = assayColumns.length;
+        double[] averages = new double[rowCount * studyVariableCount];
+        double[] variations = new double[rowCount * studyVariableCount];
+        int partitions = (rowCount + PARTITION_SIZE - 1) / PARTITION_SIZE;
+        if (executor == null) {
+            IntStream.range(0, partitions).
+                parallel().
+                forEach((partition) -> aggregatePartition(randomAccessRows,
+                assayAbundances, partition, averages, variations));
+        } else {
+            List<Future<?>> futures = new ArrayList<>(partitions);
+            for (int p = 0; p < partitions; p++) {
+                final int partition = p;
+                futures.add(executor.submit(() -> aggregatePartition(
+                    randomAccessRows, assayAbundances, partition, averages,
+                    variations)));
+            }
+            await(futures);
+        }
+        return new StudyVariableAbundances(rowCount, studyVariableCount,
+            averages, variations);
+    }
+
+    private <T> void aggregatePartition(List<T> rows,
+        Function<? super T, List<Double>> assayAbundances, int partition,
+        double[] averages, double[] variations) {
+        double[] buffer = new double[maxAssayCount];
+        int studyVariableCount = assayColumns.length;
+        int from = partition * PARTITION_SIZE;
+        int to = Math.min(from + PARTITION_SIZE, rows.size());
+        for (int row = from; row < to; row++) {
+            List<Double> values = assayAbundances.apply(rows.get(row));
+            int offset = row * studyVariableCount;
+            for (int sv = 0; sv < studyVariableCount; sv++) {
+                int n = gather(values, assayColumns[sv], buffer);
+                // the variation does not depend on the order of values
+                variations[offset + sv] = n > 1 ? variationFunctions[sv].apply(
+                    buffer, n) : Double.NaN;
+                averages[offset + sv] = n > 0 ? averageFunctions[sv].apply(
+                    buffer, n) : Double.NaN;
+            }
+        }
+    }
+
+    private static int gather(List<Double> values, int[] columns,
+        double[] buffer) {
+        if (values == null) {
+            return 0;
+        }
+        int n = 0;
+        for (int column : columns) {
+            if (column < values.size()) {
+                Double value = values.get(column);
+                if (value != null && !value.isNaN()) {
+                    buffer[n++] = value;
+                }
+            }
+        }
+        return n;
+    }
+
+    private static void await(List<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            futures.forEach((future) -> future.cancel(true));
+            Thread.currentThread().
+                interrupt();
+            throw new IllegalStateException(
+                "Interrupted while aggregating study variables!", ex);
+        } catch (ExecutionException ex) {
+            futures.forEach((future) -> future.cancel(true));
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IllegalStateException(
+                "Failed to aggregate study variables!", ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.aggregation;
+
+import de.isas.mztab2.model.Parameter;
+import java.util.Locale;
+
+/**
+ * Functions to compute the <code>abundance_variation_study_variable</code>
+ * value from the assay abundances of a study variable, as referenced by
+ * <code>study_variable[1-n]-variation_function</code>. Both functions use the
+ * sample standard deviation and require at least two values.
+ *
+ * @author nilshoffmann
+ */
+public enum VariationFunction {
+    /**
+     * The coefficient of variation as a fraction of the arithmetic mean, the
+     * default if no function is defined. It is undefined, i.e. NaN, if the
+     * mean is zero.
+     */
+    COEFFICIENT_OF_VARIATION("MS:1002963", "coefficient of variation") {
+        @Override
+        public double apply(double[] values, int n) {
+            double mean = mean(values, n);
+            if (mean == 0.0d) {
+                return Double.NaN;
+            }
+            return standardDeviation(values, n, mean) / mean;
+        }
+    },
+    /**
+     * The standard error of the mean.
+     */
+    STANDARD_ERROR("MS:1002885", "standard error") {
+        @Override
+        public double apply(double[] values, int n) {
+            return standardDeviation(values, n, mean(values, n)) / Math.sqrt(n);
+        }
+    };
+
+    private final String cvAccession;
+    private final String name;
+
+    private VariationFunction(String cvAccession, String name) {
+        this.cvAccession = cvAccession;
+        this.name = name;
+    }
+
+    /**
+     * Returns the PSI-MS accession of this function.
+     *
+     * @return the accession.
+     */
+    public String getCvAccession() {
+        return cvAccession;
+    }
+
+    /**
+     * Returns the name of this function.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Computes the variation of the first n values.
+     *
+     * @param values the values, without missing values.
+     * @param n the number of values, at least two.
+     * @return the variation, or NaN if it is undefined for the values. The
+     * {@link StudyVariableAggregator} reports NaN as a missing value.
+     */
+    public abstract double apply(double[] values, int n);
+
+    private static double mean(double[] values, int n) {
+        double sum = 0.0d;
+        for (int i = 0; i < n; i++) {
+            sum += values[i];
+        }
+        return sum / n;
+    }
+
+    private static double standardDeviation(double[] values, int n,
+        double mean) {
+        double sum = 0.0d;
+        for (int i = 0; i < n; i++) {
+            double d = values[i] - mean;
+            sum += d * d;
+        }
+        return Math.sqrt(sum / (n - 1));
+    }
+
+    /**
+     * Returns the function for the given metadata parameter, matched by
+     * accession or by name.
+     *
+     * @param parameter the parameter, may be null.
+     * @return the function, {@link #COEFFICIENT_OF_VARIATION} if the parameter
+     * is null.
+     * @throws IllegalArgumentException if the function is not supported.
+     */
+    public static VariationFunction forParameter(Parameter parameter) {
+        if (parameter == null) {
+            return COEFFICIENT_OF_VARIATION;
+        }
+        for (VariationFunction function : values()) {
+            if (function.cvAccession.equals(parameter.getCvAccession())) {
+                return function;
+            }
+        }
+        String parameterName = parameter.getName() == null ? "" : parameter.
+            getName().
+            toLowerCase(Locale.ROOT);
+        for (VariationFunction function : values()) {
+            if (parameterName.contains(function.name)) {
+                return function;
+            }
+        }
+        throw new IllegalArgumentException(
+            "Unsupported variation function " + parameter);
+    }
+}
@@ -0,0 +1,613 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import de.isas.mztab2.model.IndexedElement;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * A dense matrix of abundance values, e.g. the
+ * <code>abundance_assay</code>, <code>abundance_study_variable</code> or
+ * <code>abundance_variation_study_variable</code> columns of the small
+ * molecule summary and feature sections. Rows correspond to table rows,
+ * columns to the assays or study variables defined in the metadata, in their
+ * order of definition.</p>
+ *
+ * <p>
+ * Values are stored outside of the Java heap, either in direct byte buffers
+ * ({@link #allocateDirect(java.util.List)}) or in a memory mapped file
+ * ({@link #create(java.nio.file.Path, java.util.List)},
+ * {@link #open(java.nio.file.Path)}). The matrix grows in chunks of rows, so
+ * that the number of rows does not need to be known in advance. The first
+ * chunk is small and each further chunk doubles in size up to 64 MB, so that
+ * small matrices only occupy little memory. Missing
+ * (<code>null</code>) values are stored as a dedicated NaN bit pattern and
+ * are distinguished from <code>NaN</code> values.</p>
+ *
+ * <p>
+ * {@link #getRow(int)} returns a list view of a row that can be set as the
+ * abundance list of a model object, so that writers serialize the values
+ * directly from the matrix. Instances are not thread-safe.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class AbundanceMatrix implements Closeable {
+
+    /**
+     * Allocates abundance matrices, e.g. during parsing.
+     */
+    @FunctionalInterface
+    public interface Allocator {
+
+        /**
+         * Allocate a new, empty matrix.
+         *
+         * @param name the name of the matrix, e.g.
+         * <code>smf_abundance_assay</code>.
+         * @param columns the elements defining the matrix columns.
+         * @return the matrix.
+         * @throws IOException if the matrix can not be allocated.
+         */
+        AbundanceMatrix allocate(String name,
+            List<? extends IndexedElement> columns) throws IOException;
+    }
+
+    /**
+     * The file name suffix used by {@link #mapped(java.nio.file.Path)}.
+     */
+    public static final String FILE_SUFFIX = ".abundance";
+
+    private static final int MAGIC = 0x6d7a4142;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int ROWS_OFFSET = 16;
+    private static final int INITIAL_CHUNK_SIZE = 64 * 1024;
+    private static final int MAXIMUM_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final long NULL_BITS = 0x7ff800006d7a4e55L;
+
+    private final int[] ids;
+    private final Map<Integer, Integer> columnIndex;
+    private final int rowSize;
+    private final int initialChunkRows;
+    private final int maximumChunkRows;
+    private final int growingChunks;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final long dataOffset;
+    private int rows;
+    private long capacity = 0;
+    private boolean closed = false;
+
+    private AbundanceMatrix(int[] ids, FileChannel channel,
+        MappedByteBuffer header, long dataOffset, int rows) throws IOException {
+        this.ids = ids;
+        this.columnIndex = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            columnIndex.put(ids[i], i);
+        }
+        this.rowSize = Math.max(1, ids.length) * Double.BYTES;
+        // chunk sizes are powers of two in rows, doubling from the initial to
+        // the maximum chunk size
+        this.initialChunkRows = Integer.highestOneBit(Math.max(1,
+            INITIAL_CHUNK_SIZE / rowSize));
+        this.maximumChunkRows = Math.max(initialChunkRows, Integer.
+            highestOneBit(Math.max(1, MAXIMUM_CHUNK_SIZE / rowSize)));
+        this.growingChunks = Integer.numberOfTrailingZeros(maximumChunkRows / initialChunkRows);
+        this.channel = channel;
+        this.header = header;
+        this.dataOffset = dataOffset;
+        this.rows = rows;
+        while (capacity < rows) {
+            addChunk();
+        }
+    }
+
+    /**
+     * Returns an allocator for matrices in direct, off-heap byte buffers.
+     *
+     * @return the allocator.
+     */
+    public static Allocator offHeap() {
+        return (name, columns) -> allocateDirect(columns);
+    }
+
+    /**
+     * Returns an allocator for memory mapped matrices. Each matrix is stored
+     * in a file named after the matrix with suffix {@link #FILE_SUFFIX} in the
+     * given directory.
+     *
+     * @param directory the directory for the matrix files.
+     * @return the allocator.
+     */
+    public static Allocator mapped(Path directory) {
+        return (name, columns) -> create(directory.resolve(name + FILE_SUFFIX),
+            columns);
+    }
+
+    /**
+     * Create a new, empty matrix in direct, off-heap byte buffers.
+     *
+     * @param columns the elements defining the matrix columns.
+     * @return the matrix.
+     */
+    public static AbundanceMatrix allocateDirect(
+        List<? extends IndexedElement> columns) {
+        try {
+            return new AbundanceMatrix(toIds(columns), null, null, 0, 0);
+        } catch (IOException ex) {
+            // only mapped matrices perform io
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Create a new, empty memory mapped matrix. An existing file is
+     * overwritten.
+     *
+     * @param file the matrix file.
+     * @param columns the elements defining the matrix columns.
+     * @return the matrix.
+     * @throws IOException if the file can not be created or mapped.
+     */
+    public static AbundanceMatrix create(Path file,
+        List<? extends IndexedElement> columns) throws IOException {
+        int[] ids = toIds(columns);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            long dataOffset = dataOffset(ids.length);
+            MappedByteBuffer header = channel.map(
+                FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, ids.length);
+            header.putLong(ROWS_OFFSET, 0);
+            for (int i = 0; i < ids.length; i++) {
+                header.putInt(HEADER_SIZE + i * Integer.BYTES, ids[i]);
+            }
+            return new AbundanceMatrix(ids, channel, header, dataOffset, 0);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Open an existing memory mapped matrix, as created by
+     * {@link #create(java.nio.file.Path, java.util.List)}. Changes are written
+     * back to the file.
+     *
+     * @param file the matrix file.
+     * @return the matrix.
+     * @throws IOException if the file can not be read or is not a matrix
+     * file.
+     */
+    public static AbundanceMatrix open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not an abundance matrix file: " + file);
+            }
+            ByteBuffer fixed = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                HEADER_SIZE).
+                order(ByteOrder.LITTLE_ENDIAN);
+            if (fixed.getInt(0) != MAGIC) {
+                throw new IOException("Not an abundance matrix file: " + file);
+            }
+            if (fixed.getInt(4) != VERSION) {
+                throw new IOException(
+                    "Unsupported abundance matrix version " + fixed.getInt(4) + " in " + file);
+            }
+            int columns = fixed.getInt(8);
+            long dataOffset = dataOffset(columns);
+            MappedByteBuffer header = channel.map(
+                FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int[] ids = new int[columns];
+            for (int i = 0; i < columns; i++) {
+                ids[i] = header.getInt(HEADER_SIZE + i * Integer.BYTES);
+            }
+            long rows = header.getLong(ROWS_OFFSET);
+            if (rows < 0 || rows > Integer.MAX_VALUE) {
+                throw new IOException(
+                    "Invalid row count " + rows + " in " + file);
+            }
+            return new AbundanceMatrix(ids, channel, header, dataOffset,
+                (int) rows);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static int[] toIds(List<? extends IndexedElement> columns) {
+        int[] ids = new int[columns.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = columns.get(i).
+                getId();
+        }
+        return ids;
+    }
+
+    private static long dataOffset(int columns) {
+        long offset = HEADER_SIZE + (long) columns * Integer.BYTES;
+        return (offset + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns.
+     */
+    public int getColumnCount() {
+        return ids.length;
+    }
+
+    /**
+     * Returns the ids of the assays or study variables of the columns.
+     *
+     * @return the column ids, in column order.
+     */
+    public List<Integer> getColumnIds() {
+        List<Integer> list = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            list.add(id);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Returns the column index for the assay or study variable with the given
+     * id.
+     *
+     * @param id the assay or study variable id.
+     * @return the column index, or -1 if no column exists for the id.
+     */
+    public int indexOf(int id) {
+        Integer index = columnIndex.get(id);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Append a new row with all values set to <code>null</code>.
+     *
+     * @return the index of the new row.
+     * @throws IOException if the matrix can not be extended.
+     */
+    public int addRow() throws IOException {
+        ensureOpen();
+        if (rows == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Maximum number of rows reached!");
+        }
+        if (rows == capacity) {
+            addChunk();
+        }
+        int row = rows++;
+        for (int column = 0; column < ids.length; column++) {
+            chunk(row).putLong(offset(row, column), NULL_BITS);
+        }
+        if (header != null) {
+            header.putLong(ROWS_OFFSET, rows);
+        }
+        return row;
+    }
+
+    /**
+     * Append a new row with the given values in column order. Missing trailing
+     * values are set to <code>null</code>.
+     *
+     * @param values the values.
+     * @return the index of the new row.
+     * @throws IOException if the matrix can not be extended.
+     * @throws IllegalArgumentException if there are more values than columns.
+     */
+    public int addRow(List<Double> values) throws IOException {
+        if (values.size() > ids.length) {
+            throw new IllegalArgumentException(
+                "Row has " + values.size() + " values, but matrix has only " + ids.length + " columns!");
+        }
+        int row = addRow();
+        for (int column = 0; column < values.size(); column++) {
+            set(row, column, values.get(column));
+        }
+        return row;
+    }
+
+    /**
+     * Returns the value at the given position.
+     *
+     * @param row the row index.
+     * @param column the column index.
+     * @return the value, may be <code>null</code>.
+     */
+    public Double get(int row, int column) {
+        long bits = bits(row, column);
+        return bits == NULL_BITS ? null : Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Returns the value at the given position.
+     *
+     * @param row the row index.
+     * @param column the column index.
+     * @return the value, <code>NaN</code> for <code>null</code> values.
+     */
+    public double getDouble(int row, int column) {
+        long bits = bits(row, column);
+        return bits == NULL_BITS ? Double.NaN : Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Returns true, if the value at the given position is <code>null</code>.
+     *
+     * @param row the row index.
+     * @param column the column index.
+     * @return true, if the value is <code>null</code>.
+     */
+    public boolean isNull(int row, int column) {
+        return bits(row, column) == NULL_BITS;
+    }
+
+    /**
+     * Returns the value for the assay or study variable with the given id.
+     *
+     * @param row the row index.
+     * @param id the assay or study variable id.
+     * @return the value, may be <code>null</code>.
+     * @throws IllegalArgumentException if no column exists for the id.
+     */
+    public Double getById(int row, int id) {
+        return get(row, columnFor(id));
+    }
+
+    /**
+     * Set the value at the given position.
+     *
+     * @param row the row index.
+     * @param column the column index.
+     * @param value the value, may be <code>null</code>.
+     */
+    public void set(int row, int column, Double value) {
+        checkIndex(row, column);
+        chunk(row).putLong(offset(row, column),
+            value == null ? NULL_BITS : Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Set the value at the given position.
+     *
+     * @param row the row index.
+     * @param column the column index.
+     * @param value the value.
+     */
+    public void setDouble(int row, int column, double value) {
+        checkIndex(row, column);
+        chunk(row).putDouble(offset(row, column), value);
+    }
+
+    /**
+     * Set the value for the assay or study variable with the given id.
+     *
+     * @param row the row index.
+     * @param id the assay or study variable id.
+     * @param value the value, may be <code>null</code>.
+     * @throws IllegalArgumentException if no column exists for the id.
+     */
+    public void setById(int row, int id, Double value) {
+        set(row, columnFor(id), value);
+    }
+
+    /**
+     * Copy the values of a row into the given array, <code>null</code> values
+     * are copied as <code>NaN</code>.
+     *
+     * @param row the row index.
+     * @param target the target array, with at least
+     * {@link #getColumnCount()} elements.
+     * @return the target array.
+     */
+    public double[] copyRow(int row, double[] target) {
+        for (int column = 0; column < ids.length; column++) {
+            target[column] = getDouble(row, column);
+        }
+        return target;
+    }
+
+    /**
+     * Returns a list view of the given row. Changes to the list are written
+     * through to the matrix.
+     *
+     * @param row the row index.
+     * @return the row view.
+     */
+    public List<Double> getRow(int row) {
+        checkRow(row);
+        return new RowView(row);
+    }
+
+    /**
+     * Write changes of a memory mapped matrix to the file. Does nothing for
+     * off-heap matrices.
+     */
+    public void force() {
+        if (header != null) {
+            header.force();
+            for (ByteBuffer chunk : chunks) {
+                ((MappedByteBuffer) chunk).force();
+            }
+        }
+    }
+
+    /**
+     * Closes this matrix. Memory mapped matrices are written to their file.
+     * The values must not be accessed after closing, including row views.
+     *
+     * @throws IOException if closing the file fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        force();
+        chunks.clear();
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void addChunk() throws IOException {
+        int index = chunks.size();
+        int chunkRows = chunkRows(index);
+        int chunkSize = chunkRows * rowSize;
+        ByteBuffer chunk;
+        if (channel == null) {
+            chunk = ByteBuffer.allocateDirect(chunkSize);
+        } else {
+            // chunks are contiguous, so that the file stores the rows in order
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE,
+                dataOffset + chunkStart(index) * rowSize, chunkSize);
+        }
+        chunks.add(chunk.order(ByteOrder.LITTLE_ENDIAN));
+        capacity += chunkRows;
+    }
+
+    private int chunkRows(int index) {
+        return index < growingChunks ? initialChunkRows << index : maximumChunkRows;
+    }
+
+    private long chunkStart(int index) {
+        if (index <= growingChunks) {
+            return (long) initialChunkRows * ((1L << index) - 1);
+        }
+        return (long) maximumChunkRows - initialChunkRows + (long) (index - growingChunks) * maximumChunkRows;
+    }
+
+    private int chunkIndex(int row) {
+        long growingRows = (long) maximumChunkRows - initialChunkRows;
+        if (row < growingRows) {
+            return 31 - Integer.numberOfLeadingZeros(row / initialChunkRows + 1);
+        }
+        return growingChunks + (int) ((row - growingRows) / maximumChunkRows);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Abundance matrix is closed!");
+        }
+    }
+
+    private int columnFor(int id) {
+        int column = indexOf(id);
+        if (column < 0) {
+            throw new IllegalArgumentException("No column for id " + id + "!");
+        }
+        return column;
+    }
+
+    private void checkRow(int row) {
+        ensureOpen();
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException(
+                "Row: " + row + ", rows: " + rows);
+        }
+    }
+
+    private void checkIndex(int row, int column) {
+        checkRow(row);
+        if (column < 0 || column >= ids.length) {
+            throw new IndexOutOfBoundsException(
+                "Column: " + column + ", columns: " + ids.length);
+        }
+    }
+
+    private long bits(int row, int column) {
+        checkIndex(row, column);
+        return chunk(row).getLong(offset(row, column));
+    }
+
+    private ByteBuffer chunk(int row) {
+        return chunks.get(chunkIndex(row));
+    }
+
+    private int offset(int row, int column) {
+        int rowInChunk = (int) (row - chunkStart(chunkIndex(row)));
+        return (rowInChunk * ids.length + column) * Double.BYTES;
+    }
+
+    private final class RowView extends AbstractList<Double> implements RandomAccess {
+
+        private final int row;
+
+        RowView(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Double get(int index) {
+            return AbundanceMatrix.this.get(row, checkColumn(index));
+        }
+
+        @Override
+        public Double set(int index, Double element) {
+            Double previous = get(index);
+            AbundanceMatrix.this.set(row, index, element);
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+        private int checkColumn(int index) {
+            if (index < 0 || index >= ids.length) {
+                throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", size: " + ids.length);
+            }
+            return index;
+        }
+    }
+}
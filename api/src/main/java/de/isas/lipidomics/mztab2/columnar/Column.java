@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+/**
+ * A column of a columnar table.
+ *
+ * @author nilshoffmann
+ */
+public interface Column {
+
+    /**
+     * Returns the number of rows in this column.
+     *
+     * @return the number of rows.
+     */
+    int size();
+
+    /**
+     * Returns true, if the value in the given row is null.
+     *
+     * @param row the row index.
+     * @return true, if the value is null.
+     */
+    boolean isNull(int row);
+}
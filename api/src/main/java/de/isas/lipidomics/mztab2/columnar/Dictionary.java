@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps distinct values to dense integer codes, starting at 0. The code for
+ * <code>null</code> is always {@link #NULL_CODE}. A dictionary may be shared
+ * between multiple {@link DictionaryColumn}s.
+ *
+ * @author nilshoffmann
+ * @param <T> the value type, must implement equals and hashCode.
+ */
+public final class Dictionary<T> {
+
+    /**
+     * The code used for <code>null</code> values.
+     */
+    public static final int NULL_CODE = -1;
+
+    private final Map<T, Integer> codes = new HashMap<>();
+    private final List<T> values = new ArrayList<>();
+
+    /**
+     * Returns the code for the given value, adding it to the dictionary if it
+     * is not yet known.
+     *
+     * @param value the value, may be null.
+     * @return the code of the value.
+     */
+    public int encode(T value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = values.size();
+            codes.put(value, code);
+            values.add(value);
+        }
+        return code;
+    }
+
+    /**
+     * Returns the code for the given value, without adding it.
+     *
+     * @param value the value, may be null.
+     * @return the code of the value, or {@link #NULL_CODE} if it is null or
+     * not part of this dictionary.
+     */
+    public int codeOf(T value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        return codes.getOrDefault(value, NULL_CODE);
+    }
+
+    /**
+     * Returns the value for the given code.
+     *
+     * @param code the code.
+     * @return the value, or null for {@link #NULL_CODE}.
+     */
+    public T decode(int code) {
+        if (code == NULL_CODE) {
+            return null;
+        }
+        return values.get(code);
+    }
+
+    /**
+     * Returns the number of distinct values.
+     *
+     * @return the number of distinct non-null values.
+     */
+    public int size() {
+        return values.size();
+    }
+}
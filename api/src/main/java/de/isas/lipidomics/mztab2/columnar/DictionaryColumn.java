@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import java.util.Arrays;
+
+/**
+ * A dictionary encoded column. Each row stores the integer code of its value
+ * in a {@link Dictionary}, so repeated values, e.g. adduct ions or parameters,
+ * are only stored once.
+ *
+ * @author nilshoffmann
+ * @param <T> the value type.
+ */
+public final class DictionaryColumn<T> implements Column {
+
+    private final Dictionary<T> dictionary;
+    private int[] codes = new int[16];
+    private int size = 0;
+
+    public DictionaryColumn() {
+        this(new Dictionary<>());
+    }
+
+    /**
+     * Create a new column using the given, possibly shared, dictionary.
+     *
+     * @param dictionary the dictionary.
+     */
+    public DictionaryColumn(Dictionary<T> dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Append a value.
+     *
+     * @param value the value, may be null.
+     */
+    public void add(T value) {
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, codes.length * 2);
+        }
+        codes[size++] = dictionary.encode(value);
+    }
+
+    /**
+     * Returns the value of the given row.
+     *
+     * @param row the row index.
+     * @return the value, or null.
+     */
+    public T get(int row) {
+        return dictionary.decode(getCode(row));
+    }
+
+    /**
+     * Returns the dictionary code of the given row.
+     *
+     * @param row the row index.
+     * @return the code, or {@link Dictionary#NULL_CODE}.
+     */
+    public int getCode(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException(
+                "Row: " + row + ", size: " + size);
+        }
+        return codes[row];
+    }
+
+    /**
+     * Returns the dictionary of this column.
+     *
+     * @return the dictionary.
+     */
+    public Dictionary<T> getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return getCode(row) == Dictionary.NULL_CODE;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reduce the capacity of the backing array to the current size.
+     */
+    public void trimToSize() {
+        codes = Arrays.copyOf(codes, Math.max(1, size));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A nullable column of double values, backed by a primitive array.
+ *
+ * @author nilshoffmann
+ */
+public final class DoubleColumn implements Column {
+
+    private double[] values;
+    private final BitSet nulls = new BitSet();
+    private int size = 0;
+
+    public DoubleColumn() {
+        this(16);
+    }
+
+    /**
+     * Create a new column.
+     *
+     * @param initialCapacity the initial number of rows to allocate.
+     */
+    public DoubleColumn(int initialCapacity) {
+        this.values = new double[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Append a value.
+     *
+     * @param value the value, may be null.
+     */
+    public void add(Double value) {
+        if (value == null) {
+            ensureCapacity(size + 1);
+            nulls.set(size);
+            size++;
+        } else {
+            addDouble(value);
+        }
+    }
+
+    /**
+     * Append a primitive value.
+     *
+     * @param value the value.
+     */
+    public void addDouble(double value) {
+        ensureCapacity(size + 1);
+        values[size++] = value;
+    }
+
+    /**
+     * Returns the primitive value of the given row. The result is undefined,
+     * if the value is null.
+     *
+     * @param row the row index.
+     * @return the value.
+     */
+    public double getDouble(int row) {
+        checkIndex(row);
+        return values[row];
+    }
+
+    /**
+     * Returns the boxed value of the given row.
+     *
+     * @param row the row index.
+     * @return the value, or null.
+     */
+    public Double get(int row) {
+        checkIndex(row);
+        return nulls.get(row) ? null : values[row];
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        checkIndex(row);
+        return nulls.get(row);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of the values. Null values are represented as
+     * {@link Double#NaN}.
+     *
+     * @return the values.
+     */
+    public double[] toArray() {
+        double[] copy = Arrays.copyOf(values, size);
+        for (int i = nulls.nextSetBit(0); i >= 0 && i < size; i = nulls.
+            nextSetBit(i + 1)) {
+            copy[i] = Double.NaN;
+        }
+        return copy;
+    }
+
+    /**
+     * Reduce the capacity of the backing array to the current size.
+     */
+    public void trimToSize() {
+        values = Arrays.copyOf(values, Math.max(1, size));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+
+    private void checkIndex(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException(
+                "Row: " + row + ", size: " + size);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A nullable column of double lists, e.g. abundance or id confidence measure
+ * values. All elements are stored consecutively in one primitive array, with
+ * row offsets in a second array. Null rows and null elements are tracked in
+ * bit sets.
+ *
+ * @author nilshoffmann
+ */
+public final class DoubleListColumn implements Column {
+
+    private double[] values = new double[16];
+    private int[] offsets = new int[17];
+    private final BitSet nullRows = new BitSet();
+    private final BitSet nullValues = new BitSet();
+    private int size = 0;
+
+    /**
+     * Append a list.
+     *
+     * @param list the list, may be null and may contain null elements.
+     */
+    public void add(List<Double> list) {
+        if (size + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        int start = offsets[size];
+        if (list == null) {
+            nullRows.set(size);
+            offsets[++size] = start;
+            return;
+        }
+        int end = start + list.size();
+        if (end > values.length) {
+            values = Arrays.copyOf(values, Math.max(end, values.length * 2));
+        }
+        for (int i = 0; i < list.size(); i++) {
+            Double d = list.get(i);
+            if (d == null) {
+                nullValues.set(start + i);
+            } else {
+                values[start + i] = d;
+            }
+        }
+        offsets[++size] = end;
+    }
+
+    /**
+     * Returns the number of elements in the given row.
+     *
+     * @param row the row index.
+     * @return the number of elements, 0 for null rows.
+     */
+    public int size(int row) {
+        checkIndex(row);
+        return offsets[row + 1] - offsets[row];
+    }
+
+    /**
+     * Returns the primitive value of an element. The result is undefined, if
+     * the element is null.
+     *
+     * @param row the row index.
+     * @param index the element index.
+     * @return the value.
+     */
+    public double getDouble(int row, int index) {
+        return values[position(row, index)];
+    }
+
+    /**
+     * Returns true, if the given element is null.
+     *
+     * @param row the row index.
+     * @param index the element index.
+     * @return true, if the element is null.
+     */
+    public boolean isNull(int row, int index) {
+        return nullValues.get(position(row, index));
+    }
+
+    /**
+     * Returns a read-only list view of the given row. Elements are boxed on
+     * access.
+     *
+     * @param row the row index.
+     * @return the list view, or null for null rows.
+     */
+    public List<Double> get(final int row) {
+        if (isNull(row)) {
+            return null;
+        }
+        return new AbstractList<Double>() {
+            @Override
+            public Double get(int index) {
+                int position = position(row, index);
+                return nullValues.get(position) ? null : values[position];
+            }
+
+            @Override
+            public int size() {
+                return DoubleListColumn.this.size(row);
+            }
+        };
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        checkIndex(row);
+        return nullRows.get(row);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reduce the capacity of the backing arrays to the current size.
+     */
+    public void trimToSize() {
+        values = Arrays.copyOf(values, Math.max(1, offsets[size]));
+        offsets = Arrays.copyOf(offsets, size + 1);
+    }
+
+    private int position(int row, int index) {
+        int length = size(row);
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(
+                "Index: " + index + ", size: " + length);
+        }
+        return offsets[row] + index;
+    }
+
+    private void checkIndex(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException(
+                "Row: " + row + ", size: " + size);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * A list of nullable int values, backed by a primitive array. Used as the
+ * implementation of numeric list properties by the model classes generated
+ * with the <code>primitive-model</code> profile, but can be used wherever a
+ * <code>List&lt;Integer&gt;</code> is expected.</p>
+ *
+ * <p>
+ * The primitive accessors {@link #getInt(int)}, {@link #addInt(int)}
+ * and {@link #setInt(int, int)} do not box values. Equality and hash
+ * codes follow the {@link List} contract.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class IntArrayList extends AbstractList<Integer> implements RandomAccess {
+
+    private int[] values;
+    private final BitSet nulls = new BitSet();
+    private int size = 0;
+
+    public IntArrayList() {
+        this(10);
+    }
+
+    /**
+     * Create a new, empty list.
+     *
+     * @param initialCapacity the initial number of elements to allocate.
+     */
+    public IntArrayList(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException(
+                "Illegal capacity: " + initialCapacity);
+        }
+        this.values = new int[initialCapacity];
+    }
+
+    /**
+     * Create a new list containing the given values.
+     *
+     * @param values the values, may contain null elements.
+     */
+    public IntArrayList(Collection<? extends Integer> values) {
+        this(values.size());
+        addAll(values);
+    }
+
+    /**
+     * Create a new list containing the given values.
+     *
+     * @param values the values.
+     * @return the list.
+     */
+    public static IntArrayList of(int... values) {
+        IntArrayList list = new IntArrayList(0);
+        list.values = values.clone();
+        list.size = values.length;
+        return list;
+    }
+
+    /**
+     * Returns the element at the given index of the list as a primitive
+     * value, without boxing if the list is a {@link IntArrayList}.
+     *
+     * @param list the list.
+     * @param index the index.
+     * @return the value, <code>0</code> for null elements.
+     */
+    public static int getInt(List<Integer> list, int index) {
+        if (list instanceof IntArrayList) {
+            return ((IntArrayList) list).getInt(index);
+        }
+        Integer value = list.get(index);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Returns the elements of the list as a new primitive array.
+     *
+     * @param list the list, may be null.
+     * @return the values, <code>0</code> for null elements, or an empty
+     * array if the list is null.
+     */
+    public static int[] toIntArray(List<Integer> list) {
+        if (list == null) {
+            return new int[0];
+        }
+        if (list instanceof IntArrayList) {
+            return ((IntArrayList) list).toIntArray();
+        }
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            Integer value = list.get(i);
+            array[i] = value == null ? 0 : value;
+        }
+        return array;
+    }
+
+    @Override
+    public Integer get(int index) {
+        checkIndex(index);
+        return nulls.get(index) ? null : values[index];
+    }
+
+    /**
+     * Returns the value at the given index.
+     *
+     * @param index the index.
+     * @return the value, <code>0</code> for null elements.
+     */
+    public int getInt(int index) {
+        checkIndex(index);
+        return nulls.get(index) ? 0 : values[index];
+    }
+
+    /**
+     * Returns true, if the element at the given index is null.
+     *
+     * @param index the index.
+     * @return true, if the element is null.
+     */
+    public boolean isNull(int index) {
+        checkIndex(index);
+        return nulls.get(index);
+    }
+
+    @Override
+    public Integer set(int index, Integer element) {
+        Integer previous = get(index);
+        if (element == null) {
+            nulls.set(index);
+            values[index] = 0;
+        } else {
+            nulls.clear(index);
+            values[index] = element;
+        }
+        return previous;
+    }
+
+    /**
+     * Set the value at the given index.
+     *
+     * @param index the index.
+     * @param value the value.
+     */
+    public void setInt(int index, int value) {
+        checkIndex(index);
+        nulls.clear(index);
+        values[index] = value;
+    }
+
+    @Override
+    public boolean add(Integer element) {
+        add(size, element);
+        return true;
+    }
+
+    /**
+     * Append a value.
+     *
+     * @param value the value.
+     * @return this list.
+     */
+    public IntArrayList addInt(int value) {
+        ensureCapacity(size + 1);
+        modCount++;
+        values[size++] = value;
+        return this;
+    }
+
+    @Override
+    public void add(int index, Integer element) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException(
+                "Index: " + index + ", size: " + size);
+        }
+        ensureCapacity(size + 1);
+        modCount++;
+        if (index < size) {
+            System.arraycopy(values, index, values, index + 1, size - index);
+            for (int i = size; i > index; i--) {
+                nulls.set(i, nulls.get(i - 1));
+            }
+        }
+        size++;
+        if (element == null) {
+            nulls.set(index);
+            values[index] = 0;
+        } else {
+            nulls.clear(index);
+            values[index] = element;
+        }
+    }
+
+    @Override
+    public Integer remove(int index) {
+        Integer previous = get(index);
+        modCount++;
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        for (int i = index; i < size - 1; i++) {
+            nulls.set(i, nulls.get(i + 1));
+        }
+        size--;
+        nulls.clear(size);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        nulls.clear();
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values as a new primitive array.
+     *
+     * @return the values, <code>0</code> for null elements.
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Reduce the capacity of this list to its size.
+     */
+    public void trimToSize() {
+        if (values.length > size) {
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity,
+                Math.max(10, values.length + (values.length >> 1))));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                "Index: " + index + ", size: " + size);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A nullable column of int values, backed by a primitive array.
+ *
+ * @author nilshoffmann
+ */
+public final class IntColumn implements Column {
+
+    private int[] values;
+    private final BitSet nulls = new BitSet();
+    private int size = 0;
+
+    public IntColumn() {
+        this(16);
+    }
+
+    /**
+     * Create a new column.
+     *
+     * @param initialCapacity the initial number of rows to allocate.
+     */
+    public IntColumn(int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Append a value.
+     *
+     * @param value the value, may be null.
+     */
+    public void add(Integer value) {
+        if (value == null) {
+            ensureCapacity(size + 1);
+            nulls.set(size);
+            size++;
+        } else {
+            addInt(value);
+        }
+    }
+
+    /**
+     * Append a primitive value.
+     *
+     * @param value the value.
+     */
+    public void addInt(int value) {
+        ensureCapacity(size + 1);
+        values[size++] = value;
+    }
+
+    /**
+     * Returns the primitive value of the given row. The result is undefined,
+     * if the value is null.
+     *
+     * @param row the row index.
+     * @return the value.
+     */
+    public int getInt(int row) {
+        checkIndex(row);
+        return values[row];
+    }
+
+    /**
+     * Returns the boxed value of the given row.
+     *
+     * @param row the row index.
+     * @return the value, or null.
+     */
+    public Integer get(int row) {
+        checkIndex(row);
+        return nulls.get(row) ? null : values[row];
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        checkIndex(row);
+        return nulls.get(row);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a copy of the values. Null values are represented as 0, use
+     * {@link #isNull(int)} to distinguish them.
+     *
+     * @return the values.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Reduce the capacity of the backing array to the current size.
+     */
+    public void trimToSize() {
+        values = Arrays.copyOf(values, Math.max(1, size));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+
+    private void checkIndex(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException(
+                "Row: " + row + ", size: " + size);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import java.util.ArrayList;
+
+/**
+ * A column of arbitrary objects, for values that are rarely accessed or can
+ * not be encoded efficiently, e.g. opt columns or comments.
+ *
+ * @author nilshoffmann
+ * @param <T> the value type.
+ */
+public final class ObjectColumn<T> implements Column {
+
+    private final ArrayList<T> values = new ArrayList<>();
+
+    /**
+     * Append a value.
+     *
+     * @param value the value, may be null.
+     */
+    public void add(T value) {
+        values.add(value);
+    }
+
+    /**
+     * Returns the value of the given row.
+     *
+     * @param row the row index.
+     * @return the value, or null.
+     */
+    public T get(int row) {
+        return values.get(row);
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return values.get(row) == null;
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Reduce the capacity of the backing list to the current size.
+     */
+    public void trimToSize() {
+        values.trimToSize();
+    }
+}
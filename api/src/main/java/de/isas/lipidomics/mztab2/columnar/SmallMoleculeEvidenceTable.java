@@ -0,0 +1,451 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import de.isas.mztab2.model.Comment;
+import de.isas.mztab2.model.OptColumnMapping;
+import de.isas.mztab2.model.Parameter;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SpectraRef;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ * Columnar representation of the small molecule evidence section. Numeric
+ * columns are stored in primitive arrays, string and parameter columns are
+ * dictionary encoded.</p>
+ *
+ * <p>
+ * {@link #getRow(int)} and {@link #rows()} return read-only row views that
+ * extend {@link SmallMoleculeEvidence} and read their values from the columns.
+ * Setters of row views do not modify the table, use
+ * {@link #toSmallMoleculeEvidence(int)} to obtain a mutable copy of a row.
+ * Since the generated <code>equals</code> methods compare classes, row views
+ * are equal to plain rows with the same values only when compared from the
+ * row view side.</p>
+ *
+ * @author nilshoffmann
+ * @see SmallMoleculeFeatureTable
+ */
+public final class SmallMoleculeEvidenceTable {
+
+    private final IntColumn smeId = new IntColumn();
+    private final DictionaryColumn<String> evidenceInputId;
+    private final DictionaryColumn<String> databaseIdentifier;
+    private final DictionaryColumn<String> chemicalFormula;
+    private final DictionaryColumn<String> smiles;
+    private final DictionaryColumn<String> inchi;
+    private final DictionaryColumn<String> chemicalName;
+    private final DictionaryColumn<String> uri;
+    private final DictionaryColumn<Parameter> derivatizedForm;
+    private final DictionaryColumn<String> adductIon;
+    private final DoubleColumn expMassToCharge = new DoubleColumn();
+    private final IntColumn charge = new IntColumn();
+    private final DoubleColumn theoreticalMassToCharge = new DoubleColumn();
+    private final ObjectColumn<List<SpectraRef>> spectraRef = new ObjectColumn<>();
+    private final DictionaryColumn<Parameter> identificationMethod;
+    private final DictionaryColumn<Parameter> msLevel;
+    private final DoubleListColumn idConfidenceMeasure = new DoubleListColumn();
+    private final IntColumn rank = new IntColumn();
+    private final ObjectColumn<List<OptColumnMapping>> opt = new ObjectColumn<>();
+    private final ObjectColumn<List<Comment>> comment = new ObjectColumn<>();
+
+    public SmallMoleculeEvidenceTable() {
+        this(new Dictionary<>(), new Dictionary<>());
+    }
+
+    /**
+     * Create a new table using the given, possibly shared, dictionaries.
+     *
+     * @param strings the dictionary for string values.
+     * @param parameters the dictionary for parameter values.
+     */
+    public SmallMoleculeEvidenceTable(Dictionary<String> strings,
+        Dictionary<Parameter> parameters) {
+        this.evidenceInputId = new DictionaryColumn<>(strings);
+        this.databaseIdentifier = new DictionaryColumn<>(strings);
+        this.chemicalFormula = new DictionaryColumn<>(strings);
+        this.smiles = new DictionaryColumn<>(strings);
+        this.inchi = new DictionaryColumn<>(strings);
+        this.chemicalName = new DictionaryColumn<>(strings);
+        this.uri = new DictionaryColumn<>(strings);
+        this.derivatizedForm = new DictionaryColumn<>(parameters);
+        this.adductIon = new DictionaryColumn<>(strings);
+        this.identificationMethod = new DictionaryColumn<>(parameters);
+        this.msLevel = new DictionaryColumn<>(parameters);
+    }
+
+    /**
+     * Create a new table containing the given rows.
+     *
+     * @param rows the small molecule evidence rows.
+     * @return the table.
+     */
+    public static SmallMoleculeEvidenceTable of(
+        Collection<? extends SmallMoleculeEvidence> rows) {
+        SmallMoleculeEvidenceTable table = new SmallMoleculeEvidenceTable();
+        rows.forEach(table::add);
+        table.trimToSize();
+        return table;
+    }
+
+    /**
+     * Append a row.
+     *
+     * @param sme the small molecule evidence.
+     */
+    public void add(SmallMoleculeEvidence sme) {
+        smeId.add(sme.getSmeId());
+        evidenceInputId.add(sme.getEvidenceInputId());
+        databaseIdentifier.add(sme.getDatabaseIdentifier());
+        chemicalFormula.add(sme.getChemicalFormula());
+        smiles.add(sme.getSmiles());
+        inchi.add(sme.getInchi());
+        chemicalName.add(sme.getChemicalName());
+        uri.add(sme.getUri());
+        derivatizedForm.add(sme.getDerivatizedForm());
+        adductIon.add(sme.getAdductIon());
+        expMassToCharge.add(sme.getExpMassToCharge());
+        charge.add(sme.getCharge());
+        theoreticalMassToCharge.add(sme.getTheoreticalMassToCharge());
+        spectraRef.add(sme.getSpectraRef());
+        identificationMethod.add(sme.getIdentificationMethod());
+        msLevel.add(sme.getMsLevel());
+        idConfidenceMeasure.add(sme.getIdConfidenceMeasure());
+        rank.add(sme.getRank());
+        opt.add(sme.getOpt());
+        comment.add(sme.getComment());
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return smeId.size();
+    }
+
+    /**
+     * Reduce the capacity of all columns to the current number of rows.
+     */
+    public void trimToSize() {
+        smeId.trimToSize();
+        evidenceInputId.trimToSize();
+        databaseIdentifier.trimToSize();
+        chemicalFormula.trimToSize();
+        smiles.trimToSize();
+        inchi.trimToSize();
+        chemicalName.trimToSize();
+        uri.trimToSize();
+        derivatizedForm.trimToSize();
+        adductIon.trimToSize();
+        expMassToCharge.trimToSize();
+        charge.trimToSize();
+        theoreticalMassToCharge.trimToSize();
+        spectraRef.trimToSize();
+        identificationMethod.trimToSize();
+        msLevel.trimToSize();
+        idConfidenceMeasure.trimToSize();
+        rank.trimToSize();
+        opt.trimToSize();
+        comment.trimToSize();
+    }
+
+    public IntColumn getSmeId() {
+        return smeId;
+    }
+
+    public DictionaryColumn<String> getEvidenceInputId() {
+        return evidenceInputId;
+    }
+
+    public DictionaryColumn<String> getDatabaseIdentifier() {
+        return databaseIdentifier;
+    }
+
+    public DictionaryColumn<String> getChemicalFormula() {
+        return chemicalFormula;
+    }
+
+    public DictionaryColumn<String> getSmiles() {
+        return smiles;
+    }
+
+    public DictionaryColumn<String> getInchi() {
+        return inchi;
+    }
+
+    public DictionaryColumn<String> getChemicalName() {
+        return chemicalName;
+    }
+
+    public DictionaryColumn<String> getUri() {
+        return uri;
+    }
+
+    public DictionaryColumn<Parameter> getDerivatizedForm() {
+        return derivatizedForm;
+    }
+
+    public DictionaryColumn<String> getAdductIon() {
+        return adductIon;
+    }
+
+    public DoubleColumn getExpMassToCharge() {
+        return expMassToCharge;
+    }
+
+    public IntColumn getCharge() {
+        return charge;
+    }
+
+    public DoubleColumn getTheoreticalMassToCharge() {
+        return theoreticalMassToCharge;
+    }
+
+    public ObjectColumn<List<SpectraRef>> getSpectraRef() {
+        return spectraRef;
+    }
+
+    public DictionaryColumn<Parameter> getIdentificationMethod() {
+        return identificationMethod;
+    }
+
+    public DictionaryColumn<Parameter> getMsLevel() {
+        return msLevel;
+    }
+
+    public DoubleListColumn getIdConfidenceMeasure() {
+        return idConfidenceMeasure;
+    }
+
+    public IntColumn getRank() {
+        return rank;
+    }
+
+    public ObjectColumn<List<OptColumnMapping>> getOpt() {
+        return opt;
+    }
+
+    public ObjectColumn<List<Comment>> getComment() {
+        return comment;
+    }
+
+    /**
+     * Returns a read-only view of the given row.
+     *
+     * @param row the row index.
+     * @return the row view.
+     */
+    public SmallMoleculeEvidence getRow(int row) {
+        if (row < 0 || row >= size()) {
+            throw new IndexOutOfBoundsException(
+                "Row: " + row + ", size: " + size());
+        }
+        return new Row(row);
+    }
+
+    /**
+     * Returns a read-only list of row views.
+     *
+     * @return the list of row views.
+     */
+    public List<SmallMoleculeEvidence> rows() {
+        return new AbstractList<SmallMoleculeEvidence>() {
+            @Override
+            public SmallMoleculeEvidence get(int index) {
+                return getRow(index);
+            }
+
+            @Override
+            public int size() {
+                return SmallMoleculeEvidenceTable.this.size();
+            }
+        };
+    }
+
+    /**
+     * Returns a mutable copy of the given row.
+     *
+     * @param row the row index.
+     * @return the small molecule evidence.
+     */
+    public SmallMoleculeEvidence toSmallMoleculeEvidence(int row) {
+        return new SmallMoleculeEvidence().
+            smeId(smeId.get(row)).
+            evidenceInputId(evidenceInputId.get(row)).
+            databaseIdentifier(databaseIdentifier.get(row)).
+            chemicalFormula(chemicalFormula.get(row)).
+            smiles(smiles.get(row)).
+            inchi(inchi.get(row)).
+            chemicalName(chemicalName.get(row)).
+            uri(uri.get(row)).
+            derivatizedForm(derivatizedForm.get(row)).
+            adductIon(adductIon.get(row)).
+            expMassToCharge(expMassToCharge.get(row)).
+            charge(charge.get(row)).
+            theoreticalMassToCharge(theoreticalMassToCharge.get(row)).
+            spectraRef(copy(spectraRef.get(row))).
+            identificationMethod(identificationMethod.get(row)).
+            msLevel(msLevel.get(row)).
+            idConfidenceMeasure(copy(idConfidenceMeasure.get(row))).
+            rank(rank.get(row)).
+            opt(opt.get(row)).
+            comment(comment.get(row));
+    }
+
+    private static <T> List<T> copy(List<T> list) {
+        return list == null ? null : new ArrayList<>(list);
+    }
+
+    /**
+     * Read-only row view.
+     */
+    private final class Row extends SmallMoleculeEvidence {
+
+        private final int row;
+
+        Row(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Integer getSmeId() {
+            return smeId.get(row);
+        }
+
+        @Override
+        public String getEvidenceInputId() {
+            return evidenceInputId.get(row);
+        }
+
+        @Override
+        public String getDatabaseIdentifier() {
+            return databaseIdentifier.get(row);
+        }
+
+        @Override
+        public String getChemicalFormula() {
+            return chemicalFormula.get(row);
+        }
+
+        @Override
+        public String getSmiles() {
+            return smiles.get(row);
+        }
+
+        @Override
+        public String getInchi() {
+            return inchi.get(row);
+        }
+
+        @Override
+        public String getChemicalName() {
+            return chemicalName.get(row);
+        }
+
+        @Override
+        public String getUri() {
+            return uri.get(row);
+        }
+
+        @Override
+        public Parameter getDerivatizedForm() {
+            return derivatizedForm.get(row);
+        }
+
+        @Override
+        public String getAdductIon() {
+            return adductIon.get(row);
+        }
+
+        @Override
+        public Double getExpMassToCharge() {
+            return expMassToCharge.get(row);
+        }
+
+        @Override
+        public Integer getCharge() {
+            return charge.get(row);
+        }
+
+        @Override
+        public Double getTheoreticalMassToCharge() {
+            return theoreticalMassToCharge.get(row);
+        }
+
+        @Override
+        public List<SpectraRef> getSpectraRef() {
+            return spectraRef.get(row);
+        }
+
+        @Override
+        public Parameter getIdentificationMethod() {
+            return identificationMethod.get(row);
+        }
+
+        @Override
+        public Parameter getMsLevel() {
+            return msLevel.get(row);
+        }
+
+        @Override
+        public List<Double> getIdConfidenceMeasure() {
+            return idConfidenceMeasure.get(row);
+        }
+
+        @Override
+        public Integer getRank() {
+            return rank.get(row);
+        }
+
+        @Override
+        public List<OptColumnMapping> getOpt() {
+            return opt.get(row);
+        }
+
+        @Override
+        public List<Comment> getComment() {
+            return comment.get(row);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Row) {
+                o = ((Row) o).materialize();
+            }
+            return materialize().equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return materialize().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return materialize().toString();
+        }
+
+        private SmallMoleculeEvidence materialize() {
+            return toSmallMoleculeEvidence(row);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import de.isas.mztab2.model.Comment;
+import de.isas.mztab2.model.OptColumnMapping;
+import de.isas.mztab2.model.Parameter;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>
+ * Columnar representation of the small molecule feature section. Numeric
+ * columns are stored in primitive arrays, the adduct ion and isotopomer
+ * columns are dictionary encoded.</p>
+ *
+ * <p>
+ * {@link #getRow(int)} and {@link #rows()} return read-only row views that
+ * extend {@link SmallMoleculeFeature} and read their values from the columns,
+ * so a table can be passed to code expecting the model classes, e.g. the
+ * mzTab writers. Setters of row views do not modify the table, use
+ * {@link #toSmallMoleculeFeature(int)} to obtain a mutable copy of a row.
+ * Since the generated <code>equals</code> methods compare classes, row views
+ * are equal to plain rows with the same values only when compared from the
+ * row view side.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class SmallMoleculeFeatureTable {
+
+    private final IntColumn smfId = new IntColumn();
+    private final IntListColumn smeIdRefs = new IntListColumn();
+    private final IntColumn smeIdRefAmbiguityCode = new IntColumn();
+    private final DictionaryColumn<String> adductIon;
+    private final DictionaryColumn<Parameter> isotopomer;
+    private final DoubleColumn expMassToCharge = new DoubleColumn();
+    private final IntColumn charge = new IntColumn();
+    private final DoubleColumn retentionTimeInSeconds = new DoubleColumn();
+    private final DoubleColumn retentionTimeInSecondsStart = new DoubleColumn();
+    private final DoubleColumn retentionTimeInSecondsEnd = new DoubleColumn();
+    private final DoubleListColumn abundanceAssay = new DoubleListColumn();
+    private final ObjectColumn<List<OptColumnMapping>> opt = new ObjectColumn<>();
+    private final ObjectColumn<List<Comment>> comment = new ObjectColumn<>();
+
+    public SmallMoleculeFeatureTable() {
+        this(new Dictionary<>(), new Dictionary<>());
+    }
+
+    /**
+     * Create a new table using the given, possibly shared, dictionaries.
+     *
+     * @param strings the dictionary for string values.
+     * @param parameters the dictionary for parameter values.
+     */
+    public SmallMoleculeFeatureTable(Dictionary<String> strings,
+        Dictionary<Parameter> parameters) {
+        this.adductIon = new DictionaryColumn<>(strings);
+        this.isotopomer = new DictionaryColumn<>(parameters);
+    }
+
+    /**
+     * Create a new table containing the given rows.
+     *
+     * @param rows the small molecule feature rows.
+     * @return the table.
+     */
+    public static SmallMoleculeFeatureTable of(
+        Collection<? extends SmallMoleculeFeature> rows) {
+        SmallMoleculeFeatureTable table = new SmallMoleculeFeatureTable();
+        rows.forEach(table::add);
+        table.trimToSize();
+        return table;
+    }
+
+    /**
+     * Append a row.
+     *
+     * @param smf the small molecule feature.
+     */
+    public void add(SmallMoleculeFeature smf) {
+        smfId.add(smf.getSmfId());
+        smeIdRefs.add(smf.getSmeIdRefs());
+        smeIdRefAmbiguityCode.add(smf.getSmeIdRefAmbiguityCode());
+        adductIon.add(smf.getAdductIon());
+        isotopomer.add(smf.getIsotopomer());
+        expMassToCharge.add(smf.getExpMassToCharge());
+        charge.add(smf.getCharge());
+        retentionTimeInSeconds.add(smf.getRetentionTimeInSeconds());
+        retentionTimeInSecondsStart.add(smf.getRetentionTimeInSecondsStart());
+        retentionTimeInSecondsEnd.add(smf.getRetentionTimeInSecondsEnd());
+        abundanceAssay.add(smf.getAbundanceAssay());
+        opt.add(smf.getOpt());
+        comment.add(smf.getComment());
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows.
+     */
+    public int size() {
+        return smfId.size();
+    }
+
+    /**
+     * Reduce the capacity of all columns to the current number of rows.
+     */
+    public void trimToSize() {
+        smfId.trimToSize();
+        smeIdRefs.trimToSize();
+        smeIdRefAmbiguityCode.trimToSize();
+        adductIon.trimToSize();
+        isotopomer.trimToSize();
+        expMassToCharge.trimToSize();
+        charge.trimToSize();
+        retentionTimeInSeconds.trimToSize();
+        retentionTimeInSecondsStart.trimToSize();
+        retentionTimeInSecondsEnd.trimToSize();
+        abundanceAssay.trimToSize();
+        opt.trimToSize();
+        comment.trimToSize();
+    }
+
+    public IntColumn getSmfId() {
+        return smfId;
+    }
+
+    public IntListColumn getSmeIdRefs() {
+        return smeIdRefs;
+    }
+
+    public IntColumn getSmeIdRefAmbiguityCode() {
+        return smeIdRefAmbiguityCode;
+    }
+
+    public DictionaryColumn<String> getAdductIon() {
+        return adductIon;
+    }
+
+    public DictionaryColumn<Parameter> getIsotopomer() {
+        return isotopomer;
+    }
+
+    public DoubleColumn getExpMassToCharge() {
+        return expMassToCharge;
+    }
+
+    public IntColumn getCharge() {
+        return charge;
+    }
+
+    public DoubleColumn getRetentionTimeInSeconds() {
+        return retentionTimeInSeconds;
+    }
+
+    public DoubleColumn getRetentionTimeInSecondsStart() {
+        return retentionTimeInSecondsStart;
+    }
+
+    public DoubleColumn getRetentionTimeInSecondsEnd() {
+        return retentionTimeInSecondsEnd;
+    }
+
+    public DoubleListColumn getAbundanceAssay() {
+        return abundanceAssay;
+    }
+
+    public ObjectColumn<List<OptColumnMapping>> getOpt() {
+        return opt;
+    }
+
+    public ObjectColumn<List<Comment>> getComment() {
+        return comment;
+    }
+
+    /**
+     * Returns a read-only view of the given row.
+     *
+     * @param row the row index.
+     * @return the row view.
+     */
+    public SmallMoleculeFeature getRow(int row) {
+        if (row < 0 || row >= size()) {
+            throw new IndexOutOfBoundsException(
+                "Row: " + row + ", size: " + size());
+        }
+        return new Row(row);
+    }
+
+    /**
+     * Returns a read-only list of row views.
+     *
+     * @return the list of row views.
+     */
+    public List<SmallMoleculeFeature> rows() {
+        return new AbstractList<SmallMoleculeFeature>() {
+            @Override
+            public SmallMoleculeFeature get(int index) {
+                return getRow(index);
+            }
+
+            @Override
+            public int size() {
+                return SmallMoleculeFeatureTable.this.size();
+            }
+        };
+    }
+
+    /**
+     * Returns a mutable copy of the given row.
+     *
+     * @param row the row index.
+     * @return the small molecule feature.
+     */
+    public SmallMoleculeFeature toSmallMoleculeFeature(int row) {
+        return new SmallMoleculeFeature().
+            smfId(smfId.get(row)).
+            smeIdRefs(copy(smeIdRefs.get(row))).
+            smeIdRefAmbiguityCode(smeIdRefAmbiguityCode.get(row)).
+            adductIon(adductIon.get(row)).
+            isotopomer(isotopomer.get(row)).
+            expMassToCharge(expMassToCharge.get(row)).
+            charge(charge.get(row)).
+            retentionTimeInSeconds(retentionTimeInSeconds.get(row)).
+            retentionTimeInSecondsStart(retentionTimeInSecondsStart.get(row)).
+            retentionTimeInSecondsEnd(retentionTimeInSecondsEnd.get(row)).
+            abundanceAssay(copy(abundanceAssay.get(row))).
+            opt(opt.get(row)).
+            comment(comment.get(row));
+    }
+
+    private static <T> List<T> copy(List<T> list) {
+        return list == null ? null : new ArrayList<>(list);
+    }
+
+    /**
+     * Read-only row view.
+     */
+    private final class Row extends SmallMoleculeFeature {
+
+        private final int row;
+
+        Row(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public Integer getSmfId() {
+            return smfId.get(row);
+        }
+
+        @Override
+        public List<Integer> getSmeIdRefs() {
+            return smeIdRefs.get(row);
+        }
+
+        @Override
+        public Integer getSmeIdRefAmbiguityCode() {
+            return smeIdRefAmbiguityCode.get(row);
+        }
+
+        @Override
+        public String getAdductIon() {
+            return adductIon.get(row);
+        }
+
+        @Override
+        public Parameter getIsotopomer() {
+            return isotopomer.get(row);
+        }
+
+        @Override
+        public Double getExpMassToCharge() {
+            return expMassToCharge.get(row);
+        }
+
+        @Override
+        public Integer getCharge() {
+            return charge.get(row);
+        }
+
+        @Override
+        public Double getRetentionTimeInSeconds() {
+            return retentionTimeInSeconds.get(row);
+        }
+
+        @Override
+        public Double getRetentionTimeInSecondsStart() {
+            return retentionTimeInSecondsStart.get(row);
+        }
+
+        @Override
+        public Double getRetentionTimeInSecondsEnd() {
+            return retentionTimeInSecondsEnd.get(row);
+        }
+
+        @Override
+        public List<Double> getAbundanceAssay() {
+            return abundanceAssay.get(row);
+        }
+
+        @Override
+        public List<OptColumnMapping> getOpt() {
+            return opt.get(row);
+        }
+
+        @Override
+        public List<Comment> getComment() {
+            return comment.get(row);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Row) {
+                o = ((Row) o).materialize();
+            }
+            return materialize().equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return materialize().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return materialize().toString();
+        }
+
+        private SmallMoleculeFeature materialize() {
+            return toSmallMoleculeFeature(row);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * This package contains a columnar, memory efficient representation of mzTab-M
+ * sections. Numeric columns are stored in primitive arrays, string and
+ * parameter columns are dictionary encoded. Row views extend the generated
+ * model classes, so that columnar tables can be used wherever the model is
+ * expected.
+ */
+package de.isas.lipidomics.mztab2.columnar;
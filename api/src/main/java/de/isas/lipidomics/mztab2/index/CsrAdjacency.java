@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Immutable adjacency in compressed sparse row layout: the targets of source
+ * <code>i</code> are stored at <code>targets[offsets[i]]</code> up to
+ * <code>targets[offsets[i + 1]]</code>, in ascending order and without
+ * duplicates.
+ *
+ * @author nilshoffmann
+ */
+final class CsrAdjacency {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] offsets;
+    private final int[] targets;
+
+    private CsrAdjacency(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    /**
+     * Create the adjacency from the id references of each source row.
+     * References that do not resolve to a target row are dropped.
+     *
+     * @param <T> the source row type.
+     * @param sources the source rows.
+     * @param references the accessor for the referenced ids, may return null.
+     * @param targetIds the lookup from id to target row position.
+     * @return the adjacency.
+     */
+    static <T> CsrAdjacency of(List<T> sources,
+        Function<? super T, List<Integer>> references, IdLookup targetIds) {
+        int[] offsets = new int[sources.size() + 1];
+        int[] targets = new int[Math.max(16, sources.size())];
+        int size = 0;
+        int i = 0;
+        for (T source : sources) {
+            List<Integer> ids = references.apply(source);
+            int start = size;
+            if (ids != null) {
+                for (Integer id : ids) {
+                    int row = id == null ? -1 : targetIds.rowOf(id);
+                    if (row >= 0) {
+                        if (size == targets.length) {
+                            targets = Arrays.copyOf(targets, size * 2);
+                        }
+                        targets[size++] = row;
+                    }
+                }
+            }
+            size = start + sortUnique(targets, start, size);
+            offsets[++i] = size;
+        }
+        return new CsrAdjacency(offsets, Arrays.copyOf(targets, size));
+    }
+
+    private static int sortUnique(int[] values, int from, int to) {
+        Arrays.sort(values, from, to);
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            if (size == 0 || values[from + size - 1] != values[i]) {
+                values[from + size++] = values[i];
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the reverse adjacency, mapping each target to its sources.
+     *
+     * @param targetCount the number of target rows.
+     * @return the reverse adjacency.
+     */
+    CsrAdjacency transpose(int targetCount) {
+        int[] reverseOffsets = new int[targetCount + 1];
+        for (int target : targets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int i = 0; i < targetCount; i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        int[] next = Arrays.copyOf(reverseOffsets, targetCount);
+        int[] sources = new int[targets.length];
+        // sources are visited in ascending order, so each run stays sorted
+        for (int source = 0; source < offsets.length - 1; source++) {
+            for (int j = offsets[source]; j < offsets[source + 1]; j++) {
+                sources[next[targets[j]]++] = source;
+            }
+        }
+        return new CsrAdjacency(reverseOffsets, sources);
+    }
+
+    int sourceCount() {
+        return offsets.length - 1;
+    }
+
+    int edgeCount() {
+        return targets.length;
+    }
+
+    int degree(int source) {
+        return offsets[source + 1] - offsets[source];
+    }
+
+    int[] get(int source) {
+        int from = offsets[source];
+        int to = offsets[source + 1];
+        return from == to ? EMPTY : Arrays.copyOfRange(targets, from, to);
+    }
+
+    /**
+     * Returns the targets of all targets of the given sources in the next
+     * adjacency, in ascending order and without duplicates.
+     *
+     * @param source the source row.
+     * @param next the adjacency of the targets.
+     * @return the target rows of the second hop.
+     */
+    int[] compose(int source, CsrAdjacency next) {
+        int size = 0;
+        for (int j = offsets[source]; j < offsets[source + 1]; j++) {
+            size += next.degree(targets[j]);
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+        int[] result = new int[size];
+        int position = 0;
+        for (int j = offsets[source]; j < offsets[source + 1]; j++) {
+            int target = targets[j];
+            int from = next.offsets[target];
+            int length = next.offsets[target + 1] - from;
+            System.arraycopy(next.targets, from, result, position, length);
+            position += length;
+        }
+        return Arrays.copyOf(result, sortUnique(result, 0, size));
+    }
+}
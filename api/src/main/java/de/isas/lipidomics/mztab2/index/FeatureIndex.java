@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Combines a {@link MassIndex} and a {@link RetentionTimeIndex} over the same
+ * small molecule features to answer mass to charge &times; retention time box
+ * queries, e.g. for feature alignment and co-elution lookups.</p>
+ *
+ * <p>
+ * A box query first selects the candidates in the mass to charge window,
+ * which is usually the narrow dimension, and then keeps those whose retention
+ * time interval overlaps the retention time window.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class FeatureIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final MassIndex massIndex;
+    private final RetentionTimeIndex retentionTimeIndex;
+
+    /**
+     * Create a new feature index from indices built over the same rows.
+     *
+     * @param massIndex the mass to charge index.
+     * @param retentionTimeIndex the retention time index.
+     */
+    public FeatureIndex(MassIndex massIndex,
+        RetentionTimeIndex retentionTimeIndex) {
+        this.massIndex = massIndex;
+        this.retentionTimeIndex = retentionTimeIndex;
+    }
+
+    /**
+     * Create an index over <code>exp_mass_to_charge</code> and the retention
+     * time intervals of the features.
+     *
+     * @param features the small molecule features.
+     * @return the index.
+     * @see MassIndex#ofFeatures(java.util.List)
+     * @see RetentionTimeIndex#ofFeatures(java.util.List)
+     */
+    public static FeatureIndex ofFeatures(List<SmallMoleculeFeature> features) {
+        return new FeatureIndex(MassIndex.ofFeatures(features),
+            RetentionTimeIndex.ofFeatures(features));
+    }
+
+    /**
+     * Returns the mass to charge index.
+     *
+     * @return the mass to charge index.
+     */
+    public MassIndex getMassIndex() {
+        return massIndex;
+    }
+
+    /**
+     * Returns the retention time index.
+     *
+     * @return the retention time index.
+     */
+    public RetentionTimeIndex getRetentionTimeIndex() {
+        return retentionTimeIndex;
+    }
+
+    /**
+     * Returns the rows with a mass to charge in the closed interval and a
+     * retention time interval overlapping the closed retention time interval.
+     *
+     * @param mzLower the lower mass to charge bound.
+     * @param mzUpper the upper mass to charge bound.
+     * @param rtLower the lower retention time bound.
+     * @param rtUpper the upper retention time bound.
+     * @return the row positions, ordered by mass to charge.
+     */
+    public int[] box(double mzLower, double mzUpper, double rtLower,
+        double rtUpper) {
+        int[] candidates = massIndex.range(mzLower, mzUpper);
+        int count = 0;
+        for (int row : candidates) {
+            if (retentionTimeIndex.overlaps(row, rtLower, rtUpper)) {
+                candidates[count++] = row;
+            }
+        }
+        return count == 0 ? EMPTY : Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Returns the rows within a relative mass to charge tolerance whose
+     * retention time interval contains the given retention time.
+     *
+     * @param mz the mass to charge.
+     * @param ppm the tolerance in parts per million.
+     * @param time the retention time.
+     * @return the row positions, ordered by mass to charge.
+     */
+    public int[] withinPpm(double mz, double ppm, double time) {
+        double da = MassIndex.ppmToDa(mz, ppm);
+        return box(mz - da, mz + da, time, time);
+    }
+}
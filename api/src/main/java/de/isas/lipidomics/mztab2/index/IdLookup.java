@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Maps integer row ids to row positions. Dense ids, e.g. 1..n, are resolved
+ * by direct array access, other ids by binary search over the sorted ids.
+ *
+ * @author nilshoffmann
+ */
+final class IdLookup {
+
+    private final int minId;
+    private final int[] dense;
+    private final int[] sortedIds;
+    private final int[] sortedRows;
+
+    private IdLookup(int minId, int[] dense, int[] sortedIds, int[] sortedRows) {
+        this.minId = minId;
+        this.dense = dense;
+        this.sortedIds = sortedIds;
+        this.sortedRows = sortedRows;
+    }
+
+    /**
+     * Create the lookup for the ids of the given rows. Rows without an id are
+     * skipped, for duplicate ids the first row wins.
+     *
+     * @param <T> the row type.
+     * @param rows the rows.
+     * @param idAccessor the accessor for the row id.
+     * @return the lookup.
+     */
+    static <T> IdLookup of(List<T> rows, Function<? super T, Integer> idAccessor) {
+        int[] ids = new int[rows.size()];
+        int[] positions = new int[rows.size()];
+        int size = 0;
+        int i = 0;
+        for (T row : rows) {
+            Integer id = idAccessor.apply(row);
+            if (id != null) {
+                ids[size] = id;
+                positions[size] = i;
+                size++;
+            }
+            i++;
+        }
+        ids = Arrays.copyOf(ids, size);
+        positions = Arrays.copyOf(positions, size);
+        // ties are sorted by position, so the first row comes first
+        PrimitiveSort.sort(ids, positions);
+        if (size == 0) {
+            return new IdLookup(0, new int[0], null, null);
+        }
+        long span = (long) ids[size - 1] - ids[0] + 1L;
+        if (span <= 2L * size) {
+            int[] dense = new int[(int) span];
+            Arrays.fill(dense, -1);
+            for (int j = size - 1; j >= 0; j--) {
+                dense[ids[j] - ids[0]] = positions[j];
+            }
+            return new IdLookup(ids[0], dense, null, null);
+        }
+        return new IdLookup(0, null, ids, positions);
+    }
+
+    /**
+     * Returns the position of the first row with the given id.
+     *
+     * @param id the id.
+     * @return the row position, or -1 if no row has this id.
+     */
+    int rowOf(int id) {
+        if (dense != null) {
+            long offset = (long) id - minId;
+            return offset < 0 || offset >= dense.length ? -1 : dense[(int) offset];
+        }
+        int low = 0;
+        int high = sortedIds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedIds[mid] < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < sortedIds.length && sortedIds[low] == id ? sortedRows[low]
+            : -1;
+    }
+}
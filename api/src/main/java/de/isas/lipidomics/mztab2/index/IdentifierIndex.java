@@ -0,0 +1,612 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * An immutable inverted index from identifier and name tokens to the small
+ * molecule summary and evidence rows containing them, possibly across many
+ * mzTab files. Indexed are <code>database_identifier</code>,
+ * <code>chemical_name</code>, <code>inchi</code>, <code>smiles</code> and
+ * <code>chemical_formula</code>.</p>
+ *
+ * <p>
+ * Each value is indexed as a whole. Database identifiers are additionally
+ * indexed by their local part after the prefix, e.g.
+ * <code>HMDB0000122</code> for <code>HMDB:HMDB0000122</code>, chemical names
+ * by their whitespace separated words. Terms are kept in a sorted array with
+ * the postings of each term in a primitive array, so exact, case-insensitive
+ * and prefix lookups are binary searches.</p>
+ *
+ * <p>
+ * The index can be written to and read from a binary file, so that files do
+ * not need to be parsed again for lookups.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class IdentifierIndex {
+
+    private static final int MAGIC = 0x4d5a4949; // "MZII"
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * The indexed columns.
+     */
+    public enum Field {
+        DATABASE_IDENTIFIER("database_identifier"),
+        CHEMICAL_NAME("chemical_name"),
+        INCHI("inchi"),
+        SMILES("smiles"),
+        CHEMICAL_FORMULA("chemical_formula");
+
+        private final String columnName;
+
+        private Field(String columnName) {
+            this.columnName = columnName;
+        }
+
+        /**
+         * Returns the column name.
+         *
+         * @return the column name.
+         */
+        public String getColumnName() {
+            return columnName;
+        }
+    }
+
+    /**
+     * The indexed row types.
+     */
+    public enum RowType {
+        SUMMARY("SML"),
+        EVIDENCE("SME");
+
+        private final String prefix;
+
+        private RowType(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * Returns the line prefix of the section.
+         *
+         * @return the line prefix.
+         */
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+
+    /**
+     * A row containing a matched term.
+     */
+    public static final class Hit {
+
+        private final String source;
+        private final RowType rowType;
+        private final Field field;
+        private final int rowId;
+
+        private Hit(String source, RowType rowType, Field field, int rowId) {
+            this.source = source;
+            this.rowType = rowType;
+            this.field = field;
+            this.rowId = rowId;
+        }
+
+        /**
+         * Returns the source the row was indexed from, e.g. a file name.
+         *
+         * @return the source.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the type of the row.
+         *
+         * @return the row type.
+         */
+        public RowType getRowType() {
+            return rowType;
+        }
+
+        /**
+         * Returns the column containing the term.
+         *
+         * @return the field.
+         */
+        public Field getField() {
+            return field;
+        }
+
+        /**
+         * Returns the SML_ID or SME_ID of the row.
+         *
+         * @return the row id.
+         */
+        public int getRowId() {
+            return rowId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Hit)) {
+                return false;
+            }
+            Hit other = (Hit) o;
+            return rowId == other.rowId && rowType == other.rowType && field == other.field && source.
+                equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = source.hashCode();
+            hash = 31 * hash + rowType.hashCode();
+            hash = 31 * hash + field.hashCode();
+            return 31 * hash + rowId;
+        }
+
+        @Override
+        public String toString() {
+            return source + ":" + rowType.getPrefix() + "[" + rowId + "]:" + field.
+                getColumnName();
+        }
+    }
+
+    /*
+     * A posting packs the source ordinal (bits 36-63), the row type (bit 35),
+     * the field (bits 32-34) and the row id (bits 0-31), so that sorted
+     * postings are ordered by source, row type, field and row id.
+     */
+    private static final int MAX_SOURCES = 1 << 27;
+
+    private final String[] sources;
+    private final String[] terms;
+    private final String[] keys;
+    private final int[] offsets;
+    private final long[] postings;
+
+    private IdentifierIndex(String[] sources, String[] terms, int[] offsets,
+        long[] postings) {
+        this.sources = sources;
+        this.terms = terms;
+        this.keys = new String[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            keys[i] = key(terms[i]);
+        }
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    private static String key(String term) {
+        return term.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Create a new builder.
+     *
+     * @return the builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the sources in the order they were added.
+     *
+     * @return the sources.
+     */
+    public List<String> getSources() {
+        return Collections.unmodifiableList(Arrays.asList(sources));
+    }
+
+    /**
+     * Returns the number of distinct terms.
+     *
+     * @return the number of terms.
+     */
+    public int getTermCount() {
+        return terms.length;
+    }
+
+    /**
+     * Returns the rows containing exactly the given term.
+     *
+     * @param term the term.
+     * @return the hits, ordered by source, row type, field and row id.
+     */
+    public List<Hit> exact(String term) {
+        return lookup(term, false, false);
+    }
+
+    /**
+     * Returns the rows containing the given term, ignoring case.
+     *
+     * @param term the term.
+     * @return the hits, ordered by source, row type, field and row id.
+     */
+    public List<Hit> ignoreCase(String term) {
+        return lookup(term, true, false);
+    }
+
+    /**
+     * Returns the rows containing a term starting with the given prefix.
+     *
+     * @param prefix the prefix.
+     * @param ignoreCase whether to ignore case.
+     * @return the hits, ordered by source, row type, field and row id.
+     */
+    public List<Hit> prefix(String prefix, boolean ignoreCase) {
+        return lookup(prefix, ignoreCase, true);
+    }
+
+    /**
+     * Returns the indexed terms starting with the given prefix, ignoring
+     * case, e.g. for completion.
+     *
+     * @param prefix the prefix.
+     * @param limit the maximum number of terms.
+     * @return the terms, in index order.
+     */
+    public List<String> terms(String prefix, int limit) {
+        String key = key(prefix);
+        List<String> result = new ArrayList<>();
+        for (int i = lowerBound(key); i < terms.length && result.size() < limit && keys[i].
+            startsWith(key); i++) {
+            result.add(terms[i]);
+        }
+        return result;
+    }
+
+    private List<Hit> lookup(String term, boolean ignoreCase, boolean prefix) {
+        String key = key(term);
+        int from = lowerBound(key);
+        int count = 0;
+        int[] matched = new int[4];
+        for (int i = from; i < terms.length; i++) {
+            boolean inRange = prefix ? keys[i].startsWith(key) : keys[i].
+                equals(key);
+            if (!inRange) {
+                break;
+            }
+            boolean matches = ignoreCase || (prefix ? terms[i].startsWith(term) : terms[i].
+                equals(term));
+            if (matches) {
+                if (count == matched.length) {
+                    matched = Arrays.copyOf(matched, count * 2);
+                }
+                matched[count++] = i;
+            }
+        }
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        long[] hits;
+        if (count == 1) {
+            hits = Arrays.copyOfRange(postings, offsets[matched[0]],
+                offsets[matched[0] + 1]);
+        } else {
+            int size = 0;
+            for (int j = 0; j < count; j++) {
+                size += offsets[matched[j] + 1] - offsets[matched[j]];
+            }
+            hits = new long[size];
+            int position = 0;
+            for (int j = 0; j < count; j++) {
+                int length = offsets[matched[j] + 1] - offsets[matched[j]];
+                System.arraycopy(postings, offsets[matched[j]], hits, position,
+                    length);
+                position += length;
+            }
+            hits = sortUnique(hits, hits.length);
+        }
+        List<Hit> result = new ArrayList<>(hits.length);
+        for (long posting : hits) {
+            result.add(new Hit(sources[(int) (posting >>> 36)],
+                RowType.values()[(int) (posting >>> 35) & 1],
+                Field.values()[(int) (posting >>> 32) & 7], (int) posting));
+        }
+        return result;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long[] sortUnique(long[] values, int size) {
+        Arrays.sort(values, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || values[unique - 1] != values[i]) {
+                values[unique++] = values[i];
+            }
+        }
+        return unique == values.length ? values : Arrays.copyOf(values, unique);
+    }
+
+    /**
+     * Reads an index file.
+     *
+     * @param indexFile the index file.
+     * @return the index.
+     * @throws IOException if the file can not be read or is not an identifier
+     * index file.
+     */
+    public static IdentifierIndex read(Path indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(
+                    "Not an identifier index file: " + indexFile);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(
+                    "Unsupported identifier index version " + version + " in " + indexFile);
+            }
+            String[] sources = new String[readCount(in)];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = readString(in);
+            }
+            String[] terms = new String[readCount(in)];
+            int[] offsets = new int[terms.length + 1];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = readString(in);
+                offsets[i + 1] = offsets[i] + readCount(in);
+            }
+            long[] postings = new long[offsets[terms.length]];
+            for (int i = 0; i < postings.length; i++) {
+                postings[i] = in.readLong();
+            }
+            return new IdentifierIndex(sources, terms, offsets, postings);
+        }
+    }
+
+    /**
+     * Writes this index to the given file.
+     *
+     * @param indexFile the index file.
+     * @throws IOException if the file can not be written.
+     */
+    public void write(Path indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(sources.length);
+            for (String source : sources) {
+                writeString(out, source);
+            }
+            out.writeInt(terms.length);
+            for (int i = 0; i < terms.length; i++) {
+                writeString(out, terms[i]);
+                out.writeInt(offsets[i + 1] - offsets[i]);
+            }
+            for (long posting : postings) {
+                out.writeLong(posting);
+            }
+        }
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Collects the terms of one or more mzTab files. Instances are not
+     * thread-safe.
+     */
+    public static final class Builder {
+
+        private final List<String> sources = new ArrayList<>();
+        private final Map<String, Postings> postingsByTerm = new HashMap<>();
+
+        private Builder() {
+
+        }
+
+        /**
+         * Add the summary and evidence rows of the mzTab object.
+         *
+         * @param source the source name, e.g. the file name.
+         * @param mzTab the mzTab object.
+         * @return this builder.
+         */
+        public Builder add(String source, MzTab mzTab) {
+            return add(source, mzTab.getSmallMoleculeSummary(), mzTab.
+                getSmallMoleculeEvidence());
+        }
+
+        /**
+         * Add the summary and evidence rows. Rows without id are skipped.
+         *
+         * @param source the source name, e.g. the file name.
+         * @param summaries the small molecule summaries, may be null.
+         * @param evidences the small molecule evidences, may be null.
+         * @return this builder.
+         * @throws IllegalStateException if too many sources were added.
+         */
+        public Builder add(String source, List<SmallMoleculeSummary> summaries,
+            List<SmallMoleculeEvidence> evidences) {
+            if (sources.size() == MAX_SOURCES) {
+                throw new IllegalStateException(
+                    "Maximum number of sources reached: " + MAX_SOURCES);
+            }
+            long sourceBits = ((long) sources.size()) << 36;
+            sources.add(source);
+            if (summaries != null) {
+                for (SmallMoleculeSummary sml : summaries) {
+                    if (sml.getSmlId() == null) {
+                        continue;
+                    }
+                    long row = sourceBits | (sml.getSmlId() & 0xffffffffL);
+                    addAll(row, Field.DATABASE_IDENTIFIER, sml.
+                        getDatabaseIdentifier());
+                    addAll(row, Field.CHEMICAL_NAME, sml.getChemicalName());
+                    addAll(row, Field.INCHI, sml.getInchi());
+                    addAll(row, Field.SMILES, sml.getSmiles());
+                    addAll(row, Field.CHEMICAL_FORMULA, sml.
+                        getChemicalFormula());
+                }
+            }
+            if (evidences != null) {
+                for (SmallMoleculeEvidence sme : evidences) {
+                    if (sme.getSmeId() == null) {
+                        continue;
+                    }
+                    long row = sourceBits | (1L << 35) | (sme.getSmeId() & 0xffffffffL);
+                    add(row, Field.DATABASE_IDENTIFIER, sme.
+                        getDatabaseIdentifier());
+                    add(row, Field.CHEMICAL_NAME, sme.getChemicalName());
+                    add(row, Field.INCHI, sme.getInchi());
+                    add(row, Field.SMILES, sme.getSmiles());
+                    add(row, Field.CHEMICAL_FORMULA, sme.getChemicalFormula());
+                }
+            }
+            return this;
+        }
+
+        private void addAll(long row, Field field, List<String> values) {
+            if (values != null) {
+                for (String value : values) {
+                    add(row, field, value);
+                }
+            }
+        }
+
+        private void add(long row, Field field, String value) {
+            if (value == null) {
+                return;
+            }
+            String term = value.trim();
+            if (term.isEmpty() || "null".equals(term)) {
+                return;
+            }
+            long posting = row | (((long) field.ordinal()) << 32);
+            Set<String> tokens = new LinkedHashSet<>();
+            tokens.add(term);
+            if (field == Field.DATABASE_IDENTIFIER) {
+                int colon = term.indexOf(':');
+                if (colon > 0 && colon < term.length() - 1) {
+                    tokens.add(term.substring(colon + 1));
+                }
+            } else if (field == Field.CHEMICAL_NAME) {
+                for (String word : term.split("\\s+")) {
+                    if (!word.isEmpty()) {
+                        tokens.add(word);
+                    }
+                }
+            }
+            for (String token : tokens) {
+                postingsByTerm.computeIfAbsent(token, (t) -> new Postings()).
+                    add(posting);
+            }
+        }
+
+        /**
+         * Create the index.
+         *
+         * @return the index.
+         */
+        public IdentifierIndex build() {
+            String[] terms = postingsByTerm.keySet().
+                toArray(new String[0]);
+            Arrays.sort(terms, Comparator.comparing(IdentifierIndex::key).
+                thenComparing(Comparator.naturalOrder()));
+            int[] offsets = new int[terms.length + 1];
+            long[][] sorted = new long[terms.length][];
+            for (int i = 0; i < terms.length; i++) {
+                Postings termPostings = postingsByTerm.get(terms[i]);
+                sorted[i] = sortUnique(termPostings.values, termPostings.size);
+                offsets[i + 1] = offsets[i] + sorted[i].length;
+            }
+            long[] postings = new long[offsets[terms.length]];
+            for (int i = 0; i < terms.length; i++) {
+                System.arraycopy(sorted[i], 0, postings, offsets[i],
+                    sorted[i].length);
+            }
+            return new IdentifierIndex(sources.toArray(new String[0]), terms,
+                offsets, postings);
+        }
+    }
+
+    private static final class Postings {
+
+        private long[] values = new long[2];
+        private int size;
+
+        void add(long posting) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = posting;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>
+ * An immutable join structure between the small molecule summary, feature and
+ * evidence sections, built once from <code>smf_id_refs</code> and
+ * <code>sme_id_refs</code>. Forward and reverse edges are stored as primitive
+ * adjacency arrays in compressed sparse row layout.</p>
+ *
+ * <p>
+ * Rows are referred to by their position in the section lists the graph was
+ * built from. Traversal methods return the positions of the related rows in
+ * ascending order and without duplicates. References to ids that do not exist
+ * are ignored, they are reported by the id reference validators.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class JoinGraph {
+
+    private final IdLookup summaryIds;
+    private final IdLookup featureIds;
+    private final IdLookup evidenceIds;
+    private final CsrAdjacency summaryToFeature;
+    private final CsrAdjacency featureToEvidence;
+    private final CsrAdjacency featureToSummary;
+    private final CsrAdjacency evidenceToFeature;
+
+    private JoinGraph(List<SmallMoleculeSummary> summaries,
+        List<SmallMoleculeFeature> features,
+        List<SmallMoleculeEvidence> evidences) {
+        this.summaryIds = IdLookup.of(summaries,
+            SmallMoleculeSummary::getSmlId);
+        this.featureIds = IdLookup.of(features, SmallMoleculeFeature::getSmfId);
+        this.evidenceIds = IdLookup.of(evidences,
+            SmallMoleculeEvidence::getSmeId);
+        this.summaryToFeature = CsrAdjacency.of(summaries,
+            SmallMoleculeSummary::getSmfIdRefs, featureIds);
+        this.featureToEvidence = CsrAdjacency.of(features,
+            SmallMoleculeFeature::getSmeIdRefs, evidenceIds);
+        this.featureToSummary = summaryToFeature.transpose(features.size());
+        this.evidenceToFeature = featureToEvidence.transpose(evidences.size());
+    }
+
+    /**
+     * Create the join graph for the small molecule sections of the mzTab
+     * object.
+     *
+     * @param mzTab the mzTab object.
+     * @return the join graph.
+     */
+    public static JoinGraph of(MzTab mzTab) {
+        return of(mzTab.getSmallMoleculeSummary(), mzTab.
+            getSmallMoleculeFeature(), mzTab.getSmallMoleculeEvidence());
+    }
+
+    /**
+     * Create the join graph for the given section rows. Null lists are
+     * treated as empty.
+     *
+     * @param summaries the small molecule summaries.
+     * @param features the small molecule features.
+     * @param evidences the small molecule evidences.
+     * @return the join graph.
+     */
+    public static JoinGraph of(List<SmallMoleculeSummary> summaries,
+        List<SmallMoleculeFeature> features,
+        List<SmallMoleculeEvidence> evidences) {
+        return new JoinGraph(
+            Optional.ofNullable(summaries).
+                orElse(Collections.emptyList()),
+            Optional.ofNullable(features).
+                orElse(Collections.emptyList()),
+            Optional.ofNullable(evidences).
+                orElse(Collections.emptyList()));
+    }
+
+    /**
+     * Returns the number of summary rows.
+     *
+     * @return the number of summary rows.
+     */
+    public int getSummaryCount() {
+        return summaryToFeature.sourceCount();
+    }
+
+    /**
+     * Returns the number of feature rows.
+     *
+     * @return the number of feature rows.
+     */
+    public int getFeatureCount() {
+        return featureToEvidence.sourceCount();
+    }
+
+    /**
+     * Returns the number of evidence rows.
+     *
+     * @return the number of evidence rows.
+     */
+    public int getEvidenceCount() {
+        return evidenceToFeature.sourceCount();
+    }
+
+    /**
+     * Returns the position of the summary row with the given SML_ID.
+     *
+     * @param smlId the SML_ID.
+     * @return the row position, or -1 if there is no such row.
+     */
+    public int getSummaryRow(int smlId) {
+        return summaryIds.rowOf(smlId);
+    }
+
+    /**
+     * Returns the position of the feature row with the given SMF_ID.
+     *
+     * @param smfId the SMF_ID.
+     * @return the row position, or -1 if there is no such row.
+     */
+    public int getFeatureRow(int smfId) {
+        return featureIds.rowOf(smfId);
+    }
+
+    /**
+     * Returns the position of the evidence row with the given SME_ID.
+     *
+     * @param smeId the SME_ID.
+     * @return the row position, or -1 if there is no such row.
+     */
+    public int getEvidenceRow(int smeId) {
+        return evidenceIds.rowOf(smeId);
+    }
+
+    /**
+     * Returns the features referenced by the summary.
+     *
+     * @param summaryRow the summary row position.
+     * @return the feature row positions.
+     */
+    public int[] getFeaturesOfSummary(int summaryRow) {
+        return summaryToFeature.get(summaryRow);
+    }
+
+    /**
+     * Returns the evidences referenced by the feature.
+     *
+     * @param featureRow the feature row position.
+     * @return the evidence row positions.
+     */
+    public int[] getEvidencesOfFeature(int featureRow) {
+        return featureToEvidence.get(featureRow);
+    }
+
+    /**
+     * Returns the evidences referenced by any feature of the summary.
+     *
+     * @param summaryRow the summary row position.
+     * @return the evidence row positions.
+     */
+    public int[] getEvidencesOfSummary(int summaryRow) {
+        return summaryToFeature.compose(summaryRow, featureToEvidence);
+    }
+
+    /**
+     * Returns the summaries referencing the feature.
+     *
+     * @param featureRow the feature row position.
+     * @return the summary row positions.
+     */
+    public int[] getSummariesOfFeature(int featureRow) {
+        return featureToSummary.get(featureRow);
+    }
+
+    /**
+     * Returns the features referencing the evidence.
+     *
+     * @param evidenceRow the evidence row position.
+     * @return the feature row positions.
+     */
+    public int[] getFeaturesOfEvidence(int evidenceRow) {
+        return evidenceToFeature.get(evidenceRow);
+    }
+
+    /**
+     * Returns the summaries referencing any feature that references the
+     * evidence.
+     *
+     * @param evidenceRow the evidence row position.
+     * @return the summary row positions.
+     */
+    public int[] getSummariesOfEvidence(int evidenceRow) {
+        return evidenceToFeature.compose(evidenceRow, featureToSummary);
+    }
+
+    /**
+     * Returns the number of resolved summary to feature references.
+     *
+     * @return the number of edges.
+     */
+    public int getSummaryFeatureEdgeCount() {
+        return summaryToFeature.edgeCount();
+    }
+
+    /**
+     * Returns the number of resolved feature to evidence references.
+     *
+     * @return the number of edges.
+     */
+    public int getFeatureEvidenceEdgeCount() {
+        return featureToEvidence.edgeCount();
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * An immutable index over mass to charge values, stored as a sorted primitive
+ * array with the row position of each value. Range queries with an absolute
+ * (Da) or relative (ppm) tolerance take O(log n + k) for k hits. Rows without
+ * a value are not indexed.</p>
+ *
+ * <p>
+ * Queries return the positions of the matching rows in the list the index was
+ * built from, ordered by ascending mass to charge.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class MassIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final double[] masses;
+    private final int[] rows;
+
+    private MassIndex(double[] masses, int[] rows) {
+        this.masses = masses;
+        this.rows = rows;
+    }
+
+    /**
+     * Create an index over the given values. NaN values are not indexed.
+     *
+     * @param values the values, indexed by row position.
+     * @return the index.
+     */
+    public static MassIndex of(double[] values) {
+        double[] masses = new double[values.length];
+        int[] rows = new int[values.length];
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (!Double.isNaN(values[i])) {
+                masses[size] = values[i];
+                rows[size] = i;
+                size++;
+            }
+        }
+        return create(masses, rows, size);
+    }
+
+    /**
+     * Create an index over the values returned by the accessor for each row.
+     * Null and NaN values are not indexed.
+     *
+     * @param <T> the row type.
+     * @param rows the rows.
+     * @param accessor the accessor for the mass to charge value.
+     * @return the index.
+     */
+    public static <T> MassIndex of(List<T> rows,
+        Function<? super T, Double> accessor) {
+        double[] masses = new double[rows.size()];
+        int[] positions = new int[rows.size()];
+        int size = 0;
+        int i = 0;
+        for (T row : rows) {
+            Double value = accessor.apply(row);
+            if (value != null && !value.isNaN()) {
+                masses[size] = value;
+                positions[size] = i;
+                size++;
+            }
+            i++;
+        }
+        return create(masses, positions, size);
+    }
+
+    /**
+     * Create an index over <code>exp_mass_to_charge</code> of the features.
+     *
+     * @param features the small molecule features.
+     * @return the index.
+     */
+    public static MassIndex ofFeatures(List<SmallMoleculeFeature> features) {
+        return of(features, SmallMoleculeFeature::getExpMassToCharge);
+    }
+
+    /**
+     * Create an index over <code>exp_mass_to_charge</code> of the evidences.
+     *
+     * @param evidences the small molecule evidences.
+     * @return the index.
+     */
+    public static MassIndex ofEvidenceExperimental(
+        List<SmallMoleculeEvidence> evidences) {
+        return of(evidences, SmallMoleculeEvidence::getExpMassToCharge);
+    }
+
+    /**
+     * Create an index over <code>theoretical_mass_to_charge</code> of the
+     * evidences.
+     *
+     * @param evidences the small molecule evidences.
+     * @return the index.
+     */
+    public static MassIndex ofEvidenceTheoretical(
+        List<SmallMoleculeEvidence> evidences) {
+        return of(evidences, SmallMoleculeEvidence::getTheoreticalMassToCharge);
+    }
+
+    private static MassIndex create(double[] masses, int[] rows, int size) {
+        double[] sortedMasses = Arrays.copyOf(masses, size);
+        int[] sortedRows = Arrays.copyOf(rows, size);
+        PrimitiveSort.sort(sortedMasses, sortedRows);
+        return new MassIndex(sortedMasses, sortedRows);
+    }
+
+    /**
+     * Returns the absolute tolerance for a relative tolerance at the given
+     * mass to charge.
+     *
+     * @param mz the mass to charge.
+     * @param ppm the tolerance in parts per million.
+     * @return the tolerance in Da.
+     */
+    public static double ppmToDa(double mz, double ppm) {
+        return Math.abs(mz) * ppm * 1.0e-6;
+    }
+
+    /**
+     * Returns the number of indexed rows.
+     *
+     * @return the number of indexed rows.
+     */
+    public int size() {
+        return masses.length;
+    }
+
+    /**
+     * Returns the mass to charge at the given position in ascending order.
+     *
+     * @param position the position.
+     * @return the mass to charge.
+     */
+    public double getMass(int position) {
+        return masses[position];
+    }
+
+    /**
+     * Returns the row position at the given position in ascending order.
+     *
+     * @param position the position.
+     * @return the row position.
+     */
+    public int getRow(int position) {
+        return rows[position];
+    }
+
+    /**
+     * Returns the rows with a mass to charge in the closed interval.
+     *
+     * @param lower the lower bound.
+     * @param upper the upper bound.
+     * @return the row positions, ordered by mass to charge.
+     */
+    public int[] range(double lower, double upper) {
+        return range(lower, upper, 0);
+    }
+
+    /**
+     * Returns the number of rows with a mass to charge in the closed interval.
+     *
+     * @param lower the lower bound.
+     * @param upper the upper bound.
+     * @return the number of rows.
+     */
+    public int count(double lower, double upper) {
+        if (upper < lower) {
+            return 0;
+        }
+        int from = PrimitiveSort.lowerBound(masses, 0, lower);
+        return PrimitiveSort.upperBound(masses, from, upper) - from;
+    }
+
+    /**
+     * Returns the rows within an absolute tolerance of the mass to charge.
+     *
+     * @param mz the mass to charge.
+     * @param toleranceDa the tolerance in Da.
+     * @return the row positions, ordered by mass to charge.
+     */
+    public int[] withinDa(double mz, double toleranceDa) {
+        return range(mz - toleranceDa, mz + toleranceDa);
+    }
+
+    /**
+     * Returns the rows within a relative tolerance of the mass to charge.
+     *
+     * @param mz the mass to charge.
+     * @param ppm the tolerance in parts per million.
+     * @return the row positions, ordered by mass to charge.
+     */
+    public int[] withinPpm(double mz, double ppm) {
+        return withinDa(mz, ppmToDa(mz, ppm));
+    }
+
+    /**
+     * Returns the rows within an absolute tolerance of each of the masses.
+     * The queries are processed in ascending order, so that each search starts
+     * at the lower bound of the previous one.
+     *
+     * @param mzs the masses to charge.
+     * @param toleranceDa the tolerance in Da.
+     * @return the row positions for each query, in query order.
+     */
+    public int[][] withinDa(double[] mzs, double toleranceDa) {
+        return batch(mzs, toleranceDa, false);
+    }
+
+    /**
+     * Returns the rows within a relative tolerance of each of the masses.
+     * The queries are processed in ascending order, so that each search starts
+     * at the lower bound of the previous one.
+     *
+     * @param mzs the masses to charge.
+     * @param ppm the tolerance in parts per million.
+     * @return the row positions for each query, in query order.
+     */
+    public int[][] withinPpm(double[] mzs, double ppm) {
+        return batch(mzs, ppm, true);
+    }
+
+    private int[][] batch(double[] mzs, double tolerance, boolean ppm) {
+        double[] sortedMzs = mzs.clone();
+        int[] order = new int[mzs.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        PrimitiveSort.sort(sortedMzs, order);
+        int[][] result = new int[mzs.length][];
+        int from = 0;
+        for (int i = 0; i < sortedMzs.length; i++) {
+            double mz = sortedMzs[i];
+            double da = ppm ? ppmToDa(mz, tolerance) : tolerance;
+            // for ppm, lower bounds still increase with the query mass
+            from = PrimitiveSort.lowerBound(masses, from, mz - da);
+            result[order[i]] = range(mz - da, mz + da, from);
+        }
+        return result;
+    }
+
+    private int[] range(double lower, double upper, int from) {
+        if (upper < lower) {
+            return EMPTY;
+        }
+        int start = PrimitiveSort.lowerBound(masses, from, lower);
+        int end = PrimitiveSort.upperBound(masses, start, upper);
+        if (start == end) {
+            return EMPTY;
+        }
+        return Arrays.copyOfRange(rows, start, end);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import java.util.Arrays;
+
+/**
+ * Sorts primitive keys together with an int payload array.
+ *
+ * @author nilshoffmann
+ */
+final class PrimitiveSort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 24;
+
+    private PrimitiveSort() {
+
+    }
+
+    /**
+     * Sorts the keys ascending and permutes the values accordingly. Equal keys
+     * are ordered by ascending value.
+     *
+     * @param keys the keys, NaN keys are sorted last.
+     * @param values the values, of the same length as the keys.
+     */
+    static void sort(double[] keys, int[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException(
+                "Keys and values must have the same length!");
+        }
+        sort(keys, values, 0, keys.length - 1);
+    }
+
+    /**
+     * Sorts the keys ascending and permutes the values accordingly. Equal keys
+     * are ordered by ascending value.
+     *
+     * @param keys the keys.
+     * @param values the values, non-negative and of the same length as the
+     * keys.
+     */
+    static void sort(int[] keys, int[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException(
+                "Keys and values must have the same length!");
+        }
+        // the signed key in the upper and the non-negative value in the lower
+        // 32 bits give the same order as comparing key first, then value
+        long[] packed = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] < 0) {
+                throw new IllegalArgumentException(
+                    "Values must not be negative, was " + values[i]);
+            }
+            packed[i] = ((long) keys[i] << 32) | values[i];
+        }
+        Arrays.sort(packed);
+        for (int i = 0; i < packed.length; i++) {
+            keys[i] = (int) (packed[i] >> 32);
+            values[i] = (int) packed[i];
+        }
+    }
+
+    private static void sort(double[] keys, int[] values, int low, int high) {
+        while (high - low > INSERTION_SORT_THRESHOLD) {
+            int mid = (low + high) >>> 1;
+            // median of three as pivot
+            if (less(keys, values, mid, low)) {
+                swap(keys, values, mid, low);
+            }
+            if (less(keys, values, high, low)) {
+                swap(keys, values, high, low);
+            }
+            if (less(keys, values, high, mid)) {
+                swap(keys, values, high, mid);
+            }
+            double pivotKey = keys[mid];
+            int pivotValue = values[mid];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(keys[i], values[i], pivotKey, pivotValue) < 0) {
+                    i++;
+                }
+                while (compare(keys[j], values[j], pivotKey, pivotValue) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // recurse into the smaller part to bound the stack depth
+            if (j - low < high - i) {
+                sort(keys, values, low, j);
+                low = i;
+            } else {
+                sort(keys, values, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            double key = keys[i];
+            int value = values[i];
+            int j = i - 1;
+            while (j >= low && compare(keys[j], values[j], key, value) > 0) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    private static int compare(double key1, int value1, double key2, int value2) {
+        int c = Double.compare(key1, key2);
+        return c != 0 ? c : Integer.compare(value1, value2);
+    }
+
+    private static boolean less(double[] keys, int[] values, int a, int b) {
+        return compare(keys[a], values[a], keys[b], values[b]) < 0;
+    }
+
+    private static void swap(double[] keys, int[] values, int a, int b) {
+        double key = keys[a];
+        keys[a] = keys[b];
+        keys[b] = key;
+        int value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+
+    /**
+     * Returns the first position in the sorted keys whose key is not less
+     * than the given key, searching from the given position.
+     *
+     * @param keys the sorted keys.
+     * @param from the first position to consider.
+     * @param key the key.
+     * @return the position, or keys.length if all keys are less.
+     */
+    static int lowerBound(double[] keys, int from, double key) {
+        int low = from;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the first position in the sorted keys whose key is greater than
+     * the given key, searching from the given position.
+     *
+     * @param keys the sorted keys.
+     * @param from the first position to consider.
+     * @param key the key.
+     * @return the position, or keys.length if no key is greater.
+     */
+    static int upperBound(double[] keys, int from, double key) {
+        int low = from;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
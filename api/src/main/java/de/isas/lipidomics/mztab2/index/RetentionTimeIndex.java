@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * An immutable index over retention time intervals, stored as an implicit
+ * interval tree: the intervals are sorted by their start in primitive arrays,
+ * and each inner node of the implied balanced binary tree keeps the maximum
+ * end of its subtree. Stabbing and overlap queries take O(log n + k) for k
+ * hits. All intervals are closed.</p>
+ *
+ * <p>
+ * Queries return the positions of the matching rows in the list the index was
+ * built from, ordered by ascending interval start.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class RetentionTimeIndex {
+
+    private static final int[] EMPTY = new int[0];
+    /**
+     * Subtrees up to this level are scanned linearly.
+     */
+    private static final int SCAN_LEVEL = 3;
+
+    private final double[] starts;
+    private final double[] ends;
+    private final double[] maxEnds;
+    private final int[] rows;
+    private final int maxLevel;
+    private final double[] rowStarts;
+    private final double[] rowEnds;
+
+    private RetentionTimeIndex(double[] starts, double[] ends, int[] rows,
+        double[] rowStarts, double[] rowEnds) {
+        this.starts = starts;
+        this.ends = ends;
+        this.rows = rows;
+        this.rowStarts = rowStarts;
+        this.rowEnds = rowEnds;
+        this.maxEnds = new double[starts.length];
+        this.maxLevel = buildMaxEnds();
+    }
+
+    /**
+     * Create an index over the given intervals. Intervals with a NaN bound are
+     * not indexed, reversed bounds are swapped.
+     *
+     * @param startValues the interval starts, indexed by row position.
+     * @param endValues the interval ends, indexed by row position.
+     * @return the index.
+     */
+    public static RetentionTimeIndex of(double[] startValues, double[] endValues) {
+        if (startValues.length != endValues.length) {
+            throw new IllegalArgumentException(
+                "Starts and ends must have the same length!");
+        }
+        double[] rowStarts = new double[startValues.length];
+        double[] rowEnds = new double[endValues.length];
+        int size = 0;
+        for (int i = 0; i < startValues.length; i++) {
+            double start = startValues[i];
+            double end = endValues[i];
+            if (Double.isNaN(start) || Double.isNaN(end)) {
+                rowStarts[i] = Double.NaN;
+                rowEnds[i] = Double.NaN;
+            } else {
+                rowStarts[i] = Math.min(start, end);
+                rowEnds[i] = Math.max(start, end);
+                size++;
+            }
+        }
+        double[] starts = new double[size];
+        int[] order = new int[size];
+        int j = 0;
+        for (int i = 0; i < rowStarts.length; i++) {
+            if (!Double.isNaN(rowStarts[i])) {
+                starts[j] = rowStarts[i];
+                order[j] = i;
+                j++;
+            }
+        }
+        PrimitiveSort.sort(starts, order);
+        double[] ends = new double[size];
+        for (int i = 0; i < size; i++) {
+            ends[i] = rowEnds[order[i]];
+        }
+        return new RetentionTimeIndex(starts, ends, order, rowStarts, rowEnds);
+    }
+
+    /**
+     * Create an index over the retention time intervals of the features. The
+     * interval is given by <code>retention_time_in_seconds_start</code> and
+     * <code>retention_time_in_seconds_end</code>, a missing bound is replaced
+     * by <code>retention_time_in_seconds</code>. Features without any
+     * retention time are not indexed.
+     *
+     * @param features the small molecule features.
+     * @return the index.
+     */
+    public static RetentionTimeIndex ofFeatures(
+        List<SmallMoleculeFeature> features) {
+        double[] startValues = new double[features.size()];
+        double[] endValues = new double[features.size()];
+        int i = 0;
+        for (SmallMoleculeFeature feature : features) {
+            Double apex = feature.getRetentionTimeInSeconds();
+            startValues[i] = valueOf(feature.getRetentionTimeInSecondsStart(),
+                apex);
+            endValues[i] = valueOf(feature.getRetentionTimeInSecondsEnd(), apex);
+            i++;
+        }
+        return of(startValues, endValues);
+    }
+
+    private static double valueOf(Double value, Double fallback) {
+        if (value != null) {
+            return value;
+        }
+        return fallback == null ? Double.NaN : fallback;
+    }
+
+    /*
+     * Leaves are at even positions, a node at level k has k trailing one bits
+     * and its children at +/- 2^(k-1). Nodes may lie beyond the end of the
+     * arrays for sizes other than 2^m - 1, their maximum end is then the one
+     * of the last real node in their subtree.
+     */
+    private int buildMaxEnds() {
+        int n = starts.length;
+        if (n == 0) {
+            return -1;
+        }
+        int lastPosition = 0;
+        double last = 0;
+        for (int i = 0; i < n; i += 2) {
+            lastPosition = i;
+            last = maxEnds[i] = ends[i];
+        }
+        int k = 1;
+        for (; 1L << k <= n; k++) {
+            int x = 1 << (k - 1);
+            int step = x << 2;
+            for (int i = (x << 1) - 1; i < n; i += step) {
+                double left = maxEnds[i - x];
+                double right = i + x < n ? maxEnds[i + x] : last;
+                maxEnds[i] = Math.max(ends[i], Math.max(left, right));
+            }
+            lastPosition = ((lastPosition >> k) & 1) != 0 ? lastPosition - x
+                : lastPosition + x;
+            if (lastPosition < n && maxEnds[lastPosition] > last) {
+                last = maxEnds[lastPosition];
+            }
+        }
+        return k - 1;
+    }
+
+    /**
+     * Returns the number of indexed rows.
+     *
+     * @return the number of indexed rows.
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Returns true, if the row at the given position has an indexed interval
+     * that overlaps the closed interval.
+     *
+     * @param row the row position.
+     * @param lower the lower bound.
+     * @param upper the upper bound.
+     * @return true if the intervals overlap.
+     */
+    public boolean overlaps(int row, double lower, double upper) {
+        if (row < 0 || row >= rowStarts.length || Double.isNaN(rowStarts[row])) {
+            return false;
+        }
+        return rowStarts[row] <= upper && lower <= rowEnds[row];
+    }
+
+    /**
+     * Returns the rows whose interval contains the given retention time.
+     *
+     * @param time the retention time.
+     * @return the row positions, ordered by interval start.
+     */
+    public int[] stab(double time) {
+        return overlap(time, time);
+    }
+
+    /**
+     * Returns the rows whose interval overlaps the closed interval.
+     *
+     * @param lower the lower bound.
+     * @param upper the upper bound.
+     * @return the row positions, ordered by interval start.
+     */
+    public int[] overlap(double lower, double upper) {
+        int n = starts.length;
+        if (n == 0 || upper < lower || Double.isNaN(lower) || Double.isNaN(
+            upper)) {
+            return EMPTY;
+        }
+        int[] hits = new int[Math.min(n, 16)];
+        int count = 0;
+        // (level, position, visited) triples
+        int[] stack = new int[3 * (2 * maxLevel + 2)];
+        int top = 0;
+        stack[top++] = maxLevel;
+        stack[top++] = (1 << maxLevel) - 1;
+        stack[top++] = 0;
+        while (top > 0) {
+            int visited = stack[--top];
+            int x = stack[--top];
+            int k = stack[--top];
+            if (k <= SCAN_LEVEL) {
+                int first = x >> k << k;
+                int last = Math.min(first + (1 << (k + 1)) - 1, n);
+                for (int i = first; i < last && starts[i] <= upper; i++) {
+                    if (lower <= ends[i]) {
+                        hits = append(hits, count++, rows[i]);
+                    }
+                }
+            } else if (visited == 0) {
+                int left = x - (1 << (k - 1));
+                stack[top++] = k;
+                stack[top++] = x;
+                stack[top++] = 1;
+                if (left >= n || maxEnds[left] >= lower) {
+                    stack[top++] = k - 1;
+                    stack[top++] = left;
+                    stack[top++] = 0;
+                }
+            } else if (x < n && starts[x] <= upper) {
+                if (lower <= ends[x]) {
+                    hits = append(hits, count++, rows[x]);
+                }
+                stack[top++] = k - 1;
+                stack[top++] = x + (1 << (k - 1));
+                stack[top++] = 0;
+            }
+        }
+        return count == 0 ? EMPTY : Arrays.copyOf(hits, count);
+    }
+
+    private static int[] append(int[] hits, int position, int row) {
+        int[] target = hits;
+        if (position == target.length) {
+            target = Arrays.copyOf(target, target.length * 2);
+        }
+        target[position] = row;
+        return target;
+    }
+}
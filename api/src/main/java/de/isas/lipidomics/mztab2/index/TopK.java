@@ -0,0 +1,382 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collector;
+
+/**
+ * <p>
+ * Top-k selection over row scores, such as the evidence <code>rank</code>,
+ * the <code>id_confidence_measure</code> values or the summary
+ * <code>best_id_confidence_value</code>.</p>
+ *
+ * <p>
+ * Selection uses a heap bounded to k entries, so selecting the k best of n
+ * rows takes O(n log k) time and O(k) space instead of sorting all rows. Rows
+ * with a NaN score, i.e. a null value, are never selected. Ties are broken by
+ * row position, the earlier row wins.</p>
+ *
+ * <p>
+ * Scores are passed in columnar form as primitive arrays indexed by row
+ * position, see {@link #evidenceRanks(java.util.List)},
+ * {@link #evidenceConfidence(java.util.List, int)} and
+ * {@link #summaryBestConfidence(java.util.List)}. Per feature and per summary
+ * selection resolves the related evidences through a {@link JoinGraph}. For
+ * streaming passes, {@link #collector(java.util.function.ToDoubleFunction, int, de.isas.lipidomics.mztab2.index.TopK.Order)}
+ * selects the best rows without materializing the input.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class TopK {
+
+    /**
+     * Which scores are better.
+     */
+    public enum Order {
+        /**
+         * Lower scores are better, e.g. for <code>rank</code>.
+         */
+        ASCENDING,
+        /**
+         * Higher scores are better, e.g. for probabilities.
+         */
+        DESCENDING;
+    }
+
+    private TopK() {
+
+    }
+
+    /**
+     * Select the positions of the k best scores.
+     *
+     * @param scores the scores by row position, NaN for missing values.
+     * @param k the maximum number of rows to select.
+     * @param order which scores are better.
+     * @return the row positions, best first.
+     */
+    public static int[] select(double[] scores, int k, Order order) {
+        BoundedHeap heap = new BoundedHeap(k, order, false);
+        for (int row = 0; row < scores.length; row++) {
+            heap.offer(scores[row], row, null);
+        }
+        return heap.rows();
+    }
+
+    /**
+     * Select the positions of the k best scores among the given rows.
+     *
+     * @param scores the scores by row position, NaN for missing values.
+     * @param rows the row positions to select from.
+     * @param k the maximum number of rows to select.
+     * @param order which scores are better.
+     * @return the row positions, best first.
+     */
+    public static int[] select(double[] scores, int[] rows, int k, Order order) {
+        BoundedHeap heap = new BoundedHeap(k, order, false);
+        for (int row : rows) {
+            heap.offer(scores[row], row, null);
+        }
+        return heap.rows();
+    }
+
+    /**
+     * Select the k best evidences of every feature, e.g. the best three
+     * evidences by rank.
+     *
+     * @param graph the join graph.
+     * @param evidenceScores the scores by evidence row position.
+     * @param k the maximum number of evidences per feature.
+     * @param order which scores are better.
+     * @return the evidence row positions, best first, by feature row position.
+     */
+    public static int[][] evidencesPerFeature(JoinGraph graph,
+        double[] evidenceScores, int k, Order order) {
+        checkLength(evidenceScores, graph.getEvidenceCount());
+        int[][] result = new int[graph.getFeatureCount()][];
+        for (int row = 0; row < result.length; row++) {
+            result[row] = select(evidenceScores, graph.getEvidencesOfFeature(
+                row), k, order);
+        }
+        return result;
+    }
+
+    /**
+     * Select the k best evidences of every summary, over all features of the
+     * summary.
+     *
+     * @param graph the join graph.
+     * @param evidenceScores the scores by evidence row position.
+     * @param k the maximum number of evidences per summary.
+     * @param order which scores are better.
+     * @return the evidence row positions, best first, by summary row position.
+     */
+    public static int[][] evidencesPerSummary(JoinGraph graph,
+        double[] evidenceScores, int k, Order order) {
+        checkLength(evidenceScores, graph.getEvidenceCount());
+        int[][] result = new int[graph.getSummaryCount()][];
+        for (int row = 0; row < result.length; row++) {
+            result[row] = select(evidenceScores, graph.getEvidencesOfSummary(
+                row), k, order);
+        }
+        return result;
+    }
+
+    private static void checkLength(double[] scores, int expected) {
+        if (scores.length != expected) {
+            throw new IllegalArgumentException(
+                "Expected " + expected + " scores, but got " + scores.length + "!");
+        }
+    }
+
+    /**
+     * Create a collector selecting the k best elements of a stream. Elements
+     * with a NaN score are skipped. Parallel streams are supported.
+     *
+     * @param <T> the element type.
+     * @param score the score function.
+     * @param k the maximum number of elements to select.
+     * @param order which scores are better.
+     * @return the collector returning the selected elements, best first.
+     */
+    public static <T> Collector<T, ?, List<T>> collector(
+        ToDoubleFunction<? super T> score, int k, Order order) {
+        return Collector.of(() -> new BoundedHeap(k, order, true),
+            (heap, element) -> heap.offer(score.applyAsDouble(element),
+                heap.offered++, element),
+            BoundedHeap::merge,
+            BoundedHeap::values);
+    }
+
+    /**
+     * Returns the evidence ranks by row position, NaN for null values.
+     *
+     * @param evidences the small molecule evidences.
+     * @return the ranks.
+     */
+    public static double[] evidenceRanks(List<SmallMoleculeEvidence> evidences) {
+        double[] scores = new double[evidences.size()];
+        for (int row = 0; row < scores.length; row++) {
+            Integer rank = evidences.get(row).
+                getRank();
+            scores[row] = rank == null ? Double.NaN : rank;
+        }
+        return scores;
+    }
+
+    /**
+     * Returns one of the evidence identification confidence measure values by
+     * row position, NaN for null or missing values.
+     *
+     * @param evidences the small molecule evidences.
+     * @param measureIndex the zero-based index of the
+     * <code>id_confidence_measure</code> metadata element.
+     * @return the confidence values.
+     */
+    public static double[] evidenceConfidence(
+        List<SmallMoleculeEvidence> evidences, int measureIndex) {
+        double[] scores = new double[evidences.size()];
+        for (int row = 0; row < scores.length; row++) {
+            List<Double> values = evidences.get(row).
+                getIdConfidenceMeasure();
+            Double value = values == null || measureIndex >= values.size() ? null : values.
+                get(measureIndex);
+            scores[row] = value == null ? Double.NaN : value;
+        }
+        return scores;
+    }
+
+    /**
+     * Returns the summary best identification confidence values by row
+     * position, NaN for null values.
+     *
+     * @param summaries the small molecule summaries.
+     * @return the confidence values.
+     */
+    public static double[] summaryBestConfidence(
+        List<SmallMoleculeSummary> summaries) {
+        double[] scores = new double[summaries.size()];
+        for (int row = 0; row < scores.length; row++) {
+            Double value = summaries.get(row).
+                getBestIdConfidenceValue();
+            scores[row] = value == null ? Double.NaN : value;
+        }
+        return scores;
+    }
+
+    /*
+     * A max-heap over (key, row) holding the k best entries seen so far, with
+     * the worst at the root. Keys are negated for descending order, so lower
+     * keys are always better.
+     */
+    private static final class BoundedHeap {
+
+        private final int k;
+        private final Order order;
+        private double[] keys;
+        private int[] rows;
+        private Object[] values;
+        private int size;
+        private int offered;
+
+        BoundedHeap(int k, Order order, boolean withValues) {
+            if (k < 0) {
+                throw new IllegalArgumentException(
+                    "k must not be negative: " + k);
+            }
+            this.k = k;
+            this.order = order;
+            int capacity = Math.min(k, 16);
+            this.keys = new double[capacity];
+            this.rows = new int[capacity];
+            this.values = withValues ? new Object[capacity] : null;
+        }
+
+        void offer(double score, int row, Object value) {
+            if (Double.isNaN(score) || k == 0) {
+                return;
+            }
+            double key = order == Order.ASCENDING ? score : -score;
+            if (size < k) {
+                if (size == keys.length) {
+                    grow();
+                }
+                set(size, key, row, value);
+                siftUp(size++);
+            } else if (worse(keys[0], rows[0], key, row)) {
+                set(0, key, row, value);
+                siftDown(0);
+            }
+        }
+
+        private void grow() {
+            int capacity = (int) Math.min(k, 2L * keys.length);
+            keys = Arrays.copyOf(keys, capacity);
+            rows = Arrays.copyOf(rows, capacity);
+            if (values != null) {
+                values = Arrays.copyOf(values, capacity);
+            }
+        }
+
+        /*
+         * Merges the entries of a heap over the elements following the
+         * elements of this heap.
+         */
+        BoundedHeap merge(BoundedHeap other) {
+            int base = offered;
+            for (int i = 0; i < other.size; i++) {
+                double score = order == Order.ASCENDING ? other.keys[i] : -other.keys[i];
+                offer(score, base + other.rows[i],
+                    other.values == null ? null : other.values[i]);
+            }
+            offered = base + other.offered;
+            return this;
+        }
+
+        private static boolean worse(double key, int row, double otherKey,
+            int otherRow) {
+            return key > otherKey || (key == otherKey && row > otherRow);
+        }
+
+        private void set(int i, double key, int row, Object value) {
+            keys[i] = key;
+            rows[i] = row;
+            if (values != null) {
+                values[i] = value;
+            }
+        }
+
+        private void swap(int i, int j) {
+            double key = keys[i];
+            int row = rows[i];
+            Object value = values == null ? null : values[i];
+            set(i, keys[j], rows[j], values == null ? null : values[j]);
+            set(j, key, row, value);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(keys[i], rows[i], keys[parent], rows[parent])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int worst = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && worse(keys[left], rows[left], keys[worst],
+                    rows[worst])) {
+                    worst = left;
+                }
+                if (right < size && worse(keys[right], rows[right], keys[worst],
+                    rows[worst])) {
+                    worst = right;
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        /*
+         * Empties the heap, leaving the entries best first in the first size
+         * slots.
+         */
+        private int drain() {
+            int count = size;
+            while (size > 0) {
+                swap(0, --size);
+                siftDown(0);
+            }
+            return count;
+        }
+
+        int[] rows() {
+            int count = drain();
+            int[] result = new int[count];
+            System.arraycopy(rows, 0, result, 0, count);
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> List<T> values() {
+            int count = drain();
+            if (count == 0) {
+                return Collections.emptyList();
+            }
+            List<T> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add((T) values[i]);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.aggregation;
+
+import de.isas.mztab2.model.Assay;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.Parameter;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import de.isas.mztab2.model.StudyVariable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class StudyVariableAggregatorTest {
+
+    private static Metadata createMetadata(int assaysPerStudyVariable,
+        int studyVariables, Parameter averageFunction) {
+        Metadata metadata = new Metadata();
+        for (int sv = 1; sv <= studyVariables; sv++) {
+            StudyVariable studyVariable = new StudyVariable().id(sv).
+                averageFunction(averageFunction);
+            for (int a = 1; a <= assaysPerStudyVariable; a++) {
+                Assay assay = new Assay().id((sv - 1) * assaysPerStudyVariable + a);
+                metadata.addAssayItem(assay);
+                studyVariable.addAssayRefsItem(new Assay().id(assay.getId()));
+            }
+            metadata.addStudyVariableItem(studyVariable);
+        }
+        return metadata;
+    }
+
+    @Test
+    public void testArithmeticMeanAndCoefficientOfVariation() {
+        // values of SML rows 1 and 2 in MouseLiver_negative.mzTab
+        Metadata metadata = createMetadata(5, 3, new Parameter().cvLabel("MS").
+            cvAccession("MS:1002962").
+            name("The arithmetic mean"));
+        SmallMoleculeSummary first = new SmallMoleculeSummary().
+            abundanceAssay(Arrays.asList(null, null, null, 183397.9423828125,
+                174770.56591796875, null, null, null, null, null, null, null,
+                null, null, null));
+        SmallMoleculeSummary second = new SmallMoleculeSummary().
+            abundanceAssay(Arrays.asList(337992.638671875, 249876.248046875,
+                214545.2861328125, null, null, 725434.6875, 694843.9140625,
+                601327.3046875, 521886.1201171875, 502855.859375,
+                985550.3984375, 855197.876953125, 896437.3359375,
+                775334.6171875, 812706.890625));
+        StudyVariableAggregator aggregator = StudyVariableAggregator.of(
+            metadata);
+        assertEquals(3, aggregator.getStudyVariableCount());
+        aggregator.fill(Arrays.asList(first, second), null);
+        assertEquals(179084.25415039062, first.getAbundanceStudyVariable().
+            get(0), 1e-6);
+        assertNull(first.getAbundanceStudyVariable().
+            get(1));
+        assertEquals(0.03406483386985133, first.
+            getAbundanceVariationStudyVariable().
+            get(0), 1e-6);
+        assertNull(first.getAbundanceVariationStudyVariable().
+            get(2));
+        assertEquals(Arrays.asList(267471.3909505208, 609269.5771484375,
+            865045.423828125), second.getAbundanceStudyVariable());
+        List<Double> variations = second.getAbundanceVariationStudyVariable();
+        assertEquals(0.23769551851094478, variations.get(0), 1e-6);
+        assertEquals(0.16380262986943292, variations.get(1), 1e-6);
+        assertEquals(0.09389896792647134, variations.get(2), 1e-6);
+    }
+
+    @Test
+    public void testMedianAndStandardError() {
+        Metadata metadata = createMetadata(4, 1, new Parameter().cvLabel("MS").
+            cvAccession("MS:1002883").
+            name("median"));
+        metadata.getStudyVariable().
+            get(0).
+            variationFunction(new Parameter().cvLabel("MS").
+                cvAccession("MS:1002885").
+                name("standard error"));
+        SmallMoleculeFeature feature = new SmallMoleculeFeature().
+            abundanceAssay(Arrays.asList(4.0, 1.0, Double.NaN, 3.0));
+        StudyVariableAbundances abundances = StudyVariableAggregator.of(
+            metadata).
+            aggregateFeatures(Arrays.asList(feature), null);
+        assertEquals(3.0, abundances.getAverage(0, 0), 0.0);
+        assertEquals(Math.sqrt(7.0 / 3.0) / Math.sqrt(3.0), abundances.
+            getVariation(0, 0), 1e-12);
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        Metadata metadata = createMetadata(7, 5, null);
+        Random random = new Random(42);
+        List<SmallMoleculeSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < 3 * StudyVariableAggregator.PARTITION_SIZE + 17; i++) {
+            List<Double> values = new ArrayList<>();
+            for (int j = 0; j < 35; j++) {
+                values.add(random.nextInt(10) == 0 ? null : random.
+                    nextDouble() * 1000.0);
+            }
+            summaries.add(new SmallMoleculeSummary().abundanceAssay(values));
+        }
+        StudyVariableAggregator aggregator = StudyVariableAggregator.of(
+            metadata, AverageFunction.MEDIAN, null);
+        StudyVariableAbundances pooled = aggregator.aggregateSummaries(
+            summaries, null);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        StudyVariableAbundances executed;
+        try {
+            executed = aggregator.aggregateSummaries(summaries, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(summaries.size(), executed.getRowCount());
+        for (int i = 0; i < summaries.size(); i++) {
+            assertEquals(pooled.getAverages(i), executed.getAverages(i));
+            assertEquals(pooled.getVariations(i), executed.getVariations(i));
+        }
+    }
+
+    @Test
+    public void testNoStudyVariables() {
+        // metadata of a file that declares assays, but no study variables
+        Metadata metadata = new Metadata().addAssayItem(new Assay().id(1)).
+            addAssayItem(new Assay().id(2));
+        SmallMoleculeSummary summary = new SmallMoleculeSummary().
+            abundanceAssay(Arrays.asList(1.0, 2.0));
+        StudyVariableAggregator aggregator = StudyVariableAggregator.of(
+            metadata);
+        assertEquals(0, aggregator.getStudyVariableCount());
+        aggregator.fill(Arrays.asList(summary), null);
+        assertTrue(summary.getAbundanceStudyVariable().
+            isEmpty());
+        assertTrue(summary.getAbundanceVariationStudyVariable().
+            isEmpty());
+        StudyVariableAbundances abundances = aggregator.aggregateSummaries(
+            Arrays.asList(summary, summary), null);
+        assertEquals(2, abundances.getRowCount());
+        assertTrue(abundances.getAverages(1).
+            isEmpty());
+        try {
+            abundances.getAverages(2);
+            fail("Expected an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException ex) {
+            // rows are still checked
+        }
+    }
+
+    @Test
+    public void testCoefficientOfVariationWithZeroMean() {
+        assertTrue(Double.isNaN(VariationFunction.COEFFICIENT_OF_VARIATION.
+            apply(new double[]{-1.0, 1.0}, 2)));
+        Metadata metadata = createMetadata(2, 1, null);
+        SmallMoleculeSummary summary = new SmallMoleculeSummary().
+            abundanceAssay(Arrays.asList(-1.0, 1.0));
+        StudyVariableAggregator.of(metadata).
+            fill(Arrays.asList(summary), null);
+        assertEquals(0.0, summary.getAbundanceStudyVariable().
+            get(0), 0.0);
+        assertNull(summary.getAbundanceVariationStudyVariable().
+            get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownAssayReference() {
+        Metadata metadata = createMetadata(2, 1, null);
+        metadata.getStudyVariable().
+            get(0).
+            addAssayRefsItem(new Assay().id(99));
+        StudyVariableAggregator.of(metadata);
+    }
+}
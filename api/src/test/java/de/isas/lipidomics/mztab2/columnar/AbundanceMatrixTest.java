@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import de.isas.mztab2.model.Assay;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class AbundanceMatrixTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final List<Assay> ASSAYS = Arrays.asList(new Assay().id(1),
+        new Assay().id(3));
+
+    private static void fill(AbundanceMatrix matrix, int rows) throws Exception {
+        for (int row = 0; row < rows; row++) {
+            matrix.addRow(Arrays.asList((double) row, row % 7 == 0 ? null : -row
+                - 0.5));
+        }
+    }
+
+    private static void check(AbundanceMatrix matrix, int rows) {
+        assertEquals(rows, matrix.getRowCount());
+        for (int row = 0; row < rows; row++) {
+            assertEquals((double) row, matrix.getDouble(row, 0), 0.0);
+            if (row % 7 == 0) {
+                assertTrue(matrix.isNull(row, 1));
+            } else {
+                assertEquals(-row - 0.5, matrix.getById(row, 3), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testGrowOffHeap() throws Exception {
+        // spans several chunks of growing size
+        int rows = 100000;
+        try (AbundanceMatrix matrix = AbundanceMatrix.allocateDirect(ASSAYS)) {
+            fill(matrix, rows);
+            check(matrix, rows);
+            assertEquals(Arrays.asList(5.0, -5.5), matrix.getRow(5));
+        }
+    }
+
+    @Test
+    public void testSmallMatrixIsSmall() throws Exception {
+        Path file = temporaryFolder.getRoot().
+            toPath().
+            resolve("small" + AbundanceMatrix.FILE_SUFFIX);
+        try (AbundanceMatrix matrix = AbundanceMatrix.create(file, ASSAYS)) {
+            fill(matrix, 3);
+        }
+        assertTrue("File size " + Files.size(file), Files.size(file) <= 128 * 1024);
+    }
+
+    @Test
+    public void testGrowMappedAndReopen() throws Exception {
+        Path file = temporaryFolder.getRoot().
+            toPath().
+            resolve("matrix" + AbundanceMatrix.FILE_SUFFIX);
+        int rows = 50000;
+        try (AbundanceMatrix matrix = AbundanceMatrix.create(file, ASSAYS)) {
+            fill(matrix, rows);
+        }
+        try (AbundanceMatrix matrix = AbundanceMatrix.open(file)) {
+            assertEquals(Arrays.asList(1, 3), matrix.getColumnIds());
+            check(matrix, rows);
+            matrix.addRow();
+            assertNull(matrix.get(rows, 0));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import de.isas.mztab2.model.Parameter;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class ColumnarTableTest {
+
+    @Test
+    public void testSmallMoleculeFeatureTable() {
+        Parameter isotopomer = new Parameter().name("isotopomer");
+        SmallMoleculeFeature smf1 = new SmallMoleculeFeature().smfId(1).
+            smeIdRefs(Arrays.asList(1, 2)).
+            adductIon("[M+H]1+").
+            isotopomer(isotopomer).
+            expMassToCharge(123.45).
+            charge(1).
+            retentionTimeInSeconds(10.0).
+            abundanceAssay(Arrays.asList(1.0, null, 3.0));
+        SmallMoleculeFeature smf2 = new SmallMoleculeFeature().smfId(2).
+            adductIon("[M+H]1+").
+            isotopomer(new Parameter().name("isotopomer")).
+            charge(1);
+        SmallMoleculeFeatureTable table = SmallMoleculeFeatureTable.of(
+            Arrays.asList(smf1, smf2));
+        assertEquals(2, table.size());
+        assertEquals(1, table.getAdductIon().
+            getDictionary().
+            size());
+        assertEquals(1, table.getIsotopomer().
+            getDictionary().
+            size());
+        SmallMoleculeFeature row1 = table.getRow(0);
+        assertEquals(Integer.valueOf(1), row1.getSmfId());
+        assertEquals(Arrays.asList(1, 2), row1.getSmeIdRefs());
+        assertEquals(123.45, row1.getExpMassToCharge(), 0.0);
+        List<Double> abundances = row1.getAbundanceAssay();
+        assertEquals(3, abundances.size());
+        assertNull(abundances.get(1));
+        assertEquals(row1, smf1);
+        assertEquals(smf1, table.toSmallMoleculeFeature(0));
+        SmallMoleculeFeature row2 = table.getRow(1);
+        assertNull(row2.getSmeIdRefs());
+        assertNull(row2.getExpMassToCharge());
+        assertNull(row2.getAbundanceAssay());
+        assertEquals(row2, smf2);
+        assertEquals(table.rows(), Arrays.asList(smf1, smf2));
+    }
+
+    @Test
+    public void testSmallMoleculeEvidenceTable() {
+        Parameter method = new Parameter().name("identification method");
+        SmallMoleculeEvidence sme1 = new SmallMoleculeEvidence().smeId(1).
+            evidenceInputId("1").
+            databaseIdentifier("HMDB:HMDB0000001").
+            chemicalName("name").
+            identificationMethod(method).
+            msLevel(new Parameter().name("ms level").
+                value("1")).
+            expMassToCharge(123.45).
+            theoreticalMassToCharge(123.44).
+            charge(1).
+            idConfidenceMeasure(Arrays.asList(0.5, 0.9)).
+            rank(1);
+        SmallMoleculeEvidence sme2 = new SmallMoleculeEvidence().smeId(2).
+            evidenceInputId("2").
+            identificationMethod(method).
+            rank(2);
+        SmallMoleculeEvidenceTable table = SmallMoleculeEvidenceTable.of(
+            Arrays.asList(sme1, sme2));
+        assertEquals(2, table.size());
+        assertEquals(2, table.getIdentificationMethod().
+            getDictionary().
+            size());
+        assertEquals(table.getRow(0), sme1);
+        assertEquals(sme1, table.toSmallMoleculeEvidence(0));
+        assertEquals(table.getRow(1), sme2);
+        assertNull(table.getRow(1).
+            getIdConfidenceMeasure());
+        assertEquals(Integer.valueOf(2), table.getRow(1).
+            getRank());
+        assertEquals(1, table.getRank().
+            getInt(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testRowOutOfBounds() {
+        new SmallMoleculeFeatureTable().getRow(0);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class DoubleArrayListTest {
+
+    private static void assertSameList(List<Double> expected,
+        DoubleArrayList actual) {
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testNullElementsArePreserved() {
+        List<Double> expected = new ArrayList<>(Arrays.asList(1.0, null,
+            Double.NaN, -0.5));
+        DoubleArrayList list = new DoubleArrayList(expected);
+        assertSameList(expected, list);
+        assertNull(list.get(1));
+        assertTrue(list.isNull(1));
+        assertTrue(Double.isNaN(list.getDouble(1)));
+        // NaN values are not null
+        assertFalse(list.isNull(2));
+        assertTrue(Double.isNaN(list.get(2)));
+        assertTrue(list.contains(null));
+        assertEquals(1, list.indexOf(null));
+    }
+
+    @Test
+    public void testAddRemoveAndSetAtIndex() {
+        List<Double> expected = new ArrayList<>();
+        DoubleArrayList list = new DoubleArrayList(0);
+        for (int i = 0; i < 50; i++) {
+            Double value = i % 3 == 0 ? null : (double) i;
+            expected.add(value);
+            list.add(value);
+        }
+        assertSameList(expected, list);
+        expected.add(0, null);
+        list.add(0, null);
+        expected.add(10, 42.0);
+        list.add(10, 42.0);
+        expected.add(expected.size(), null);
+        list.add(list.size(), null);
+        assertSameList(expected, list);
+        assertEquals(expected.remove(0), list.remove(0));
+        assertEquals(expected.remove(9), list.remove(9));
+        assertEquals(expected.remove(expected.size() - 1), list.remove(list.
+            size() - 1));
+        assertSameList(expected, list);
+        assertEquals(expected.set(3, null), list.set(3, null));
+        assertEquals(expected.set(5, 7.5), list.set(5, 7.5));
+        list.setDouble(6, 8.5);
+        expected.set(6, 8.5);
+        assertSameList(expected, list);
+        list.addDouble(9.5);
+        expected.add(9.5);
+        assertSameList(expected, list);
+        list.clear();
+        assertTrue(list.isEmpty());
+        list.addDouble(1.0);
+        assertEquals(Arrays.asList(1.0), list);
+    }
+
+    @Test
+    public void testIndexChecks() {
+        DoubleArrayList list = DoubleArrayList.of(1.0, 2.0);
+        for (int index : new int[]{-1, 2}) {
+            try {
+                list.get(index);
+                fail("Expected exception for get(" + index + ")");
+            } catch (IndexOutOfBoundsException ex) {
+            }
+            try {
+                list.set(index, 1.0);
+                fail("Expected exception for set(" + index + ")");
+            } catch (IndexOutOfBoundsException ex) {
+            }
+            try {
+                list.remove(index);
+                fail("Expected exception for remove(" + index + ")");
+            } catch (IndexOutOfBoundsException ex) {
+            }
+        }
+        try {
+            list.add(3, 1.0);
+            fail("Expected exception for add(3)");
+        } catch (IndexOutOfBoundsException ex) {
+        }
+        assertEquals(Arrays.asList(1.0, 2.0), list);
+    }
+
+    @Test
+    public void testSubListAndIterators() {
+        List<Double> expected = new ArrayList<>(Arrays.asList(0.0, null, 2.0,
+            3.0, null, 5.0));
+        DoubleArrayList list = new DoubleArrayList(expected);
+        List<Double> subList = list.subList(1, 5);
+        assertEquals(expected.subList(1, 5), subList);
+        subList.set(0, 1.0);
+        subList.remove(3);
+        subList.add(null);
+        expected.set(1, 1.0);
+        expected.subList(1, 5).
+            remove(3);
+        expected.subList(1, 4).
+            add(null);
+        assertSameList(expected, list);
+        subList.clear();
+        expected.subList(1, 5).
+            clear();
+        assertSameList(expected, list);
+
+        Iterator<Double> iterator = list.iterator();
+        Iterator<Double> expectedIterator = expected.iterator();
+        while (iterator.hasNext()) {
+            Double value = iterator.next();
+            assertEquals(expectedIterator.next(), value);
+            if (value != null && value == 0.0) {
+                iterator.remove();
+                expectedIterator.remove();
+            }
+        }
+        assertSameList(expected, list);
+        ListIterator<Double> listIterator = list.listIterator();
+        listIterator.next();
+        listIterator.set(null);
+        listIterator.add(6.0);
+        expected.set(0, null);
+        expected.add(1, 6.0);
+        assertSameList(expected, list);
+    }
+
+    @Test
+    public void testToDoubleArray() {
+        DoubleArrayList list = new DoubleArrayList(Arrays.asList(1.0, null,
+            3.0));
+        double[] array = list.toDoubleArray();
+        assertEquals(3, array.length);
+        assertEquals(1.0, array[0], 0.0);
+        assertTrue(Double.isNaN(array[1]));
+        assertEquals(3.0, array[2], 0.0);
+        // the array is a copy
+        array[0] = 2.0;
+        assertEquals(1.0, list.getDouble(0), 0.0);
+        assertArrayEquals(array, DoubleArrayList.toDoubleArray(Arrays.asList(
+            2.0, null, 3.0)), 0.0);
+        assertEquals(0, DoubleArrayList.toDoubleArray(null).length);
+        assertEquals(3.0, DoubleArrayList.getDouble(Arrays.asList(1.0, 3.0), 1),
+            0.0);
+        assertTrue(Double.isNaN(DoubleArrayList.getDouble(Arrays.asList(1.0,
+            null), 1)));
+        list.trimToSize();
+        assertEquals(Arrays.asList(1.0, null, 3.0), list);
+        double[] values = {4.0, 5.0};
+        DoubleArrayList copy = DoubleArrayList.of(values);
+        values[0] = 0.0;
+        assertEquals(Arrays.asList(4.0, 5.0), copy);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.columnar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class IntArrayListTest {
+
+    private static void assertSameList(List<Integer> expected,
+        IntArrayList actual) {
+        assertEquals(expected, actual);
+        assertEquals(actual, expected);
+        assertEquals(expected.hashCode(), actual.hashCode());
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void testNullElementsArePreserved() {
+        List<Integer> expected = new ArrayList<>(Arrays.asList(1, null, 0,
+            -5));
+        IntArrayList list = new IntArrayList(expected);
+        assertSameList(expected, list);
+        assertNull(list.get(1));
+        assertTrue(list.isNull(1));
+        assertEquals(0, list.getInt(1));
+        // zero values are not null
+        assertFalse(list.isNull(2));
+        assertEquals(Integer.valueOf(0), list.get(2));
+        assertTrue(list.contains(null));
+        assertEquals(1, list.indexOf(null));
+    }
+
+    @Test
+    public void testAddRemoveAndSetAtIndex() {
+        List<Integer> expected = new ArrayList<>();
+        IntArrayList list = new IntArrayList(0);
+        for (int i = 0; i < 50; i++) {
+            Integer value = i % 3 == 0 ? null : i;
+            expected.add(value);
+            list.add(value);
+        }
+        assertSameList(expected, list);
+        expected.add(0, null);
+        list.add(0, null);
+        expected.add(10, 42);
+        list.add(10, 42);
+        expected.add(expected.size(), null);
+        list.add(list.size(), null);
+        assertSameList(expected, list);
+        assertEquals(expected.remove(0), list.remove(0));
+        assertEquals(expected.remove(9), list.remove(9));
+        assertEquals(expected.remove(expected.size() - 1), list.remove(list.
+            size() - 1));
+        assertSameList(expected, list);
+        assertEquals(expected.set(3, null), list.set(3, null));
+        assertEquals(expected.set(5, 7), list.set(5, 7));
+        list.setInt(6, 8);
+        expected.set(6, 8);
+        assertSameList(expected, list);
+        list.addInt(9);
+        expected.add(9);
+        assertSameList(expected, list);
+        list.clear();
+        assertTrue(list.isEmpty());
+        list.addInt(1);
+        assertEquals(Arrays.asList(1), list);
+    }
+
+    @Test
+    public void testIndexChecks() {
+        IntArrayList list = IntArrayList.of(1, 2);
+        for (int index : new int[]{-1, 2}) {
+            try {
+                list.get(index);
+                fail("Expected exception for get(" + index + ")");
+            } catch (IndexOutOfBoundsException ex) {
+            }
+            try {
+                list.set(index, 1);
+                fail("Expected exception for set(" + index + ")");
+            } catch (IndexOutOfBoundsException ex) {
+            }
+            try {
+                list.remove(index);
+                fail("Expected exception for remove(" + index + ")");
+            } catch (IndexOutOfBoundsException ex) {
+            }
+        }
+        try {
+            list.add(3, 1);
+            fail("Expected exception for add(3)");
+        } catch (IndexOutOfBoundsException ex) {
+        }
+        assertEquals(Arrays.asList(1, 2), list);
+    }
+
+    @Test
+    public void testSubListAndIterators() {
+        List<Integer> expected = new ArrayList<>(Arrays.asList(0, null, 2, 3,
+            null, 5));
+        IntArrayList list = new IntArrayList(expected);
+        List<Integer> subList = list.subList(1, 5);
+        assertEquals(expected.subList(1, 5), subList);
+        subList.set(0, 1);
+        subList.remove(3);
+        subList.add(null);
+        expected.set(1, 1);
+        expected.subList(1, 5).
+            remove(3);
+        expected.subList(1, 4).
+            add(null);
+        assertSameList(expected, list);
+        subList.clear();
+        expected.subList(1, 5).
+            clear();
+        assertSameList(expected, list);
+
+        Iterator<Integer> iterator = list.iterator();
+        Iterator<Integer> expectedIterator = expected.iterator();
+        while (iterator.hasNext()) {
+            Integer value = iterator.next();
+            assertEquals(expectedIterator.next(), value);
+            if (value != null && value == 0) {
+                iterator.remove();
+                expectedIterator.remove();
+            }
+        }
+        assertSameList(expected, list);
+        ListIterator<Integer> listIterator = list.listIterator();
+        listIterator.next();
+        listIterator.set(null);
+        listIterator.add(6);
+        expected.set(0, null);
+        expected.add(1, 6);
+        assertSameList(expected, list);
+    }
+
+    @Test
+    public void testToIntArray() {
+        IntArrayList list = new IntArrayList(Arrays.asList(1, null, 3));
+        int[] array = list.toIntArray();
+        assertArrayEquals(new int[]{1, 0, 3}, array);
+        // the array is a copy
+        array[0] = 2;
+        assertEquals(1, list.getInt(0));
+        assertArrayEquals(array, IntArrayList.toIntArray(Arrays.asList(2, null,
+            3)));
+        assertEquals(0, IntArrayList.toIntArray(null).length);
+        assertEquals(3, IntArrayList.getInt(Arrays.asList(1, 3), 1));
+        assertEquals(0, IntArrayList.getInt(Arrays.asList(1, null), 1));
+        list.trimToSize();
+        assertEquals(Arrays.asList(1, null, 3), list);
+        int[] values = {4, 5};
+        IntArrayList copy = IntArrayList.of(values);
+        values[0] = 0;
+        assertEquals(Arrays.asList(4, 5), copy);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.lipidomics.mztab2.index.IdentifierIndex.Field;
+import de.isas.lipidomics.mztab2.index.IdentifierIndex.Hit;
+import de.isas.lipidomics.mztab2.index.IdentifierIndex.RowType;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class IdentifierIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private IdentifierIndex createIndex() {
+        List<SmallMoleculeSummary> summaries = Arrays.asList(
+            new SmallMoleculeSummary().smlId(1).
+                databaseIdentifier(Arrays.asList("HMDB:HMDB0000122",
+                    "CHEBI:4167")).
+                chemicalName(Arrays.asList("D-Glucose")).
+                chemicalFormula(Arrays.asList("C6H12O6")),
+            new SmallMoleculeSummary().smlId(2).
+                databaseIdentifier(Arrays.asList("null")).
+                chemicalName(Arrays.asList("Phosphatidylcholine 34:1")),
+            new SmallMoleculeSummary().
+                databaseIdentifier(Arrays.asList("HMDB:HMDB0000001")));
+        List<SmallMoleculeEvidence> evidences = Arrays.asList(
+            new SmallMoleculeEvidence().smeId(7).
+                databaseIdentifier("HMDB:HMDB0000122").
+                chemicalName("glucose").
+                smiles("OCC1OC(O)C(O)C(O)C1O"));
+        List<SmallMoleculeSummary> other = Arrays.asList(
+            new SmallMoleculeSummary().smlId(3).
+                databaseIdentifier(Arrays.asList("HMDB:HMDB0000122")));
+        return IdentifierIndex.builder().
+            add("a.mztab", summaries, evidences).
+            add("b.mztab", other, null).
+            build();
+    }
+
+    @Test
+    public void testExact() {
+        IdentifierIndex index = createIndex();
+        assertEquals(Arrays.asList("a.mztab", "b.mztab"), index.getSources());
+        List<Hit> hits = index.exact("HMDB0000122");
+        assertEquals(3, hits.size());
+        assertEquals("a.mztab", hits.get(0).
+            getSource());
+        assertEquals(RowType.SUMMARY, hits.get(0).
+            getRowType());
+        assertEquals(Field.DATABASE_IDENTIFIER, hits.get(0).
+            getField());
+        assertEquals(1, hits.get(0).
+            getRowId());
+        assertEquals(RowType.EVIDENCE, hits.get(1).
+            getRowType());
+        assertEquals(7, hits.get(1).
+            getRowId());
+        assertEquals("b.mztab", hits.get(2).
+            getSource());
+        assertEquals(3, hits.get(2).
+            getRowId());
+        assertEquals(hits, index.exact("HMDB:HMDB0000122"));
+        assertEquals(1, index.exact("34:1").
+            size());
+        assertEquals(Collections.emptyList(), index.exact("hmdb0000122"));
+        assertEquals(Collections.emptyList(), index.exact("null"));
+        // rows without id are not indexed
+        assertEquals(Collections.emptyList(), index.exact("HMDB0000001"));
+    }
+
+    @Test
+    public void testHitOrder() {
+        IdentifierIndex index = IdentifierIndex.builder().
+            add("a.mztab", Arrays.asList(
+                new SmallMoleculeSummary().smlId(5).
+                    chemicalName(Arrays.asList("XYZ")),
+                new SmallMoleculeSummary().smlId(4).
+                    databaseIdentifier(Arrays.asList("XYZ"))),
+                Arrays.asList(
+                    new SmallMoleculeEvidence().smeId(1).
+                        chemicalName("XYZ"),
+                    new SmallMoleculeEvidence().smeId(2).
+                        databaseIdentifier("XYZ"))).
+            add("b.mztab", null, Arrays.asList(
+                new SmallMoleculeEvidence().smeId(3).
+                    databaseIdentifier("XYZ"))).
+            build();
+        List<String> expected = Arrays.asList(
+            "a.mztab SUMMARY DATABASE_IDENTIFIER 4",
+            "a.mztab SUMMARY CHEMICAL_NAME 5",
+            "a.mztab EVIDENCE DATABASE_IDENTIFIER 2",
+            "a.mztab EVIDENCE CHEMICAL_NAME 1",
+            "b.mztab EVIDENCE DATABASE_IDENTIFIER 3");
+        // ordered by source, row type, field and row id
+        for (List<Hit> hits : Arrays.asList(index.exact("XYZ"), index.
+            ignoreCase("xyz"), index.prefix("XY", false))) {
+            assertEquals(expected, hits.stream().
+                map((hit) -> hit.getSource() + " " + hit.getRowType() + " " + hit.
+                getField() + " " + hit.getRowId()).
+                collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testIgnoreCase() {
+        IdentifierIndex index = createIndex();
+        assertEquals(3, index.ignoreCase("hmdb0000122").
+            size());
+        List<Hit> hits = index.ignoreCase("GLUCOSE");
+        assertEquals(1, hits.size());
+        assertEquals(Field.CHEMICAL_NAME, hits.get(0).
+            getField());
+        assertEquals(7, hits.get(0).
+            getRowId());
+        assertEquals(1, index.ignoreCase("c6h12o6").
+            size());
+    }
+
+    @Test
+    public void testPrefix() {
+        IdentifierIndex index = createIndex();
+        List<Hit> hits = index.prefix("HMDB", false);
+        assertEquals(3, hits.size());
+        assertEquals(3, index.prefix("hmdb", true).
+            size());
+        assertEquals(Collections.emptyList(), index.prefix("hmdb", false));
+        assertEquals(2, index.prefix("D-Gluc", true).
+            size() + index.prefix("gluc", false).
+            size());
+        assertEquals(Arrays.asList("HMDB0000122", "HMDB:HMDB0000122"), index.
+            terms("hmdb", 10));
+        assertEquals(1, index.terms("hmdb", 1).
+            size());
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        IdentifierIndex index = createIndex();
+        Path indexFile = temporaryFolder.newFile("identifiers.idx").
+            toPath();
+        index.write(indexFile);
+        IdentifierIndex reread = IdentifierIndex.read(indexFile);
+        assertEquals(index.getSources(), reread.getSources());
+        assertEquals(index.getTermCount(), reread.getTermCount());
+        assertEquals(index.exact("HMDB0000122"), reread.exact("HMDB0000122"));
+        assertEquals(index.prefix("phos", true), reread.prefix("phos", true));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidFile() throws IOException {
+        Path indexFile = temporaryFolder.newFile("invalid.idx").
+            toPath();
+        Files.write(indexFile, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        IdentifierIndex.read(indexFile);
+    }
+}
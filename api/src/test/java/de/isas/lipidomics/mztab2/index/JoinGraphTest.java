@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class JoinGraphTest {
+
+    @Test
+    public void testJoins() {
+        // ids deliberately differ from row positions
+        List<SmallMoleculeSummary> summaries = Arrays.asList(
+            new SmallMoleculeSummary().smlId(10).
+                smfIdRefs(Arrays.asList(3, 1)),
+            new SmallMoleculeSummary().smlId(20).
+                smfIdRefs(Arrays.asList(2, 99)),
+            new SmallMoleculeSummary().smlId(30));
+        List<SmallMoleculeFeature> features = Arrays.asList(
+            new SmallMoleculeFeature().smfId(1).
+                smeIdRefs(Arrays.asList(7, 5)),
+            new SmallMoleculeFeature().smfId(2).
+                smeIdRefs(Arrays.asList(5, 5)),
+            new SmallMoleculeFeature().smfId(3).
+                smeIdRefs(Arrays.asList(6)));
+        List<SmallMoleculeEvidence> evidences = Arrays.asList(
+            new SmallMoleculeEvidence().smeId(5),
+            new SmallMoleculeEvidence().smeId(6),
+            new SmallMoleculeEvidence().smeId(7),
+            new SmallMoleculeEvidence().smeId(8));
+        JoinGraph graph = JoinGraph.of(summaries, features, evidences);
+        assertEquals(3, graph.getSummaryCount());
+        assertEquals(3, graph.getFeatureCount());
+        assertEquals(4, graph.getEvidenceCount());
+        assertEquals(3, graph.getSummaryFeatureEdgeCount());
+        assertEquals(4, graph.getFeatureEvidenceEdgeCount());
+        assertEquals(1, graph.getSummaryRow(20));
+        assertEquals(-1, graph.getSummaryRow(40));
+        assertEquals(2, graph.getEvidenceRow(7));
+
+        assertArrayEquals(new int[]{0, 2}, graph.getFeaturesOfSummary(0));
+        assertArrayEquals(new int[]{1}, graph.getFeaturesOfSummary(1));
+        assertArrayEquals(new int[0], graph.getFeaturesOfSummary(2));
+        assertArrayEquals(new int[]{0, 2}, graph.getEvidencesOfFeature(0));
+        assertArrayEquals(new int[]{0}, graph.getEvidencesOfFeature(1));
+        assertArrayEquals(new int[]{0, 1, 2}, graph.getEvidencesOfSummary(0));
+        assertArrayEquals(new int[]{0}, graph.getEvidencesOfSummary(1));
+
+        assertArrayEquals(new int[]{0}, graph.getSummariesOfFeature(2));
+        assertArrayEquals(new int[]{0, 1}, graph.getFeaturesOfEvidence(0));
+        assertArrayEquals(new int[]{0, 1}, graph.getSummariesOfEvidence(0));
+        assertArrayEquals(new int[0], graph.getSummariesOfEvidence(3));
+    }
+
+    @Test
+    public void testSparseIds() {
+        List<SmallMoleculeFeature> features = new ArrayList<>();
+        List<SmallMoleculeEvidence> evidences = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            evidences.add(new SmallMoleculeEvidence().smeId(i * 1000 + 1));
+            features.add(new SmallMoleculeFeature().smfId(i).
+                smeIdRefs(Arrays.asList((99 - i) * 1000 + 1)));
+        }
+        JoinGraph graph = JoinGraph.of(null, features, evidences);
+        assertEquals(0, graph.getSummaryCount());
+        assertEquals(100, graph.getFeatureEvidenceEdgeCount());
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(new int[]{99 - i}, graph.getEvidencesOfFeature(i));
+            assertArrayEquals(new int[]{99 - i}, graph.getFeaturesOfEvidence(i));
+            assertArrayEquals(new int[0], graph.getSummariesOfFeature(i));
+        }
+        assertEquals(-1, graph.getEvidenceRow(2));
+    }
+
+    @Test
+    public void testNegativeAndDuplicateIds() {
+        List<SmallMoleculeEvidence> evidences = Arrays.asList(
+            new SmallMoleculeEvidence().smeId(Integer.MAX_VALUE),
+            new SmallMoleculeEvidence().smeId(-5),
+            new SmallMoleculeEvidence().smeId(Integer.MIN_VALUE),
+            new SmallMoleculeEvidence(),
+            new SmallMoleculeEvidence().smeId(-5),
+            new SmallMoleculeEvidence().smeId(16777217));
+        JoinGraph graph = JoinGraph.of(null, null, evidences);
+        assertEquals(0, graph.getEvidenceRow(Integer.MAX_VALUE));
+        assertEquals(1, graph.getEvidenceRow(-5));
+        assertEquals(2, graph.getEvidenceRow(Integer.MIN_VALUE));
+        assertEquals(5, graph.getEvidenceRow(16777217));
+        assertEquals(-1, graph.getEvidenceRow(16777216));
+        assertEquals(-1, graph.getEvidenceRow(0));
+    }
+}
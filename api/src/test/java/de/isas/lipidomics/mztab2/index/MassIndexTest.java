@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MassIndexTest {
+
+    private static int[] scan(double[] values, double lower, double upper) {
+        List<double[]> hits = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] >= lower && values[i] <= upper) {
+                hits.add(new double[]{values[i], i});
+            }
+        }
+        hits.sort((a, b) ->
+        {
+            int c = Double.compare(a[0], b[0]);
+            return c != 0 ? c : Double.compare(a[1], b[1]);
+        });
+        return hits.stream().
+            mapToInt((hit) -> (int) hit[1]).
+            toArray();
+    }
+
+    @Test
+    public void testRangeQueriesMatchScan() {
+        Random random = new Random(42);
+        double[] values = new double[5000];
+        for (int i = 0; i < values.length; i++) {
+            // include duplicates and missing values
+            values[i] = i % 97 == 0 ? Double.NaN : 100.0 + Math.round(random.
+                nextDouble() * 90000.0) / 100.0;
+        }
+        MassIndex index = MassIndex.of(values);
+        assertEquals(values.length - 52, index.size());
+        double[] queries = new double[200];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = 100.0 + random.nextDouble() * 900.0;
+            assertArrayEquals(scan(values, queries[i] - 0.5, queries[i] + 0.5),
+                index.withinDa(queries[i], 0.5));
+            double da = MassIndex.ppmToDa(queries[i], 20.0);
+            assertArrayEquals(scan(values, queries[i] - da, queries[i] + da),
+                index.withinPpm(queries[i], 20.0));
+        }
+        int[][] batch = index.withinPpm(queries, 20.0);
+        for (int i = 0; i < queries.length; i++) {
+            assertArrayEquals(index.withinPpm(queries[i], 20.0), batch[i]);
+        }
+        assertEquals(0, index.range(500.0, 400.0).length);
+        assertEquals(scan(values, 400.0, 500.0).length, index.count(400.0,
+            500.0));
+    }
+
+    @Test
+    public void testFeatureIndex() {
+        List<SmallMoleculeFeature> features = Arrays.asList(
+            new SmallMoleculeFeature().smfId(1).
+                expMassToCharge(300.0),
+            new SmallMoleculeFeature().smfId(2),
+            new SmallMoleculeFeature().smfId(3).
+                expMassToCharge(200.0),
+            new SmallMoleculeFeature().smfId(4).
+                expMassToCharge(300.001));
+        MassIndex index = MassIndex.ofFeatures(features);
+        assertEquals(3, index.size());
+        assertArrayEquals(new int[]{0, 3}, index.withinPpm(300.0, 5.0));
+        assertArrayEquals(new int[]{0}, index.withinDa(300.0, 0.0005));
+        assertArrayEquals(new int[]{2, 0, 3}, index.range(0.0, 1000.0));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class RetentionTimeIndexTest {
+
+    private static int[] scan(double[] starts, double[] ends, double lower,
+        double upper) {
+        return IntStream.range(0, starts.length).
+            filter((i) -> starts[i] <= upper && lower <= ends[i]).
+            toArray();
+    }
+
+    private static int[] sorted(int[] rows) {
+        int[] copy = rows.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    @Test
+    public void testOverlapMatchesScan() {
+        Random random = new Random(42);
+        for (int n = 0; n < 300; n += 7) {
+            double[] starts = new double[n];
+            double[] ends = new double[n];
+            for (int i = 0; i < n; i++) {
+                starts[i] = random.nextDouble() * 1000.0;
+                ends[i] = starts[i] + random.nextDouble() * (i % 5 == 0 ? 200.0
+                    : 20.0);
+            }
+            RetentionTimeIndex index = RetentionTimeIndex.of(starts, ends);
+            assertEquals(n, index.size());
+            for (int q = 0; q < 50; q++) {
+                double lower = random.nextDouble() * 1100.0 - 50.0;
+                double upper = lower + random.nextDouble() * 30.0;
+                assertArrayEquals(scan(starts, ends, lower, upper), sorted(
+                    index.overlap(lower, upper)));
+                assertArrayEquals(scan(starts, ends, lower, lower), sorted(
+                    index.stab(lower)));
+            }
+        }
+    }
+
+    @Test
+    public void testFeatureIndex() {
+        List<SmallMoleculeFeature> features = Arrays.asList(
+            new SmallMoleculeFeature().smfId(1).
+                expMassToCharge(300.0).
+                retentionTimeInSecondsStart(10.0).
+                retentionTimeInSecondsEnd(20.0),
+            new SmallMoleculeFeature().smfId(2).
+                expMassToCharge(300.0).
+                retentionTimeInSeconds(50.0),
+            new SmallMoleculeFeature().smfId(3).
+                expMassToCharge(300.0),
+            new SmallMoleculeFeature().smfId(4).
+                expMassToCharge(500.0).
+                retentionTimeInSeconds(15.0).
+                retentionTimeInSecondsEnd(25.0));
+        RetentionTimeIndex rtIndex = RetentionTimeIndex.ofFeatures(features);
+        assertEquals(3, rtIndex.size());
+        assertArrayEquals(new int[]{0, 3}, rtIndex.stab(18.0));
+        assertArrayEquals(new int[]{1}, rtIndex.stab(50.0));
+        assertArrayEquals(new int[0], rtIndex.stab(30.0));
+        assertFalse(rtIndex.overlaps(2, 0.0, 100.0));
+
+        FeatureIndex index = FeatureIndex.ofFeatures(features);
+        assertArrayEquals(new int[]{0}, index.withinPpm(300.0, 10.0, 12.0));
+        assertArrayEquals(new int[]{0, 1}, index.box(299.0, 301.0, 0.0, 60.0));
+        assertArrayEquals(new int[]{0, 3}, index.box(0.0, 1000.0, 20.0, 20.0));
+    }
+}
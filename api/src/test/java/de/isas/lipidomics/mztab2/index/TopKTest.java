@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.lipidomics.mztab2.index;
+
+import de.isas.lipidomics.mztab2.index.TopK.Order;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class TopKTest {
+
+    @Test
+    public void testSelect() {
+        double[] scores = {3, Double.NaN, 1, 2, 1, 5};
+        assertArrayEquals(new int[]{2, 4, 3}, TopK.select(scores, 3,
+            Order.ASCENDING));
+        assertArrayEquals(new int[]{5, 0}, TopK.select(scores, 2,
+            Order.DESCENDING));
+        assertArrayEquals(new int[]{2, 4, 3, 0, 5}, TopK.select(scores, 10,
+            Order.ASCENDING));
+        assertArrayEquals(new int[0], TopK.select(scores, 0, Order.ASCENDING));
+        assertArrayEquals(new int[]{4, 0}, TopK.select(scores, new int[]{0, 1,
+            4}, 5, Order.ASCENDING));
+    }
+
+    @Test
+    public void testSelectRandom() {
+        Random random = new Random(42);
+        double[] scores = new double[10000];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextInt(500);
+        }
+        int[] expected = IntStream.range(0, scores.length).
+            boxed().
+            sorted(Comparator.comparingDouble((Integer row) -> -scores[row]).
+                thenComparing(Comparator.naturalOrder())).
+            limit(50).
+            mapToInt(Integer::intValue).
+            toArray();
+        assertArrayEquals(expected, TopK.select(scores, 50, Order.DESCENDING));
+        List<Integer> rows = IntStream.range(0, scores.length).
+            boxed().
+            collect(Collectors.toList());
+        List<Integer> sequential = rows.stream().
+            collect(TopK.collector((Integer row) -> scores[row], 50,
+                Order.DESCENDING));
+        List<Integer> parallel = rows.parallelStream().
+            collect(TopK.collector((Integer row) -> scores[row], 50,
+                Order.DESCENDING));
+        assertArrayEquals(expected, sequential.stream().
+            mapToInt(Integer::intValue).
+            toArray());
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void testEvidencesPerFeature() {
+        List<SmallMoleculeSummary> summaries = Arrays.asList(
+            new SmallMoleculeSummary().smlId(1).
+                smfIdRefs(Arrays.asList(1, 2)).
+                bestIdConfidenceValue(0.5),
+            new SmallMoleculeSummary().smlId(2));
+        List<SmallMoleculeFeature> features = Arrays.asList(
+            new SmallMoleculeFeature().smfId(1).
+                smeIdRefs(Arrays.asList(1, 2, 3)),
+            new SmallMoleculeFeature().smfId(2).
+                smeIdRefs(Arrays.asList(4)));
+        List<SmallMoleculeEvidence> evidences = Arrays.asList(
+            new SmallMoleculeEvidence().smeId(1).
+                rank(3).
+                idConfidenceMeasure(Arrays.asList(0.2, 10.0)),
+            new SmallMoleculeEvidence().smeId(2).
+                rank(1).
+                idConfidenceMeasure(Arrays.asList(0.9)),
+            new SmallMoleculeEvidence().smeId(3).
+                rank(2),
+            new SmallMoleculeEvidence().smeId(4).
+                rank(1).
+                idConfidenceMeasure(Arrays.asList(0.95, 1.0)));
+        JoinGraph graph = JoinGraph.of(summaries, features, evidences);
+        double[] ranks = TopK.evidenceRanks(evidences);
+        int[][] perFeature = TopK.evidencesPerFeature(graph, ranks, 2,
+            Order.ASCENDING);
+        assertArrayEquals(new int[]{1, 2}, perFeature[0]);
+        assertArrayEquals(new int[]{3}, perFeature[1]);
+        int[][] perSummary = TopK.evidencesPerSummary(graph,
+            TopK.evidenceConfidence(evidences, 0), 2, Order.DESCENDING);
+        assertArrayEquals(new int[]{3, 1}, perSummary[0]);
+        assertArrayEquals(new int[0], perSummary[1]);
+        assertArrayEquals(new double[]{10, Double.NaN, Double.NaN, 1}, TopK.
+            evidenceConfidence(evidences, 1), 0);
+        assertArrayEquals(new double[]{0.5, Double.NaN}, TopK.
+            summaryBestConfidence(summaries), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScoreLengthMismatch() {
+        JoinGraph graph = JoinGraph.of(null, null, Arrays.asList(
+            new SmallMoleculeEvidence().smeId(1)));
+        TopK.evidencesPerFeature(graph, new double[2], 1, Order.ASCENDING);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.isas.lipidomics.mztab2.columnar.DoubleArrayList;
+import de.isas.lipidomics.mztab2.columnar.IntArrayList;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Checks the primitive accessors of the model classes generated by the
+ * <code>primitive-model</code> profile. The tests are skipped for the default
+ * model, unless the system property <code>mztab.primitiveModel</code> is set
+ * to <code>true</code>, as done by the profile.
+ *
+ * @author nilshoffmann
+ */
+public class PrimitiveModelTest {
+
+    private static final String PRIMITIVE_MODEL = "mztab.primitiveModel";
+
+    private static boolean hasPrimitiveAccessors() {
+        try {
+            SmallMoleculeFeature.class.getMethod("getAbundanceAssayDouble",
+                int.class);
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    private static void assumePrimitiveModel() {
+        boolean primitive = hasPrimitiveAccessors();
+        if (Boolean.getBoolean(PRIMITIVE_MODEL)) {
+            Assert.assertTrue(
+                "The model was not generated with primitive numeric lists!",
+                primitive);
+        }
+        Assume.assumeTrue(primitive);
+    }
+
+    private static Object invoke(Object target, String name,
+        Class<?>[] types, Object... args) throws Exception {
+        Method method = target.getClass().
+            getMethod(name, types);
+        return method.invoke(target, args);
+    }
+
+    private static SmallMoleculeFeature createFeature() {
+        return new SmallMoleculeFeature().smfId(1).
+            expMassToCharge(478.3).
+            smeIdRefs(Arrays.asList(1, null, 3)).
+            abundanceAssay(Arrays.asList(1.5, null, Double.NaN, 4.0));
+    }
+
+    @Test
+    public void testPrimitiveAccessors() throws Exception {
+        assumePrimitiveModel();
+        SmallMoleculeFeature feature = new SmallMoleculeFeature();
+        invoke(feature, "addAbundanceAssayItem", new Class<?>[]{double.class},
+            1.5);
+        feature.addAbundanceAssayItem(null);
+        invoke(feature, "addAbundanceAssayItem", new Class<?>[]{double.class},
+            4.0);
+        Assert.assertTrue(feature.getAbundanceAssay() instanceof DoubleArrayList);
+        Assert.assertEquals(Arrays.asList(1.5, null, 4.0), feature.
+            getAbundanceAssay());
+        Assert.assertEquals(3, invoke(feature, "getAbundanceAssaySize",
+            new Class<?>[0]));
+        Assert.assertEquals(4.0, (Double) invoke(feature,
+            "getAbundanceAssayDouble", new Class<?>[]{int.class}, 2), 0.0);
+        Assert.assertTrue(Double.isNaN((Double) invoke(feature,
+            "getAbundanceAssayDouble", new Class<?>[]{int.class}, 1)));
+        double[] values = (double[]) invoke(feature, "getAbundanceAssayAsArray",
+            new Class<?>[0]);
+        Assert.assertEquals(3, values.length);
+        Assert.assertTrue(Double.isNaN(values[1]));
+
+        invoke(feature, "addSmeIdRefsItem", new Class<?>[]{int.class}, 7);
+        feature.addSmeIdRefsItem(null);
+        Assert.assertTrue(feature.getSmeIdRefs() instanceof IntArrayList);
+        Assert.assertEquals(Arrays.asList(7, null), feature.getSmeIdRefs());
+        Assert.assertEquals(7, invoke(feature, "getSmeIdRefsInt",
+            new Class<?>[]{int.class}, 0));
+        Assert.assertArrayEquals(new int[]{7, 0}, (int[]) invoke(feature,
+            "getSmeIdRefsAsArray", new Class<?>[0]));
+        // the accessors also work for lists set from outside
+        SmallMoleculeFeature other = createFeature();
+        Assert.assertEquals(4, invoke(other, "getAbundanceAssaySize",
+            new Class<?>[0]));
+        Assert.assertEquals(3, invoke(other, "getSmeIdRefsInt",
+            new Class<?>[]{int.class}, 2));
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        SmallMoleculeFeature feature = createFeature();
+        String json = mapper.writeValueAsString(feature);
+        SmallMoleculeFeature read = mapper.readValue(json,
+            SmallMoleculeFeature.class);
+        Assert.assertEquals(feature.getSmfId(), read.getSmfId());
+        Assert.assertEquals(feature.getExpMassToCharge(), read.
+            getExpMassToCharge());
+        Assert.assertEquals(feature.getSmeIdRefs(), read.getSmeIdRefs());
+        Assert.assertEquals(feature.getAbundanceAssay(), read.
+            getAbundanceAssay());
+        Assert.assertEquals(json, mapper.writeValueAsString(read));
+        if (hasPrimitiveAccessors()) {
+            Assert.assertTrue(read.getAbundanceAssay() instanceof DoubleArrayList);
+            Assert.assertTrue(read.getSmeIdRefs() instanceof IntArrayList);
+        } else {
+            Assert.assertFalse(
+                "The model was not generated with primitive numeric lists!",
+                Boolean.getBoolean(PRIMITIVE_MODEL));
+        }
+    }
+}
@@ -15,11 +15,10 @@
  */
 package de.isas.mztab2.cli;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import de.isas.mztab2.io.MzTabFileParser;
-import de.isas.mztab2.io.MzTabNonValidatingWriter;
-import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.io.MzTabIndex;
+import de.isas.mztab2.io.MzTabJsonReader;
+import de.isas.mztab2.io.MzTabJsonWriter;
 import de.isas.mztab2.model.ValidationMessage;
 import static de.isas.mztab2.model.ValidationMessage.MessageTypeEnum.ERROR;
 import static de.isas.mztab2.model.ValidationMessage.MessageTypeEnum.WARN;
@@ -28,13 +27,18 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import javax.xml.bind.JAXBException;
 import org.apache.commons.cli.*;
@@ -119,6 +123,8 @@ public class MZTabCommandLine {
         String serializeOpt = addSerializeOption(options);
         String deserializeOpt = addDeserializeOption(options);
         String checkSemanticOpt = addCheckSemanticOption(options);
+        String indexOpt = addIndexOption(options);
+        String ruleThreadsOpt = addRuleThreadsOption(options);
 
         //TODO add option to set whether extra terms not defined in mapping file create a warning or error
 //        options.addOption()
@@ -131,10 +137,12 @@ public class MZTabCommandLine {
             handleMsgOption(line, msgOpt, typeMap);
         } else if (line.hasOption(versionOpt)) {
             LOGGER.info(getAppInfo());
+        } else if (line.hasOption(indexOpt)) {
+            handleIndexOption(line, indexOpt);
         } else {
             boolean hadErrorsOrWarnings = handleValidationOptions(line, outOpt,
                 levelOpt, serializeOpt,
-                deserializeOpt, checkOpt, checkSemanticOpt);
+                deserializeOpt, checkOpt, checkSemanticOpt, ruleThreadsOpt);
             if (hadErrorsOrWarnings) {
                 System.exit(1);
             }
@@ -165,6 +173,13 @@ public class MZTabCommandLine {
         return checkSemanticOpt;
     }
 
+    protected static String addRuleThreadsOption(Options options) {
+        String ruleThreadsOpt = "ruleThreads";
+        options.addOption(null, ruleThreadsOpt, true,
+            "Example: --ruleThreads 4. Evaluate the cv mapping rules of the semantic validation concurrently on the given number of threads. Messages are reported in the same order as for the default, sequential evaluation.");
+        return ruleThreadsOpt;
+    }
+
     protected static String addDeserializeOption(Options options) {
         String deserializeOpt = "fromJson";
         options.addOption(null, deserializeOpt, false,
@@ -179,6 +194,13 @@ public class MZTabCommandLine {
         return serializeOpt;
     }
 
+    protected static String addIndexOption(Options options) {
+        String indexOpt = "index";
+        options.addOption(null, indexOpt, true,
+            "Example: --index /path/to/file.mztab. Will write a random access index of the sections and rows of the uncompressed mzTab file to /path/to/file.mztab.idx.");
+        return indexOpt;
+    }
+
     protected static String addLevelOption(Options options) {
         String levelOpt = "l";
         options.addOption(levelOpt, "level", true,
@@ -217,7 +239,8 @@ public class MZTabCommandLine {
 
     protected static boolean handleValidationOptions(CommandLine line,
         String outOpt, String levelOpt, String serializeOpt,
-        String deserializeOpt, String checkOpt, String checkSemanticOpt) throws JAXBException, IllegalArgumentException, URISyntaxException {
+        String deserializeOpt, String checkOpt, String checkSemanticOpt,
+        String ruleThreadsOpt) throws JAXBException, IllegalArgumentException, URISyntaxException {
         File outFile = null;
         if (line.hasOption(outOpt)) {
             outFile = new File(line.getOptionValue(outOpt));
@@ -249,7 +272,7 @@ public class MZTabCommandLine {
                 deserializeFromJson = true;
             }
             return handleValidation(line, checkOpt, out, level,
-                checkSemanticOpt,
+                checkSemanticOpt, ruleThreadsOpt,
                 serializeToJson, deserializeFromJson);
         } catch (IOException ex) {
             LOGGER.error(
@@ -258,6 +281,21 @@ public class MZTabCommandLine {
         }
     }
 
+    protected static void handleIndexOption(CommandLine line, String indexOpt) throws IOException {
+        File inFile = new File(line.getOptionValue(indexOpt).
+            trim());
+        LOGGER.info("Indexing mztab file: {}", inFile.getAbsolutePath());
+        MzTabIndex index = MzTabIndex.build(inFile.toPath());
+        Path indexFile = MzTabIndex.sidecarPath(inFile.toPath());
+        index.write(indexFile);
+        LOGGER.info(
+            "Wrote index of {} summary, {} feature and {} evidence rows to {}",
+            index.getSmallMoleculeSummaryIndex().
+                size(), index.getSmallMoleculeFeatureIndex().
+                size(), index.getSmallMoleculeEvidenceIndex().
+                size(), indexFile);
+    }
+
     protected static void handleMsgOption(CommandLine line, String msgOpt,
         MZTabErrorTypeMap typeMap) throws NumberFormatException {
         String[] values = line.getOptionValues(msgOpt);
@@ -274,7 +312,7 @@ public class MZTabCommandLine {
 
     protected static boolean handleValidation(CommandLine line, String checkOpt,
         PrintStream outFile, MZTabErrorType.Level level, String checkSemanticOpt,
-        boolean toJson, boolean fromJson) throws URISyntaxException, JAXBException, IllegalArgumentException, IOException {
+        String ruleThreadsOpt, boolean toJson, boolean fromJson) throws URISyntaxException, JAXBException, IllegalArgumentException, IOException {
         boolean errorsOrWarnings = false;
         if (line.hasOption(checkOpt)) {
             String value = line.getOptionValue(checkOpt);
@@ -282,21 +320,32 @@ public class MZTabCommandLine {
                 throw new IllegalArgumentException("No input file provided for validation!");
             }
             File inFile = new File(value.trim());
+            MzTabFileParser mzTabParser = null;
+            MZTabErrorList errorList;
             if (fromJson) {
-                File tmpFile = new File(inFile.getParentFile(),
+                File mzTabFile = new File(inFile.getParentFile(),
                     inFile.getName() + ".mztab");
-                MzTabNonValidatingWriter w = new MzTabNonValidatingWriter();
-                ObjectMapper mapper = new ObjectMapper();
-                MzTab mzTab = mapper.readValue(inFile, MzTab.class);
-                LOGGER.info("Writing JSON as mzTab to file: {}", tmpFile.
+                LOGGER.info(
+                    "Beginning validation of mztab JSON file: {}, writing mzTab to: {}",
+                    inFile.getAbsolutePath(), mzTabFile.getAbsolutePath());
+                // the converted mzTab is parsed as it is written, it is not read again
+                try (OutputStream mzTabCopy = new BufferedOutputStream(Files.
+                    newOutputStream(mzTabFile.toPath()))) {
+                    mzTabParser = new MzTabFileParser(new MzTabJsonReader().
+                        openAsMzTab(inFile.toPath(), mzTabCopy));
+                    errorList = mzTabParser.parse(outFile, level);
+                } finally {
+                    if (mzTabParser == null || mzTabParser.getMZTabFile() == null) {
+                        Files.deleteIfExists(mzTabFile.toPath());
+                    }
+                }
+                inFile = mzTabFile;
+            } else {
+                LOGGER.info("Beginning validation of mztab file: {}", inFile.
                     getAbsolutePath());
-                w.write(tmpFile.toPath(), mzTab);
-                inFile = tmpFile;
+                mzTabParser = new MzTabFileParser(inFile);
+                errorList = mzTabParser.parse(outFile, level);
             }
-            LOGGER.info("Beginning validation of mztab file: {}", inFile.
-                getAbsolutePath());
-            MzTabFileParser mzTabParser = new MzTabFileParser(inFile);
-            MZTabErrorList errorList = mzTabParser.parse(outFile, level);
             if (!errorList.isEmpty()) {
                 long nErrorsOrWarnings = errorList.getErrorList().
                     stream().
@@ -314,18 +363,19 @@ public class MZTabCommandLine {
                 LOGGER.error(
                     "There were " + errorList.size() + " validation messages including " + nErrorsOrWarnings + " warnings or errors during validation of your file, please check the output for details!");
             }
-            if (toJson) {
+            if (toJson && mzTabParser.getMZTabFile() == null) {
+                LOGGER.error(
+                    "Not writing json, mzTab file could not be parsed!");
+            } else if (toJson) {
                 File jsonFile = new File(inFile.getName() + ".json");
                 LOGGER.error(
                     "Writing mzTab object as json to " + jsonFile.
                         getAbsolutePath());
-                ObjectMapper objectMapper = new ObjectMapper().enable(
-                    SerializationFeature.INDENT_OUTPUT);
-                objectMapper.
-                    writeValue(jsonFile, mzTabParser.getMZTabFile());
+                new MzTabJsonWriter(true).write(jsonFile.toPath(), mzTabParser.
+                    getMZTabFile());
             }
             errorsOrWarnings = errorsOrWarnings || handleSemanticValidation(line,
-                checkSemanticOpt, inFile, outFile,
+                checkSemanticOpt, ruleThreadsOpt, inFile, outFile,
                 mzTabParser, level);
             LOGGER.info("Finished validation!");
         }
@@ -333,7 +383,8 @@ public class MZTabCommandLine {
     }
 
     protected static boolean handleSemanticValidation(CommandLine line,
-        String checkSemanticOpt, File inFile, PrintStream outFile,
+        String checkSemanticOpt, String ruleThreadsOpt, File inFile,
+        PrintStream outFile,
         MzTabFileParser mzTabParser,
         MZTabErrorType.Level level) throws JAXBException, MalformedURLException, URISyntaxException {
         boolean errorsOrWarnings = false;
@@ -362,10 +413,33 @@ public class MZTabCommandLine {
                 "Beginning semantic validation of mztab file: " + inFile.
                     getAbsolutePath() + " with mapping file: " + mappingFile.
                     toASCIIString());
-            CvMappingValidator cvMappingValidator = CvMappingValidator.of(
-                mappingFile.toURL(), true);
-            List<ValidationMessage> validationMessages = cvMappingValidator.
-                validate(mzTabParser.getMZTabFile()).
+            int ruleThreads = 1;
+            if (line.hasOption(ruleThreadsOpt)) {
+                ruleThreads = Integer.parseInt(line.getOptionValue(
+                    ruleThreadsOpt).
+                    trim());
+                if (ruleThreads < 1) {
+                    throw new IllegalArgumentException(
+                        "Number of rule threads must be positive, was " + ruleThreads);
+                }
+                LOGGER.info("Evaluating cv mapping rules on {} threads",
+                    ruleThreads);
+            }
+            ExecutorService ruleExecutor = ruleThreads > 1 ? Executors.
+                newFixedThreadPool(ruleThreads) : null;
+            List<ValidationMessage> allMessages;
+            try {
+                CvMappingValidator cvMappingValidator = CvMappingValidator.of(
+                    mappingFile.toURL(), true).
+                    withRuleExecutor(ruleExecutor);
+                allMessages = cvMappingValidator.validate(mzTabParser.
+                    getMZTabFile());
+            } finally {
+                if (ruleExecutor != null) {
+                    ruleExecutor.shutdown();
+                }
+            }
+            List<ValidationMessage> validationMessages = allMessages.
                 stream().
                 filter((message) ->
                 {
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import de.isas.mztab2.model.Metadata;
+import uk.ac.ebi.pride.jmztab2.model.MZTabColumnFactory;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorList;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabDataLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+import uk.ac.ebi.pride.jmztab2.utils.parser.PositionMapping;
+
+/**
+ * Creates the data line parser of a section, matching the constructors of
+ * {@link uk.ac.ebi.pride.jmztab2.utils.parser.SMLLineParser},
+ * {@link uk.ac.ebi.pride.jmztab2.utils.parser.SMFLineParser} and
+ * {@link uk.ac.ebi.pride.jmztab2.utils.parser.SMELineParser}.
+ *
+ * @param <T> the type of domain object the parser creates.
+ * @author nilshoffmann
+ */
+@FunctionalInterface
+interface DataLineParserFactory<T> {
+
+    MZTabDataLineParser<T> create(MZTabParserContext context,
+        MZTabColumnFactory factory, PositionMapping positionMapping,
+        Metadata metadata, MZTabErrorList errorList);
+}
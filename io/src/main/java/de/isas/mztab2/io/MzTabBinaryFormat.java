@@ -0,0 +1,735 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import de.isas.lipidomics.mztab2.columnar.Dictionary;
+import de.isas.mztab2.model.Comment;
+import de.isas.mztab2.model.IndexedElement;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MsRun;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.OptColumnMapping;
+import de.isas.mztab2.model.Parameter;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import de.isas.mztab2.model.SpectraRef;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Constants and encoding primitives of the binary mzTab snapshot format,
+ * written by {@link MzTabBinaryWriter} and read by {@link MzTabBinaryReader}.
+ * </p>
+ *
+ * <p>
+ * A snapshot starts with the magic bytes <code>MZTB</code>, the format version
+ * and a fingerprint of the model classes, followed by the metadata as JSON,
+ * the file comments and the small molecule summary, feature and evidence
+ * sections. Sections are stored column by column. Integers are stored as
+ * zig-zag varints, strings and parameters as varint dictionary codes and
+ * doubles as raw little endian blocks, with separate bitmaps for null values.
+ * A string or parameter is stored in full where it occurs first and assigned
+ * the next dictionary code, so that snapshots are written and read in a single
+ * pass, without buffering the sections.</p>
+ *
+ * @author nilshoffmann
+ */
+final class MzTabBinaryFormat {
+
+    static final byte[] MAGIC = new byte[]{'M', 'Z', 'T', 'B'};
+    static final int FORMAT_VERSION = 2;
+    static final long MODEL_FINGERPRINT = modelFingerprint();
+
+    /**
+     * The number of doubles converted at once.
+     */
+    private static final int DOUBLE_CHUNK_SIZE = 8192;
+    /**
+     * The maximum number of values in a column, limited by the array size.
+     */
+    private static final int MAX_VALUES = Integer.MAX_VALUE - 8;
+    private static final long NULL_VALUE = 0;
+    private static final long NEW_VALUE = 1;
+    private static final long FIRST_CODE = 2;
+
+    private MzTabBinaryFormat() {
+    }
+
+    /**
+     * Calculates a fingerprint of the property names of all model classes
+     * stored in a snapshot. Snapshots written for a different version of the
+     * swagger model are rejected by the reader.
+     */
+    private static long modelFingerprint() {
+        StringBuilder sb = new StringBuilder();
+        appendProperties(sb, MzTab.class, MzTab.Properties.values());
+        appendProperties(sb, Metadata.class, Metadata.Properties.values());
+        appendProperties(sb, IndexedElement.class, IndexedElement.Properties.
+            values());
+        appendProperties(sb, Parameter.class, Parameter.Properties.values());
+        appendProperties(sb, MsRun.class, MsRun.Properties.values());
+        appendProperties(sb, SpectraRef.class, SpectraRef.Properties.values());
+        appendProperties(sb, OptColumnMapping.class, OptColumnMapping.Properties.
+            values());
+        appendProperties(sb, Comment.class, Comment.Properties.values());
+        appendProperties(sb, SmallMoleculeSummary.class,
+            SmallMoleculeSummary.Properties.values());
+        appendProperties(sb, SmallMoleculeFeature.class,
+            SmallMoleculeFeature.Properties.values());
+        appendProperties(sb, SmallMoleculeEvidence.class,
+            SmallMoleculeEvidence.Properties.values());
+        CRC32 crc = new CRC32();
+        byte[] bytes = sb.toString().
+            getBytes(StandardCharsets.UTF_8);
+        crc.update(bytes, 0, bytes.length);
+        return ((long) bytes.length << 32) | crc.getValue();
+    }
+
+    private static void appendProperties(StringBuilder sb, Class<?> type,
+        Object[] properties) {
+        sb.append(type.getSimpleName()).
+            append(':');
+        for (Object property : properties) {
+            sb.append(property).
+                append(',');
+        }
+        sb.append(';');
+    }
+
+    /**
+     * Writes the rows of a section.
+     *
+     * @param <T> the row type.
+     */
+    @FunctionalInterface
+    interface SectionWriter<T> {
+
+        void write(Output out, List<T> rows) throws IOException;
+    }
+
+    /**
+     * Reads the rows of a section.
+     *
+     * @param <T> the row type.
+     */
+    @FunctionalInterface
+    interface SectionReader<T> {
+
+        List<T> read(Input in) throws IOException;
+    }
+
+    /**
+     * Encodes the rows as a self-contained block with its own dictionaries.
+     */
+    static <T> byte[] encodeBlock(List<T> rows, SectionWriter<T> writer) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        Output out = new Output(block, new Dictionary<>(), new Dictionary<>());
+        writer.write(out, rows);
+        out.flush();
+        return block.toByteArray();
+    }
+
+    /**
+     * Decodes a block written by {@link #encodeBlock(List, SectionWriter)}.
+     */
+    static <T> List<T> decodeBlock(byte[] block, Map<Integer, MsRun> msRuns,
+        SectionReader<T> reader) throws IOException {
+        Input in = new Input(new ByteArrayInputStream(block));
+        in.setMsRuns(msRuns);
+        return reader.read(in);
+    }
+
+    private static int bitmapSize(int length) {
+        return (int) ((length + 7L) / 8);
+    }
+
+    static <T, V> List<V> column(List<T> rows, Function<T, V> getter) {
+        List<V> column = new ArrayList<>(rows.size());
+        for (T row : rows) {
+            column.add(getter.apply(row));
+        }
+        return column;
+    }
+
+    /**
+     * Encodes values into an output stream, collecting strings and parameters
+     * in dictionaries.
+     */
+    static final class Output {
+
+        private final DataOutputStream out;
+        private final Dictionary<String> strings;
+        private final Dictionary<Parameter> parameters;
+
+        Output(OutputStream out, Dictionary<String> strings,
+            Dictionary<Parameter> parameters) {
+            this.out = new DataOutputStream(out);
+            this.strings = strings;
+            this.parameters = parameters;
+        }
+
+        void writeBytes(byte[] bytes) throws IOException {
+            writeVarInt(bytes.length);
+            out.write(bytes);
+        }
+
+        void writeRaw(byte[] bytes) throws IOException {
+            out.write(bytes);
+        }
+
+        void writeLong(long value) throws IOException {
+            out.writeLong(value);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            writeVarLong(value & 0xffffffffL);
+        }
+
+        void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7fL) != 0) {
+                out.write((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        /**
+         * Writes a nullable integer as varint, 0 for null, otherwise the
+         * zig-zag encoded value plus one.
+         */
+        void writeNullableInt(Integer value) throws IOException {
+            if (value == null) {
+                writeVarLong(0);
+            } else {
+                long v = value;
+                writeVarLong(((v << 1) ^ (v >> 63)) + 1);
+            }
+        }
+
+        /**
+         * Writes a nullable count as varint, 0 for null, otherwise the count
+         * plus one.
+         */
+        void writeLength(List<?> list) throws IOException {
+            writeVarLong(list == null ? 0 : list.size() + 1L);
+        }
+
+        /**
+         * Writes a string as varint, 0 for null, 1 followed by the string if
+         * it occurs first, otherwise its dictionary code plus two.
+         */
+        void writeString(String value) throws IOException {
+            int size = strings.size();
+            int code = strings.encode(value);
+            if (code == Dictionary.NULL_CODE) {
+                writeVarLong(NULL_VALUE);
+            } else if (code == size) {
+                writeVarLong(NEW_VALUE);
+                writeBytes(value.getBytes(StandardCharsets.UTF_8));
+            } else {
+                writeVarLong(code + FIRST_CODE);
+            }
+        }
+
+        /**
+         * Writes a parameter like {@link #writeString(String)}, followed by
+         * its properties if it occurs first.
+         */
+        void writeParameter(Parameter value) throws IOException {
+            int size = parameters.size();
+            int code = parameters.encode(value);
+            if (code == Dictionary.NULL_CODE) {
+                writeVarLong(NULL_VALUE);
+            } else if (code == size) {
+                writeVarLong(NEW_VALUE);
+                writeNullableInt(value.getId());
+                writeString(value.getElementType());
+                writeString(value.getCvLabel());
+                writeString(value.getCvAccession());
+                writeString(value.getName());
+                writeString(value.getValue());
+            } else {
+                writeVarLong(code + FIRST_CODE);
+            }
+        }
+
+        void writeBitmap(BitSet bits, int length) throws IOException {
+            byte[] bytes = new byte[bitmapSize(length)];
+            for (int i = bits.nextSetBit(0); i >= 0 && i < length; i = bits.
+                nextSetBit(i + 1)) {
+                bytes[i >> 3] |= 1 << (i & 7);
+            }
+            out.write(bytes);
+        }
+
+        void writeDoubles(double[] values, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.min(length,
+                DOUBLE_CHUNK_SIZE) * Double.BYTES).
+                order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer doubles = buffer.asDoubleBuffer();
+            for (int offset = 0; offset < length; offset += DOUBLE_CHUNK_SIZE) {
+                int n = Math.min(DOUBLE_CHUNK_SIZE, length - offset);
+                doubles.clear();
+                doubles.put(values, offset, n);
+                out.write(buffer.array(), 0, n * Double.BYTES);
+            }
+        }
+
+        void writeIntColumn(List<Integer> column) throws IOException {
+            for (Integer value : column) {
+                writeNullableInt(value);
+            }
+        }
+
+        void writeStringColumn(List<String> column) throws IOException {
+            for (String value : column) {
+                writeString(value);
+            }
+        }
+
+        void writeParameterColumn(List<Parameter> column) throws IOException {
+            for (Parameter value : column) {
+                writeParameter(value);
+            }
+        }
+
+        void writeDoubleColumn(List<Double> column) throws IOException {
+            BitSet present = new BitSet(column.size());
+            double[] values = new double[column.size()];
+            int n = 0;
+            for (int i = 0; i < column.size(); i++) {
+                Double value = column.get(i);
+                if (value != null) {
+                    present.set(i);
+                    values[n++] = value;
+                }
+            }
+            writeBitmap(present, column.size());
+            writeDoubles(values, n);
+        }
+
+        void writeIntListColumn(List<List<Integer>> column) throws IOException {
+            for (List<Integer> list : column) {
+                writeLength(list);
+                if (list != null) {
+                    for (Integer value : list) {
+                        writeNullableInt(value);
+                    }
+                }
+            }
+        }
+
+        void writeStringListColumn(List<List<String>> column) throws IOException {
+            for (List<String> list : column) {
+                writeLength(list);
+                if (list != null) {
+                    for (String value : list) {
+                        writeString(value);
+                    }
+                }
+            }
+        }
+
+        void writeDoubleListColumn(List<List<Double>> column) throws IOException {
+            long count = 0;
+            for (List<Double> list : column) {
+                writeLength(list);
+                if (list != null) {
+                    count += list.size();
+                }
+            }
+            if (count > MAX_VALUES) {
+                throw new IOException(
+                    "Too many values in column: " + count);
+            }
+            int total = (int) count;
+            BitSet present = new BitSet(total);
+            double[] values = new double[total];
+            int i = 0;
+            int n = 0;
+            for (List<Double> list : column) {
+                if (list != null) {
+                    for (Double value : list) {
+                        if (value != null) {
+                            present.set(i);
+                            values[n++] = value;
+                        }
+                        i++;
+                    }
+                }
+            }
+            writeBitmap(present, total);
+            writeDoubles(values, n);
+        }
+
+        void writeOptColumn(List<List<OptColumnMapping>> column) throws IOException {
+            for (List<OptColumnMapping> list : column) {
+                writeLength(list);
+                if (list != null) {
+                    for (OptColumnMapping opt : list) {
+                        writeString(opt.getIdentifier());
+                        writeParameter(opt.getParam());
+                        writeString(opt.getValue());
+                    }
+                }
+            }
+        }
+
+        void writeCommentColumn(List<List<Comment>> column) throws IOException {
+            for (List<Comment> list : column) {
+                writeComments(list);
+            }
+        }
+
+        void writeComments(List<Comment> comments) throws IOException {
+            writeLength(comments);
+            if (comments != null) {
+                for (Comment comment : comments) {
+                    writeString(comment.getMsg());
+                    writeNullableInt(comment.getLineNumber());
+                }
+            }
+        }
+
+        void writeSpectraRefColumn(List<List<SpectraRef>> column) throws IOException {
+            for (List<SpectraRef> list : column) {
+                writeLength(list);
+                if (list != null) {
+                    for (SpectraRef ref : list) {
+                        writeNullableInt(ref.getMsRun() == null ? null : ref.
+                            getMsRun().
+                            getId());
+                        writeString(ref.getReference());
+                    }
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * Decodes values written by {@link Output} from an input stream.
+     */
+    static final class Input {
+
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private final List<Parameter> parameters = new ArrayList<>();
+        private Map<Integer, MsRun> msRuns;
+
+        Input(InputStream in) {
+            this.in = new DataInputStream(in);
+        }
+
+        void setMsRuns(Map<Integer, MsRun> msRuns) {
+            this.msRuns = msRuns;
+        }
+
+        byte[] readBytes() throws IOException {
+            byte[] bytes = new byte[readVarInt()];
+            in.readFully(bytes);
+            return bytes;
+        }
+
+        void readRaw(byte[] bytes) throws IOException {
+            in.readFully(bytes);
+        }
+
+        long readLong() throws IOException {
+            return in.readLong();
+        }
+
+        int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Invalid length or count: " + value);
+            }
+            return (int) value;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint!");
+        }
+
+        Integer readNullableInt() throws IOException {
+            long value = readVarLong();
+            if (value == 0) {
+                return null;
+            }
+            value--;
+            return (int) ((value >>> 1) ^ -(value & 1));
+        }
+
+        /**
+         * Returns the length of a list, or -1 for a null list.
+         */
+        int readLength() throws IOException {
+            return readVarInt() - 1;
+        }
+
+        String readString() throws IOException {
+            long value = readVarLong();
+            if (value == NULL_VALUE) {
+                return null;
+            }
+            if (value == NEW_VALUE) {
+                String string = new String(readBytes(), StandardCharsets.UTF_8);
+                strings.add(string);
+                return string;
+            }
+            long code = value - FIRST_CODE;
+            if (code < 0 || code >= strings.size()) {
+                throw new IOException("Invalid string code: " + code);
+            }
+            return strings.get((int) code);
+        }
+
+        Parameter readParameter() throws IOException {
+            long value = readVarLong();
+            if (value == NULL_VALUE) {
+                return null;
+            }
+            if (value == NEW_VALUE) {
+                Parameter parameter = new Parameter();
+                parameter.setId(readNullableInt());
+                parameter.setElementType(readString());
+                parameter.setCvLabel(readString());
+                parameter.setCvAccession(readString());
+                parameter.setName(readString());
+                parameter.setValue(readString());
+                parameters.add(parameter);
+                return parameter;
+            }
+            long code = value - FIRST_CODE;
+            if (code < 0 || code >= parameters.size()) {
+                throw new IOException("Invalid parameter code: " + code);
+            }
+            return parameters.get((int) code);
+        }
+
+        BitSet readBitmap(int length) throws IOException {
+            byte[] bytes = new byte[bitmapSize(length)];
+            in.readFully(bytes);
+            return BitSet.valueOf(bytes);
+        }
+
+        double[] readDoubles(int length) throws IOException {
+            double[] values = new double[length];
+            byte[] bytes = new byte[Math.min(length, DOUBLE_CHUNK_SIZE) * Double.BYTES];
+            DoubleBuffer doubles = ByteBuffer.wrap(bytes).
+                order(ByteOrder.LITTLE_ENDIAN).
+                asDoubleBuffer();
+            for (int offset = 0; offset < length; offset += DOUBLE_CHUNK_SIZE) {
+                int n = Math.min(DOUBLE_CHUNK_SIZE, length - offset);
+                in.readFully(bytes, 0, n * Double.BYTES);
+                doubles.clear();
+                doubles.get(values, offset, n);
+            }
+            return values;
+        }
+
+        <T> void readIntColumn(List<T> rows, BiConsumer<T, Integer> setter) throws IOException {
+            for (T row : rows) {
+                setter.accept(row, readNullableInt());
+            }
+        }
+
+        <T> void readStringColumn(List<T> rows, BiConsumer<T, String> setter) throws IOException {
+            for (T row : rows) {
+                setter.accept(row, readString());
+            }
+        }
+
+        <T> void readParameterColumn(List<T> rows,
+            BiConsumer<T, Parameter> setter) throws IOException {
+            for (T row : rows) {
+                setter.accept(row, readParameter());
+            }
+        }
+
+        <T> void readDoubleColumn(List<T> rows, BiConsumer<T, Double> setter) throws IOException {
+            BitSet present = readBitmap(rows.size());
+            double[] values = readDoubles(present.cardinality());
+            int n = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                setter.accept(rows.get(i), present.get(i) ? values[n++] : null);
+            }
+        }
+
+        <T> void readIntListColumn(List<T> rows,
+            BiConsumer<T, List<Integer>> setter) throws IOException {
+            for (T row : rows) {
+                int length = readLength();
+                if (length < 0) {
+                    setter.accept(row, null);
+                } else {
+                    List<Integer> list = new ArrayList<>(length);
+                    for (int i = 0; i < length; i++) {
+                        list.add(readNullableInt());
+                    }
+                    setter.accept(row, list);
+                }
+            }
+        }
+
+        <T> void readStringListColumn(List<T> rows,
+            BiConsumer<T, List<String>> setter) throws IOException {
+            for (T row : rows) {
+                int length = readLength();
+                if (length < 0) {
+                    setter.accept(row, null);
+                } else {
+                    List<String> list = new ArrayList<>(length);
+                    for (int i = 0; i < length; i++) {
+                        list.add(readString());
+                    }
+                    setter.accept(row, list);
+                }
+            }
+        }
+
+        <T> void readDoubleListColumn(List<T> rows,
+            BiConsumer<T, List<Double>> setter) throws IOException {
+            int[] lengths = new int[rows.size()];
+            long count = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = readLength();
+                count += Math.max(0, lengths[i]);
+            }
+            if (count > MAX_VALUES) {
+                throw new IOException("Invalid number of values: " + count);
+            }
+            int total = (int) count;
+            BitSet present = readBitmap(total);
+            double[] values = readDoubles(present.cardinality());
+            int element = 0;
+            int n = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                if (lengths[i] < 0) {
+                    setter.accept(rows.get(i), null);
+                } else {
+                    List<Double> list = new ArrayList<>(lengths[i]);
+                    for (int j = 0; j < lengths[i]; j++) {
+                        list.add(present.get(element++) ? values[n++] : null);
+                    }
+                    setter.accept(rows.get(i), list);
+                }
+            }
+        }
+
+        <T> void readOptColumn(List<T> rows,
+            BiConsumer<T, List<OptColumnMapping>> setter) throws IOException {
+            for (T row : rows) {
+                int length = readLength();
+                if (length < 0) {
+                    setter.accept(row, null);
+                } else {
+                    List<OptColumnMapping> list = new ArrayList<>(length);
+                    for (int i = 0; i < length; i++) {
+                        OptColumnMapping opt = new OptColumnMapping();
+                        opt.setIdentifier(readString());
+                        opt.setParam(readParameter());
+                        opt.setValue(readString());
+                        list.add(opt);
+                    }
+                    setter.accept(row, list);
+                }
+            }
+        }
+
+        <T> void readCommentColumn(List<T> rows,
+            BiConsumer<T, List<Comment>> setter) throws IOException {
+            for (T row : rows) {
+                setter.accept(row, readComments());
+            }
+        }
+
+        List<Comment> readComments() throws IOException {
+            int length = readLength();
+            if (length < 0) {
+                return null;
+            }
+            List<Comment> list = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                Comment comment = new Comment();
+                comment.setMsg(readString());
+                comment.setLineNumber(readNullableInt());
+                list.add(comment);
+            }
+            return list;
+        }
+
+        <T> void readSpectraRefColumn(List<T> rows,
+            BiConsumer<T, List<SpectraRef>> setter) throws IOException {
+            for (T row : rows) {
+                int length = readLength();
+                if (length < 0) {
+                    setter.accept(row, null);
+                } else {
+                    List<SpectraRef> list = new ArrayList<>(length);
+                    for (int i = 0; i < length; i++) {
+                        SpectraRef ref = new SpectraRef();
+                        Integer msRunId = readNullableInt();
+                        if (msRunId != null) {
+                            MsRun msRun = msRuns.get(msRunId);
+                            if (msRun == null) {
+                                msRun = new MsRun();
+                                msRun.setId(msRunId);
+                            }
+                            ref.setMsRun(msRun);
+                        }
+                        ref.setReference(readString());
+                        list.add(ref);
+                    }
+                    setter.accept(row, list);
+                }
+            }
+        }
+    }
+}
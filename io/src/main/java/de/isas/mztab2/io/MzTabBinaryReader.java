@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MsRun;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Reads binary snapshots of {@link MzTab} objects written by
+ * {@link MzTabBinaryWriter}.</p>
+ *
+ * <p>
+ * Equal parameters are decoded to the same {@link Parameter} instance, and the
+ * spectra references of the small molecule evidence rows refer to the ms runs
+ * of the metadata. Snapshots with a different format version or written for
+ * a different version of the model classes are rejected with an
+ * {@link IOException}.</p>
+ *
+ * @author nilshoffmann
+ * @see MzTabBinaryWriter
+ */
+public class MzTabBinaryReader {
+
+    private final ObjectMapper mapper;
+
+    public MzTabBinaryReader() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * Create a new binary reader using the provided object mapper for the
+     * deserialization of the metadata.
+     *
+     * @param mapper the object mapper.
+     */
+    public MzTabBinaryReader(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Read a binary snapshot from the provided path.
+     *
+     * @param path the snapshot path.
+     * @return the mzTab object.
+     * @throws IOException if reading fails or the file is not a compatible
+     * snapshot.
+     */
+    public MzTab read(Path path) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(
+            path))) {
+            return read(is);
+        }
+    }
+
+    /**
+     * Read a binary snapshot from the provided input stream. The stream is
+     * not closed.
+     *
+     * @param is the input stream.
+     * @return the mzTab object.
+     * @throws IOException if reading fails or the stream does not contain a
+     * compatible snapshot.
+     */
+    public MzTab read(InputStream is) throws IOException {
+        MzTabBinaryFormat.Input in = new MzTabBinaryFormat.Input(is);
+        byte[] magic = new byte[MzTabBinaryFormat.MAGIC.length];
+        in.readRaw(magic);
+        if (!Arrays.equals(magic, MzTabBinaryFormat.MAGIC)) {
+            throw new IOException("Not an mzTab binary snapshot!");
+        }
+        int version = in.readVarInt();
+        if (version != MzTabBinaryFormat.FORMAT_VERSION) {
+            throw new IOException(
+                "Unsupported snapshot format version " + version + ", expected " + MzTabBinaryFormat.FORMAT_VERSION + "!");
+        }
+        if (in.readLong() != MzTabBinaryFormat.MODEL_FINGERPRINT) {
+            throw new IOException(
+                "Snapshot was written for a different version of the mzTab model!");
+        }
+        Metadata metadata = mapper.readValue(in.readBytes(), Metadata.class);
+        Map<Integer, MsRun> msRuns = new HashMap<>();
+        if (metadata.getMsRun() != null) {
+            for (MsRun msRun : metadata.getMsRun()) {
+                msRuns.put(msRun.getId(), msRun);
+            }
+        }
+        in.setMsRuns(msRuns);
+
+        MzTab mzTab = new MzTab();
+        mzTab.setMetadata(metadata);
+        mzTab.setComment(in.readComments());
+        mzTab.setSmallMoleculeSummary(readSmallMoleculeSummary(in));
+        mzTab.setSmallMoleculeFeature(readSmallMoleculeFeature(in));
+        mzTab.setSmallMoleculeEvidence(readSmallMoleculeEvidence(in));
+        return mzTab;
+    }
+
+    private static <T> List<T> createRows(MzTabBinaryFormat.Input in,
+        Supplier<T> supplier) throws IOException {
+        int size = in.readVarInt();
+        List<T> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(supplier.get());
+        }
+        return rows;
+    }
+
+    static List<SmallMoleculeSummary> readSmallMoleculeSummary(
+        MzTabBinaryFormat.Input in) throws IOException {
+        List<SmallMoleculeSummary> rows = createRows(in,
+            SmallMoleculeSummary::new);
+        in.readIntColumn(rows, SmallMoleculeSummary::setSmlId);
+        in.readIntListColumn(rows, SmallMoleculeSummary::setSmfIdRefs);
+        in.readStringListColumn(rows,
+            SmallMoleculeSummary::setDatabaseIdentifier);
+        in.readStringListColumn(rows, SmallMoleculeSummary::setChemicalFormula);
+        in.readStringListColumn(rows, SmallMoleculeSummary::setSmiles);
+        in.readStringListColumn(rows, SmallMoleculeSummary::setInchi);
+        in.readStringListColumn(rows, SmallMoleculeSummary::setChemicalName);
+        in.readStringListColumn(rows, SmallMoleculeSummary::setUri);
+        in.readDoubleListColumn(rows,
+            SmallMoleculeSummary::setTheoreticalNeutralMass);
+        in.readStringListColumn(rows, SmallMoleculeSummary::setAdductIons);
+        in.readStringColumn(rows, SmallMoleculeSummary::setReliability);
+        in.readParameterColumn(rows,
+            SmallMoleculeSummary::setBestIdConfidenceMeasure);
+        in.readDoubleColumn(rows, SmallMoleculeSummary::setBestIdConfidenceValue);
+        in.readDoubleListColumn(rows, SmallMoleculeSummary::setAbundanceAssay);
+        in.readDoubleListColumn(rows,
+            SmallMoleculeSummary::setAbundanceStudyVariable);
+        in.readDoubleListColumn(rows,
+            SmallMoleculeSummary::setAbundanceVariationStudyVariable);
+        in.readOptColumn(rows, SmallMoleculeSummary::setOpt);
+        in.readCommentColumn(rows, SmallMoleculeSummary::setComment);
+        return rows;
+    }
+
+    static List<SmallMoleculeFeature> readSmallMoleculeFeature(
+        MzTabBinaryFormat.Input in) throws IOException {
+        List<SmallMoleculeFeature> rows = createRows(in,
+            SmallMoleculeFeature::new);
+        in.readIntColumn(rows, SmallMoleculeFeature::setSmfId);
+        in.readIntListColumn(rows, SmallMoleculeFeature::setSmeIdRefs);
+        in.readIntColumn(rows, SmallMoleculeFeature::setSmeIdRefAmbiguityCode);
+        in.readStringColumn(rows, SmallMoleculeFeature::setAdductIon);
+        in.readParameterColumn(rows, SmallMoleculeFeature::setIsotopomer);
+        in.readDoubleColumn(rows, SmallMoleculeFeature::setExpMassToCharge);
+        in.readIntColumn(rows, SmallMoleculeFeature::setCharge);
+        in.readDoubleColumn(rows,
+            SmallMoleculeFeature::setRetentionTimeInSeconds);
+        in.readDoubleColumn(rows,
+            SmallMoleculeFeature::setRetentionTimeInSecondsStart);
+        in.readDoubleColumn(rows,
+            SmallMoleculeFeature::setRetentionTimeInSecondsEnd);
+        in.readDoubleListColumn(rows, SmallMoleculeFeature::setAbundanceAssay);
+        in.readOptColumn(rows, SmallMoleculeFeature::setOpt);
+        in.readCommentColumn(rows, SmallMoleculeFeature::setComment);
+        return rows;
+    }
+
+    static List<SmallMoleculeEvidence> readSmallMoleculeEvidence(
+        MzTabBinaryFormat.Input in) throws IOException {
+        List<SmallMoleculeEvidence> rows = createRows(in,
+            SmallMoleculeEvidence::new);
+        in.readIntColumn(rows, SmallMoleculeEvidence::setSmeId);
+        in.readStringColumn(rows, SmallMoleculeEvidence::setEvidenceInputId);
+        in.readStringColumn(rows, SmallMoleculeEvidence::setDatabaseIdentifier);
+        in.readStringColumn(rows, SmallMoleculeEvidence::setChemicalFormula);
+        in.readStringColumn(rows, SmallMoleculeEvidence::setSmiles);
+        in.readStringColumn(rows, SmallMoleculeEvidence::setInchi);
+        in.readStringColumn(rows, SmallMoleculeEvidence::setChemicalName);
+        in.readStringColumn(rows, SmallMoleculeEvidence::setUri);
+        in.readParameterColumn(rows, SmallMoleculeEvidence::setDerivatizedForm);
+        in.readStringColumn(rows, SmallMoleculeEvidence::setAdductIon);
+        in.readDoubleColumn(rows, SmallMoleculeEvidence::setExpMassToCharge);
+        in.readIntColumn(rows, SmallMoleculeEvidence::setCharge);
+        in.readDoubleColumn(rows,
+            SmallMoleculeEvidence::setTheoreticalMassToCharge);
+        in.readSpectraRefColumn(rows, SmallMoleculeEvidence::setSpectraRef);
+        in.readParameterColumn(rows,
+            SmallMoleculeEvidence::setIdentificationMethod);
+        in.readParameterColumn(rows, SmallMoleculeEvidence::setMsLevel);
+        in.readDoubleListColumn(rows,
+            SmallMoleculeEvidence::setIdConfidenceMeasure);
+        in.readIntColumn(rows, SmallMoleculeEvidence::setRank);
+        in.readOptColumn(rows, SmallMoleculeEvidence::setOpt);
+        in.readCommentColumn(rows, SmallMoleculeEvidence::setComment);
+        return rows;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.isas.lipidomics.mztab2.columnar.Dictionary;
+import static de.isas.mztab2.io.MzTabBinaryFormat.column;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>
+ * Writes an {@link MzTab} object as a compact binary snapshot that can be
+ * reloaded with {@link MzTabBinaryReader} much faster than parsing the mzTab
+ * file again, e.g. to cache files that have already been validated.</p>
+ *
+ * <p>
+ * Strings and parameters are dictionary encoded, integers are stored as
+ * varints and doubles as raw blocks. The metadata section is stored as JSON.
+ * Snapshots are tied to the version of the model classes and are rejected by
+ * the reader if the model changes. They are not meant as an exchange format,
+ * use mzTab or JSON for that.</p>
+ *
+ * @author nilshoffmann
+ * @see MzTabBinaryReader
+ */
+public class MzTabBinaryWriter {
+
+    private final ObjectMapper mapper;
+
+    public MzTabBinaryWriter() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * Create a new binary writer using the provided object mapper for the
+     * serialization of the metadata.
+     *
+     * @param mapper the object mapper.
+     */
+    public MzTabBinaryWriter(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Write the mzTab object as binary snapshot to the provided path.
+     *
+     * @param path the output path.
+     * @param mzTab the mzTab object.
+     * @throws IOException if writing fails.
+     */
+    public void write(Path path, MzTab mzTab) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(
+            path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            write(os, mzTab);
+        }
+    }
+
+    /**
+     * Write the mzTab object as binary snapshot to the provided output stream.
+     * The output stream is flushed, but not closed.
+     *
+     * @param os the output stream.
+     * @param mzTab the mzTab object.
+     * @throws IOException if writing fails.
+     */
+    public void write(OutputStream os, MzTab mzTab) throws IOException {
+        // dictionary entries are written inline, sections go straight to the stream
+        MzTabBinaryFormat.Output out = new MzTabBinaryFormat.Output(os,
+            new Dictionary<>(), new Dictionary<>());
+        out.writeRaw(MzTabBinaryFormat.MAGIC);
+        out.writeVarInt(MzTabBinaryFormat.FORMAT_VERSION);
+        out.writeLong(MzTabBinaryFormat.MODEL_FINGERPRINT);
+        out.writeBytes(mapper.writeValueAsBytes(mzTab.getMetadata()));
+        out.writeComments(mzTab.getComment());
+        writeSmallMoleculeSummary(out, orEmpty(mzTab.getSmallMoleculeSummary()));
+        writeSmallMoleculeFeature(out, orEmpty(mzTab.getSmallMoleculeFeature()));
+        writeSmallMoleculeEvidence(out, orEmpty(mzTab.
+            getSmallMoleculeEvidence()));
+        out.flush();
+    }
+
+    private static <T> List<T> orEmpty(List<T> rows) {
+        return Optional.ofNullable(rows).
+            orElse(Collections.emptyList());
+    }
+
+    static void writeSmallMoleculeSummary(MzTabBinaryFormat.Output out,
+        List<SmallMoleculeSummary> rows) throws IOException {
+        out.writeVarInt(rows.size());
+        out.writeIntColumn(column(rows, SmallMoleculeSummary::getSmlId));
+        out.writeIntListColumn(column(rows, SmallMoleculeSummary::getSmfIdRefs));
+        out.writeStringListColumn(column(rows,
+            SmallMoleculeSummary::getDatabaseIdentifier));
+        out.writeStringListColumn(column(rows,
+            SmallMoleculeSummary::getChemicalFormula));
+        out.writeStringListColumn(column(rows, SmallMoleculeSummary::getSmiles));
+        out.writeStringListColumn(column(rows, SmallMoleculeSummary::getInchi));
+        out.writeStringListColumn(column(rows,
+            SmallMoleculeSummary::getChemicalName));
+        out.writeStringListColumn(column(rows, SmallMoleculeSummary::getUri));
+        out.writeDoubleListColumn(column(rows,
+            SmallMoleculeSummary::getTheoreticalNeutralMass));
+        out.writeStringListColumn(column(rows,
+            SmallMoleculeSummary::getAdductIons));
+        out.writeStringColumn(column(rows, SmallMoleculeSummary::getReliability));
+        out.writeParameterColumn(column(rows,
+            SmallMoleculeSummary::getBestIdConfidenceMeasure));
+        out.writeDoubleColumn(column(rows,
+            SmallMoleculeSummary::getBestIdConfidenceValue));
+        out.writeDoubleListColumn(column(rows,
+            SmallMoleculeSummary::getAbundanceAssay));
+        out.writeDoubleListColumn(column(rows,
+            SmallMoleculeSummary::getAbundanceStudyVariable));
+        out.writeDoubleListColumn(column(rows,
+            SmallMoleculeSummary::getAbundanceVariationStudyVariable));
+        out.writeOptColumn(column(rows, SmallMoleculeSummary::getOpt));
+        out.writeCommentColumn(column(rows, SmallMoleculeSummary::getComment));
+    }
+
+    static void writeSmallMoleculeFeature(MzTabBinaryFormat.Output out,
+        List<SmallMoleculeFeature> rows) throws IOException {
+        out.writeVarInt(rows.size());
+        out.writeIntColumn(column(rows, SmallMoleculeFeature::getSmfId));
+        out.writeIntListColumn(column(rows, SmallMoleculeFeature::getSmeIdRefs));
+        out.writeIntColumn(column(rows,
+            SmallMoleculeFeature::getSmeIdRefAmbiguityCode));
+        out.writeStringColumn(column(rows, SmallMoleculeFeature::getAdductIon));
+        out.writeParameterColumn(column(rows,
+            SmallMoleculeFeature::getIsotopomer));
+        out.writeDoubleColumn(column(rows,
+            SmallMoleculeFeature::getExpMassToCharge));
+        out.writeIntColumn(column(rows, SmallMoleculeFeature::getCharge));
+        out.writeDoubleColumn(column(rows,
+            SmallMoleculeFeature::getRetentionTimeInSeconds));
+        out.writeDoubleColumn(column(rows,
+            SmallMoleculeFeature::getRetentionTimeInSecondsStart));
+        out.writeDoubleColumn(column(rows,
+            SmallMoleculeFeature::getRetentionTimeInSecondsEnd));
+        out.writeDoubleListColumn(column(rows,
+            SmallMoleculeFeature::getAbundanceAssay));
+        out.writeOptColumn(column(rows, SmallMoleculeFeature::getOpt));
+        out.writeCommentColumn(column(rows, SmallMoleculeFeature::getComment));
+    }
+
+    static void writeSmallMoleculeEvidence(MzTabBinaryFormat.Output out,
+        List<SmallMoleculeEvidence> rows) throws IOException {
+        out.writeVarInt(rows.size());
+        out.writeIntColumn(column(rows, SmallMoleculeEvidence::getSmeId));
+        out.writeStringColumn(column(rows,
+            SmallMoleculeEvidence::getEvidenceInputId));
+        out.writeStringColumn(column(rows,
+            SmallMoleculeEvidence::getDatabaseIdentifier));
+        out.writeStringColumn(column(rows,
+            SmallMoleculeEvidence::getChemicalFormula));
+        out.writeStringColumn(column(rows, SmallMoleculeEvidence::getSmiles));
+        out.writeStringColumn(column(rows, SmallMoleculeEvidence::getInchi));
+        out.writeStringColumn(column(rows,
+            SmallMoleculeEvidence::getChemicalName));
+        out.writeStringColumn(column(rows, SmallMoleculeEvidence::getUri));
+        out.writeParameterColumn(column(rows,
+            SmallMoleculeEvidence::getDerivatizedForm));
+        out.writeStringColumn(column(rows, SmallMoleculeEvidence::getAdductIon));
+        out.writeDoubleColumn(column(rows,
+            SmallMoleculeEvidence::getExpMassToCharge));
+        out.writeIntColumn(column(rows, SmallMoleculeEvidence::getCharge));
+        out.writeDoubleColumn(column(rows,
+            SmallMoleculeEvidence::getTheoreticalMassToCharge));
+        out.writeSpectraRefColumn(column(rows,
+            SmallMoleculeEvidence::getSpectraRef));
+        out.writeParameterColumn(column(rows,
+            SmallMoleculeEvidence::getIdentificationMethod));
+        out.writeParameterColumn(column(rows,
+            SmallMoleculeEvidence::getMsLevel));
+        out.writeDoubleListColumn(column(rows,
+            SmallMoleculeEvidence::getIdConfidenceMeasure));
+        out.writeIntColumn(column(rows, SmallMoleculeEvidence::getRank));
+        out.writeOptColumn(column(rows, SmallMoleculeEvidence::getOpt));
+        out.writeCommentColumn(column(rows, SmallMoleculeEvidence::getComment));
+    }
+}
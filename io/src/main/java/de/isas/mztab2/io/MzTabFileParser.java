@@ -15,6 +15,10 @@
  */
 package de.isas.mztab2.io;
 
+import de.isas.lipidomics.mztab2.columnar.AbundanceMatrix;
+import de.isas.mztab2.io.validators.SmallMoleculeFeatureIdRefValidator;
+import de.isas.mztab2.io.validators.SmallMoleculeReliabilityValidator;
+import de.isas.mztab2.io.validators.SmallMoleculeSummaryIdRefValidator;
 import de.isas.mztab2.model.ColumnParameterMapping;
 import de.isas.mztab2.model.Comment;
 import de.isas.mztab2.model.Metadata;
@@ -26,21 +30,20 @@ import de.isas.mztab2.model.SmallMoleculeSummary;
 import java.io.*;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 import uk.ac.ebi.pride.jmztab2.model.IMZTabColumn;
 import uk.ac.ebi.pride.jmztab2.model.MZTabColumnFactory;
 import static uk.ac.ebi.pride.jmztab2.model.MZTabConstants.NEW_LINE;
-import static uk.ac.ebi.pride.jmztab2.model.MZTabConstants.REGEX_DEFAULT_RELIABILITY;
 import static uk.ac.ebi.pride.jmztab2.model.MZTabConstants.TAB;
 import uk.ac.ebi.pride.jmztab2.model.MZTabStringUtils;
 import uk.ac.ebi.pride.jmztab2.model.Section;
@@ -68,19 +71,32 @@ import uk.ac.ebi.pride.jmztab2.utils.parser.SMLLineParser;
  * MZTabFileParser provides reading functionality of the mzTab file. During the
  * parsing process, minimal integrity checks are preformed.
  *
+ * If a heap budget is set with {@link #setHeapBudget(long)}, parsed rows of
+ * the small molecule sections are spilled to temporary files once their
+ * estimated retained size exceeds the budget. The section lists of the parsed
+ * {@link MzTab} then page spilled rows back in on access. Call
+ * {@link #close()} to delete the spill files, once the parsed object is no
+ * longer used. The spill files of a parse that fails are deleted right away.
+ *
  * @author qingwei
  * @author nilshoffmann
  * 
  * @since 21/02/13
  *
  */
-public class MzTabFileParser {
+public class MzTabFileParser implements Closeable {
 
     private MzTab mzTabFile;
     private URI tabFile;
+    private InputStream tabInputStream;
 
     private MZTabErrorList errorList;
     private MZTabParserContext context;
+    private AbundanceMatrix.Allocator abundanceMatrixAllocator;
+    private long heapBudget = -1;
+    private Path spillDirectory;
+    private SpillingList.Budget budget;
+    private final List<SpillingList<?>> spillingLists = new ArrayList<>();
 
     /**
      * Create a new {@code MZTabFileParser} for the given file.
@@ -117,6 +133,23 @@ public class MzTabFileParser {
         this.tabFile = tabFileUri;
     }
 
+    /**
+     * Create a new {@code MZTabFileParser} for the given input stream. The
+     * stream is expected to contain uncompressed, UTF-8 encoded mzTab data. It
+     * is consumed and closed by the first call to one of the parse methods.
+     *
+     * @param tabInputStream the MZTab input stream. MUST not be null.
+     * @throws java.lang.IllegalArgumentException if the provided argument in
+     * invalid.
+     */
+    public MzTabFileParser(InputStream tabInputStream) throws IllegalArgumentException {
+        if (tabInputStream == null) {
+            throw new IllegalArgumentException(
+                "MZTab input stream must not be null!");
+        }
+        this.tabInputStream = tabInputStream;
+    }
+
     /**
      * Create a new {@code MZTabParserContext} and {@code MZTabErrorList} for
      * the given file URI. Parsing output and errors are written to the provided
@@ -132,28 +165,40 @@ public class MzTabFileParser {
      */
     public MZTabErrorList parse(OutputStream out, MZTabErrorType.Level level,
         int maxErrorCount) throws IOException {
+        int firstSpillingList = spillingLists.size();
         try {
-            context = new MZTabParserContext();
-            errorList = new MZTabErrorList(level, maxErrorCount);
-            check();
-            refine();
-        } catch (MZTabException e) {
-            out.write(e.getMessage().getBytes());
-            try (PrintStream ps = new PrintStream(out)) {
-                e.printStackTrace(ps);
-            }
-            errorList.add(e.getError());
-        } catch (MZTabErrorOverflowException e) {
-            try (PrintStream ps = new PrintStream(out)) {
-                e.printStackTrace(ps);
+            try {
+                context = new MZTabParserContext();
+                context.setAbundanceMatrixAllocator(abundanceMatrixAllocator);
+                budget = heapBudget < 0 ? null : new SpillingList.Budget(
+                    heapBudget);
+                errorList = new MZTabErrorList(level, maxErrorCount);
+                check();
+                refine();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (MZTabException e) {
+                out.write(e.getMessage().getBytes());
+                try (PrintStream ps = new PrintStream(out)) {
+                    e.printStackTrace(ps);
+                }
+                errorList.add(e.getError());
+            } catch (MZTabErrorOverflowException e) {
+                try (PrintStream ps = new PrintStream(out)) {
+                    e.printStackTrace(ps);
+                }
+                out.write(e.getMessage().getBytes());
             }
-            out.write(e.getMessage().getBytes());
+        } catch (IOException | RuntimeException e) {
+            closeSpillingLists(firstSpillingList, e);
+            throw e;
         }
+        closeSpillingLists(firstSpillingList, null);
 
         errorList.print(out);
         if (mzTabFile != null && errorList.isEmpty()) {
             out.write(
-                ("No structural or logical errors in " + tabFile + " file!" + NEW_LINE).
+                ("No structural or logical errors in " + (tabFile == null ? "input stream" : tabFile + " file") + "!" + NEW_LINE).
                     getBytes());
         }
         return errorList;
@@ -202,6 +247,163 @@ public class MzTabFileParser {
         return errorList;
     }
 
+    /**
+     * Set the allocator for abundance matrices. If set, the abundance values
+     * of the small molecule summary and feature rows are stored in
+     * {@link AbundanceMatrix} instances while parsing, and the abundance lists
+     * of the parsed rows are views of the matrix rows. Must be called before
+     * parsing.
+     *
+     * @param abundanceMatrixAllocator the allocator, or null to store
+     * abundance values in plain lists.
+     */
+    public void setAbundanceMatrixAllocator(
+        AbundanceMatrix.Allocator abundanceMatrixAllocator) {
+        this.abundanceMatrixAllocator = abundanceMatrixAllocator;
+    }
+
+    /**
+     * Returns the abundance matrices filled by the last call to one of the
+     * parse methods, by name, e.g. <code>sml_abundance_study_variable</code> or
+     * <code>smf_abundance_assay</code>. The caller is responsible for closing
+     * the matrices when the parsed mzTab object is no longer used.
+     *
+     * @return the abundance matrices, empty if no abundance matrix allocator
+     * was set.
+     */
+    public Map<String, AbundanceMatrix> getAbundanceMatrices() {
+        if (context == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(context.getAbundanceMatrices());
+    }
+
+    /**
+     * Set the heap budget for parsed small molecule rows in bytes. Once the
+     * estimated retained size of the parsed rows exceeds the budget, rows of
+     * completed sections, and full blocks of rows of the current section, are
+     * spilled to temporary files. Modifications of rows returned for spilled
+     * indices are only persisted if the rows are written back with
+     * {@link List#set(int, Object)}. Must be called before parsing.
+     *
+     * @param heapBudget the budget in bytes, or a negative value to keep all
+     * rows on the heap (default).
+     */
+    public void setHeapBudget(long heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    /**
+     * Set the directory for spill files. Must be called before parsing.
+     *
+     * @param spillDirectory the directory, or null for the default temporary
+     * directory.
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Deletes the spill files created by the parse methods. Spilled rows of
+     * a parsed {@link MzTab} can no longer be accessed afterwards.
+     *
+     * @throws IOException if a spill file can not be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (SpillingList<?> list : spillingLists) {
+            try {
+                list.close();
+            } catch (IOException ex) {
+                if (exception == null) {
+                    exception = ex;
+                } else {
+                    exception.addSuppressed(ex);
+                }
+            }
+        }
+        spillingLists.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Deletes the spill files of the lists created by the current parse, if
+     * parsing failed with the given exception, or if the parsed mzTab object
+     * does not use them because of errors.
+     */
+    private void closeSpillingLists(int from, Exception failure) throws IOException {
+        IOException exception = null;
+        Iterator<SpillingList<?>> lists = spillingLists.subList(from,
+            spillingLists.size()).
+            iterator();
+        while (lists.hasNext()) {
+            SpillingList<?> list = lists.next();
+            if (failure == null && isUsed(list)) {
+                continue;
+            }
+            lists.remove();
+            try {
+                list.close();
+            } catch (IOException ex) {
+                if (failure != null) {
+                    failure.addSuppressed(ex);
+                } else if (exception == null) {
+                    exception = ex;
+                } else {
+                    exception.addSuppressed(ex);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private boolean isUsed(List<?> rows) {
+        return mzTabFile != null && (rows == mzTabFile.
+            getSmallMoleculeSummary() || rows == mzTabFile.
+            getSmallMoleculeFeature() || rows == mzTabFile.
+            getSmallMoleculeEvidence());
+    }
+
+    private <T> List<T> createSectionRows(
+        MzTabBinaryFormat.SectionWriter<T> writer,
+        MzTabBinaryFormat.SectionReader<T> reader) {
+        if (budget == null) {
+            return new ArrayList<>();
+        }
+        SpillingList<T> list = new SpillingList<>(spillDirectory, budget,
+            context.getMsRunMap(), writer, reader);
+        spillingLists.add(list);
+        return list;
+    }
+
+    private <T> void addSectionRow(List<T> rows, T row, String line) {
+        if (rows instanceof SpillingList) {
+            ((SpillingList<T>) rows).add(row, estimateRetainedSize(line));
+        } else {
+            rows.add(row);
+        }
+    }
+
+    private void completeSection(List<?> rows) {
+        if (rows instanceof SpillingList) {
+            ((SpillingList<?>) rows).complete();
+        }
+    }
+
+    /**
+     * A rough estimate of the retained size of a row parsed from the given
+     * line: parsed values are boxed and held in lists, which takes several
+     * times the size of their text.
+     */
+    private static long estimateRetainedSize(String line) {
+        return 64L + 6L * line.length();
+    }
+
     private Section getSection(String line) {
         String[] items = line.split("\\s*" + TAB + "\\s*");
         String section = items[0].trim();
@@ -210,6 +412,10 @@ public class MzTabFileParser {
 
     private BufferedReader readFile(URI tabFile) throws IOException {
         BufferedReader reader;
+        if (tabInputStream != null) {
+            return new BufferedReader(new InputStreamReader(tabInputStream,
+                ENCODE));
+        }
 
         InputStream is;
         File file = new File(tabFile);
@@ -285,9 +491,15 @@ public class MzTabFileParser {
         SMELineParser smeParser = null;
 
         SortedMap<Integer, Comment> commentMap = new TreeMap<>();
-        SortedMap<Integer, SmallMoleculeSummary> smallMoleculeSummaryMap = new TreeMap<>();
-        SortedMap<Integer, SmallMoleculeFeature> smallMoleculeFeatureMap = new TreeMap<>();
-        SortedMap<Integer, SmallMoleculeEvidence> smallMoleculeEvidenceMap = new TreeMap<>();
+        List<SmallMoleculeSummary> smallMoleculeSummaryRows = createSectionRows(
+            MzTabBinaryWriter::writeSmallMoleculeSummary,
+            MzTabBinaryReader::readSmallMoleculeSummary);
+        List<SmallMoleculeFeature> smallMoleculeFeatureRows = createSectionRows(
+            MzTabBinaryWriter::writeSmallMoleculeFeature,
+            MzTabBinaryReader::readSmallMoleculeFeature);
+        List<SmallMoleculeEvidence> smallMoleculeEvidenceRows = createSectionRows(
+            MzTabBinaryWriter::writeSmallMoleculeEvidence,
+            MzTabBinaryReader::readSmallMoleculeEvidence);
 
         PositionMapping smlPositionMapping = null;
         PositionMapping smfPositionMapping = null;
@@ -370,8 +582,8 @@ public class MzTabFileParser {
                                     errorList);
                             }
                             smlParser.parse(lineNumber, line, errorList);
-                            smallMoleculeSummaryMap.put(lineNumber, smlParser.
-                                getRecord());
+                            addSectionRow(smallMoleculeSummaryRows, smlParser.
+                                getRecord(), line);
 
                             break;
                         case 10:
@@ -382,6 +594,7 @@ public class MzTabFileParser {
                                     lineNumber, subString(line)));
                             }
 
+                            completeSection(smallMoleculeSummaryRows);
                             // small molecule header section
                             sfhParser = new SFHLineParser(context, mtdParser.
                                 getMetadata());
@@ -408,8 +621,8 @@ public class MzTabFileParser {
                                     errorList);
                             }
                             smfParser.parse(lineNumber, line, errorList);
-                            smallMoleculeFeatureMap.put(lineNumber, smfParser.
-                                getRecord());
+                            addSectionRow(smallMoleculeFeatureRows, smfParser.
+                                getRecord(), line);
 
                             break;
                         case 12:
@@ -420,6 +633,7 @@ public class MzTabFileParser {
                                     lineNumber, subString(line)));
                             }
 
+                            completeSection(smallMoleculeFeatureRows);
                             // small molecule header section
                             sehParser = new SEHLineParser(context, mtdParser.
                                 getMetadata());
@@ -446,8 +660,8 @@ public class MzTabFileParser {
                                     errorList);
                             }
                             smeParser.parse(lineNumber, line, errorList);
-                            smallMoleculeEvidenceMap.put(lineNumber, smeParser.
-                                getRecord());
+                            addSectionRow(smallMoleculeEvidenceRows, smeParser.
+                                getRecord(), line);
 
                             break;
                         default:
@@ -462,6 +676,7 @@ public class MzTabFileParser {
             }
 
         }
+        completeSection(smallMoleculeEvidenceRows);
 
         mtdParser.refineNormalMetadata();
 
@@ -472,36 +687,16 @@ public class MzTabFileParser {
                 mzTabFile.addCommentItem(commentMap.get(id));
             }
 
-            if (smallMoleculeSummaryMap.isEmpty()) {
+            if (smallMoleculeSummaryRows.isEmpty()) {
                 errorList.add(new MZTabError(
                     LogicalErrorType.NoSmallMoleculeSummarySection, -1));
             }
             if (smlParser != null) {
 
-                for (Integer id : smallMoleculeSummaryMap.keySet()) {
-                    mzTabFile.addSmallMoleculeSummaryItem(
-                        smallMoleculeSummaryMap.get(
-                            id));
-                }
+                mzTabFile.setSmallMoleculeSummary(smallMoleculeSummaryRows);
                 //check that reliability values are correct
-                if (mzTabFile.getMetadata().
-                    getSmallMoleculeIdentificationReliability() == null) {
-                    Pattern p = Pattern.compile(REGEX_DEFAULT_RELIABILITY);
-                    for (SmallMoleculeSummary smi : mzTabFile.
-                        getSmallMoleculeSummary()) {
-                        String reliability = smi.getReliability();
-                        Matcher matcher = p.matcher(reliability);
-                        if (!matcher.matches()) {
-                            errorList.add(new MZTabError(
-                                FormatErrorType.RegexMismatch, -1,
-                                SmallMoleculeSummary.Properties.reliability.
-                                    getPropertyName(), reliability,
-                                MzTab.Properties.smallMoleculeSummary.
-                                    getPropertyName(), "" + smi.getSmlId(),
-                                REGEX_DEFAULT_RELIABILITY));
-                        }
-                    }
-                }
+                errorList.addAll(new SmallMoleculeReliabilityValidator().
+                    validateRefine(mzTabFile, context));
                 checkColunitMapping(smhParser.getFactory(), Optional.ofNullable(
                     mzTabFile.
                         getMetadata().
@@ -510,19 +705,14 @@ public class MzTabFileParser {
                     MzTab.Properties.smallMoleculeSummary);
             }
 
-            if (smallMoleculeFeatureMap.isEmpty() && !smallMoleculeSummaryMap.
+            if (smallMoleculeFeatureRows.isEmpty() && !smallMoleculeSummaryRows.
                 isEmpty()) {
                 errorList.add(new MZTabError(
                     LogicalErrorType.NoSmallMoleculeFeatureSection, -1));
             }
             if (smfParser != null) {
-                for (Integer id : smallMoleculeFeatureMap.keySet()) {
-                    SmallMoleculeFeature smf
-                        = smallMoleculeFeatureMap.get(
-                            id);
-                    mzTabFile.addSmallMoleculeFeatureItem(smf);
-                }
-                if (smallMoleculeFeatureMap.size() > 0 && mzTabFile.
+                mzTabFile.setSmallMoleculeFeature(smallMoleculeFeatureRows);
+                if (smallMoleculeFeatureRows.size() > 0 && mzTabFile.
                     getMetadata().
                     getSmallMoleculeFeatureQuantificationUnit() == null) {
                     errorList.add(new MZTabError(
@@ -536,17 +726,13 @@ public class MzTabFileParser {
                     Metadata.Properties.colunitSmallMoleculeFeature,
                     MzTab.Properties.smallMoleculeFeature);
             }
-            if (smallMoleculeEvidenceMap.isEmpty() && !smallMoleculeSummaryMap.
+            if (smallMoleculeEvidenceRows.isEmpty() && !smallMoleculeSummaryRows.
                 isEmpty()) {
                 errorList.add(new MZTabError(
                     LogicalErrorType.NoSmallMoleculeEvidenceSection, -1));
             }
             if (smeParser != null) {
-                for (Integer id : smallMoleculeEvidenceMap.keySet()) {
-                    mzTabFile.addSmallMoleculeEvidenceItem(
-                        smallMoleculeEvidenceMap.get(
-                            id));
-                }
+                mzTabFile.setSmallMoleculeEvidence(smallMoleculeEvidenceRows);
                 checkColunitMapping(sehParser.getFactory(), Optional.ofNullable(
                     mzTabFile.
                         getMetadata().
@@ -557,63 +743,11 @@ public class MzTabFileParser {
             }
             //check ID refs, starting at SML level
             if (smlParser != null && smfParser != null) {
-                for (Integer id : smallMoleculeSummaryMap.keySet()) {
-                    SmallMoleculeSummary sms = smallMoleculeSummaryMap.get(id);
-                    Set<Integer> smfIdRefs = new HashSet<>(sms.getSmfIdRefs());
-                    Set<Integer> definedIds = smallMoleculeFeatureMap.values().
-                        stream().
-                        map((t) ->
-                        {
-                            return t.getSmfId();
-                        }).
-                        collect(Collectors.toSet());
-                    smfIdRefs.removeAll(definedIds);
-                    if (!smfIdRefs.isEmpty()) {
-                        for (Integer smfRefId : smfIdRefs) {
-                            //raise a warning about unmatched SMF id
-                            //Reference id "{0}" for column "{1}" from element "{2}" in section "{3}" to section "{4}" must have a matching element defined.
-                            errorList.add(new MZTabError(
-                                LogicalErrorType.UnknownRefId, -1, "" + smfRefId,
-                                SmallMoleculeSummary.Properties.smfIdRefs.
-                                    getPropertyName(), "" + sms.getSmlId(),
-                                MzTab.Properties.smallMoleculeSummary.
-                                    getPropertyName(),
-                                MzTab.Properties.smallMoleculeFeature.
-                                    getPropertyName()));
-                        }
-                    }
-                }
+                errorList.addAll(new SmallMoleculeSummaryIdRefValidator().
+                    validateRefine(mzTabFile, context));
                 if (smeParser != null) {
-                    for (Integer id : smallMoleculeFeatureMap.keySet()) {
-                        SmallMoleculeFeature smf = smallMoleculeFeatureMap.get(
-                            id);
-                        Set<Integer> smeIdRefs = new HashSet<>(smf.
-                            getSmeIdRefs());
-                        Set<Integer> definedIds = smallMoleculeEvidenceMap.
-                            values().
-                            stream().
-                            map((t) ->
-                            {
-                                return t.getSmeId();
-                            }).
-                            collect(Collectors.toSet());
-                        smeIdRefs.removeAll(definedIds);
-                        if (!smeIdRefs.isEmpty()) {
-                            for (Integer smeRefId : smeIdRefs) {
-                                //raise a warning about unmatched SMF id
-                                //Reference id "{0}" for column "{1}" from element "{2}" in section "{3}" to section "{4}" must have a matching element defined.
-                                errorList.add(new MZTabError(
-                                    LogicalErrorType.UnknownRefId, -1,
-                                    "" + smeRefId,
-                                    SmallMoleculeFeature.Properties.smeIdRefs.
-                                        getPropertyName(), "" + smf.getSmfId(),
-                                    MzTab.Properties.smallMoleculeFeature.
-                                        getPropertyName(),
-                                    MzTab.Properties.smallMoleculeEvidence.
-                                        getPropertyName()));
-                            }
-                        }
-                    }
+                    errorList.addAll(new SmallMoleculeFeatureIdRefValidator().
+                        validateRefine(mzTabFile, context));
                 }
             }
         }
@@ -0,0 +1,591 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.jmztab2.model.Section;
+
+/**
+ * <p>
+ * A random access index over an uncompressed mzTab file. The index stores the
+ * byte offsets and line numbers of the small molecule summary, feature and
+ * evidence header lines, and of every SML, SMF and SME row, keyed by its
+ * <code>SML_ID</code>, <code>SMF_ID</code> or <code>SME_ID</code>.</p>
+ *
+ * <p>
+ * The index is kept in a sidecar file next to the mzTab file, with the
+ * {@link #FILE_SUFFIX} appended to the file name, e.g.
+ * <code>example.mztab.idx</code>. The size and modification time of the
+ * indexed file are stored in the index, so that stale indices are detected
+ * and rebuilt by {@link #forFile(Path)}. Use {@link MzTabIndexedReader} to
+ * read single rows with the help of the index.</p>
+ *
+ * <p>
+ * Rows whose id column is missing or not an integer are not indexed. If an id
+ * occurs more than once, lookups return the first occurrence.</p>
+ *
+ * @author nilshoffmann
+ */
+@Slf4j
+public final class MzTabIndex {
+
+    /**
+     * The suffix of the sidecar index file.
+     */
+    public static final String FILE_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x4d5a5449; // "MZTI"
+    private static final int FORMAT_VERSION = 1;
+
+    private final long fileSize;
+    private final long lastModified;
+    private final SectionIndex summaryIndex;
+    private final SectionIndex featureIndex;
+    private final SectionIndex evidenceIndex;
+
+    private MzTabIndex(long fileSize, long lastModified,
+        SectionIndex summaryIndex, SectionIndex featureIndex,
+        SectionIndex evidenceIndex) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.summaryIndex = summaryIndex;
+        this.featureIndex = featureIndex;
+        this.evidenceIndex = evidenceIndex;
+    }
+
+    /**
+     * Returns the path of the sidecar index file for the given mzTab file.
+     *
+     * @param mzTabFile the mzTab file.
+     * @return the path of the index file.
+     */
+    public static Path sidecarPath(Path mzTabFile) {
+        return mzTabFile.resolveSibling(mzTabFile.getFileName().
+            toString() + FILE_SUFFIX);
+    }
+
+    /**
+     * Returns the index for the given mzTab file. Reads the sidecar index
+     * file, if it exists and is up to date. Otherwise, builds the index and
+     * writes it to the sidecar file.
+     *
+     * @param mzTabFile the mzTab file.
+     * @return the index.
+     * @throws IOException if the mzTab file can not be read or the index file
+     * can not be written.
+     */
+    public static MzTabIndex forFile(Path mzTabFile) throws IOException {
+        Path indexFile = sidecarPath(mzTabFile);
+        if (Files.isRegularFile(indexFile)) {
+            try {
+                MzTabIndex index = read(indexFile);
+                if (index.isValidFor(mzTabFile)) {
+                    return index;
+                }
+                log.info("Rebuilding stale index {}", indexFile);
+            } catch (IOException ex) {
+                log.warn("Rebuilding unreadable index " + indexFile, ex);
+            }
+        }
+        MzTabIndex index = build(mzTabFile);
+        index.write(indexFile);
+        return index;
+    }
+
+    /**
+     * Builds the index by scanning the mzTab file once.
+     *
+     * @param mzTabFile the uncompressed mzTab file.
+     * @return the index.
+     * @throws IOException if the file can not be read.
+     * @throws IllegalArgumentException if the file is gzip compressed.
+     */
+    public static MzTabIndex build(Path mzTabFile) throws IOException {
+        if (mzTabFile.getFileName().
+            toString().
+            endsWith(".gz")) {
+            throw new IllegalArgumentException(
+                "Can not index compressed file " + mzTabFile);
+        }
+        long fileSize = Files.size(mzTabFile);
+        long lastModified = Files.getLastModifiedTime(mzTabFile).
+            toMillis();
+        SectionIndex.Builder summaries = new SectionIndex.Builder(
+            Section.Small_Molecule_Header, "SML_ID");
+        SectionIndex.Builder features = new SectionIndex.Builder(
+            Section.Small_Molecule_Feature_Header, "SMF_ID");
+        SectionIndex.Builder evidences = new SectionIndex.Builder(
+            Section.Small_Molecule_Evidence_Header, "SME_ID");
+        try (InputStream is = Files.newInputStream(mzTabFile)) {
+            LineScanner scanner = new LineScanner(is);
+            while (scanner.next()) {
+                SectionIndex.Builder builder;
+                switch (scanner.prefix()) {
+                    case "SMH":
+                    case "SML":
+                        builder = summaries;
+                        break;
+                    case "SFH":
+                    case "SMF":
+                        builder = features;
+                        break;
+                    case "SEH":
+                    case "SME":
+                        builder = evidences;
+                        break;
+                    default:
+                        continue;
+                }
+                if (scanner.isHeader()) {
+                    builder.header(scanner);
+                } else {
+                    builder.row(scanner);
+                }
+            }
+        }
+        return new MzTabIndex(fileSize, lastModified, summaries.build(),
+            features.build(), evidences.build());
+    }
+
+    /**
+     * Reads an index file.
+     *
+     * @param indexFile the index file.
+     * @return the index.
+     * @throws IOException if the file can not be read or is not an index
+     * file.
+     */
+    public static MzTabIndex read(Path indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an mzTab index file: " + indexFile);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(
+                    "Unsupported mzTab index version " + version + " in " + indexFile);
+            }
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            return new MzTabIndex(fileSize, lastModified, SectionIndex.read(in),
+                SectionIndex.read(in), SectionIndex.read(in));
+        }
+    }
+
+    /**
+     * Writes this index to the given file.
+     *
+     * @param indexFile the index file.
+     * @throws IOException if the file can not be written.
+     */
+    public void write(Path indexFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(indexFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            summaryIndex.write(out);
+            featureIndex.write(out);
+            evidenceIndex.write(out);
+        }
+    }
+
+    /**
+     * Checks whether this index was built for the current state of the given
+     * file, by comparing file size and modification time.
+     *
+     * @param mzTabFile the mzTab file.
+     * @return true if the index is up to date.
+     * @throws IOException if the file attributes can not be read.
+     */
+    public boolean isValidFor(Path mzTabFile) throws IOException {
+        return Files.size(mzTabFile) == fileSize && Files.getLastModifiedTime(
+            mzTabFile).
+            toMillis() == lastModified;
+    }
+
+    /**
+     * Returns the index of the small molecule summary section.
+     *
+     * @return the section index.
+     */
+    public SectionIndex getSmallMoleculeSummaryIndex() {
+        return summaryIndex;
+    }
+
+    /**
+     * Returns the index of the small molecule feature section.
+     *
+     * @return the section index.
+     */
+    public SectionIndex getSmallMoleculeFeatureIndex() {
+        return featureIndex;
+    }
+
+    /**
+     * Returns the index of the small molecule evidence section.
+     *
+     * @return the section index.
+     */
+    public SectionIndex getSmallMoleculeEvidenceIndex() {
+        return evidenceIndex;
+    }
+
+    /**
+     * The header position and the row positions, sorted by id, of one section.
+     */
+    public static final class SectionIndex {
+
+        private final long headerOffset;
+        private final int headerLineNumber;
+        private final int[] ids;
+        private final long[] offsets;
+        private final int[] lineNumbers;
+
+        private SectionIndex(long headerOffset, int headerLineNumber, int[] ids,
+            long[] offsets, int[] lineNumbers) {
+            this.headerOffset = headerOffset;
+            this.headerLineNumber = headerLineNumber;
+            this.ids = ids;
+            this.offsets = offsets;
+            this.lineNumbers = lineNumbers;
+        }
+
+        /**
+         * Returns the byte offset of the header line.
+         *
+         * @return the offset, or -1 if the section is absent.
+         */
+        public long getHeaderOffset() {
+            return headerOffset;
+        }
+
+        /**
+         * Returns the line number of the header line.
+         *
+         * @return the line number, or -1 if the section is absent.
+         */
+        public int getHeaderLineNumber() {
+            return headerLineNumber;
+        }
+
+        /**
+         * Returns the number of indexed rows.
+         *
+         * @return the number of rows.
+         */
+        public int size() {
+            return ids.length;
+        }
+
+        /**
+         * Returns the position of the first row with the given id.
+         *
+         * @param id the row id.
+         * @return the position, or -1 if no row has that id.
+         */
+        public int indexOf(int id) {
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ids[mid] < id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low < ids.length && ids[low] == id ? low : -1;
+        }
+
+        /**
+         * Returns the id of the row at the given position.
+         *
+         * @param index the position.
+         * @return the row id.
+         */
+        public int getId(int index) {
+            return ids[index];
+        }
+
+        /**
+         * Returns the byte offset of the row at the given position.
+         *
+         * @param index the position.
+         * @return the offset.
+         */
+        public long getOffset(int index) {
+            return offsets[index];
+        }
+
+        /**
+         * Returns the line number of the row at the given position.
+         *
+         * @param index the position.
+         * @return the line number.
+         */
+        public int getLineNumber(int index) {
+            return lineNumbers[index];
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeLong(headerOffset);
+            out.writeInt(headerLineNumber);
+            out.writeInt(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                out.writeInt(ids[i]);
+                out.writeLong(offsets[i]);
+                out.writeInt(lineNumbers[i]);
+            }
+        }
+
+        private static SectionIndex read(DataInputStream in) throws IOException {
+            long headerOffset = in.readLong();
+            int headerLineNumber = in.readInt();
+            int size = in.readInt();
+            if (size < 0) {
+                throw new IOException("Invalid row count " + size);
+            }
+            int[] ids = new int[size];
+            long[] offsets = new long[size];
+            int[] lineNumbers = new int[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = in.readInt();
+                offsets[i] = in.readLong();
+                lineNumbers[i] = in.readInt();
+            }
+            return new SectionIndex(headerOffset, headerLineNumber, ids,
+                offsets, lineNumbers);
+        }
+
+        private static final class Builder {
+
+            private final Section headerSection;
+            private final String idColumn;
+            private long headerOffset = -1;
+            private int headerLineNumber = -1;
+            private int idPosition = -1;
+            private int size = 0;
+            private int[] ids = new int[1024];
+            private long[] offsets = new long[1024];
+            private int[] lineNumbers = new int[1024];
+
+            Builder(Section headerSection, String idColumn) {
+                this.headerSection = headerSection;
+                this.idColumn = idColumn;
+            }
+
+            void header(LineScanner scanner) {
+                if (headerOffset >= 0) {
+                    log.warn("Ignoring repeated {} line {}", headerSection.
+                        getPrefix(), scanner.lineNumber());
+                    return;
+                }
+                headerOffset = scanner.offset();
+                headerLineNumber = scanner.lineNumber();
+                String[] columns = scanner.line().
+                    split("\t");
+                for (int i = 0; i < columns.length; i++) {
+                    if (idColumn.equalsIgnoreCase(columns[i].trim())) {
+                        idPosition = i;
+                        break;
+                    }
+                }
+            }
+
+            void row(LineScanner scanner) {
+                if (idPosition < 0) {
+                    return;
+                }
+                String field = scanner.field(idPosition);
+                if (field == null) {
+                    return;
+                }
+                int id;
+                try {
+                    id = Integer.parseInt(field.trim());
+                } catch (NumberFormatException ex) {
+                    return;
+                }
+                if (size == ids.length) {
+                    int capacity = size * 2;
+                    ids = Arrays.copyOf(ids, capacity);
+                    offsets = Arrays.copyOf(offsets, capacity);
+                    lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+                }
+                ids[size] = id;
+                offsets[size] = scanner.offset();
+                lineNumbers[size] = scanner.lineNumber();
+                size++;
+            }
+
+            SectionIndex build() {
+                int[] sortedIds = Arrays.copyOf(ids, size);
+                long[] sortedOffsets = Arrays.copyOf(offsets, size);
+                int[] sortedLineNumbers = Arrays.copyOf(lineNumbers, size);
+                boolean sorted = true;
+                for (int i = 1; i < size && sorted; i++) {
+                    sorted = ids[i - 1] <= ids[i];
+                }
+                if (!sorted) {
+                    // sort by id, then by position in the file
+                    long[] keys = new long[size];
+                    for (int i = 0; i < size; i++) {
+                        keys[i] = ((long) ids[i] << 32) | i;
+                    }
+                    Arrays.sort(keys);
+                    for (int i = 0; i < size; i++) {
+                        int source = (int) keys[i];
+                        sortedIds[i] = ids[source];
+                        sortedOffsets[i] = offsets[source];
+                        sortedLineNumbers[i] = lineNumbers[source];
+                    }
+                }
+                return new SectionIndex(headerOffset, headerLineNumber,
+                    sortedIds, sortedOffsets, sortedLineNumbers);
+            }
+        }
+    }
+
+    /**
+     * Reads lines from a byte stream and keeps track of their byte offsets.
+     */
+    private static final class LineScanner {
+
+        private final InputStream in;
+        private final byte[] chunk = new byte[1 << 16];
+        private int chunkPosition = 0;
+        private int chunkLimit = 0;
+        private byte[] buffer = new byte[8192];
+        private int length = 0;
+        private long offset = 0;
+        private long nextOffset = 0;
+        private int lineNumber = 0;
+        private String line = null;
+
+        LineScanner(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Advances to the next line with at least a section prefix.
+         */
+        boolean next() throws IOException {
+            while (true) {
+                offset = nextOffset;
+                length = 0;
+                line = null;
+                boolean endOfLine = false;
+                while (!endOfLine) {
+                    if (chunkPosition == chunkLimit) {
+                        chunkLimit = in.read(chunk);
+                        chunkPosition = 0;
+                        if (chunkLimit <= 0) {
+                            chunkLimit = 0;
+                            break;
+                        }
+                    }
+                    int end = chunkPosition;
+                    while (end < chunkLimit && chunk[end] != '\n') {
+                        end++;
+                    }
+                    int n = end - chunkPosition;
+                    if (length + n > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, Math.max(length + n,
+                            buffer.length * 2));
+                    }
+                    System.arraycopy(chunk, chunkPosition, buffer, length, n);
+                    length += n;
+                    nextOffset += n;
+                    chunkPosition = end;
+                    if (end < chunkLimit) {
+                        // consume the line feed
+                        chunkPosition++;
+                        nextOffset++;
+                        endOfLine = true;
+                    }
+                }
+                if (!endOfLine && length == 0) {
+                    return false;
+                }
+                lineNumber++;
+                if (length > 0 && buffer[length - 1] == '\r') {
+                    length--;
+                }
+                if (length >= 3) {
+                    return true;
+                }
+            }
+        }
+
+        String prefix() {
+            return new String(buffer, 0, 3, StandardCharsets.US_ASCII);
+        }
+
+        boolean isHeader() {
+            return buffer[2] == 'H';
+        }
+
+        long offset() {
+            return offset;
+        }
+
+        int lineNumber() {
+            return lineNumber;
+        }
+
+        String line() {
+            if (line == null) {
+                line = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            }
+            return line;
+        }
+
+        /**
+         * Returns the field at the given tab separated position, or null.
+         */
+        String field(int position) {
+            int start = 0;
+            for (int i = 0; i < position; i++) {
+                while (start < length && buffer[start] != '\t') {
+                    start++;
+                }
+                if (start == length) {
+                    return null;
+                }
+                start++;
+            }
+            int end = start;
+            while (end < length && buffer[end] != '\t') {
+                end++;
+            }
+            return new String(buffer, start, end - start,
+                StandardCharsets.UTF_8);
+        }
+    }
+}
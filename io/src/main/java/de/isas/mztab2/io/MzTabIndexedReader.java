@@ -0,0 +1,313 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import uk.ac.ebi.pride.jmztab2.model.MZTabStringUtils;
+import uk.ac.ebi.pride.jmztab2.model.Section;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorList;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MTDLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabDataLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabHeaderLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+import uk.ac.ebi.pride.jmztab2.utils.parser.PositionMapping;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SEHLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SFHLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SMELineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SMFLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SMHLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SMLLineParser;
+
+/**
+ * <p>
+ * Reads single rows of an uncompressed mzTab file by seeking to the offsets
+ * stored in a {@link MzTabIndex}, instead of parsing the whole file. The
+ * metadata section is parsed when the reader is opened, the header line of a
+ * section is parsed on the first access to one of its rows.</p>
+ *
+ * <p>
+ * Rows are parsed with the same line parsers as used by
+ * {@link MzTabFileParser}, parse errors are collected in the error list of
+ * this reader. Checks that span multiple rows or sections are not performed.
+ * Instances are not thread-safe.</p>
+ *
+ * @author nilshoffmann
+ */
+public class MzTabIndexedReader implements Closeable {
+
+    private final FileChannel channel;
+    private final MZTabParserContext context = new MZTabParserContext();
+    private final MZTabErrorList errorList = new MZTabErrorList();
+    private final Metadata metadata;
+    private final RowReader<SmallMoleculeSummary> summaries;
+    private final RowReader<SmallMoleculeFeature> features;
+    private final RowReader<SmallMoleculeEvidence> evidences;
+
+    /**
+     * Open a reader for the mzTab file, using its sidecar index. The index is
+     * built and written, if it does not exist or is stale.
+     *
+     * @param mzTabFile the uncompressed mzTab file.
+     * @return the reader.
+     * @throws IOException if the file or index can not be read.
+     * @throws MZTabException if the metadata section can not be parsed.
+     */
+    public static MzTabIndexedReader open(Path mzTabFile) throws IOException, MZTabException {
+        return new MzTabIndexedReader(mzTabFile, MzTabIndex.forFile(mzTabFile));
+    }
+
+    /**
+     * Create a new reader for the mzTab file with the given index.
+     *
+     * @param mzTabFile the uncompressed mzTab file.
+     * @param index the index of the mzTab file.
+     * @throws IOException if the file can not be read.
+     * @throws MZTabException if the metadata section can not be parsed.
+     */
+    public MzTabIndexedReader(Path mzTabFile, MzTabIndex index) throws IOException, MZTabException {
+        this.metadata = readMetadata(mzTabFile);
+        this.summaries = new RowReader<>(index.getSmallMoleculeSummaryIndex(),
+            SMHLineParser::new, SMLLineParser::new);
+        this.features = new RowReader<>(index.getSmallMoleculeFeatureIndex(),
+            SFHLineParser::new, SMFLineParser::new);
+        this.evidences = new RowReader<>(index.
+            getSmallMoleculeEvidenceIndex(), SEHLineParser::new,
+            SMELineParser::new);
+        this.channel = FileChannel.open(mzTabFile, StandardOpenOption.READ);
+    }
+
+    /**
+     * Returns the parsed metadata.
+     *
+     * @return the metadata.
+     */
+    public Metadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns the errors reported while parsing the metadata and the rows
+     * read so far.
+     *
+     * @return the error list.
+     */
+    public MZTabErrorList getErrorList() {
+        return errorList;
+    }
+
+    /**
+     * Reads the small molecule summary row with the given id.
+     *
+     * @param smlId the SML_ID.
+     * @return the row, or empty if no row has that id.
+     * @throws IOException if the file can not be read.
+     * @throws MZTabException if the row or its header can not be parsed.
+     */
+    public Optional<SmallMoleculeSummary> getSmallMoleculeSummary(int smlId) throws IOException, MZTabException {
+        return summaries.get(smlId);
+    }
+
+    /**
+     * Reads the small molecule feature row with the given id.
+     *
+     * @param smfId the SMF_ID.
+     * @return the row, or empty if no row has that id.
+     * @throws IOException if the file can not be read.
+     * @throws MZTabException if the row or its header can not be parsed.
+     */
+    public Optional<SmallMoleculeFeature> getSmallMoleculeFeature(int smfId) throws IOException, MZTabException {
+        return features.get(smfId);
+    }
+
+    /**
+     * Reads the small molecule evidence row with the given id.
+     *
+     * @param smeId the SME_ID.
+     * @return the row, or empty if no row has that id.
+     * @throws IOException if the file can not be read.
+     * @throws MZTabException if the row or its header can not be parsed.
+     */
+    public Optional<SmallMoleculeEvidence> getSmallMoleculeEvidence(int smeId) throws IOException, MZTabException {
+        return evidences.get(smeId);
+    }
+
+    /**
+     * Reads the small molecule feature rows referenced by the
+     * <code>SMF_ID_REFS</code> of the summary. Unknown references are
+     * skipped.
+     *
+     * @param summary the small molecule summary.
+     * @return the referenced features, in reference order.
+     * @throws IOException if the file can not be read.
+     * @throws MZTabException if a row or its header can not be parsed.
+     */
+    public List<SmallMoleculeFeature> getSmallMoleculeFeatures(
+        SmallMoleculeSummary summary) throws IOException, MZTabException {
+        return getAll(features, summary.getSmfIdRefs());
+    }
+
+    /**
+     * Reads the small molecule evidence rows referenced by the
+     * <code>SME_ID_REFS</code> of the feature. Unknown references are
+     * skipped.
+     *
+     * @param feature the small molecule feature.
+     * @return the referenced evidences, in reference order.
+     * @throws IOException if the file can not be read.
+     * @throws MZTabException if a row or its header can not be parsed.
+     */
+    public List<SmallMoleculeEvidence> getSmallMoleculeEvidences(
+        SmallMoleculeFeature feature) throws IOException, MZTabException {
+        return getAll(evidences, feature.getSmeIdRefs());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private <T> List<T> getAll(RowReader<T> reader, List<Integer> ids) throws IOException, MZTabException {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<T> rows = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            if (id != null) {
+                Optional<T> row = reader.get(id);
+                if (row.isPresent()) {
+                    rows.add(row.get());
+                }
+            }
+        }
+        return rows;
+    }
+
+    private Metadata readMetadata(Path mzTabFile) throws IOException, MZTabException {
+        MTDLineParser mtdParser = new MTDLineParser(context);
+        try (BufferedReader reader = Files.newBufferedReader(mzTabFile,
+            StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (MZTabStringUtils.isEmpty(line) || line.startsWith(
+                    Section.Comment.getPrefix())) {
+                    continue;
+                }
+                if (!line.startsWith(Section.Metadata.getPrefix())) {
+                    break;
+                }
+                mtdParser.parse(lineNumber, line, errorList);
+            }
+        }
+        mtdParser.refineNormalMetadata();
+        return mtdParser.getMetadata();
+    }
+
+    private String readLine(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = offset;
+        while (true) {
+            int n = channel.read(buffer, position);
+            int limit = buffer.position();
+            for (int i = limit - Math.max(n, 0); i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    return decode(buffer, i);
+                }
+            }
+            if (n < 0) {
+                if (limit == 0) {
+                    throw new EOFException("No line at offset " + offset);
+                }
+                return decode(buffer, limit);
+            }
+            position += n;
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+
+    private static String decode(ByteBuffer buffer, int end) {
+        if (end > 0 && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        return new String(buffer.array(), 0, end, StandardCharsets.UTF_8);
+    }
+
+    private final class RowReader<T> {
+
+        private final MzTabIndex.SectionIndex index;
+        private final BiFunction<MZTabParserContext, Metadata, ? extends MZTabHeaderLineParser> headerParserFactory;
+        private final DataLineParserFactory<T> lineParserFactory;
+        private MZTabDataLineParser<T> lineParser;
+
+        RowReader(MzTabIndex.SectionIndex index,
+            BiFunction<MZTabParserContext, Metadata, ? extends MZTabHeaderLineParser> headerParserFactory,
+            DataLineParserFactory<T> lineParserFactory) {
+            this.index = index;
+            this.headerParserFactory = headerParserFactory;
+            this.lineParserFactory = lineParserFactory;
+        }
+
+        Optional<T> get(int id) throws IOException, MZTabException {
+            int position = index.indexOf(id);
+            if (position < 0) {
+                return Optional.empty();
+            }
+            MZTabDataLineParser<T> parser = getLineParser();
+            parser.parse(index.getLineNumber(position), readLine(index.
+                getOffset(position)), errorList);
+            return Optional.of(parser.getRecord());
+        }
+
+        private MZTabDataLineParser<T> getLineParser() throws IOException, MZTabException {
+            if (lineParser == null) {
+                String header = readLine(index.getHeaderOffset());
+                MZTabHeaderLineParser headerParser = headerParserFactory.apply(
+                    context, metadata);
+                headerParser.parse(index.getHeaderLineNumber(), header,
+                    errorList);
+                lineParser = lineParserFactory.create(context, headerParser.
+                    getFactory(), new PositionMapping(headerParser.
+                        getFactory(), header), metadata, errorList);
+            }
+            return lineParser;
+        }
+    }
+}
@@ -0,0 +1,623 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import de.isas.mztab2.io.serialization.Serializers;
+import de.isas.mztab2.model.Comment;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.OptColumnMapping;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import uk.ac.ebi.pride.jmztab2.model.MZTabConstants;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
+
+/**
+ * <p>
+ * Reads mzTab JSON, as written by {@link MzTabJsonWriter} or a plain
+ * {@link ObjectMapper}, with a {@link JsonParser}. The metadata, comments and
+ * the rows of each section are deserialized one by one and passed to a
+ * {@link Handler}, so the complete {@link MzTab} object never needs to be held
+ * in memory.</p>
+ *
+ * <p>
+ * {@link #convert(java.nio.file.Path, java.io.OutputStream)} uses this to
+ * convert JSON to mzTab in bounded memory, writing the rows of each section
+ * straight to the output, without temporary files.
+ * {@link #openAsMzTab(java.nio.file.Path)} runs that conversion in the
+ * background and returns the mzTab as an input stream, e.g. for the
+ * {@link MzTabFileParser}. Input paths ending with <code>.gz</code> are
+ * decompressed transparently.</p>
+ *
+ * @author nilshoffmann
+ * @see MzTabJsonWriter
+ */
+public class MzTabJsonReader {
+
+    /**
+     * Receives the elements of an mzTab JSON document in document order.
+     */
+    public interface Handler {
+
+        default void metadata(Metadata metadata) throws IOException {
+        }
+
+        default void comment(Comment comment) throws IOException {
+        }
+
+        default void smallMoleculeSummary(SmallMoleculeSummary sms) throws IOException {
+        }
+
+        default void smallMoleculeFeature(SmallMoleculeFeature smf) throws IOException {
+        }
+
+        default void smallMoleculeEvidence(SmallMoleculeEvidence sme) throws IOException {
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowConsumer<T> {
+
+        void accept(T t) throws IOException;
+    }
+
+    private static final int PIPE_SIZE = 1 << 16;
+    private static final String SECTION_SEPARATOR = "\n";
+
+    private final ObjectMapper mapper;
+    private final MzTabWriterDefaults writerDefaults;
+
+    public MzTabJsonReader() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * Create a new JSON reader using the provided object mapper for the
+     * deserialization of metadata and rows.
+     *
+     * @param mapper the object mapper.
+     */
+    public MzTabJsonReader(ObjectMapper mapper) {
+        this(mapper, new MzTabWriterDefaults());
+    }
+
+    /**
+     * Create a new JSON reader using the provided object mapper for the
+     * deserialization of metadata and rows and the provided writer settings
+     * for the conversion to mzTab.
+     *
+     * @param mapper the object mapper.
+     * @param writerDefaults the writer settings.
+     */
+    public MzTabJsonReader(ObjectMapper mapper,
+        MzTabWriterDefaults writerDefaults) {
+        this.mapper = mapper;
+        this.writerDefaults = writerDefaults;
+    }
+
+    /**
+     * Read the mzTab JSON file at the given path.
+     *
+     * @param path the JSON file.
+     * @param handler the handler to pass the mzTab elements to.
+     * @throws IOException if reading or parsing fails.
+     */
+    public void read(Path path, Handler handler) throws IOException {
+        InputStream is = new BufferedInputStream(Files.newInputStream(path));
+        if (path.getFileName().
+            toString().
+            endsWith(".gz")) {
+            is = new GZIPInputStream(is);
+        }
+        try (InputStream in = is) {
+            read(in, handler);
+        }
+    }
+
+    /**
+     * Read mzTab JSON from the given input stream. The input stream is not
+     * closed.
+     *
+     * @param is the input stream.
+     * @param handler the handler to pass the mzTab elements to.
+     * @throws IOException if reading or parsing fails.
+     */
+    public void read(InputStream is, Handler handler) throws IOException {
+        try (JsonParser parser = mapper.getFactory().
+            createParser(is)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser,
+                    "Expected start of mzTab JSON object!");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if (MzTab.Properties.metadata.getPropertyName().
+                    equals(fieldName)) {
+                    Metadata metadata = parser.readValueAs(Metadata.class);
+                    if (metadata != null) {
+                        handler.metadata(metadata);
+                    }
+                } else if (MzTab.Properties.smallMoleculeSummary.
+                    getPropertyName().
+                    equals(fieldName)) {
+                    readArray(parser, SmallMoleculeSummary.class,
+                        handler::smallMoleculeSummary);
+                } else if (MzTab.Properties.smallMoleculeFeature.
+                    getPropertyName().
+                    equals(fieldName)) {
+                    readArray(parser, SmallMoleculeFeature.class,
+                        handler::smallMoleculeFeature);
+                } else if (MzTab.Properties.smallMoleculeEvidence.
+                    getPropertyName().
+                    equals(fieldName)) {
+                    readArray(parser, SmallMoleculeEvidence.class,
+                        handler::smallMoleculeEvidence);
+                } else if (MzTab.Properties.comment.getPropertyName().
+                    equals(fieldName)) {
+                    readArray(parser, Comment.class, handler::comment);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private <T> void readArray(JsonParser parser, Class<T> type,
+        RowConsumer<T> consumer) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return;
+        }
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser,
+                "Expected array of " + type.getSimpleName() + "!");
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            consumer.accept(parser.readValueAs(type));
+        }
+    }
+
+    /**
+     * Convert the mzTab JSON file to an mzTab file. If the file name ends with
+     * <code>.gz</code>, the output is gzip compressed.
+     *
+     * @param jsonFile the mzTab JSON input file.
+     * @param mzTabFile the mzTab output file.
+     * @throws IOException if reading, parsing or writing fails.
+     * @see #convert(java.nio.file.Path, java.io.OutputStream)
+     */
+    public void convert(Path jsonFile, Path mzTabFile) throws IOException {
+        OutputStream os = Files.newOutputStream(mzTabFile,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+        if (mzTabFile.getFileName().
+            toString().
+            endsWith(".gz")) {
+            os = new ParallelGzipOutputStream(os, null);
+        }
+        try (OutputStream out = os) {
+            convert(jsonFile, out);
+        }
+    }
+
+    /**
+     * Convert the mzTab JSON file to mzTab and write it to the given output
+     * stream, which is not closed. The JSON file is read twice: first to
+     * collect the metadata and the opt columns of all rows, then to write the
+     * rows of each section as they are read. Only the metadata and the opt
+     * column definitions are kept in memory. If the sections of the JSON file
+     * are not in mzTab order, i.e. summary, feature, evidence, the second pass
+     * is repeated for each section instead.
+     *
+     * @param jsonFile the mzTab JSON input file.
+     * @param os the output stream to write the mzTab to.
+     * @throws IOException if reading, parsing or writing fails.
+     */
+    public void convert(Path jsonFile, OutputStream os) throws IOException {
+        TemplateHandler templateHandler = new TemplateHandler();
+        read(jsonFile, templateHandler);
+        if (templateHandler.template.getMetadata() == null) {
+            throw new IOException(
+                "No metadata found in mzTab JSON file " + jsonFile + "!");
+        }
+        MzTab template = templateHandler.createTemplate();
+        // must not close the output stream
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os,
+            StandardCharsets.UTF_8));
+        new MzTabNonValidatingWriter(writerDefaults).writeMetadataWithJackson(
+            template, writer);
+        SectionWriter<SmallMoleculeSummary> sml = new SectionWriter<>(writer,
+            writerDefaults.smallMoleculeSummaryMapper(), (mapper) ->
+        {
+            return writerDefaults.smallMoleculeSummarySchema(mapper, template);
+        });
+        SectionWriter<SmallMoleculeFeature> smf = new SectionWriter<>(writer,
+            writerDefaults.smallMoleculeFeatureMapper(), (mapper) ->
+        {
+            return writerDefaults.smallMoleculeFeatureSchema(mapper, template);
+        });
+        SectionWriter<SmallMoleculeEvidence> sme = new SectionWriter<>(writer,
+            writerDefaults.smallMoleculeEvidenceMapper(), (mapper) ->
+        {
+            return writerDefaults.smallMoleculeEvidenceSchema(mapper, template);
+        });
+        List<SectionWriter<?>> sections = Arrays.asList(sml, smf, sme);
+        if (templateHandler.isInMzTabOrder()) {
+            read(jsonFile, new Handler() {
+                @Override
+                public void smallMoleculeSummary(SmallMoleculeSummary row) throws IOException {
+                    sml.write(row);
+                }
+
+                @Override
+                public void smallMoleculeFeature(SmallMoleculeFeature row) throws IOException {
+                    sml.finish();
+                    smf.write(row);
+                }
+
+                @Override
+                public void smallMoleculeEvidence(SmallMoleculeEvidence row) throws IOException {
+                    sml.finish();
+                    smf.finish();
+                    sme.write(row);
+                }
+            });
+        } else {
+            read(jsonFile, new Handler() {
+                @Override
+                public void smallMoleculeSummary(SmallMoleculeSummary row) throws IOException {
+                    sml.write(row);
+                }
+            });
+            sml.finish();
+            read(jsonFile, new Handler() {
+                @Override
+                public void smallMoleculeFeature(SmallMoleculeFeature row) throws IOException {
+                    smf.write(row);
+                }
+            });
+            smf.finish();
+            read(jsonFile, new Handler() {
+                @Override
+                public void smallMoleculeEvidence(SmallMoleculeEvidence row) throws IOException {
+                    sme.write(row);
+                }
+            });
+        }
+        for (SectionWriter<?> section : sections) {
+            section.finish();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Convert the mzTab JSON file to mzTab in a background thread and return
+     * the mzTab as an input stream, e.g. to parse it with the
+     * {@link MzTabFileParser} without an intermediate file. If the conversion
+     * fails, reading the end of the returned stream throws its exception.
+     * Closing the stream early stops the conversion.
+     *
+     * @param jsonFile the mzTab JSON input file.
+     * @return the mzTab input stream.
+     * @throws IOException if the pipe for the conversion can not be created.
+     */
+    public InputStream openAsMzTab(Path jsonFile) throws IOException {
+        return openAsMzTab(jsonFile, null);
+    }
+
+    /**
+     * Convert the mzTab JSON file to mzTab in a background thread and return
+     * the mzTab as an input stream, as
+     * {@link #openAsMzTab(java.nio.file.Path)} does. The converted mzTab is
+     * also written to the copy, e.g. to keep the conversion result while it is
+     * parsed. The copy is not closed and is complete once the returned stream
+     * has been read to its end or closed.
+     *
+     * @param jsonFile the mzTab JSON input file.
+     * @param copy the output stream for a copy of the mzTab, may be null.
+     * @return the mzTab input stream.
+     * @throws IOException if the pipe for the conversion can not be created.
+     */
+    public InputStream openAsMzTab(Path jsonFile, OutputStream copy) throws IOException {
+        PipedInputStream in = new PipedInputStream(PIPE_SIZE);
+        PipedOutputStream out = new PipedOutputStream(in);
+        ConvertingInputStream converting = new ConvertingInputStream(in);
+        converting.thread = new Thread(() ->
+        {
+            try (OutputStream os = copy == null ? out : new CopyingOutputStream(
+                out, copy)) {
+                convert(jsonFile, os);
+            } catch (IOException | RuntimeException ex) {
+                converting.failure = ex;
+            }
+        }, "mztab-json-converter");
+        converting.thread.setDaemon(true);
+        converting.thread.start();
+        return converting;
+    }
+
+    @FunctionalInterface
+    private interface SchemaFactory {
+
+        CsvSchema create(CsvMapper mapper) throws MZTabException;
+    }
+
+    /**
+     * Writes the header and the rows of one section. Sections are separated by
+     * an empty line, the header is only written for sections with rows.
+     *
+     * @param <T> the row type.
+     */
+    private static class SectionWriter<T> {
+
+        private final Writer writer;
+        private final CsvMapper mapper;
+        private final SchemaFactory schemaFactory;
+        private SequenceWriter sequenceWriter;
+        private boolean finished = false;
+
+        SectionWriter(Writer writer, CsvMapper mapper,
+            SchemaFactory schemaFactory) {
+            this.writer = writer;
+            this.mapper = mapper;
+            this.schemaFactory = schemaFactory;
+        }
+
+        void write(T row) throws IOException {
+            if (finished) {
+                throw new IOException("Section was already written!");
+            }
+            if (sequenceWriter == null) {
+                CsvSchema schema;
+                try {
+                    schema = schemaFactory.create(mapper);
+                } catch (MZTabException ex) {
+                    throw new IOException(ex);
+                }
+                writer.write(SECTION_SEPARATOR);
+                writeHeader(schema);
+                sequenceWriter = mapper.writer(schema.withoutHeader()).
+                    writeValues(writer);
+            }
+            sequenceWriter.write(row);
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (sequenceWriter == null) {
+                writer.write(SECTION_SEPARATOR);
+            } else {
+                // flushes the rows, but does not close the writer
+                sequenceWriter.flush();
+            }
+        }
+
+        private void writeHeader(CsvSchema schema) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            for (CsvSchema.Column column : schema) {
+                if (sb.length() > 0) {
+                    sb.append(MZTabConstants.TAB);
+                }
+                sb.append(column.getName());
+            }
+            sb.append(MZTabConstants.NEW_LINE);
+            writer.write(sb.toString());
+        }
+    }
+
+    /**
+     * Writes to the output stream and to a copy. Closing only closes the
+     * output stream.
+     */
+    private static class CopyingOutputStream extends FilterOutputStream {
+
+        private final OutputStream copy;
+
+        CopyingOutputStream(OutputStream out, OutputStream copy) {
+            super(out);
+            this.copy = copy;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            copy.write(b);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            copy.write(b, off, len);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            copy.flush();
+            out.flush();
+        }
+    }
+
+    /**
+     * The mzTab produced by a background conversion. Rethrows the failure of
+     * the conversion at the end of the stream.
+     */
+    private static class ConvertingInputStream extends FilterInputStream {
+
+        private Thread thread;
+        private volatile Exception failure;
+
+        ConvertingInputStream(PipedInputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                checkConversion();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                checkConversion();
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the conversion fails with a closed pipe, if it did not finish
+            super.close();
+            join();
+        }
+
+        private void join() throws IOException {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().
+                    interrupt();
+                throw new InterruptedIOException(
+                    "Interrupted while waiting for the JSON conversion!");
+            }
+        }
+
+        private void checkConversion() throws IOException {
+            join();
+            Exception ex = failure;
+            if (ex instanceof IOException) {
+                throw new IOException("Conversion of mzTab JSON failed!", ex);
+            } else if (ex != null) {
+                throw (RuntimeException) ex;
+            }
+        }
+    }
+
+    /**
+     * Collects the metadata and the distinct opt columns of each section.
+     */
+    private static class TemplateHandler implements Handler {
+
+        private final MzTab template = new MzTab();
+        private final Map<String, OptColumnMapping> smlOptColumns = new LinkedHashMap<>();
+        private final Map<String, OptColumnMapping> smfOptColumns = new LinkedHashMap<>();
+        private final Map<String, OptColumnMapping> smeOptColumns = new LinkedHashMap<>();
+        private final long[] rowCounts = new long[3];
+        private final List<Integer> sectionOrder = new ArrayList<>(3);
+
+        @Override
+        public void metadata(Metadata metadata) {
+            template.metadata(metadata);
+        }
+
+        @Override
+        public void smallMoleculeSummary(SmallMoleculeSummary sms) {
+            count(0);
+            collect(sms.getOpt(), smlOptColumns);
+        }
+
+        @Override
+        public void smallMoleculeFeature(SmallMoleculeFeature smf) {
+            count(1);
+            collect(smf.getOpt(), smfOptColumns);
+        }
+
+        @Override
+        public void smallMoleculeEvidence(SmallMoleculeEvidence sme) {
+            count(2);
+            collect(sme.getOpt(), smeOptColumns);
+        }
+
+        private void count(int section) {
+            if (rowCounts[section]++ == 0) {
+                sectionOrder.add(section);
+            }
+        }
+
+        boolean isInMzTabOrder() {
+            for (int i = 1; i < sectionOrder.size(); i++) {
+                if (sectionOrder.get(i - 1) > sectionOrder.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void collect(List<OptColumnMapping> opt,
+            Map<String, OptColumnMapping> optColumns) {
+            if (opt != null) {
+                for (OptColumnMapping ocm : opt) {
+                    optColumns.putIfAbsent(Serializers.printOptColumnMapping(
+                        ocm), ocm);
+                }
+            }
+        }
+
+        MzTab createTemplate() {
+            SmallMoleculeSummary sms = new SmallMoleculeSummary();
+            smlOptColumns.values().
+                forEach(sms::addOptItem);
+            SmallMoleculeFeature smf = new SmallMoleculeFeature();
+            smfOptColumns.values().
+                forEach(smf::addOptItem);
+            SmallMoleculeEvidence sme = new SmallMoleculeEvidence();
+            smeOptColumns.values().
+                forEach(sme::addOptItem);
+            return template.
+                addSmallMoleculeSummaryItem(sms).
+                addSmallMoleculeFeatureItem(smf).
+                addSmallMoleculeEvidenceItem(sme);
+        }
+    }
+}
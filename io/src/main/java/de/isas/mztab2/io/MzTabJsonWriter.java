@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import de.isas.mztab2.model.MzTab;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * <p>
+ * Writes an {@link MzTab} object as JSON, using a {@link JsonGenerator} to
+ * stream the metadata and the rows of each section one by one, instead of
+ * serializing the complete object in one call. The output can be read with
+ * {@link MzTabJsonReader} or with a plain {@link ObjectMapper}.</p>
+ *
+ * <p>
+ * If the output path ends with <code>.gz</code>, the output is compressed with
+ * a {@link ParallelGzipOutputStream}.</p>
+ *
+ * @author nilshoffmann
+ * @see MzTabJsonReader
+ */
+public class MzTabJsonWriter {
+
+    private final ObjectMapper mapper;
+
+    /**
+     * Create a new JSON writer without indentation.
+     */
+    public MzTabJsonWriter() {
+        this(false);
+    }
+
+    /**
+     * Create a new JSON writer.
+     *
+     * @param indentOutput if true, the JSON output is indented.
+     */
+    public MzTabJsonWriter(boolean indentOutput) {
+        this(new ObjectMapper().configure(SerializationFeature.INDENT_OUTPUT,
+            indentOutput));
+    }
+
+    /**
+     * Create a new JSON writer using the provided object mapper for the
+     * serialization of metadata and rows.
+     *
+     * @param mapper the object mapper.
+     */
+    public MzTabJsonWriter(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Write the mzTab object as JSON to the provided path.
+     *
+     * @param path the output path.
+     * @param mzTab the mzTab object.
+     * @throws IOException if writing fails.
+     */
+    public void write(Path path, MzTab mzTab) throws IOException {
+        OutputStream os = Files.newOutputStream(path,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+        if (path.getFileName().
+            toString().
+            endsWith(".gz")) {
+            os = new ParallelGzipOutputStream(os);
+        }
+        try (OutputStream bos = new BufferedOutputStream(os)) {
+            write(bos, mzTab);
+        }
+    }
+
+    /**
+     * Write the mzTab object as JSON to the provided output stream. The output
+     * stream is flushed, but not closed.
+     *
+     * @param os the output stream.
+     * @param mzTab the mzTab object.
+     * @throws IOException if writing fails.
+     */
+    public void write(OutputStream os, MzTab mzTab) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().
+            createGenerator(os, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (mapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+                generator.useDefaultPrettyPrinter();
+            }
+            generator.writeStartObject();
+            generator.writeFieldName(MzTab.Properties.metadata.
+                getPropertyName());
+            generator.writeObject(mzTab.getMetadata());
+            writeArray(generator, MzTab.Properties.smallMoleculeSummary.
+                getPropertyName(), mzTab.getSmallMoleculeSummary());
+            writeArray(generator, MzTab.Properties.smallMoleculeFeature.
+                getPropertyName(), mzTab.getSmallMoleculeFeature());
+            writeArray(generator, MzTab.Properties.smallMoleculeEvidence.
+                getPropertyName(), mzTab.getSmallMoleculeEvidence());
+            writeArray(generator, MzTab.Properties.comment.
+                getPropertyName(), mzTab.getComment());
+            generator.writeEndObject();
+            generator.flush();
+        }
+    }
+
+    private void writeArray(JsonGenerator generator, String fieldName,
+        List<?> rows) throws IOException {
+        generator.writeFieldName(fieldName);
+        if (rows == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartArray();
+        for (Object row : rows) {
+            generator.writeObject(row);
+        }
+        generator.writeEndArray();
+    }
+}
@@ -21,6 +21,7 @@ import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import de.isas.mztab2.model.MzTab;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
@@ -28,6 +29,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 import lombok.extern.slf4j.Slf4j;
 import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
 
@@ -45,6 +47,11 @@ import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
  * To create a <b>validating</b> writer using the default checks also applied by
  * the parser, call:</p>
  * {@code MzTabWriter validatingWriter = new MzTabValidatingWriter.Default();}
+ * <p>
+ * If the output path passed to {@link #write(java.nio.file.Path, de.isas.mztab2.model.MzTab)}
+ * ends with <code>.gz</code>, the output is gzip compressed in parallel
+ * blocks with a {@link ParallelGzipOutputStream}, using the compression
+ * executor provided to the constructor, or an internal thread pool.</p>
  *
  * @author nilshoffmann
  * @see MzTabValidatingWriter
@@ -53,13 +60,28 @@ import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
 public class MzTabNonValidatingWriter implements MzTabWriter<Void> {
 
     private final MzTabWriterDefaults writerDefaults;
+    private final ExecutorService compressionExecutor;
 
     public MzTabNonValidatingWriter() {
-        this.writerDefaults = new MzTabWriterDefaults();
+        this(new MzTabWriterDefaults());
     }
 
     public MzTabNonValidatingWriter(MzTabWriterDefaults writerDefaults) {
+        this(writerDefaults, null);
+    }
+
+    /**
+     * Create a new writer that compresses <code>.gz</code> output on the
+     * provided executor. The executor is not shut down by this writer.
+     *
+     * @param writerDefaults the default writer settings.
+     * @param compressionExecutor the executor for parallel gzip compression.
+     * If null, each compressed write uses its own thread pool.
+     */
+    public MzTabNonValidatingWriter(MzTabWriterDefaults writerDefaults,
+        ExecutorService compressionExecutor) {
         this.writerDefaults = writerDefaults;
+        this.compressionExecutor = compressionExecutor;
     }
 
     /**
@@ -87,7 +109,8 @@ public class MzTabNonValidatingWriter implements MzTabWriter<Void> {
 
     /**
      * <p>
-     * Write the mzTab object to the provided path.</p>
+     * Write the mzTab object to the provided path. If the file name ends with
+     * <code>.gz</code>, the output is gzip compressed.</p>
      *
      *
      * @param path a {@link java.nio.file.Path} object.
@@ -97,6 +120,19 @@ public class MzTabNonValidatingWriter implements MzTabWriter<Void> {
      */
     @Override
     public Optional<Void> write(Path path, MzTab mzTab) throws IOException {
+        if (path.getFileName().
+            toString().
+            endsWith(".gz")) {
+            OutputStream os = new ParallelGzipOutputStream(Files.
+                newOutputStream(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE), compressionExecutor);
+            try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+                writeMzTab(mzTab, writer);
+            }
+            return Optional.empty();
+        }
         try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
             StandardOpenOption.WRITE)) {
             writeMzTab(mzTab, writer);
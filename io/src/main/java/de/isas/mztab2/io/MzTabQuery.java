@@ -0,0 +1,682 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import uk.ac.ebi.pride.jmztab2.model.MZTabStringUtils;
+import uk.ac.ebi.pride.jmztab2.model.MZTabUtils;
+import uk.ac.ebi.pride.jmztab2.model.Section;
+import uk.ac.ebi.pride.jmztab2.utils.errors.LogicalErrorType;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorList;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MTDLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabDataLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabHeaderLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+import uk.ac.ebi.pride.jmztab2.utils.parser.PositionMapping;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SEHLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SFHLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SMELineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SMFLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SMHLineParser;
+import uk.ac.ebi.pride.jmztab2.utils.parser.SMLLineParser;
+
+/**
+ * <p>
+ * A streaming filter and projection query over one small molecule section of
+ * an mzTab file. The file is read line by line, only the metadata, the header
+ * of the queried section and its data lines are parsed. Reading stops at the
+ * end of the queried section.</p>
+ *
+ * <p>
+ * Conditions are evaluated on the raw cells of each data line before the line
+ * is decoded, so rows that do not match are never decoded. Of the matching
+ * rows, only the selected columns are decoded, all other properties of the
+ * returned records stay unset. If no columns are selected, all columns are
+ * decoded. Stable and <code>opt_</code> columns are referenced by their
+ * header, e.g. <code>exp_mass_to_charge</code> or
+ * <code>opt_global_cv_MS:1002217_decoy_peptide</code>.</p>
+ *
+ * <p>
+ * To select the rank one evidences in a mass to charge window:</p>
+ * <pre>
+ * {@code
+ * MzTabQuery.smallMoleculeEvidence().
+ *     where("exp_mass_to_charge BETWEEN 400 AND 500 AND rank = 1").
+ *     select("sme_id", "spectra_ref").
+ *     execute(path, (sme) -> ...);
+ * }
+ * </pre>
+ * <p>
+ * The textual form supports the operators <code>=, !=, &lt;, &lt;=, &gt;,
+ * &gt;=</code>, <code>BETWEEN ... AND ...</code>, <code>IS NULL</code> and
+ * <code>IS NOT NULL</code>, combined with <code>AND</code>, optionally
+ * followed by a <code>SELECT</code> list of column headers.</p>
+ *
+ * <p>
+ * Rows are checked by the same line parsers as used by
+ * {@link MzTabFileParser}, restricted to the decoded columns. Checks that span
+ * multiple rows or sections are not performed.</p>
+ *
+ * @param <T> the type of the returned records.
+ * @author nilshoffmann
+ */
+public final class MzTabQuery<T> {
+
+    private final Section headerSection;
+    private final Section dataSection;
+    private final BiFunction<MZTabParserContext, Metadata, ? extends MZTabHeaderLineParser> headerParserFactory;
+    private final DataLineParserFactory<T> lineParserFactory;
+    private final List<Condition> conditions = new ArrayList<>();
+    private List<String> projection = null;
+
+    private MzTabQuery(Section headerSection, Section dataSection,
+        BiFunction<MZTabParserContext, Metadata, ? extends MZTabHeaderLineParser> headerParserFactory,
+        DataLineParserFactory<T> lineParserFactory) {
+        this.headerSection = headerSection;
+        this.dataSection = dataSection;
+        this.headerParserFactory = headerParserFactory;
+        this.lineParserFactory = lineParserFactory;
+    }
+
+    /**
+     * Create a query over the small molecule summary section.
+     *
+     * @return the query.
+     */
+    public static MzTabQuery<SmallMoleculeSummary> smallMoleculeSummary() {
+        return new MzTabQuery<>(Section.Small_Molecule_Header,
+            Section.Small_Molecule, SMHLineParser::new, SMLLineParser::new);
+    }
+
+    /**
+     * Create a query over the small molecule feature section.
+     *
+     * @return the query.
+     */
+    public static MzTabQuery<SmallMoleculeFeature> smallMoleculeFeature() {
+        return new MzTabQuery<>(Section.Small_Molecule_Feature_Header,
+            Section.Small_Molecule_Feature, SFHLineParser::new,
+            SMFLineParser::new);
+    }
+
+    /**
+     * Create a query over the small molecule evidence section.
+     *
+     * @return the query.
+     */
+    public static MzTabQuery<SmallMoleculeEvidence> smallMoleculeEvidence() {
+        return new MzTabQuery<>(Section.Small_Molecule_Evidence_Header,
+            Section.Small_Molecule_Evidence, SEHLineParser::new,
+            SMELineParser::new);
+    }
+
+    /**
+     * Add conditions that all need to be satisfied by a row.
+     *
+     * @param conditions the conditions.
+     * @return this query.
+     */
+    public MzTabQuery<T> where(Condition... conditions) {
+        this.conditions.addAll(Arrays.asList(conditions));
+        return this;
+    }
+
+    /**
+     * Add the conditions and selected columns of the textual query, e.g.
+     * <code>exp_mass_to_charge BETWEEN 400 AND 500 AND rank = 1 SELECT sme_id,
+     * spectra_ref</code>.
+     *
+     * @param expression the query expression.
+     * @return this query.
+     * @throws IllegalArgumentException if the expression can not be parsed.
+     */
+    public MzTabQuery<T> where(String expression) {
+        new ExpressionParser(expression).parseInto(this);
+        return this;
+    }
+
+    /**
+     * Select the columns to decode. Columns that are only used in conditions
+     * do not need to be selected.
+     *
+     * @param headers the column headers.
+     * @return this query.
+     */
+    public MzTabQuery<T> select(String... headers) {
+        if (this.projection == null) {
+            this.projection = new ArrayList<>();
+        }
+        this.projection.addAll(Arrays.asList(headers));
+        return this;
+    }
+
+    /**
+     * Returns the conditions of this query.
+     *
+     * @return the conditions.
+     */
+    public List<Condition> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+
+    /**
+     * Returns the selected column headers.
+     *
+     * @return the selected headers, or null if all columns are decoded.
+     */
+    public List<String> getProjection() {
+        return projection == null ? null : Collections.unmodifiableList(
+            projection);
+    }
+
+    /**
+     * Run the query on the mzTab file and collect the matching rows.
+     *
+     * @param mzTabFile the mzTab file, may be gzip compressed.
+     * @return the matching rows, in file order.
+     * @throws IOException if the file can not be read.
+     * @throws MZTabException if the metadata, the section header or a row can
+     * not be parsed.
+     */
+    public List<T> list(Path mzTabFile) throws IOException, MZTabException {
+        List<T> rows = new ArrayList<>();
+        execute(mzTabFile, rows::add);
+        return rows;
+    }
+
+    /**
+     * Run the query on the mzTab file and pass each matching row to the
+     * consumer, in file order.
+     *
+     * @param mzTabFile the mzTab file, may be gzip compressed.
+     * @param consumer the consumer of the matching rows.
+     * @return the errors reported while parsing.
+     * @throws IOException if the file can not be read.
+     * @throws MZTabException if the metadata, the section header or a row can
+     * not be parsed.
+     */
+    public MZTabErrorList execute(Path mzTabFile, Consumer<? super T> consumer) throws IOException, MZTabException {
+        try (InputStream fileStream = Files.newInputStream(mzTabFile)) {
+            InputStream is = fileStream;
+            if (mzTabFile.getFileName().
+                toString().
+                endsWith(".gz")) {
+                is = new GZIPInputStream(is);
+            }
+            try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(is, StandardCharsets.UTF_8))) {
+                return execute(reader, consumer);
+            }
+        }
+    }
+
+    /**
+     * Run the query on the mzTab lines of the reader and pass each matching
+     * row to the consumer, in file order. The reader is not closed.
+     *
+     * @param reader the reader.
+     * @param consumer the consumer of the matching rows.
+     * @return the errors reported while parsing.
+     * @throws IOException if the reader fails.
+     * @throws MZTabException if the metadata, the section header or a row can
+     * not be parsed.
+     * @throws IllegalArgumentException if a column of the query does not
+     * exist in the queried section.
+     */
+    public MZTabErrorList execute(BufferedReader reader,
+        Consumer<? super T> consumer) throws IOException, MZTabException {
+        MZTabParserContext context = new MZTabParserContext();
+        MZTabErrorList errorList = new MZTabErrorList();
+        MTDLineParser mtdParser = new MTDLineParser(context);
+        Metadata metadata = null;
+        MZTabDataLineParser<T> lineParser = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (MZTabStringUtils.isEmpty(line) || line.startsWith(
+                Section.Comment.getPrefix())) {
+                continue;
+            }
+            if (metadata == null) {
+                if (hasPrefix(line, Section.Metadata)) {
+                    mtdParser.parse(lineNumber, line, errorList);
+                    continue;
+                }
+                mtdParser.refineNormalMetadata();
+                metadata = mtdParser.getMetadata();
+            }
+            if (hasPrefix(line, dataSection)) {
+                if (lineParser == null) {
+                    throw new MZTabException(new MZTabError(
+                        LogicalErrorType.NoHeaderLine, lineNumber, line));
+                }
+                lineParser.parse(lineNumber, line, errorList);
+                if (lineParser.isAccepted()) {
+                    consumer.accept(lineParser.getRecord());
+                }
+            } else if (hasPrefix(line, headerSection)) {
+                MZTabHeaderLineParser headerParser = headerParserFactory.apply(
+                    context, metadata);
+                headerParser.parse(lineNumber, line, errorList);
+                lineParser = lineParserFactory.create(context, headerParser.
+                    getFactory(), new PositionMapping(headerParser.
+                        getFactory(), line), metadata, errorList);
+                lineParser.setProjection(projection);
+                lineParser.setRowFilter(compile(lineParser));
+            } else if (lineParser != null) {
+                // the queried section is complete
+                break;
+            }
+        }
+        return errorList;
+    }
+
+    private Predicate<String[]> compile(MZTabDataLineParser<T> lineParser) {
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        int[] positions = new int[conditions.size()];
+        for (int i = 0; i < positions.length; i++) {
+            String header = conditions.get(i).
+                getHeader();
+            positions[i] = lineParser.getPhysicalPosition(header);
+            if (positions[i] < 0) {
+                throw new IllegalArgumentException(
+                    "Unknown column '" + header + "'!");
+            }
+        }
+        Condition[] compiled = conditions.toArray(new Condition[0]);
+        return (items) ->
+        {
+            for (int i = 0; i < compiled.length; i++) {
+                String cell = positions[i] < items.length ? items[positions[i]] : null;
+                if (!compiled[i].test(cell)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static boolean hasPrefix(String line, Section section) {
+        String prefix = section.getPrefix();
+        return line.startsWith(prefix) && (line.length() == prefix.length()
+            || Character.isWhitespace(line.charAt(prefix.length())));
+    }
+
+    /**
+     * Create a condition that the numeric value of the column lies in the
+     * closed interval.
+     *
+     * @param header the column header.
+     * @param lower the lower bound.
+     * @param upper the upper bound.
+     * @return the condition.
+     */
+    public static Condition between(String header, double lower, double upper) {
+        return new Condition(header, header + " BETWEEN " + lower + " AND " + upper,
+            numeric((value) -> value >= lower && value <= upper));
+    }
+
+    /**
+     * Create a condition that the column equals the value. If the value is
+     * numeric, the column is compared numerically.
+     *
+     * @param header the column header.
+     * @param value the value.
+     * @return the condition.
+     */
+    public static Condition equalTo(String header, String value) {
+        return compare(header, "=", value);
+    }
+
+    /**
+     * Create a condition that the column is not null and does not equal the
+     * value. If the value is numeric, the column is compared numerically.
+     *
+     * @param header the column header.
+     * @param value the value.
+     * @return the condition.
+     */
+    public static Condition notEqualTo(String header, String value) {
+        return compare(header, "!=", value);
+    }
+
+    /**
+     * Create a condition that the numeric value of the column is less than
+     * the value.
+     *
+     * @param header the column header.
+     * @param value the value.
+     * @return the condition.
+     */
+    public static Condition lessThan(String header, double value) {
+        return compare(header, "<", Double.toString(value));
+    }
+
+    /**
+     * Create a condition that the numeric value of the column is less than or
+     * equal to the value.
+     *
+     * @param header the column header.
+     * @param value the value.
+     * @return the condition.
+     */
+    public static Condition lessThanOrEqualTo(String header, double value) {
+        return compare(header, "<=", Double.toString(value));
+    }
+
+    /**
+     * Create a condition that the numeric value of the column is greater than
+     * the value.
+     *
+     * @param header the column header.
+     * @param value the value.
+     * @return the condition.
+     */
+    public static Condition greaterThan(String header, double value) {
+        return compare(header, ">", Double.toString(value));
+    }
+
+    /**
+     * Create a condition that the numeric value of the column is greater than
+     * or equal to the value.
+     *
+     * @param header the column header.
+     * @param value the value.
+     * @return the condition.
+     */
+    public static Condition greaterThanOrEqualTo(String header, double value) {
+        return compare(header, ">=", Double.toString(value));
+    }
+
+    /**
+     * Create a condition that the column is null.
+     *
+     * @param header the column header.
+     * @return the condition.
+     */
+    public static Condition isNull(String header) {
+        return new Condition(header, header + " IS NULL",
+            MzTabQuery::isNullCell);
+    }
+
+    /**
+     * Create a condition that the column is not null.
+     *
+     * @param header the column header.
+     * @return the condition.
+     */
+    public static Condition isNotNull(String header) {
+        return new Condition(header, header + " IS NOT NULL", (cell) -> !isNullCell(
+            cell));
+    }
+
+    private static boolean isNullCell(String cell) {
+        return cell == null || cell.isEmpty() || "null".equalsIgnoreCase(cell);
+    }
+
+    private static Predicate<String> numeric(DoublePredicate predicate) {
+        return (cell) ->
+        {
+            if (isNullCell(cell)) {
+                return false;
+            }
+            Double value = MZTabUtils.parseDouble(cell);
+            return value != null && predicate.test(value);
+        };
+    }
+
+    private static Condition compare(String header, String operator,
+        String literal) {
+        String description = header + " " + operator + " " + literal;
+        Double number = isNullCell(literal) ? null : MZTabUtils.parseDouble(
+            literal);
+        if (number != null) {
+            double v = number;
+            switch (operator) {
+                case "=":
+                    return new Condition(header, description, numeric((value) -> value == v));
+                case "!=":
+                    return new Condition(header, description, numeric((value) -> value != v));
+                case "<":
+                    return new Condition(header, description, numeric((value) -> value < v));
+                case "<=":
+                    return new Condition(header, description, numeric((value) -> value <= v));
+                case ">":
+                    return new Condition(header, description, numeric((value) -> value > v));
+                case ">=":
+                    return new Condition(header, description, numeric((value) -> value >= v));
+                default:
+                    throw new IllegalArgumentException(
+                        "Unsupported operator '" + operator + "'!");
+            }
+        }
+        switch (operator) {
+            case "=":
+                return new Condition(header, description, (cell) -> !isNullCell(
+                    cell) && cell.equals(literal));
+            case "!=":
+                return new Condition(header, description, (cell) -> !isNullCell(
+                    cell) && !cell.equals(literal));
+            default:
+                throw new IllegalArgumentException(
+                    "Operator '" + operator + "' requires a numeric value, was '" + literal + "'!");
+        }
+    }
+
+    /**
+     * A condition on the raw value of a single column. Null cells never
+     * satisfy a comparison.
+     */
+    public static final class Condition implements Predicate<String> {
+
+        private final String header;
+        private final String description;
+        private final Predicate<String> predicate;
+
+        private Condition(String header, String description,
+            Predicate<String> predicate) {
+            this.header = header;
+            this.description = description;
+            this.predicate = predicate;
+        }
+
+        /**
+         * Returns the header of the column this condition applies to.
+         *
+         * @return the column header.
+         */
+        public String getHeader() {
+            return header;
+        }
+
+        @Override
+        public boolean test(String cell) {
+            return predicate.test(cell);
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private static final class ExpressionParser {
+
+        private final String expression;
+        private final List<String> tokens = new ArrayList<>();
+        private int position = 0;
+
+        ExpressionParser(String expression) {
+            this.expression = expression;
+            tokenize();
+        }
+
+        private void tokenize() {
+            int i = 0;
+            int n = expression.length();
+            while (i < n) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == ',') {
+                    tokens.add(",");
+                    i++;
+                } else if (c == '\'') {
+                    int end = expression.indexOf('\'', i + 1);
+                    if (end < 0) {
+                        throw error("Unterminated quote");
+                    }
+                    tokens.add(expression.substring(i, end + 1));
+                    i = end + 1;
+                } else if (c == '=' || c == '<' || c == '>' || c == '!') {
+                    int end = i + 1;
+                    if (end < n && expression.charAt(end) == '=') {
+                        end++;
+                    } else if (c == '<' && end < n && expression.charAt(end) == '>') {
+                        end++;
+                    }
+                    String operator = expression.substring(i, end);
+                    tokens.add("<>".equals(operator) ? "!=" : operator);
+                    i = end;
+                } else {
+                    int end = i;
+                    while (end < n && !Character.isWhitespace(expression.
+                        charAt(end)) && ",=<>!'".indexOf(expression.charAt(end)) < 0) {
+                        end++;
+                    }
+                    tokens.add(expression.substring(i, end));
+                    i = end;
+                }
+            }
+        }
+
+        void parseInto(MzTabQuery<?> query) {
+            acceptKeyword("WHERE");
+            if (hasNext() && !isKeyword(peek(), "SELECT")) {
+                query.where(parseCondition());
+                while (acceptKeyword("AND")) {
+                    query.where(parseCondition());
+                }
+            }
+            if (acceptKeyword("SELECT")) {
+                List<String> headers = new ArrayList<>();
+                headers.add(next());
+                while (hasNext() && ",".equals(peek())) {
+                    position++;
+                    headers.add(next());
+                }
+                query.select(headers.toArray(new String[0]));
+            }
+            if (hasNext()) {
+                throw error("Unexpected token '" + peek() + "'");
+            }
+        }
+
+        private Condition parseCondition() {
+            String header = next();
+            if (acceptKeyword("BETWEEN")) {
+                double lower = number(next());
+                expectKeyword("AND");
+                double upper = number(next());
+                return between(header, lower, upper);
+            }
+            if (acceptKeyword("IS")) {
+                boolean not = acceptKeyword("NOT");
+                expectKeyword("NULL");
+                return not ? isNotNull(header) : isNull(header);
+            }
+            String operator = next();
+            String literal = next();
+            if (literal.length() >= 2 && literal.startsWith("'")) {
+                return compare(header, operator, literal.substring(1,
+                    literal.length() - 1));
+            }
+            return compare(header, operator, literal);
+        }
+
+        private double number(String token) {
+            Double value = MZTabUtils.parseDouble(token);
+            if (value == null) {
+                throw error("Expected a number, was '" + token + "'");
+            }
+            return value;
+        }
+
+        private boolean hasNext() {
+            return position < tokens.size();
+        }
+
+        private String peek() {
+            return tokens.get(position);
+        }
+
+        private String next() {
+            if (!hasNext()) {
+                throw error("Unexpected end of expression");
+            }
+            return tokens.get(position++);
+        }
+
+        private static boolean isKeyword(String token, String keyword) {
+            return token.toUpperCase(Locale.ROOT).
+                equals(keyword);
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            if (hasNext() && isKeyword(peek(), keyword)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expectKeyword(String keyword) {
+            if (!acceptKeyword(keyword)) {
+                throw error("Expected " + keyword);
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(
+                message + " in query '" + expression + "'!");
+        }
+    }
+}
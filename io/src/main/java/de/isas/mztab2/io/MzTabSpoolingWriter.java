@@ -0,0 +1,418 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import de.isas.mztab2.io.serialization.Serializers;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.OptColumnMapping;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.jmztab2.model.MZTabConstants;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
+
+/**
+ * <p>
+ * MzTabSpoolingWriter writes mzTab files from small molecule summary, feature
+ * and evidence rows that are produced in arbitrary order. Rows are serialized
+ * immediately and spooled to one temporary file per section, next to the
+ * output file. On {@link #close()}, the metadata section and the section
+ * headers are written and the spooled sections are appended in SML, SMF, SME
+ * order, using {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ * Rows are therefore never held in the lists of an {@link MzTab} object.</p>
+ *
+ * <p>
+ * The mzTab object passed to the constructor acts as a template: its metadata
+ * is written on close, so it may still be modified until then. The column
+ * schema of a section is fixed when its first row is added. It contains the
+ * abundance and id confidence columns defined by the metadata at that time and
+ * the opt columns of the template's rows of that section and of the first
+ * row. Rows of the template itself are not written. Adding a row with an opt
+ * column that is not part of the section's schema raises an
+ * {@link IllegalArgumentException}.</p>
+ *
+ * <p>
+ * Rows of one section may be added concurrently from multiple threads, they
+ * are written in the order in which they were added. Rows added concurrently
+ * with {@link #close()} are either written, or rejected with an
+ * {@link IOException}. If the output path ends
+ * with <code>.gz</code>, the output is compressed with a
+ * {@link ParallelGzipOutputStream}.</p>
+ *
+ * @author nilshoffmann
+ * @see MzTabNonValidatingWriter
+ */
+@Slf4j
+public class MzTabSpoolingWriter implements Closeable {
+
+    private static final byte[] SECTION_SEPARATOR = "\n".getBytes(
+        StandardCharsets.UTF_8);
+
+    private final Path path;
+    private final MzTab template;
+    private final MzTabWriterDefaults writerDefaults;
+    private final ExecutorService compressionExecutor;
+    private final SectionSpool<SmallMoleculeSummary> smlSpool;
+    private final SectionSpool<SmallMoleculeFeature> smfSpool;
+    private final SectionSpool<SmallMoleculeEvidence> smeSpool;
+    private volatile boolean closed = false;
+
+    /**
+     * Create a new spooling writer with the default writer settings.
+     *
+     * @param path the output path.
+     * @param template the mzTab object providing metadata and opt column
+     * definitions.
+     */
+    public MzTabSpoolingWriter(Path path, MzTab template) {
+        this(path, template, new MzTabWriterDefaults(), null);
+    }
+
+    /**
+     * Create a new spooling writer.
+     *
+     * @param path the output path.
+     * @param template the mzTab object providing metadata and opt column
+     * definitions.
+     * @param writerDefaults the default writer settings.
+     * @param compressionExecutor the executor for parallel gzip compression of
+     * <code>.gz</code> output. If null, an internal thread pool is used.
+     */
+    public MzTabSpoolingWriter(Path path, MzTab template,
+        MzTabWriterDefaults writerDefaults, ExecutorService compressionExecutor) {
+        if (template == null || template.getMetadata() == null) {
+            throw new IllegalArgumentException(
+                "Template mzTab and its metadata must not be null!");
+        }
+        this.path = path;
+        this.template = template;
+        this.writerDefaults = writerDefaults;
+        this.compressionExecutor = compressionExecutor;
+        this.smlSpool = new SectionSpool<>("sml",
+            writerDefaults.smallMoleculeSummaryMapper(),
+            (mzTab) ->
+        {
+            return Optional.ofNullable(mzTab.getSmallMoleculeSummary()).
+                orElse(Collections.emptyList());
+        }, SmallMoleculeSummary::getOpt,
+            (mapper, rows) ->
+        {
+            return writerDefaults.smallMoleculeSummarySchema(mapper,
+                new MzTab().
+                    metadata(template.getMetadata()).
+                    smallMoleculeSummary(rows));
+        });
+        this.smfSpool = new SectionSpool<>("smf",
+            writerDefaults.smallMoleculeFeatureMapper(),
+            (mzTab) ->
+        {
+            return Optional.ofNullable(mzTab.getSmallMoleculeFeature()).
+                orElse(Collections.emptyList());
+        }, SmallMoleculeFeature::getOpt,
+            (mapper, rows) ->
+        {
+            return writerDefaults.smallMoleculeFeatureSchema(mapper,
+                new MzTab().
+                    metadata(template.getMetadata()).
+                    smallMoleculeFeature(rows));
+        });
+        this.smeSpool = new SectionSpool<>("sme",
+            writerDefaults.smallMoleculeEvidenceMapper(),
+            (mzTab) ->
+        {
+            return Optional.ofNullable(mzTab.getSmallMoleculeEvidence()).
+                orElse(Collections.emptyList());
+        }, SmallMoleculeEvidence::getOpt,
+            (mapper, rows) ->
+        {
+            return writerDefaults.smallMoleculeEvidenceSchema(mapper,
+                new MzTab().
+                    metadata(template.getMetadata()).
+                    smallMoleculeEvidence(rows));
+        });
+    }
+
+    /**
+     * Spool a small molecule summary row.
+     *
+     * @param sms the small molecule summary row.
+     * @throws IOException if writing to the spool file fails.
+     */
+    public void addSmallMoleculeSummary(SmallMoleculeSummary sms) throws IOException {
+        ensureOpen();
+        smlSpool.add(sms);
+    }
+
+    /**
+     * Spool a small molecule feature row.
+     *
+     * @param smf the small molecule feature row.
+     * @throws IOException if writing to the spool file fails.
+     */
+    public void addSmallMoleculeFeature(SmallMoleculeFeature smf) throws IOException {
+        ensureOpen();
+        smfSpool.add(smf);
+    }
+
+    /**
+     * Spool a small molecule evidence row.
+     *
+     * @param sme the small molecule evidence row.
+     * @throws IOException if writing to the spool file fails.
+     */
+    public void addSmallMoleculeEvidence(SmallMoleculeEvidence sme) throws IOException {
+        ensureOpen();
+        smeSpool.add(sme);
+    }
+
+    /**
+     * Writes the metadata and all spooled sections to the output path and
+     * deletes the spool files.
+     *
+     * @throws IOException if writing fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            smlSpool.finish();
+            smfSpool.finish();
+            smeSpool.finish();
+            if (path.getFileName().
+                toString().
+                endsWith(".gz")) {
+                try (OutputStream os = new ParallelGzipOutputStream(Files.
+                    newOutputStream(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE), compressionExecutor)) {
+                    writeMetadata(os);
+                    for (SectionSpool<?> spool : Arrays.asList(smlSpool, smfSpool,
+                        smeSpool)) {
+                        os.write(SECTION_SEPARATOR);
+                        spool.copyTo(os);
+                    }
+                }
+            } else {
+                try (FileChannel out = FileChannel.open(path,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE)) {
+                    writeMetadata(Channels.newOutputStream(out));
+                    for (SectionSpool<?> spool : Arrays.asList(smlSpool, smfSpool,
+                        smeSpool)) {
+                        writeFully(out, ByteBuffer.wrap(SECTION_SEPARATOR));
+                        spool.transferTo(out);
+                    }
+                }
+            }
+        } finally {
+            smlSpool.delete();
+            smfSpool.delete();
+            smeSpool.delete();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        // the spools check again under their lock, once they are finished
+        if (closed) {
+            throw new IOException("Writer closed");
+        }
+    }
+
+    private void writeMetadata(OutputStream os) throws IOException {
+        // must not close the underlying stream
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os,
+            StandardCharsets.UTF_8));
+        new MzTabNonValidatingWriter(writerDefaults).writeMetadataWithJackson(
+            template, writer);
+        writer.flush();
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SchemaFactory<T> {
+
+        CsvSchema create(CsvMapper mapper, List<T> rows) throws MZTabException;
+    }
+
+    /**
+     * Spools the rows of one section to a temporary file.
+     *
+     * @param <T> the row type.
+     */
+    private class SectionSpool<T> {
+
+        private final String name;
+        private final CsvMapper mapper;
+        private final Function<MzTab, List<T>> templateRows;
+        private final Function<T, List<OptColumnMapping>> optColumns;
+        private final SchemaFactory<T> schemaFactory;
+        private CsvSchema schema;
+        private Set<String> columnNames;
+        private Path spoolFile;
+        private Writer spoolWriter;
+        private SequenceWriter sequenceWriter;
+        private long rowCount = 0;
+        private boolean finished = false;
+
+        SectionSpool(String name, CsvMapper mapper,
+            Function<MzTab, List<T>> templateRows,
+            Function<T, List<OptColumnMapping>> optColumns,
+            SchemaFactory<T> schemaFactory) {
+            this.name = name;
+            this.mapper = mapper;
+            this.templateRows = templateRows;
+            this.optColumns = optColumns;
+            this.schemaFactory = schemaFactory;
+        }
+
+        synchronized void add(T row) throws IOException {
+            if (row == null) {
+                throw new NullPointerException("Can not add a null row!");
+            }
+            if (finished) {
+                throw new IOException("Writer closed");
+            }
+            if (schema == null) {
+                List<T> rows = new ArrayList<>(templateRows.apply(template));
+                rows.add(row);
+                initSchema(rows);
+                openSpool();
+            }
+            for (OptColumnMapping ocm : Optional.ofNullable(optColumns.apply(
+                row)).
+                orElse(Collections.emptyList())) {
+                String columnName = Serializers.printOptColumnMapping(ocm);
+                if (!columnNames.contains(columnName)) {
+                    throw new IllegalArgumentException(
+                        "Opt column '" + columnName + "' is not part of the " + name + " section schema!");
+                }
+            }
+            sequenceWriter.write(row);
+            rowCount++;
+        }
+
+        private void initSchema(List<T> rows) throws IOException {
+            try {
+                schema = schemaFactory.create(mapper, rows);
+            } catch (MZTabException ex) {
+                throw new IOException(ex);
+            }
+            columnNames = new HashSet<>();
+            for (CsvSchema.Column column : schema) {
+                columnNames.add(column.getName());
+            }
+        }
+
+        private void openSpool() throws IOException {
+            Path dir = Optional.ofNullable(path.toAbsolutePath().
+                getParent()).
+                orElse(path.toAbsolutePath());
+            spoolFile = Files.createTempFile(dir, "." + path.getFileName() + "-" + name + "-",
+                ".spool");
+            spoolWriter = Files.newBufferedWriter(spoolFile,
+                StandardCharsets.UTF_8);
+            sequenceWriter = mapper.writer(schema.withoutHeader()).
+                writeValues(spoolWriter);
+        }
+
+        synchronized void finish() throws IOException {
+            finished = true;
+            if (sequenceWriter != null) {
+                sequenceWriter.close();
+                spoolWriter.close();
+            }
+        }
+
+        private byte[] header() {
+            StringBuilder sb = new StringBuilder();
+            for (CsvSchema.Column column : schema) {
+                if (sb.length() > 0) {
+                    sb.append(MZTabConstants.TAB);
+                }
+                sb.append(column.getName());
+            }
+            sb.append(MZTabConstants.NEW_LINE);
+            return sb.toString().
+                getBytes(StandardCharsets.UTF_8);
+        }
+
+        void transferTo(FileChannel out) throws IOException {
+            if (rowCount > 0) {
+                writeFully(out, ByteBuffer.wrap(header()));
+                try (FileChannel in = FileChannel.open(spoolFile,
+                    StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+            }
+        }
+
+        void copyTo(OutputStream out) throws IOException {
+            if (rowCount > 0) {
+                out.write(header());
+                Files.copy(spoolFile, out);
+            }
+        }
+
+        void delete() {
+            if (spoolFile != null) {
+                try {
+                    Files.deleteIfExists(spoolFile);
+                } catch (IOException ex) {
+                    log.warn("Could not delete spool file " + spoolFile, ex);
+                }
+            }
+        }
+    }
+}
@@ -19,17 +19,18 @@ import de.isas.lipidomics.mztab2.validation.MzTabValidator;
 import de.isas.lipidomics.mztab2.validation.Validator;
 import de.isas.mztab2.model.MzTab;
 import de.isas.mztab2.model.ValidationMessage;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -103,17 +104,26 @@ public class MzTabValidatingWriter implements MzTabWriter<List<ValidationMessage
     }
 
     /**
-     * A default validator implemenation that first writes and then parses the
-     * created temporary file, performing the parser checks.
+     * A default validator implemenation that writes the mzTab object and
+     * concurrently parses the written output, performing the parser checks.
+     * Writer and parser are connected by a bounded in-memory pipe, so no
+     * temporary files are created and memory use is limited by the pipe's
+     * buffer size.
      */
     public static class WriteAndParseValidator implements Validator<MzTab> {
 
+        /**
+         * The default size of the in-memory pipe buffer in bytes (1MiB).
+         */
+        public static final int DEFAULT_PIPE_BUFFER_SIZE = 1024 * 1024;
+
         private static final Logger LOGGER = LoggerFactory.getLogger(
             WriteAndParseValidator.class);
 
         private final OutputStream outputStream;
         private final Level level;
         private final int maxErrorCount;
+        private final int pipeBufferSize;
 
         /**
          * Create a new instance of this validator.
@@ -125,39 +135,78 @@ public class MzTabValidatingWriter implements MzTabWriter<List<ValidationMessage
          */
         public WriteAndParseValidator(OutputStream outputStream, Level level,
             int maxErrorCount) {
+            this(outputStream, level, maxErrorCount, DEFAULT_PIPE_BUFFER_SIZE);
+        }
+
+        /**
+         * Create a new instance of this validator.
+         *
+         * @param outputStream the output stream to write to.
+         * @param level the error level for validation.
+         * @param maxErrorCount the maximum number of errors before an overflow
+         * exception while stop further processing.
+         * @param pipeBufferSize the size of the buffer between writer and
+         * parser in bytes.
+         */
+        public WriteAndParseValidator(OutputStream outputStream, Level level,
+            int maxErrorCount, int pipeBufferSize) {
+            if (pipeBufferSize <= 0) {
+                throw new IllegalArgumentException(
+                    "Pipe buffer size must be positive, was " + pipeBufferSize);
+            }
             this.outputStream = outputStream;
             this.level = level;
             this.maxErrorCount = maxErrorCount;
+            this.pipeBufferSize = pipeBufferSize;
         }
 
         @Override
         public List<ValidationMessage> validate(MzTab mzTab) {
             MzTabNonValidatingWriter writer = new MzTabNonValidatingWriter();
-            File mzTabFile = null;
-            try {
-                mzTabFile = File.createTempFile(UUID.randomUUID().
-                    toString(), ".mztab");
-                try (OutputStreamWriter osw = new OutputStreamWriter(
-                    new FileOutputStream(mzTabFile),
-                    StandardCharsets.UTF_8)) {
-                    writer.
-                        write(
-                            osw, mzTab);
-
-                    MzTabFileParser parser = new MzTabFileParser(mzTabFile);
+            try (PipedInputStream pis = new PipedInputStream(pipeBufferSize)) {
+                final PipedOutputStream pos = new PipedOutputStream(pis);
+                FutureTask<Void> writeTask = new FutureTask<>(() ->
+                {
+                    try (OutputStreamWriter osw = new OutputStreamWriter(pos,
+                        StandardCharsets.UTF_8)) {
+                        writer.write(osw, mzTab);
+                    }
+                    return null;
+                });
+                Thread writerThread = new Thread(writeTask,
+                    "mztab-validating-writer");
+                writerThread.setDaemon(true);
+                writerThread.start();
+                MzTabFileParser parser = new MzTabFileParser(pis);
+                try {
                     parser.parse(outputStream, level, maxErrorCount);
-                    return parser.getErrorList().
-                        convertToValidationMessages();
+                } finally {
+                    // unblocks the writer, if the parser stopped early
+                    pis.close();
                 }
-            } catch (IOException ex) {
-                LOGGER.error(
-                    "Caught exception while trying to parse " + mzTabFile, ex);
-            } finally {
-                if (mzTabFile != null && mzTabFile.exists()) {
-                    if(!mzTabFile.delete()) {
-                        LOGGER.warn("Deletion of "+mzTabFile+" failed!");
+                try {
+                    writeTask.get();
+                } catch (ExecutionException ex) {
+                    if (parser.getMZTabFile() != null) {
+                        LOGGER.error(
+                            "Caught exception while writing mzTab for validation!",
+                            ex.getCause());
+                    } else {
+                        LOGGER.debug(
+                            "Writer stopped after parser terminated early.",
+                            ex.getCause());
                     }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().
+                        interrupt();
+                    LOGGER.error(
+                        "Interrupted while waiting for mzTab writer!", ex);
                 }
+                return parser.getErrorList().
+                    convertToValidationMessages();
+            } catch (IOException ex) {
+                LOGGER.error(
+                    "Caught exception while trying to parse written mzTab!", ex);
             }
             return Collections.emptyList();
         }
@@ -47,6 +47,8 @@ public interface MzTabWriter<T> {
      * <p>
      * Write the mzTab object to the provided path file.</p>
      *
+     * Implementations may write gzip compressed output if the file name ends
+     * with <code>.gz</code>.
      *
      * @param path a {@link java.nio.file.Path} object.
      * @param mzTab a {@link de.isas.mztab2.model.MzTab} object.
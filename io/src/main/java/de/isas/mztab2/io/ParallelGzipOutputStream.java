@@ -0,0 +1,354 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * An output stream that writes a standard, single member gzip stream
+ * (RFC 1952), compressing the data in independent blocks in parallel, similar
+ * to <a href="https://zlib.net/pigz/">pigz</a>.</p>
+ *
+ * <p>
+ * Uncompressed data is collected into blocks of {@code blockSize} bytes. Each
+ * block is deflated as a raw deflate stream on the provided executor, using
+ * the last 32k of the previous block as preset dictionary. All blocks but the
+ * last one are terminated with a sync flush, so that their concatenation is a
+ * valid deflate stream that can be read with
+ * {@link java.util.zip.GZIPInputStream}. The CRC-32 checksum is calculated on
+ * the calling thread, compressed blocks are written to the underlying stream
+ * in submission order.</p>
+ *
+ * <p>
+ * If no executor is provided, a fixed thread pool with one thread per
+ * available processor is created and shut down when this stream is closed.
+ * A provided executor is never shut down by this stream.</p>
+ *
+ * <p>
+ * At most {@code maxPendingBlocks} blocks are submitted but not yet written
+ * at any time, regardless of where the executor came from. When that limit is
+ * reached, the writing thread waits for the oldest block and writes it before
+ * submitting the next one, so that a slow or shared executor cannot
+ * accumulate an unbounded number of uncompressed blocks in its queue.</p>
+ *
+ * @author nilshoffmann
+ */
+public class ParallelGzipOutputStream extends FilterOutputStream {
+
+    /**
+     * The default uncompressed block size (128k), as used by pigz.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final byte[] GZIP_HEADER = new byte[]{
+        (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int level;
+    private final Semaphore pendingPermits;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] block;
+    private int blockLength = 0;
+    private byte[] dictionary = null;
+    private long totalIn = 0;
+    private boolean headerWritten = false;
+    private boolean closed = false;
+
+    /**
+     * Create a new parallel gzip output stream with the default block size,
+     * default compression level and an internal thread pool.
+     *
+     * @param out the underlying output stream.
+     */
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, null);
+    }
+
+    /**
+     * Create a new parallel gzip output stream with the default block size and
+     * default compression level on the provided executor.
+     *
+     * @param out the underlying output stream.
+     * @param executor the executor to compress blocks on. If null, an internal
+     * thread pool is used.
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService executor) {
+        this(out, executor, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Create a new parallel gzip output stream.
+     *
+     * @param out the underlying output stream.
+     * @param executor the executor to compress blocks on. If null, an internal
+     * thread pool is used.
+     * @param blockSize the uncompressed block size in bytes, must be at least
+     * 32k.
+     * @param level the deflate compression level (0-9 or -1 for the default).
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService executor,
+        int blockSize, int level) {
+        this(out, executor, blockSize, level, 2 * Runtime.getRuntime().
+            availableProcessors());
+    }
+
+    /**
+     * Create a new parallel gzip output stream.
+     *
+     * @param out the underlying output stream.
+     * @param executor the executor to compress blocks on. If null, an internal
+     * thread pool is used.
+     * @param blockSize the uncompressed block size in bytes, must be at least
+     * 32k.
+     * @param level the deflate compression level (0-9 or -1 for the default).
+     * @param maxPendingBlocks the maximum number of blocks that are submitted
+     * to the executor but not yet written, must be at least 1.
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService executor,
+        int blockSize, int level, int maxPendingBlocks) {
+        super(out);
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException(
+                "Block size must be at least " + DICTIONARY_SIZE + " bytes, was " + blockSize);
+        }
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException(
+                "Invalid compression level: " + level);
+        }
+        if (maxPendingBlocks < 1) {
+            throw new IllegalArgumentException(
+                "Maximum number of pending blocks must be at least 1, was " + maxPendingBlocks);
+        }
+        int nThreads = Runtime.getRuntime().
+            availableProcessors();
+        if (executor == null) {
+            this.executor = Executors.newFixedThreadPool(nThreads,
+                new CompressorThreadFactory());
+            this.ownsExecutor = true;
+        } else {
+            this.executor = executor;
+            this.ownsExecutor = false;
+        }
+        this.level = level;
+        this.pendingPermits = new Semaphore(maxPendingBlocks);
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        if (blockLength == block.length) {
+            submitBlock(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == block.length) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Writes all blocks that have already been compressed to the underlying
+     * stream and flushes it. Data in the current, incomplete block is kept
+     * until the block is full or the stream is closed.
+     *
+     * @throws IOException if writing to the underlying stream fails.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        while (!pending.isEmpty() && pending.peekFirst().
+            isDone()) {
+            writeNextBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * Compresses the last block, writes all remaining blocks and the gzip
+     * trailer and closes the underlying stream.
+     *
+     * @throws IOException if compression or writing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            submitBlock(true);
+            while (!pending.isEmpty()) {
+                writeNextBlock();
+            }
+            writeTrailer();
+            out.flush();
+        } finally {
+            closed = true;
+            if (ownsExecutor) {
+                executor.shutdown();
+            }
+            out.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        if (!headerWritten) {
+            out.write(GZIP_HEADER);
+            headerWritten = true;
+        }
+        final byte[] input = block;
+        final int inputLength = blockLength;
+        final byte[] dict = dictionary;
+        crc.update(input, 0, inputLength);
+        totalIn += inputLength;
+        if (inputLength >= DICTIONARY_SIZE) {
+            dictionary = Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE,
+                inputLength);
+        }
+        // only this thread takes permits and releases them in writeNextBlock,
+        // so if none is left, the oldest pending block frees one
+        while (!pendingPermits.tryAcquire()) {
+            writeNextBlock();
+        }
+        try {
+            pending.addLast(executor.submit(() -> deflate(input, inputLength,
+                dict, last)));
+        } catch (RuntimeException ex) {
+            pendingPermits.release();
+            throw ex;
+        }
+        if (!last) {
+            block = new byte[block.length];
+            blockLength = 0;
+        }
+    }
+
+    private byte[] deflate(byte[] input, int length, byte[] dict, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dict != null) {
+                deflater.setDictionary(dict);
+            }
+            deflater.setInput(input, 0, length);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(
+                length / 2 + 64);
+            byte[] buffer = new byte[Math.max(length / 4, 8192)];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    bos.write(buffer, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length,
+                        Deflater.SYNC_FLUSH);
+                    bos.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeNextBlock() throws IOException {
+        Future<byte[]> next = pending.removeFirst();
+        try {
+            byte[] compressed = next.get();
+            pendingPermits.release();
+            out.write(compressed);
+        } catch (InterruptedException ex) {
+            pending.addFirst(next);
+            Thread.currentThread().
+                interrupt();
+            throw new InterruptedIOException(
+                "Interrupted while waiting for block compression!");
+        } catch (ExecutionException ex) {
+            pendingPermits.release();
+            throw new IOException("Block compression failed!", ex.getCause());
+        }
+    }
+
+    private void writeTrailer() throws IOException {
+        writeIntLE(crc.getValue());
+        writeIntLE(totalIn & 0xffffffffL);
+    }
+
+    private void writeIntLE(long value) throws IOException {
+        out.write((int) (value & 0xff));
+        out.write((int) ((value >> 8) & 0xff));
+        out.write((int) ((value >> 16) & 0xff));
+        out.write((int) ((value >> 24) & 0xff));
+    }
+
+    private static class CompressorThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_COUNT = new AtomicInteger(1);
+        private final AtomicInteger threadCount = new AtomicInteger(1);
+        private final int poolNumber = POOL_COUNT.getAndIncrement();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r,
+                "mztab-gzip-" + poolNumber + "-" + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
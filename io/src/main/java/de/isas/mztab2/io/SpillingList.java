@@ -0,0 +1,361 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import de.isas.mztab2.model.MsRun;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * <p>
+ * A list of section rows that keeps the most recently added rows on the heap
+ * and spills older rows to a temporary file, once the shared {@link Budget}
+ * is exceeded.</p>
+ *
+ * <p>
+ * Rows are spilled in blocks of up to {@link #BLOCK_SIZE} rows, each encoded
+ * with the column encoding of the binary snapshot format
+ * ({@link MzTabBinaryFormat#encodeBlock(List, MzTabBinaryFormat.SectionWriter)}).
+ * Spilled rows are paged back in by block on access, the last
+ * {@link #CACHED_BLOCKS} decoded blocks are kept. Changes to a row returned for
+ * a spilled index are therefore lost once its block is evicted, unless the row
+ * is written back with {@link #set(int, Object)}. Blocks with rows that were
+ * set are encoded again on eviction and appended to the spill file. Rows may
+ * only be appended.</p>
+ *
+ * <p>
+ * The spill file is deleted when this list is closed.</p>
+ *
+ * @param <T> the row type.
+ * @author nilshoffmann
+ */
+final class SpillingList<T> extends AbstractList<T> implements RandomAccess,
+    Closeable {
+
+    /**
+     * The maximum number of rows per spilled block.
+     */
+    static final int BLOCK_SIZE = 1024;
+    /**
+     * The number of decoded blocks that are kept on the heap.
+     */
+    static final int CACHED_BLOCKS = 2;
+
+    private final Path directory;
+    private final Budget budget;
+    private final Map<Integer, MsRun> msRuns;
+    private final MzTabBinaryFormat.SectionWriter<T> writer;
+    private final MzTabBinaryFormat.SectionReader<T> reader;
+    private final List<T> rows = new ArrayList<>();
+    private final Map<Integer, List<T>> blockCache = new LinkedHashMap<Integer, List<T>>(
+        CACHED_BLOCKS + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+            if (size() > CACHED_BLOCKS) {
+                if (dirtyBlocks.get(eldest.getKey())) {
+                    writeBlock(eldest.getKey(), eldest.getValue());
+                }
+                return true;
+            }
+            return false;
+        }
+    };
+    private final BitSet dirtyBlocks = new BitSet();
+    private long rowsSize = 0;
+    private int spilledRows = 0;
+    private int blockCount = 0;
+    private int[] blockStarts = new int[16];
+    private long[] blockOffsets = new long[16];
+    private int[] blockLengths = new int[16];
+    private Path file;
+    private FileChannel channel;
+
+    /**
+     * Create a new spilling list.
+     *
+     * @param directory the directory for the spill file, or null for the
+     * default temporary directory.
+     * @param budget the heap budget shared by all lists of one parse.
+     * @param msRuns the ms runs to resolve spectra references against.
+     * @param writer the section writer used to encode spilled rows.
+     * @param reader the section reader used to decode spilled rows.
+     */
+    SpillingList(Path directory, Budget budget, Map<Integer, MsRun> msRuns,
+        MzTabBinaryFormat.SectionWriter<T> writer,
+        MzTabBinaryFormat.SectionReader<T> reader) {
+        this.directory = directory;
+        this.budget = budget;
+        this.msRuns = msRuns;
+        this.writer = writer;
+        this.reader = reader;
+    }
+
+    /**
+     * Appends the row and accounts its estimated retained size against the
+     * budget. If the budget is exceeded, full blocks of rows are spilled.
+     *
+     * @param row the row.
+     * @param estimatedSize the estimated retained size of the row in bytes.
+     */
+    void add(T row, long estimatedSize) {
+        rows.add(row);
+        rowsSize += estimatedSize;
+        budget.reserve(estimatedSize);
+        modCount++;
+        if (rows.size() >= BLOCK_SIZE && budget.isExceeded()) {
+            spill();
+        }
+    }
+
+    /**
+     * Marks the section as completed. If the budget is exceeded, all rows
+     * that are still on the heap are spilled.
+     */
+    void complete() {
+        if (!rows.isEmpty() && budget.isExceeded()) {
+            spill();
+        }
+    }
+
+    /**
+     * Returns the number of rows that have been spilled to disk.
+     *
+     * @return the number of spilled rows.
+     */
+    int getSpilledRowCount() {
+        return spilledRows;
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (index >= spilledRows) {
+            return rows.get(index - spilledRows);
+        }
+        int block = blockOf(index);
+        return loadBlock(block).get(index - blockStarts[block]);
+    }
+
+    /**
+     * Replaces the row at the given index. Rows of spilled blocks are
+     * replaced in the decoded block, which is written back to the spill file
+     * once it is evicted.
+     *
+     * @param index the row index.
+     * @param element the new row.
+     * @return the previous row.
+     */
+    @Override
+    public T set(int index, T element) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (index >= spilledRows) {
+            return rows.set(index - spilledRows, element);
+        }
+        int block = blockOf(index);
+        synchronized (blockCache) {
+            T previous = loadBlock(block).set(index - blockStarts[block],
+                element);
+            dirtyBlocks.set(block);
+            return previous;
+        }
+    }
+
+    @Override
+    public void add(int index, T element) {
+        if (index != size()) {
+            throw new UnsupportedOperationException(
+                "Rows can only be appended!");
+        }
+        add(element, 0);
+    }
+
+    @Override
+    public int size() {
+        return spilledRows + rows.size();
+    }
+
+    /**
+     * Deletes the spill file.
+     *
+     * @throws IOException if the spill file can not be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (blockCache) {
+            blockCache.clear();
+            dirtyBlocks.clear();
+            if (channel != null) {
+                try {
+                    channel.close();
+                } finally {
+                    channel = null;
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private void spill() {
+        try {
+            if (channel == null) {
+                file = directory == null ? Files.createTempFile("mztab-",
+                    ".spill") : Files.createTempFile(directory, "mztab-",
+                        ".spill");
+                channel = FileChannel.open(file, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            }
+            for (int from = 0; from < rows.size(); from += BLOCK_SIZE) {
+                List<T> blockRows = rows.subList(from, Math.min(rows.size(),
+                    from + BLOCK_SIZE));
+                byte[] block = MzTabBinaryFormat.encodeBlock(blockRows, writer);
+                appendBlock(spilledRows + from, append(block), block.length);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        spilledRows += rows.size();
+        rows.clear();
+        budget.release(rowsSize);
+        rowsSize = 0;
+    }
+
+    private long append(byte[] block) throws IOException {
+        long offset = channel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        return offset;
+    }
+
+    /**
+     * Encodes a block with replaced rows again and appends it to the spill
+     * file. The previous encoding of the block is left unused.
+     */
+    private void writeBlock(int block, List<T> blockRows) {
+        try {
+            byte[] bytes = MzTabBinaryFormat.encodeBlock(blockRows, writer);
+            blockOffsets[block] = append(bytes);
+            blockLengths[block] = bytes.length;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        dirtyBlocks.clear(block);
+    }
+
+    private int blockOf(int index) {
+        int block = Arrays.binarySearch(blockStarts, 0, blockCount, index);
+        return block < 0 ? -block - 2 : block;
+    }
+
+    private void appendBlock(int start, long offset, int length) {
+        if (blockCount == blockStarts.length) {
+            int capacity = blockCount * 2;
+            blockStarts = Arrays.copyOf(blockStarts, capacity);
+            blockOffsets = Arrays.copyOf(blockOffsets, capacity);
+            blockLengths = Arrays.copyOf(blockLengths, capacity);
+        }
+        blockStarts[blockCount] = start;
+        blockOffsets[blockCount] = offset;
+        blockLengths[blockCount] = length;
+        blockCount++;
+    }
+
+    private List<T> loadBlock(int block) {
+        synchronized (blockCache) {
+            List<T> blockRows = blockCache.get(block);
+            if (blockRows != null) {
+                return blockRows;
+            }
+            if (channel == null) {
+                throw new IllegalStateException("Spill file has been closed!");
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(blockLengths[block]);
+                long offset = blockOffsets[block];
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new EOFException("Truncated spill file " + file);
+                    }
+                }
+                blockRows = MzTabBinaryFormat.decodeBlock(buffer.array(),
+                    msRuns, reader);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            blockCache.put(block, blockRows);
+            return blockRows;
+        }
+    }
+
+    /**
+     * Tracks the estimated retained size of the rows that are kept on the
+     * heap against a fixed budget.
+     */
+    static final class Budget {
+
+        private final long limit;
+        private long used = 0;
+
+        /**
+         * Create a new budget.
+         *
+         * @param limit the budget in bytes.
+         */
+        Budget(long limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException(
+                    "Heap budget must not be negative, was " + limit);
+            }
+            this.limit = limit;
+        }
+
+        void reserve(long bytes) {
+            used += bytes;
+        }
+
+        void release(long bytes) {
+            used -= bytes;
+        }
+
+        long getUsed() {
+            return used;
+        }
+
+        boolean isExceeded() {
+            return used > limit;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io.validators;
+
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Pattern;
+import static uk.ac.ebi.pride.jmztab2.model.MZTabConstants.REGEX_ADDUCT;
+import uk.ac.ebi.pride.jmztab2.utils.errors.FormatErrorType;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+
+/**
+ * Validates that the adduct ions of the small molecule summary and small
+ * molecule feature rows match the adduct pattern, as checked by the respective
+ * line parsers.
+ *
+ * @author nilshoffmann
+ */
+public class AdductIonValidator implements RefiningValidator<MzTab> {
+
+    private static final Pattern ADDUCT_PATTERN = Pattern.compile(REGEX_ADDUCT);
+
+    private final boolean parallel;
+
+    public AdductIonValidator() {
+        this(false);
+    }
+
+    /**
+     * Create a new instance of this validator.
+     *
+     * @param parallel if true, rows are validated in parallel.
+     */
+    public AdductIonValidator(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public List<MZTabError> validateRefine(MzTab mzTab, MZTabParserContext parserContext) {
+        List<MZTabError> errorList = new ArrayList<>();
+        errorList.addAll(RowValidation.validateRows(mzTab.
+            getSmallMoleculeSummary(), parallel, (sms) ->
+        {
+            return checkRegexMatches(
+                SmallMoleculeSummary.Properties.adductIons.getPropertyName(),
+                sms.getAdductIons());
+        }));
+        errorList.addAll(RowValidation.validateRows(mzTab.
+            getSmallMoleculeFeature(), parallel, (smf) ->
+        {
+            if (smf.getAdductIon() == null) {
+                return Collections.emptyList();
+            }
+            return checkRegexMatches(
+                SmallMoleculeFeature.Properties.adductIon.getPropertyName(),
+                Arrays.asList(smf.getAdductIon()));
+        }));
+        return errorList;
+    }
+
+    private List<MZTabError> checkRegexMatches(String propertyName,
+        List<String> elements) {
+        if (elements == null || elements.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<MZTabError> errorList = new LinkedList<>();
+        for (int i = 0; i < elements.size(); i++) {
+            String element = elements.get(i);
+            if (element != null && !"null".equals(element) && !ADDUCT_PATTERN.
+                matcher(element).
+                matches()) {
+                errorList.add(new MZTabError(FormatErrorType.RegexMismatch,
+                    -1, propertyName, element, "" + (i + 1), REGEX_ADDUCT));
+            }
+        }
+        return errorList;
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io.validators;
+
+import de.isas.lipidomics.mztab2.validation.Validator;
+import de.isas.mztab2.model.IndexedElement;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MsRun;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.ValidationMessage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import lombok.extern.slf4j.Slf4j;
+import uk.ac.ebi.pride.jmztab2.utils.errors.LogicalErrorType;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorList;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorOverflowException;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorType;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+
+/**
+ * <p>
+ * Validator that applies the checks of the mzTab parser directly to an mzTab
+ * object, without writing and parsing it. This includes the metadata
+ * {@link RefiningValidator} implementations, the section, regular expression,
+ * spectra reference and id reference checks.</p>
+ *
+ * <p>
+ * Row level checks may optionally be run in parallel. Errors are always
+ * reported in the order of the checks and rows, independent of parallel
+ * execution. Line numbers of all reported errors are -1.</p>
+ *
+ * @author nilshoffmann
+ */
+@Slf4j
+public class MzTabModelValidator implements Validator<MzTab> {
+
+    private final MZTabErrorType.Level level;
+    private final int maxErrorCount;
+    private final boolean parallel;
+
+    /**
+     * Create a new instance of this validator, reporting errors on
+     * {@link MZTabErrorType.Level#Info} and above with sequential row
+     * validation.
+     */
+    public MzTabModelValidator() {
+        this(MZTabErrorType.Level.Info, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Create a new instance of this validator.
+     *
+     * @param level the error level for validation.
+     * @param maxErrorCount the maximum number of errors before validation
+     * stops.
+     * @param parallel if true, rows are validated in parallel.
+     */
+    public MzTabModelValidator(MZTabErrorType.Level level, int maxErrorCount,
+        boolean parallel) {
+        this.level = level;
+        this.maxErrorCount = maxErrorCount;
+        this.parallel = parallel;
+    }
+
+    @Override
+    public List<ValidationMessage> validate(MzTab mzTab) {
+        return validateModel(mzTab).
+            convertToValidationMessages();
+    }
+
+    /**
+     * Validate the given mzTab object.
+     *
+     * @param mzTab the mzTab object to validate.
+     * @return the error list, containing errors on the configured level and
+     * above.
+     */
+    public MZTabErrorList validateModel(MzTab mzTab) {
+        MZTabErrorList errorList = new MZTabErrorList(level, maxErrorCount);
+        try {
+            Metadata metadata = mzTab.getMetadata();
+            if (metadata == null) {
+                errorList.add(new MZTabError(
+                    LogicalErrorType.NotDefineInMetadata, -1,
+                    MzTab.Properties.metadata.getPropertyName()));
+                return errorList;
+            }
+            MZTabParserContext context = createContext(metadata);
+            for (RefiningValidator<Metadata> validator : Arrays.asList(
+                new MzTabVersionValidator(),
+                new MzTabIdValidator(),
+                new SoftwareValidator(),
+                new QuantificationMethodValidator(),
+                new AssayValidator(),
+                new StudyVariableValidator(),
+                new MsRunValidator(),
+                new CvValidator(),
+                new DatabaseValidator(),
+                new SmallMoleculeQuantificationUnitValidator(),
+                new SmallMoleculeFeatureQuantificationUnitValidator())) {
+                addAll(errorList, validator.validateRefine(metadata, context));
+            }
+            checkSections(mzTab, errorList);
+            for (RefiningValidator<MzTab> validator : Arrays.asList(
+                new AdductIonValidator(parallel),
+                new SmallMoleculeReliabilityValidator(parallel),
+                new SmallMoleculeEvidenceSpectraRefValidator(parallel),
+                new SmallMoleculeSummaryIdRefValidator(parallel),
+                new SmallMoleculeFeatureIdRefValidator(parallel))) {
+                addAll(errorList, validator.validateRefine(mzTab, context));
+            }
+            //If ms_run[1-n]-hash is present,  ms_run[1-n]-hash_method SHOULD also be present
+            if (metadata.getMsRun() != null) {
+                for (MsRun msRun : metadata.getMsRun()) {
+                    if (msRun.getHash() != null && msRun.getHashMethod() == null) {
+                        errorList.add(new MZTabError(
+                            LogicalErrorType.MsRunHashMethodNotDefined, -1,
+                            "" + msRun.getId()));
+                    }
+                }
+            }
+        } catch (MZTabErrorOverflowException ex) {
+            log.warn("Stopped validation after reaching maximum error count of {}!",
+                maxErrorCount);
+        }
+        return errorList;
+    }
+
+    private void checkSections(MzTab mzTab, MZTabErrorList errorList) throws MZTabErrorOverflowException {
+        boolean hasSummary = !isEmpty(mzTab.getSmallMoleculeSummary());
+        boolean hasFeatures = !isEmpty(mzTab.getSmallMoleculeFeature());
+        if (!hasSummary) {
+            errorList.add(new MZTabError(
+                LogicalErrorType.NoSmallMoleculeSummarySection, -1));
+        }
+        if (!hasFeatures && hasSummary) {
+            errorList.add(new MZTabError(
+                LogicalErrorType.NoSmallMoleculeFeatureSection, -1));
+        }
+        if (hasFeatures && mzTab.getMetadata().
+            getSmallMoleculeFeatureQuantificationUnit() == null) {
+            errorList.add(new MZTabError(
+                LogicalErrorType.NoSmallMoleculeFeatureQuantificationUnit, -1));
+        }
+        if (isEmpty(mzTab.getSmallMoleculeEvidence()) && hasSummary) {
+            errorList.add(new MZTabError(
+                LogicalErrorType.NoSmallMoleculeEvidenceSection, -1));
+        }
+    }
+
+    /**
+     * Creates a parser context with the indexed metadata elements that are
+     * referenced by the refining validators.
+     *
+     * @param metadata the metadata.
+     * @return the parser context.
+     */
+    static MZTabParserContext createContext(Metadata metadata) {
+        MZTabParserContext context = new MZTabParserContext();
+        putAll(context.getAssayMap(), metadata.getAssay());
+        putAll(context.getStudyVariableMap(), metadata.getStudyVariable());
+        putAll(context.getMsRunMap(), metadata.getMsRun());
+        putAll(context.getSoftwareMap(), metadata.getSoftware());
+        putAll(context.getCvMap(), metadata.getCv());
+        putAll(context.getDatabaseMap(), metadata.getDatabase());
+        context.setQuantificationMethod(metadata.getQuantificationMethod());
+        context.setSmallMoleculeQuantificationUnit(metadata.
+            getSmallMoleculeQuantificationUnit());
+        return context;
+    }
+
+    private static <T extends IndexedElement> void putAll(
+        SortedMap<Integer, ? super T> map, List<? extends T> elements) {
+        if (elements == null) {
+            return;
+        }
+        for (T element : elements) {
+            if (element != null && element.getId() != null) {
+                map.put(element.getId(), element);
+            }
+        }
+    }
+
+    private static boolean isEmpty(List<?> list) {
+        return list == null || list.isEmpty();
+    }
+
+    private static void addAll(MZTabErrorList errorList, List<MZTabError> errors) throws MZTabErrorOverflowException {
+        for (MZTabError error : errors) {
+            errorList.add(error);
+        }
+    }
+}
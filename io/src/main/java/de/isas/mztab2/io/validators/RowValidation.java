@@ -0,0 +1,49 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io.validators;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
+
+/**
+ * Applies a row check to all rows of an mzTab section, either sequentially or
+ * row-parallel. Errors are always returned in row order.
+ *
+ * @author nilshoffmann
+ */
+final class RowValidation {
+
+    private RowValidation() {
+
+    }
+
+    static <T> List<MZTabError> validateRows(List<T> rows, boolean parallel,
+        Function<T, List<MZTabError>> rowValidator) {
+        if (rows == null || rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Stream<T> stream = parallel ? rows.parallelStream() : rows.stream();
+        return stream.
+            map(rowValidator).
+            flatMap(Collection::stream).
+            collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io.validators;
+
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MsRun;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SpectraRef;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import uk.ac.ebi.pride.jmztab2.model.IMZTabColumn;
+import uk.ac.ebi.pride.jmztab2.model.SmallMoleculeEvidenceColumn;
+import uk.ac.ebi.pride.jmztab2.utils.errors.FormatErrorType;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MsRunTable;
+
+/**
+ * Applies the {@link SpectraRefValidator} to the spectra_ref column of all
+ * small molecule evidence rows. The ms runs referenced by the spectra refs are
+ * resolved by id against the ms run map of the parser context, so that spectra
+ * refs that only carry the ms run id are validated against the ms run
+ * definitions in the metadata. The ms run table is built once per
+ * validation.
+ *
+ * @author nilshoffmann
+ */
+public class SmallMoleculeEvidenceSpectraRefValidator implements RefiningValidator<MzTab> {
+
+    private static final IMZTabColumn SPECTRA_REF_COLUMN = SmallMoleculeEvidenceColumn.Stable.
+        columnFor(SmallMoleculeEvidenceColumn.Stable.SPECTRA_REF);
+
+    private final SpectraRefValidator spectraRefValidator = new SpectraRefValidator();
+    private final boolean parallel;
+
+    public SmallMoleculeEvidenceSpectraRefValidator() {
+        this(false);
+    }
+
+    /**
+     * Create a new instance of this validator.
+     *
+     * @param parallel if true, rows are validated in parallel.
+     */
+    public SmallMoleculeEvidenceSpectraRefValidator(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public List<MZTabError> validateRefine(MzTab mzTab, MZTabParserContext parserContext) {
+        final MsRunTable runTable = MsRunTable.of(parserContext.getMsRunMap().
+            values());
+        return RowValidation.validateRows(mzTab.getSmallMoleculeEvidence(),
+            parallel, (sme) ->
+        {
+            return validateRow(sme, runTable);
+        });
+    }
+
+    private List<MZTabError> validateRow(SmallMoleculeEvidence sme,
+        MsRunTable runTable) {
+        List<SpectraRef> refList = sme.getSpectraRef() == null ? Collections.
+            emptyList() : sme.getSpectraRef().
+                stream().
+                map((ref) ->
+                {
+                    MsRun run = ref.getMsRun();
+                    if (run == null || run.getId() == null) {
+                        return ref;
+                    }
+                    MsRun definedRun = runTable.get(run.getId());
+                    if (definedRun == null || definedRun == run) {
+                        return ref;
+                    }
+                    return new SpectraRef().
+                        msRun(definedRun).
+                        reference(ref.getReference());
+                }).
+                collect(Collectors.toList());
+        String field = refList.stream().
+            map((ref) ->
+            {
+                return Metadata.Properties.msRun.getPropertyName() + "[" + (ref.
+                    getMsRun() == null ? null : ref.getMsRun().
+                        getId()) + "]:" + ref.getReference();
+            }).
+            collect(Collectors.joining("|"));
+        if (refList.stream().
+            anyMatch((ref) ->
+            {
+                return ref.getMsRun() == null;
+            })) {
+            return Collections.singletonList(new MZTabError(
+                FormatErrorType.SpectraRef, -1, SPECTRA_REF_COLUMN.getHeader(),
+                field));
+        }
+        return spectraRefValidator.validateLine(-1, SPECTRA_REF_COLUMN, field,
+            refList, runTable);
+    }
+
+}
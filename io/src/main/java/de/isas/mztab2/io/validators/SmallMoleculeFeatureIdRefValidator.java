@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io.validators;
+
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import uk.ac.ebi.pride.jmztab2.utils.errors.LogicalErrorType;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+
+/**
+ * Validates that all sme_id_refs of the small molecule feature rows reference
+ * a small molecule evidence defined in the small molecule evidence section.
+ * The check is only performed, if the small molecule evidence section is not
+ * empty.
+ *
+ * @author nilshoffmann
+ */
+public class SmallMoleculeFeatureIdRefValidator implements RefiningValidator<MzTab> {
+
+    private final boolean parallel;
+
+    public SmallMoleculeFeatureIdRefValidator() {
+        this(false);
+    }
+
+    /**
+     * Create a new instance of this validator.
+     *
+     * @param parallel if true, rows are validated in parallel.
+     */
+    public SmallMoleculeFeatureIdRefValidator(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public List<MZTabError> validateRefine(MzTab mzTab, MZTabParserContext parserContext) {
+        List<SmallMoleculeEvidence> evidences = mzTab.getSmallMoleculeEvidence();
+        if (evidences == null || evidences.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Set<Integer> definedIds = evidences.stream().
+            map(SmallMoleculeEvidence::getSmeId).
+            filter(Objects::nonNull).
+            collect(Collectors.toSet());
+        return RowValidation.validateRows(mzTab.getSmallMoleculeFeature(),
+            parallel, (smf) ->
+        {
+            if (smf.getSmeIdRefs() == null) {
+                return Collections.emptyList();
+            }
+            Set<Integer> smeIdRefs = new LinkedHashSet<>(smf.getSmeIdRefs());
+            smeIdRefs.removeAll(definedIds);
+            List<MZTabError> errorList = new LinkedList<>();
+            for (Integer smeRefId : smeIdRefs) {
+                //Reference id "{0}" for column "{1}" from element "{2}" in section "{3}" to section "{4}" must have a matching element defined.
+                errorList.add(new MZTabError(
+                    LogicalErrorType.UnknownRefId, -1, "" + smeRefId,
+                    SmallMoleculeFeature.Properties.smeIdRefs.
+                        getPropertyName(), "" + smf.getSmfId(),
+                    MzTab.Properties.smallMoleculeFeature.
+                        getPropertyName(),
+                    MzTab.Properties.smallMoleculeEvidence.
+                        getPropertyName()));
+            }
+            return errorList;
+        });
+    }
+
+}
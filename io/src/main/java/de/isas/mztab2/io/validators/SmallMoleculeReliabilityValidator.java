@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io.validators;
+
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Pattern;
+import static uk.ac.ebi.pride.jmztab2.model.MZTabConstants.REGEX_DEFAULT_RELIABILITY;
+import uk.ac.ebi.pride.jmztab2.utils.errors.FormatErrorType;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+
+/**
+ * Validates that the reliability values of the small molecule summary rows
+ * match the default reliability scheme, if no custom scheme is defined in the
+ * metadata.
+ *
+ * @author nilshoffmann
+ */
+public class SmallMoleculeReliabilityValidator implements RefiningValidator<MzTab> {
+
+    private static final Pattern RELIABILITY_PATTERN = Pattern.compile(
+        REGEX_DEFAULT_RELIABILITY);
+
+    private final boolean parallel;
+
+    public SmallMoleculeReliabilityValidator() {
+        this(false);
+    }
+
+    /**
+     * Create a new instance of this validator.
+     *
+     * @param parallel if true, rows are validated in parallel.
+     */
+    public SmallMoleculeReliabilityValidator(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public List<MZTabError> validateRefine(MzTab mzTab, MZTabParserContext parserContext) {
+        if (mzTab.getMetadata() == null || mzTab.getMetadata().
+            getSmallMoleculeIdentificationReliability() != null) {
+            return Collections.emptyList();
+        }
+        return RowValidation.validateRows(mzTab.getSmallMoleculeSummary(),
+            parallel, this::validateRow);
+    }
+
+    private List<MZTabError> validateRow(SmallMoleculeSummary sms) {
+        String reliability = sms.getReliability();
+        if (reliability != null && RELIABILITY_PATTERN.matcher(reliability).
+            matches()) {
+            return Collections.emptyList();
+        }
+        List<MZTabError> errorList = new LinkedList<>();
+        errorList.add(new MZTabError(
+            FormatErrorType.RegexMismatch, -1,
+            SmallMoleculeSummary.Properties.reliability.
+                getPropertyName(), reliability,
+            MzTab.Properties.smallMoleculeSummary.
+                getPropertyName(), "" + sms.getSmlId(),
+            REGEX_DEFAULT_RELIABILITY));
+        return errorList;
+    }
+
+}
@@ -18,8 +18,11 @@ package de.isas.mztab2.io.validators;
 import de.isas.mztab2.model.MsRun;
 import de.isas.mztab2.model.Parameter;
 import de.isas.mztab2.model.SpectraRef;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -29,8 +32,13 @@ import uk.ac.ebi.pride.jmztab2.utils.errors.FormatErrorType;
 import uk.ac.ebi.pride.jmztab2.utils.errors.LogicalErrorType;
 import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
 import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MsRunTable;
 
 /**
+ * Validates spectra references against the id format of their ms run. The
+ * validation pattern for each supported id format is compiled once, and the
+ * {@link IdFormatValidator} is selected once per ms run, either by an
+ * {@link MsRunTable} or per reference if no table is provided.
  *
  * @author nilshoffmann
  */
@@ -38,6 +46,21 @@ public class SpectraRefValidator implements FieldValidator<List<SpectraRef>> {
 
     @Override
     public List<MZTabError> validateLine(int lineNumber, MZTabParserContext parserContext, IMZTabColumn column, String field, List<SpectraRef> refList) {
+        return validateLine(lineNumber, column, field, refList, null);
+    }
+
+    /**
+     * Validate the spectra references of a field, using the id format
+     * validators of the provided ms run table.
+     *
+     * @param lineNumber the line number.
+     * @param column the spectra_ref column.
+     * @param field the field value.
+     * @param refList the parsed spectra references.
+     * @param msRunTable the ms run table, may be null.
+     * @return the validation errors.
+     */
+    public List<MZTabError> validateLine(int lineNumber, IMZTabColumn column, String field, List<SpectraRef> refList, MsRunTable msRunTable) {
         List<MZTabError> errorList = new LinkedList<>();
         if (refList.isEmpty()) {
             errorList.add(new MZTabError(FormatErrorType.SpectraRef,
@@ -52,67 +75,12 @@ public class SpectraRefValidator implements FieldValidator<List<SpectraRef>> {
                                     getHeader(), field, "ms_run[" + run.
                                     getId() + "]-location"));
                 } else {
-                    String referenceString = ref.getReference();
-                    Parameter idFormatParam = run.getIdFormat();
-                    if (idFormatParam == null) {
-                        //fall back to scan= if nothing else is given
-                    } else {
-                        if (idFormatParam.getCvAccession() == null || idFormatParam.getCvAccession().isEmpty()) {
-                            //user param
-                        } else {
-                            //cv param
-                            String validationPattern = "";
-                            switch (idFormatParam.getCvAccession()) {
-                                case "MS:1000768": //Thermo nativeId
-                                    // "controllerType=0 controllerNumber=1 scan=1"
-                                    validationPattern = MZTabConstants.REGEX_SPECTRA_REF_THERMO_NATIVE;
-                                    break;
-                                case "MS:1000769": //Waters nativeId
-                                    // "function=0 process=0 scan=0"
-                                    validationPattern = MZTabConstants.REGEX_SPECTRA_REF_WATERS_NATIVE;
-                                    break;
-                                case "MS:1000770": //WIFF nativeId
-                                    // "sample=0 period=0 cycle=0 experiment=0"
-                                    validationPattern = MZTabConstants.REGEX_SPECTRA_REF_WIFF_NATIVE;
-                                    break;
-                                case "MS:1000774": //multiple peak list nativeID, MGF, PKL, merged DTA
-                                    // index=0
-                                    validationPattern = MZTabConstants.REGEX_SPECTRA_REF_INDEX;
-                                    break;
-                                case "MS:1000773": // Bruker FID nativeId
-                                case "MS:1000775": //file single peak list nativeId
-                                    //file=xsd:IDREF
-                                    validationPattern = MZTabConstants.REGEX_SPECTRA_REF_FILE;
-                                    break;
-                                case "MS:1000777": // spectrum identifier nativeId
-                                    //spectrum=0
-                                    validationPattern = MZTabConstants.REGEX_SPECTRA_REF_SPECTRUM;
-                                    break;
-                                case "MS:1001530": // mzML unique identifier
-                                    //xsd:string
-                                    validationPattern = MZTabConstants.REGEX_SPECTRA_REF_MZML_UNIQUE;
-                                    break;
-                                //scan instances below
-                                case "MS:1000771": //Bruker/Agilent YEP nativeId
-                                case "MS:1000772": //Bruker BAF nativeId    
-                                case "MS:1000776": //mzML scan ref
-                                    // scan=0
-                                    validationPattern = MZTabConstants.REGEX_SPECTRA_REF_SCAN;
-                                    break;
-                                default:
-                                    //As the given idFormat may be unsupported by this validator, we issue a warning!
-                                    errorList.add(new MZTabError(
-                                            LogicalErrorType.SpectraIdFormatNotSupported, lineNumber, referenceString, column.
-                                                    getHeader()));
-                            }
-                            if(!validationPattern.isEmpty()) {
-                                Optional<MZTabError> error = validatePattern(Pattern.compile(validationPattern), referenceString, lineNumber, column, field, run);
-                                if (error.isPresent()) {
-                                    errorList.add(error.get());
-                                }
-                            }
-                        }
-                    }
+                    IdFormatValidator idFormatValidator = msRunTable == null
+                        ? IdFormatValidator.forMsRun(run) : msRunTable.
+                            getIdFormatValidator(run);
+                    idFormatValidator.validate(this, ref.getReference(),
+                        lineNumber, column, field, run).
+                        ifPresent(errorList::add);
                 }
             }
         }
@@ -135,4 +103,101 @@ public class SpectraRefValidator implements FieldValidator<List<SpectraRef>> {
         );
     }
 
+    /**
+     * Validates references against the precompiled pattern of one id format.
+     */
+    public static final class IdFormatValidator {
+
+        /**
+         * Accepts all references, used if the ms run has no id format or a
+         * user param id format.
+         */
+        static final IdFormatValidator NONE = new IdFormatValidator(null, false);
+        /**
+         * Reports a warning for every reference, used for cv id formats that
+         * are not supported by this validator.
+         */
+        static final IdFormatValidator UNSUPPORTED = new IdFormatValidator(null,
+            true);
+
+        private static final Map<String, IdFormatValidator> BY_ACCESSION;
+
+        static {
+            Map<String, IdFormatValidator> byAccession = new HashMap<>();
+            //Thermo nativeId
+            // "controllerType=0 controllerNumber=1 scan=1"
+            register(byAccession, MZTabConstants.REGEX_SPECTRA_REF_THERMO_NATIVE, "MS:1000768");
+            //Waters nativeId
+            // "function=0 process=0 scan=0"
+            register(byAccession, MZTabConstants.REGEX_SPECTRA_REF_WATERS_NATIVE, "MS:1000769");
+            //WIFF nativeId
+            // "sample=0 period=0 cycle=0 experiment=0"
+            register(byAccession, MZTabConstants.REGEX_SPECTRA_REF_WIFF_NATIVE, "MS:1000770");
+            //multiple peak list nativeID, MGF, PKL, merged DTA
+            // index=0
+            register(byAccession, MZTabConstants.REGEX_SPECTRA_REF_INDEX, "MS:1000774");
+            // Bruker FID nativeId, file single peak list nativeId
+            //file=xsd:IDREF
+            register(byAccession, MZTabConstants.REGEX_SPECTRA_REF_FILE, "MS:1000773", "MS:1000775");
+            // spectrum identifier nativeId
+            //spectrum=0
+            register(byAccession, MZTabConstants.REGEX_SPECTRA_REF_SPECTRUM, "MS:1000777");
+            // mzML unique identifier
+            //xsd:string
+            register(byAccession, MZTabConstants.REGEX_SPECTRA_REF_MZML_UNIQUE, "MS:1001530");
+            //Bruker/Agilent YEP nativeId, Bruker BAF nativeId, mzML scan ref
+            // scan=0
+            register(byAccession, MZTabConstants.REGEX_SPECTRA_REF_SCAN, "MS:1000771", "MS:1000772", "MS:1000776");
+            BY_ACCESSION = Collections.unmodifiableMap(byAccession);
+        }
+
+        private final Pattern pattern;
+        private final boolean unsupported;
+
+        private IdFormatValidator(Pattern pattern, boolean unsupported) {
+            this.pattern = pattern;
+            this.unsupported = unsupported;
+        }
+
+        private static void register(Map<String, IdFormatValidator> byAccession, String regex, String... accessions) {
+            IdFormatValidator validator = new IdFormatValidator(Pattern.compile(regex), false);
+            for (String accession : accessions) {
+                byAccession.put(accession, validator);
+            }
+        }
+
+        /**
+         * Select the validator for the id format of the ms run.
+         *
+         * @param run the ms run.
+         * @return the validator.
+         */
+        public static IdFormatValidator forMsRun(MsRun run) {
+            Parameter idFormatParam = run.getIdFormat();
+            if (idFormatParam == null) {
+                //fall back to scan= if nothing else is given
+                return NONE;
+            }
+            if (idFormatParam.getCvAccession() == null || idFormatParam.getCvAccession().isEmpty()) {
+                //user param
+                return NONE;
+            }
+            //cv param
+            return BY_ACCESSION.getOrDefault(idFormatParam.getCvAccession(), UNSUPPORTED);
+        }
+
+        Optional<MZTabError> validate(SpectraRefValidator validator, String reference, int lineNumber, IMZTabColumn column, String field, MsRun run) {
+            if (unsupported) {
+                //As the given idFormat may be unsupported by this validator, we issue a warning!
+                return Optional.of(new MZTabError(
+                        LogicalErrorType.SpectraIdFormatNotSupported, lineNumber, reference, column.
+                                getHeader()));
+            }
+            if (pattern == null) {
+                return Optional.empty();
+            }
+            return validator.validatePattern(pattern, reference, lineNumber, column, field, run);
+        }
+    }
+
 }
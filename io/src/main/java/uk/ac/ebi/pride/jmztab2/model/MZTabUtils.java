@@ -38,6 +38,7 @@ import uk.ac.ebi.pride.jmztab2.utils.errors.FormatErrorType;
 import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
 import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabException;
 import uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MsRunTable;
 
 /**
  * Provide a couple of functions for translating, parsing and printing formatted strings
@@ -53,6 +54,8 @@ public class MZTabUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(
         MZTabUtils.class);
 
+    private static final String MS_RUN_PREFIX = "ms_run[";
+
     /**
      * If ratios are included and the denominator is zero, the "INF" value MUST
      * be used. If the result leads to calculation errors (for example 0/0),
@@ -535,7 +538,9 @@ public class MZTabUtils {
     }
 
     /**
-     * Parse a {@link de.isas.mztab2.model.SpectraRef} list.
+     * Parse a {@link de.isas.mztab2.model.SpectraRef} list. Builds an
+     * {@link MsRunTable} from the context on every call, data line parsers
+     * should use {@link #parseSpectraRefList(MsRunTable, String)}.
      *
      * @param context a
      * {@link uk.ac.ebi.pride.jmztab2.utils.parser.MZTabParserContext} object.
@@ -545,41 +550,67 @@ public class MZTabUtils {
      */
     public static List<SpectraRef> parseSpectraRefList(
         MZTabParserContext context, Metadata metadata, String target) {
+        return parseSpectraRefList(MsRunTable.of(context.getMsRunMap().
+            values()), target);
+    }
+
+    /**
+     * Parse the target into a list of {@link SpectraRef}s, resolving the
+     * <code>ms_run[n]</code> references against the provided table. If one of
+     * the referenced ms runs is not defined, an empty list is returned.
+     *
+     * @param msRunTable the ms run table, built once per data section.
+     * @param target a {@link java.lang.String} object.
+     * @return a {@link java.util.List} object.
+     */
+    public static List<SpectraRef> parseSpectraRefList(MsRunTable msRunTable,
+        String target) {
         List<String> list = parseStringList(BAR, target);
-        List<SpectraRef> refList = new ArrayList<>();
-        
-        Pattern pattern = Pattern.compile("ms_run\\[(\\d+)\\]:(.*)");
-        Matcher matcher;
-        Integer ms_file_id;
-        String reference;
-        SpectraRef ref;
+        List<SpectraRef> refList = new ArrayList<>(list.size());
         for (String item : list) {
-            matcher = pattern.matcher(item.trim());
-            if (matcher.find()) {
-                ms_file_id = new Integer(matcher.group(1));
-                reference = matcher.group(2);
-                
-                MsRun msRun = context.getMsRunMap().
-                    get(ms_file_id);
+            String trimmed = item.trim();
+            int prefixStart = scanMsRunPrefix(trimmed);
+            if (prefixStart >= 0) {
+                int idStart = prefixStart + MS_RUN_PREFIX.length();
+                int idEnd = trimmed.indexOf(']', idStart);
+                int msFileId = Integer.parseInt(trimmed.substring(idStart,
+                    idEnd));
+                MsRun msRun = msRunTable.get(msFileId);
                 if (msRun == null) {
-                    ref = null;
-                } else {
-                    ref = new SpectraRef().msRun(msRun).
-                        reference(reference);
-                }
-                
-                if (ref == null) {
                     refList.clear();
                     break;
-                } else {
-                    refList.add(ref);
                 }
+                refList.add(new SpectraRef().msRun(msRun).
+                    reference(trimmed.substring(idEnd + 2)));
             }
         }
-        
+
         return refList;
     }
 
+    /**
+     * Finds the first <code>ms_run[n]:</code> prefix in the item, equivalent
+     * to finding <code>ms_run\[(\d+)\]:</code>.
+     *
+     * @return the index of the prefix, or -1.
+     */
+    private static int scanMsRunPrefix(String item) {
+        for (int start = item.indexOf(MS_RUN_PREFIX); start >= 0; start = item.
+            indexOf(MS_RUN_PREFIX, start + 1)) {
+            int digitsStart = start + MS_RUN_PREFIX.length();
+            int pos = digitsStart;
+            while (pos < item.length() && item.charAt(pos) >= '0' && item.
+                charAt(pos) <= '9') {
+                pos++;
+            }
+            if (pos > digitsStart && pos + 1 < item.length() && item.charAt(
+                pos) == ']' && item.charAt(pos + 1) == ':') {
+                return start;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Solve the conflict about minus char between modification position and
      * CHEMMOD charge. For example: 13-CHEMMOD:-159
@@ -15,15 +15,21 @@
  */
 package uk.ac.ebi.pride.jmztab2.utils.parser;
 
+import de.isas.lipidomics.mztab2.columnar.AbundanceMatrix;
 import de.isas.mztab2.io.serialization.ParameterConverter;
 import de.isas.mztab2.io.validators.SpectraRefValidator;
+import de.isas.mztab2.model.IndexedElement;
 import de.isas.mztab2.model.Metadata;
 import de.isas.mztab2.model.Parameter;
 import de.isas.mztab2.model.SpectraRef;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.SortedMap;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import lombok.extern.slf4j.Slf4j;
@@ -71,6 +77,12 @@ public abstract class MZTabDataLineParser<T> extends MZTabLineParser {
 
     protected SortedMap<Integer, IMZTabColumn> mapping;   // logical position --> offset
     protected Metadata metadata;
+    protected MsRunTable msRunTable;
+
+    private final SpectraRefValidator spectraRefValidator = new SpectraRefValidator();
+    private boolean[] projection;
+    private Predicate<String[]> rowFilter;
+    private boolean accepted = true;
 
     /**
      * <p>
@@ -121,6 +133,7 @@ public abstract class MZTabDataLineParser<T> extends MZTabLineParser {
             throw new NullPointerException("Metadata should be parsed first.");
         }
         this.metadata = metadata;
+        this.msRunTable = MsRunTable.of(metadata);
         this.errorList = errorList == null ? new MZTabErrorList() : errorList;
     }
 
@@ -135,6 +148,10 @@ public abstract class MZTabDataLineParser<T> extends MZTabLineParser {
         super.parse(lineNumber, line, errorList);
         checkCount();
 
+        accepted = rowFilter == null || rowFilter.test(items);
+        if (!accepted) {
+            return;
+        }
         int offset = checkData();
         if (offset != items.length) {
             log.error(
@@ -149,6 +166,87 @@ public abstract class MZTabDataLineParser<T> extends MZTabLineParser {
         }
     }
 
+    /**
+     * Returns the physical position of the column with the given header in
+     * the data lines of this section.
+     *
+     * @param header the column header, matched case-insensitively.
+     * @return the physical position, or -1 if the section has no such column.
+     */
+    public int getPhysicalPosition(String header) {
+        IMZTabColumn column = factory.findColumnByHeader(header);
+        if (column == null) {
+            return -1;
+        }
+        Integer physicalPosition = exchangeMapping.get(column.
+            getLogicPosition());
+        return physicalPosition == null ? -1 : physicalPosition;
+    }
+
+    /**
+     * Restrict the decoding of data lines to the columns with the given
+     * headers. All other cells are not checked and the corresponding
+     * properties of the record stay unset, consistency checks between columns
+     * are only applied if all involved columns are decoded.
+     *
+     * @param headers the column headers to decode, or null to decode all
+     * columns.
+     * @throws IllegalArgumentException if the section has no column for one
+     * of the headers.
+     */
+    public void setProjection(Collection<String> headers) {
+        if (headers == null) {
+            this.projection = null;
+            return;
+        }
+        boolean[] selected = new boolean[mapping.size() + 1];
+        for (String header : headers) {
+            int physicalPosition = getPhysicalPosition(header);
+            if (physicalPosition < 0) {
+                throw new IllegalArgumentException(
+                    "Unknown column '" + header + "'!");
+            }
+            if (physicalPosition >= selected.length) {
+                selected = Arrays.copyOf(selected, physicalPosition + 1);
+            }
+            selected[physicalPosition] = true;
+        }
+        this.projection = selected;
+    }
+
+    /**
+     * Set a filter that is applied to the raw cells of each data line, indexed
+     * by physical position, before any cell is decoded. Lines that are
+     * rejected are not decoded and {@link #isAccepted()} returns false.
+     *
+     * @param rowFilter the filter, or null to accept all lines.
+     */
+    public void setRowFilter(Predicate<String[]> rowFilter) {
+        this.rowFilter = rowFilter;
+    }
+
+    /**
+     * Returns whether the last parsed data line passed the row filter. The
+     * record returned by {@link #getRecord()} is only current, if this
+     * returns true.
+     *
+     * @return true if the last line was accepted and decoded.
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Returns whether the cell at the given physical position is decoded.
+     *
+     * @param physicalPosition the physical position of the cell.
+     * @return true if the cell should be decoded.
+     */
+    protected boolean isProjected(int physicalPosition) {
+        return projection == null || (physicalPosition < projection.length
+            && projection[physicalPosition]);
+    }
+
     /**
      * Check header line items size equals data line items size. The number of
      * Data line items does not match with the number of Header line items.
@@ -188,6 +286,44 @@ public abstract class MZTabDataLineParser<T> extends MZTabLineParser {
      */
     protected abstract int checkData();
 
+    /**
+     * Move the abundance values of the current row into the abundance matrix
+     * with the given name, if the parser context has an abundance matrix
+     * allocator. Otherwise, the values are returned unchanged.
+     *
+     * No matrix is allocated if there are no columns. Otherwise, every row of
+     * the section adds a row to the matrix, so that matrix row indices match
+     * section row indices. Rows without values, or with more values than the
+     * matrix has columns, add a row of <code>null</code> values and keep
+     * their values on the record.
+     *
+     * @param name the name of the abundance matrix.
+     * @param columns the assays or study variables defining the matrix
+     * columns.
+     * @param values the abundance values of the current row, in column order.
+     * @return a list view of the matrix row, or the values.
+     * @throws UncheckedIOException if the matrix can not be allocated or
+     * extended.
+     */
+    protected List<Double> toAbundanceMatrixRow(String name,
+            List<? extends IndexedElement> columns, List<Double> values) {
+        if (context.getAbundanceMatrixAllocator() == null || columns == null
+                || columns.isEmpty()) {
+            return values;
+        }
+        try {
+            AbundanceMatrix matrix = context.getAbundanceMatrix(name, columns);
+            if (values == null || values.isEmpty() || values.size() > matrix.
+                    getColumnCount()) {
+                matrix.addRow();
+                return values;
+            }
+            return matrix.getRow(matrix.addRow(values));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
     /**
      * load best_search_engine_score[id], read id value.
      *
@@ -818,16 +954,18 @@ public abstract class MZTabDataLineParser<T> extends MZTabLineParser {
             return new SplitList<>(BAR);
         }
 
-        List<SpectraRef> refList = parseSpectraRefList(context, metadata,
+        if (msRunTable == null) {
+            msRunTable = MsRunTable.of(context.getMsRunMap().values());
+        }
+        List<SpectraRef> refList = parseSpectraRefList(msRunTable,
                 result_spectraRef);
-        SpectraRefValidator validator = new SpectraRefValidator();
         this.errorList.addAll(
-            validator.validateLine(
+            spectraRefValidator.validateLine(
                 lineNumber, 
-                context, 
                 column, 
                 result_spectraRef, 
-                refList
+                refList,
+                msRunTable
             )
         );
         return refList;
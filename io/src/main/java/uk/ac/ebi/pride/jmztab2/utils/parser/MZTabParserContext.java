@@ -15,11 +15,13 @@
  */
 package uk.ac.ebi.pride.jmztab2.utils.parser;
 
+import de.isas.lipidomics.mztab2.columnar.AbundanceMatrix;
 import de.isas.mztab2.model.Assay;
 import de.isas.mztab2.model.CV;
 import de.isas.mztab2.model.ColumnParameterMapping;
 import de.isas.mztab2.model.Contact;
 import de.isas.mztab2.model.Database;
+import de.isas.mztab2.model.IndexedElement;
 import de.isas.mztab2.model.Instrument;
 import de.isas.mztab2.model.Metadata;
 import de.isas.mztab2.model.MsRun;
@@ -30,10 +32,12 @@ import de.isas.mztab2.model.Sample;
 import de.isas.mztab2.model.SampleProcessing;
 import de.isas.mztab2.model.Software;
 import de.isas.mztab2.model.StudyVariable;
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
@@ -73,6 +77,32 @@ public class MZTabParserContext {
     private List<ColumnParameterMapping> smallMoleculeFeatureColUnitList = new ArrayList<>();
     private List<ColumnParameterMapping> smallMoleculeEvidenceColUnitList = new ArrayList<>();
     private Map<String, String> colUnitMap = new HashMap<>();
+    private AbundanceMatrix.Allocator abundanceMatrixAllocator;
+    private Map<String, AbundanceMatrix> abundanceMatrices = new LinkedHashMap<>();
+
+    /**
+     * Returns the abundance matrix with the given name. The matrix is
+     * allocated with the abundance matrix allocator on first access.
+     *
+     * @param name the name of the matrix, e.g. <code>smf_abundance_assay</code>.
+     * @param columns the elements defining the matrix columns.
+     * @return the abundance matrix.
+     * @throws IOException if the matrix can not be allocated.
+     * @throws IllegalStateException if no abundance matrix allocator is set.
+     */
+    public AbundanceMatrix getAbundanceMatrix(String name,
+        List<? extends IndexedElement> columns) throws IOException {
+        AbundanceMatrix matrix = abundanceMatrices.get(name);
+        if (matrix == null) {
+            if (abundanceMatrixAllocator == null) {
+                throw new IllegalStateException(
+                    "No abundance matrix allocator set!");
+            }
+            matrix = abundanceMatrixAllocator.allocate(name, columns);
+            abundanceMatrices.put(name, matrix);
+        }
+        return matrix;
+    }
     
     /**
      * Add a sample to metadata. Samples are NOT MANDATORY in mzTab, since many software packages cannot determine what
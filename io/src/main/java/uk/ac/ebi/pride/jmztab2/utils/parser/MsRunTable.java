@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.ebi.pride.jmztab2.utils.parser;
+
+import de.isas.mztab2.io.validators.SpectraRefValidator;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MsRun;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Resolves ms_run ids to their {@link MsRun} definitions and to the
+ * {@link SpectraRefValidator.IdFormatValidator} for the run's id format. The
+ * table is built once from the metadata, before the data sections are parsed,
+ * so that spectra_ref cells are resolved with an array lookup instead of a map
+ * lookup and pattern selection per reference.</p>
+ *
+ * <p>
+ * Ids are stored densely, unless they are sparse compared to the number of
+ * runs. If the same id is defined more than once, the last definition wins.</p>
+ *
+ * @author nilshoffmann
+ */
+public final class MsRunTable {
+
+    private static final MsRunTable EMPTY = new MsRunTable(Collections.
+        emptyList());
+
+    private final MsRun[] msRuns;
+    private final SpectraRefValidator.IdFormatValidator[] validators;
+    private final Map<Integer, Integer> sparseIndex;
+
+    private MsRunTable(Collection<MsRun> runs) {
+        int maxId = 0;
+        for (MsRun run : runs) {
+            if (run != null && run.getId() != null) {
+                maxId = Math.max(maxId, run.getId());
+            }
+        }
+        int length;
+        if (maxId <= 4 * runs.size() + 64) {
+            sparseIndex = null;
+            length = maxId + 1;
+        } else {
+            sparseIndex = new HashMap<>();
+            length = runs.size();
+        }
+        msRuns = new MsRun[length];
+        validators = new SpectraRefValidator.IdFormatValidator[length];
+        for (MsRun run : runs) {
+            if (run == null || run.getId() == null || run.getId() < 0) {
+                continue;
+            }
+            int index = run.getId();
+            if (sparseIndex != null) {
+                Integer existing = sparseIndex.get(index);
+                index = existing == null ? sparseIndex.size() : existing;
+                sparseIndex.put(run.getId(), index);
+            }
+            msRuns[index] = run;
+            validators[index] = SpectraRefValidator.IdFormatValidator.forMsRun(
+                run);
+        }
+    }
+
+    /**
+     * Create a table of the ms runs defined in the metadata.
+     *
+     * @param metadata the metadata, may be null.
+     * @return the ms run table.
+     */
+    public static MsRunTable of(Metadata metadata) {
+        if (metadata == null || metadata.getMsRun() == null) {
+            return EMPTY;
+        }
+        return of(metadata.getMsRun());
+    }
+
+    /**
+     * Create a table of the provided ms runs.
+     *
+     * @param msRuns the ms runs.
+     * @return the ms run table.
+     */
+    public static MsRunTable of(Collection<MsRun> msRuns) {
+        return new MsRunTable(msRuns);
+    }
+
+    /**
+     * Returns the ms run with the given id.
+     *
+     * @param id the ms run id.
+     * @return the ms run, or null if no ms run with that id is defined.
+     */
+    public MsRun get(int id) {
+        int index = indexOf(id);
+        return index < 0 ? null : msRuns[index];
+    }
+
+    /**
+     * Returns the id format validator for the given ms run. If the ms run is
+     * not the instance held by this table, e.g. because it was created after
+     * the table, the validator is selected for the run directly.
+     *
+     * @param msRun the ms run.
+     * @return the id format validator.
+     */
+    public SpectraRefValidator.IdFormatValidator getIdFormatValidator(
+        MsRun msRun) {
+        if (msRun.getId() != null) {
+            int index = indexOf(msRun.getId());
+            if (index >= 0 && msRuns[index] == msRun) {
+                return validators[index];
+            }
+        }
+        return SpectraRefValidator.IdFormatValidator.forMsRun(msRun);
+    }
+
+    private int indexOf(int id) {
+        if (sparseIndex != null) {
+            Integer index = sparseIndex.get(id);
+            return index == null ? -1 : index;
+        }
+        return id < 0 || id >= msRuns.length ? -1 : id;
+    }
+}
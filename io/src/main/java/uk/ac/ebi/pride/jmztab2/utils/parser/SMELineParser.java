@@ -69,7 +69,7 @@ public class SMELineParser extends MZTabDataLineParser<SmallMoleculeEvidence> {
             logicalPosition = positionMapping.get(physicalPosition);
             column = factory.getColumnMapping().get(logicalPosition);
 
-            if (column != null) {
+            if (column != null && isProjected(physicalPosition)) {
                 columnName = column.getName();
                 target = items[physicalPosition];
                 if (column instanceof ISmallMoleculeEvidenceColumn) {
@@ -45,6 +45,8 @@ import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorList;
  */
 public class SMFLineParser extends MZTabDataLineParser<SmallMoleculeFeature> {
 
+    private static final String SMF_MATRIX_PREFIX = "smf_";
+
     private SmallMoleculeFeature smallMoleculeFeature;
 
     /**
@@ -85,7 +87,7 @@ public class SMFLineParser extends MZTabDataLineParser<SmallMoleculeFeature> {
             column = factory.getColumnMapping().
                 get(logicalPosition);
 
-            if (column != null) {
+            if (column != null && isProjected(physicalPosition)) {
                 columnName = column.getName();
                 target = items[physicalPosition];
                 if (column instanceof ISmallMoleculeFeatureColumn) {
@@ -173,6 +175,11 @@ public class SMFLineParser extends MZTabDataLineParser<SmallMoleculeFeature> {
             }
         }
 
+        smallMoleculeFeature.abundanceAssay(toAbundanceMatrixRow(
+            SMF_MATRIX_PREFIX + SmallMoleculeFeature.Properties.abundanceAssay.
+                getPropertyName(), metadata.getAssay(), smallMoleculeFeature.
+            getAbundanceAssay()));
+
         return physicalPosition;
     }
 
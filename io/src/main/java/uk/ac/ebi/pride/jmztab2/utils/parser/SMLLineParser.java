@@ -46,6 +46,8 @@ import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorOverflowException;
  */
 public class SMLLineParser extends MZTabDataLineParser<SmallMoleculeSummary> {
 
+    private static final String SML_MATRIX_PREFIX = "sml_";
+
     private SmallMoleculeSummary smallMoleculeSummary;
 
     /**
@@ -86,7 +88,7 @@ public class SMLLineParser extends MZTabDataLineParser<SmallMoleculeSummary> {
             column = factory.getColumnMapping().
                 get(logicalPosition);
 
-            if (column != null) {
+            if (column != null && isProjected(physicalPosition)) {
                 columnName = column.getName();
                 target = items[physicalPosition];
                 if (column instanceof ISmallMoleculeColumn) {
@@ -195,6 +197,20 @@ public class SMLLineParser extends MZTabDataLineParser<SmallMoleculeSummary> {
             }
         }
 
+        smallMoleculeSummary.abundanceAssay(toAbundanceMatrixRow(
+            SML_MATRIX_PREFIX + SmallMoleculeSummary.Properties.abundanceAssay.
+                getPropertyName(), metadata.getAssay(), smallMoleculeSummary.
+            getAbundanceAssay()));
+        smallMoleculeSummary.abundanceStudyVariable(toAbundanceMatrixRow(
+            SML_MATRIX_PREFIX + SmallMoleculeSummary.Properties.abundanceStudyVariable.
+                getPropertyName(), metadata.getStudyVariable(),
+            smallMoleculeSummary.getAbundanceStudyVariable()));
+        smallMoleculeSummary.abundanceVariationStudyVariable(
+            toAbundanceMatrixRow(
+                SML_MATRIX_PREFIX + SmallMoleculeSummary.Properties.abundanceVariationStudyVariable.
+                    getPropertyName(), metadata.getStudyVariable(),
+                smallMoleculeSummary.getAbundanceVariationStudyVariable()));
+
         checkItemNumbers(errorList, lineNumber, smallMoleculeSummary.
             getDatabaseIdentifier(),
             SmallMoleculeSummary.Properties.databaseIdentifier,
@@ -252,6 +268,10 @@ public class SMLLineParser extends MZTabDataLineParser<SmallMoleculeSummary> {
         List<?> reference, SmallMoleculeSummary.Properties referenceProperty,
         List<?> toCheck, SmallMoleculeSummary.Properties toCheckProperty) throws MZTabErrorOverflowException {
         //check that array types have same element number
+        if (reference == null || toCheck == null) {
+            // one of the columns was not decoded
+            return;
+        }
         if (!toCheck.isEmpty() && reference.size() != toCheck.size()) {
             errorList.add(new MZTabError(LogicalErrorType.ItemNumberMismatch,
                 lineNumber, toCheckProperty.getPropertyName(), "" + toCheck.
@@ -15,6 +15,10 @@
  */
 package de.isas.mztab2;
 
+import de.isas.mztab2.model.MsRun;
+import de.isas.mztab2.model.SpectraRef;
+import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.junit.Assert;
@@ -22,6 +26,7 @@ import org.junit.Test;
 import uk.ac.ebi.pride.jmztab2.model.MZTabConstants;
 import static uk.ac.ebi.pride.jmztab2.model.MZTabConstants.REGEX_DEFAULT_RELIABILITY;
 import uk.ac.ebi.pride.jmztab2.model.MZTabUtils;
+import uk.ac.ebi.pride.jmztab2.utils.parser.MsRunTable;
 
 /**
  *
@@ -83,6 +88,31 @@ public class ParsingPrimitivesTest {
         Assert.assertFalse(m.matches());
     }
 
+    @Test
+    public void testParseSpectraRefList() {
+        MsRun run1 = new MsRun().id(1);
+        MsRun run2 = new MsRun().id(2);
+        MsRunTable table = MsRunTable.of(Arrays.asList(run1, run2));
+        List<SpectraRef> refs = MZTabUtils.parseSpectraRefList(table,
+            "ms_run[1]:index=5| ms_run[2]:scan=12");
+        Assert.assertEquals(2, refs.size());
+        Assert.assertSame(run1, refs.get(0).
+            getMsRun());
+        Assert.assertEquals("index=5", refs.get(0).
+            getReference());
+        Assert.assertSame(run2, refs.get(1).
+            getMsRun());
+        Assert.assertEquals("scan=12", refs.get(1).
+            getReference());
+        Assert.assertTrue(MZTabUtils.parseSpectraRefList(table,
+            "ms_run[1]:index=5|ms_run[3]:index=6").
+            isEmpty());
+        Assert.assertTrue(MZTabUtils.parseSpectraRefList(table,
+            "ms_run[]:index=5").
+            isEmpty());
+        Assert.assertNull(table.get(3));
+    }
+
     @Test
     public void testParserVersionRegexp() {
         String result = MZTabUtils.parseMzTabVersion("2.0.0-M");
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import static de.isas.mztab2.test.utils.ClassPathFile.MTBLS263;
+import de.isas.mztab2.test.utils.ExtractClassPathFiles;
+import de.isas.mztab2.test.utils.LogMethodName;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorType;
+
+/**
+ * Test class for MzTabIndex and MzTabIndexedReader.
+ *
+ * @author nilshoffmann
+ */
+public class MzTabIndexedReaderTest {
+
+    @Rule
+    public LogMethodName methodNameLogger = new LogMethodName();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @ClassRule
+    public static final ExtractClassPathFiles EXTRACT_FILES = new ExtractClassPathFiles(
+        MTBLS263);
+
+    private Path copyTestFile() throws Exception {
+        Path mzTabFile = temporaryFolder.getRoot().
+            toPath().
+            resolve("MTBLS263.mztab");
+        Files.copy(new File(EXTRACT_FILES.getBaseDir(), "MTBLS263.mztab").
+            toPath(), mzTabFile, StandardCopyOption.REPLACE_EXISTING);
+        return mzTabFile;
+    }
+
+    @Test
+    public void testIndexSidecarFile() throws Exception {
+        Path mzTabFile = copyTestFile();
+        MzTabIndex index = MzTabIndex.forFile(mzTabFile);
+        Path indexFile = MzTabIndex.sidecarPath(mzTabFile);
+        Assert.assertEquals("MTBLS263.mztab.idx", indexFile.getFileName().
+            toString());
+        Assert.assertTrue(Files.isRegularFile(indexFile));
+        MzTabIndex reread = MzTabIndex.read(indexFile);
+        Assert.assertTrue(reread.isValidFor(mzTabFile));
+        Assert.assertEquals(index.getSmallMoleculeFeatureIndex().
+            size(), reread.getSmallMoleculeFeatureIndex().
+                size());
+        Assert.assertEquals(index.getSmallMoleculeEvidenceIndex().
+            getHeaderOffset(), reread.getSmallMoleculeEvidenceIndex().
+                getHeaderOffset());
+        List<String> lines = Files.readAllLines(mzTabFile);
+        Assert.assertTrue(lines.get(index.getSmallMoleculeFeatureIndex().
+            getHeaderLineNumber() - 1).
+            startsWith("SFH"));
+    }
+
+    @Test
+    public void testNegativeAndUnorderedIds() throws Exception {
+        Path mzTabFile = temporaryFolder.getRoot().
+            toPath().
+            resolve("unordered.mztab");
+        Files.write(mzTabFile, Arrays.asList(
+            "MTD\tmzTab-version\t2.0.0-M",
+            "",
+            "SMH\tSML_ID\tchemical_name",
+            "SML\t3\tc",
+            "SML\t-2\tb",
+            "SML\t1\ta",
+            "SML\t-7\td",
+            "SML\t2147483647\te",
+            "SML\t-2147483648\tf"));
+        MzTabIndex.SectionIndex index = MzTabIndex.build(mzTabFile).
+            getSmallMoleculeSummaryIndex();
+        Assert.assertEquals(6, index.size());
+        int[] sortedIds = {-2147483648, -7, -2, 1, 3, 2147483647};
+        for (int i = 0; i < sortedIds.length; i++) {
+            Assert.assertEquals(sortedIds[i], index.getId(i));
+            Assert.assertEquals(i, index.indexOf(sortedIds[i]));
+        }
+        Assert.assertEquals(5, index.getLineNumber(index.indexOf(-2)));
+        Assert.assertEquals(-1, index.indexOf(0));
+    }
+
+    @Test
+    public void testReadRowsById() throws Exception {
+        MzTab mzTab = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info, 0);
+        Path mzTabFile = copyTestFile();
+        try (MzTabIndexedReader reader = MzTabIndexedReader.open(mzTabFile)) {
+            Assert.assertEquals(mzTab.getMetadata().
+                getMsRun(), reader.getMetadata().
+                    getMsRun());
+            for (SmallMoleculeSummary sml : mzTab.getSmallMoleculeSummary()) {
+                Assert.assertEquals(sml, reader.getSmallMoleculeSummary(sml.
+                    getSmlId()).
+                    get());
+                List<Integer> smfIds = reader.getSmallMoleculeFeatures(sml).
+                    stream().
+                    map(SmallMoleculeFeature::getSmfId).
+                    collect(Collectors.toList());
+                Assert.assertEquals(sml.getSmfIdRefs(), smfIds);
+            }
+            for (SmallMoleculeFeature smf : mzTab.getSmallMoleculeFeature()) {
+                Assert.assertEquals(smf, reader.getSmallMoleculeFeature(smf.
+                    getSmfId()).
+                    get());
+            }
+            for (SmallMoleculeEvidence sme : mzTab.getSmallMoleculeEvidence()) {
+                Assert.assertEquals(sme, reader.getSmallMoleculeEvidence(sme.
+                    getSmeId()).
+                    get());
+            }
+            Assert.assertFalse(reader.getSmallMoleculeSummary(-1).
+                isPresent());
+            Assert.assertTrue(reader.getErrorList().
+                toString(), reader.getErrorList().
+                    isEmpty());
+        }
+    }
+}
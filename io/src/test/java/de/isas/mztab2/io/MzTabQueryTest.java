@@ -0,0 +1,141 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import de.isas.mztab2.model.SmallMoleculeFeature;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import static de.isas.mztab2.test.utils.ClassPathFile.MTBLS263;
+import de.isas.mztab2.test.utils.ExtractClassPathFiles;
+import de.isas.mztab2.test.utils.LogMethodName;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorList;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorType;
+
+/**
+ * Test class for MzTabQuery.
+ *
+ * @author nilshoffmann
+ */
+public class MzTabQueryTest {
+
+    @Rule
+    public LogMethodName methodNameLogger = new LogMethodName();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @ClassRule
+    public static final ExtractClassPathFiles EXTRACT_FILES = new ExtractClassPathFiles(
+        MTBLS263);
+
+    private Path testFile() {
+        return new File(EXTRACT_FILES.getBaseDir(), "MTBLS263.mztab").toPath();
+    }
+
+    @Test
+    public void testFilterAndProjectEvidence() throws Exception {
+        MzTab mzTab = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info, 0);
+        List<SmallMoleculeEvidence> expected = mzTab.getSmallMoleculeEvidence().
+            stream().
+            filter((sme) -> sme.getExpMassToCharge() >= 400 && sme.
+            getExpMassToCharge() <= 800 && sme.getRank() == 1).
+            collect(Collectors.toList());
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertTrue(expected.size() < mzTab.getSmallMoleculeEvidence().
+            size());
+
+        List<SmallMoleculeEvidence> result = MzTabQuery.smallMoleculeEvidence().
+            where(
+                "exp_mass_to_charge BETWEEN 400 AND 800 AND rank = 1 SELECT sme_id, spectra_ref").
+            list(testFile());
+        Assert.assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            SmallMoleculeEvidence sme = result.get(i);
+            Assert.assertEquals(expected.get(i).
+                getSmeId(), sme.getSmeId());
+            Assert.assertEquals(expected.get(i).
+                getSpectraRef(), sme.getSpectraRef());
+            // not selected, so never decoded
+            Assert.assertNull(sme.getExpMassToCharge());
+            Assert.assertNull(sme.getTheoreticalMassToCharge());
+        }
+    }
+
+    @Test
+    public void testUnprojectedQueryDecodesAllColumns() throws Exception {
+        MzTab mzTab = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info, 0);
+        List<SmallMoleculeSummary> summaries = MzTabQuery.
+            smallMoleculeSummary().
+            list(testFile());
+        Assert.assertEquals(mzTab.getSmallMoleculeSummary(), summaries);
+        List<SmallMoleculeFeature> features = MzTabQuery.smallMoleculeFeature().
+            where(MzTabQuery.greaterThan("smf_id", 10), MzTabQuery.isNotNull(
+                "exp_mass_to_charge")).
+            list(testFile());
+        Assert.assertEquals(mzTab.getSmallMoleculeFeature().
+            stream().
+            filter((smf) -> smf.getSmfId() > 10).
+            collect(Collectors.toList()), features);
+    }
+
+    @Test
+    public void testErrorsOnlyForDecodedColumns() throws Exception {
+        MZTabErrorList errors = MzTabQuery.smallMoleculeSummary().
+            select("sml_id").
+            execute(testFile(), (sml) ->
+            {
+                Assert.assertNotNull(sml.getSmlId());
+                Assert.assertNull(sml.getDatabaseIdentifier());
+            });
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownColumn() throws Exception {
+        MzTabQuery.smallMoleculeEvidence().
+            where("no_such_column = 1").
+            list(testFile());
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptCompressedFile() throws Exception {
+        Path corruptFile = temporaryFolder.newFile("corrupt.mztab.gz").
+            toPath();
+        Files.write(corruptFile, new byte[]{0x1f});
+        MzTabQuery.smallMoleculeEvidence().
+            list(corruptFile);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidExpression() {
+        MzTabQuery.smallMoleculeEvidence().
+            where("rank BETWEEN 1");
+    }
+}
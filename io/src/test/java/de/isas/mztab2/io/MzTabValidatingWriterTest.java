@@ -19,11 +19,13 @@ import de.isas.mztab2.model.ValidationMessage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import org.junit.Assert;
 import org.junit.Test;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorType.Level;
 
 /**
  *
@@ -106,4 +108,22 @@ public class MzTabValidatingWriterTest {
         assertValidationMessages(messages);
     }
 
+    /**
+     * Test of write method with a pipe buffer that is much smaller than the
+     * written output, of class MzTabValidatingWriter.
+     */
+    @Test
+    public void testWrite_OutputStreamWriter_MzTab_SmallPipeBuffer() throws Exception {
+        MzTabValidatingWriter writer = new MzTabValidatingWriter(
+            new MzTabValidatingWriter.WriteAndParseValidator(
+                new ByteArrayOutputStream(), Level.Info, 100, 64), true);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Optional<List<ValidationMessage>> messages = writer.write(
+            new OutputStreamWriter(baos, StandardCharsets.UTF_8),
+            MzTabTestData.create2_0TestFile());
+        assertValidationMessages(messages);
+        //validation failed, so nothing should have been written
+        Assert.assertEquals(0, baos.size());
+    }
+
 }
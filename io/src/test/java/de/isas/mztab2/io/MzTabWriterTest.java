@@ -22,6 +22,7 @@ import de.danielbechler.diff.ObjectDifferBuilder;
 import de.danielbechler.diff.node.DiffNode;
 import de.danielbechler.diff.node.Visit;
 import static de.isas.mztab2.io.MzTabTestData.create2_0TestFile;
+import de.isas.lipidomics.mztab2.columnar.AbundanceMatrix;
 import de.isas.mztab2.io.serialization.ParameterConverter;
 import de.isas.mztab2.model.Assay;
 import de.isas.mztab2.model.CV;
@@ -50,18 +51,25 @@ import static de.isas.mztab2.test.utils.ClassPathFile.STANDARDMIX_POSITIVE_EXPOR
 import de.isas.mztab2.test.utils.ExtractClassPathFiles;
 import de.isas.mztab2.test.utils.LogMethodName;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringWriter;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -69,6 +77,7 @@ import org.junit.Assert;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import static uk.ac.ebi.pride.jmztab2.model.MZTabConstants.NEW_LINE;
 import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorList;
 import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorType;
@@ -84,6 +93,9 @@ public class MzTabWriterTest {
     @Rule
     public LogMethodName methodNameLogger = new LogMethodName();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @ClassRule
     public static ExtractClassPathFiles EXTRACT_FILES = new ExtractClassPathFiles(
         MTBLS263,
@@ -360,6 +372,329 @@ public class MzTabWriterTest {
         compareMzTabModels(mzTabFile, parser.getMZTabFile());
     }
 
+    @Test
+    public void testReadWriteRoundtripWithParallelGzipMTBLS263() throws IOException, URISyntaxException, MZTabException {
+        MzTab mzTabFile = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info,
+            0);
+        File tempFile = File.createTempFile(
+            "testReadWriteRoundtripWithParallelGzipMTBLS263",
+            ".mztab.gz");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            MzTabNonValidatingWriter writer = new MzTabNonValidatingWriter(
+                new MzTabWriterDefaults(), executor);
+            writer.write(tempFile.toPath(), mzTabFile);
+        } finally {
+            executor.shutdown();
+        }
+        MzTabFileParser parser = new MzTabFileParser(tempFile);
+        MZTabErrorList errors = parser.parse(System.out,
+            MZTabErrorType.Level.Info, 500);
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        compareMzTabModels(mzTabFile, parser.getMZTabFile());
+    }
+
+    @Test
+    public void testReadWriteRoundtripWithSpoolingWriterMTBLS263() throws IOException, URISyntaxException, MZTabException {
+        MzTab mzTabFile = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info,
+            0);
+        File tempFile = File.createTempFile(
+            "testReadWriteRoundtripWithSpoolingWriterMTBLS263",
+            ".mztab");
+        try (MzTabSpoolingWriter writer = new MzTabSpoolingWriter(tempFile.
+            toPath(), mzTabFile)) {
+            // add rows in reverse section order, interleaved
+            int maxRows = Math.max(mzTabFile.getSmallMoleculeSummary().
+                size(), Math.max(mzTabFile.getSmallMoleculeFeature().
+                    size(), mzTabFile.getSmallMoleculeEvidence().
+                        size()));
+            for (int i = 0; i < maxRows; i++) {
+                if (i < mzTabFile.getSmallMoleculeEvidence().
+                    size()) {
+                    writer.addSmallMoleculeEvidence(mzTabFile.
+                        getSmallMoleculeEvidence().
+                        get(i));
+                }
+                if (i < mzTabFile.getSmallMoleculeFeature().
+                    size()) {
+                    writer.addSmallMoleculeFeature(mzTabFile.
+                        getSmallMoleculeFeature().
+                        get(i));
+                }
+                if (i < mzTabFile.getSmallMoleculeSummary().
+                    size()) {
+                    writer.addSmallMoleculeSummary(mzTabFile.
+                        getSmallMoleculeSummary().
+                        get(i));
+                }
+            }
+        }
+        MzTabFileParser parser = new MzTabFileParser(tempFile);
+        MZTabErrorList errors = parser.parse(System.out,
+            MZTabErrorType.Level.Info, 500);
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        compareMzTabModels(mzTabFile, parser.getMZTabFile());
+    }
+
+    @Test
+    public void testSpoolingWriterRowsAddedWhileClosingMTBLS263() throws Exception {
+        MzTab mzTabFile = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info,
+            0);
+        MzTab template = new MzTab().metadata(mzTabFile.getMetadata());
+        List<SmallMoleculeFeature> features = mzTabFile.getSmallMoleculeFeature();
+        for (int run = 0; run < 20; run++) {
+            File tempFile = temporaryFolder.newFile(
+                "testSpoolingWriterRowsAddedWhileClosing" + run + ".mztab");
+            MzTabSpoolingWriter writer = new MzTabSpoolingWriter(tempFile.
+                toPath(), template);
+            AtomicInteger added = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    futures.add(executor.submit(() ->
+                    {
+                        for (SmallMoleculeFeature feature : features) {
+                            try {
+                                writer.addSmallMoleculeFeature(feature);
+                                added.incrementAndGet();
+                            } catch (IOException ex) {
+                                // rejected after close
+                            }
+                        }
+                    }));
+                }
+                writer.close();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+            try {
+                writer.addSmallMoleculeFeature(features.get(0));
+                Assert.fail("Expected an IOException after close!");
+            } catch (IOException ex) {
+                // expected
+            }
+            // every accepted row has been written
+            long rows = Files.readAllLines(tempFile.toPath(),
+                StandardCharsets.UTF_8).
+                stream().
+                filter((line) -> line.startsWith("SMF")).
+                count();
+            Assert.assertEquals(added.get(), rows);
+            // only the output file is left, spool files are deleted
+            Assert.assertEquals(run + 1, temporaryFolder.getRoot().
+                list().length);
+        }
+    }
+
+    @Test
+    public void testReadWriteRoundtripWithAbundanceMatricesMTBLS263() throws IOException, URISyntaxException, MZTabException {
+        MzTab mzTabFile = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info,
+            0);
+        Path matrixDir = Files.createTempDirectory(
+            "testReadWriteRoundtripWithAbundanceMatricesMTBLS263");
+        MzTabFileParser matrixParser = new MzTabFileParser(new File(
+            EXTRACT_FILES.getBaseDir(), "MTBLS263.mztab"));
+        matrixParser.setAbundanceMatrixAllocator(AbundanceMatrix.mapped(
+            matrixDir));
+        MZTabErrorList matrixErrors = matrixParser.parse(System.out,
+            MZTabErrorType.Level.Info, 500);
+        Assert.assertTrue(matrixErrors.toString(), matrixErrors.isEmpty());
+        AbundanceMatrix smfMatrix = matrixParser.getAbundanceMatrices().
+            get("smf_abundance_assay");
+        Assert.assertNotNull(smfMatrix);
+        Assert.assertEquals(mzTabFile.getSmallMoleculeFeature().
+            size(), smfMatrix.getRowCount());
+        Assert.assertEquals(mzTabFile.getMetadata().
+            getAssay().
+            size(), smfMatrix.getColumnCount());
+        // one matrix row per section row
+        Assert.assertEquals(mzTabFile.getSmallMoleculeSummary().
+            size(), matrixParser.getAbundanceMatrices().
+                get("sml_abundance_study_variable").
+                getRowCount());
+        File tempFile = File.createTempFile(
+            "testReadWriteRoundtripWithAbundanceMatricesMTBLS263",
+            ".mztab");
+        try {
+            new MzTabNonValidatingWriter().write(tempFile.toPath(),
+                matrixParser.getMZTabFile());
+        } finally {
+            for (AbundanceMatrix matrix : matrixParser.getAbundanceMatrices().
+                values()) {
+                matrix.close();
+            }
+        }
+        MzTabFileParser parser = new MzTabFileParser(tempFile);
+        MZTabErrorList errors = parser.parse(System.out,
+            MZTabErrorType.Level.Info, 500);
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        compareMzTabModels(mzTabFile, parser.getMZTabFile());
+    }
+
+    @Test
+    public void testBinarySnapshotRoundtripMTBLS263() throws IOException, URISyntaxException, MZTabException {
+        MzTab mzTabFile = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info,
+            0);
+        File snapshotFile = File.createTempFile(
+            "testBinarySnapshotRoundtripMTBLS263",
+            ".mztab.bin");
+        new MzTabBinaryWriter().write(snapshotFile.toPath(), mzTabFile);
+        MzTab reloaded = new MzTabBinaryReader().read(snapshotFile.toPath());
+        compareMzTabModels(mzTabFile, reloaded);
+        Assert.assertEquals(mzTabFile.getSmallMoleculeSummary(), reloaded.
+            getSmallMoleculeSummary());
+        Assert.assertEquals(mzTabFile.getSmallMoleculeFeature(), reloaded.
+            getSmallMoleculeFeature());
+        Assert.assertEquals(mzTabFile.getSmallMoleculeEvidence(), reloaded.
+            getSmallMoleculeEvidence());
+    }
+
+    @Test
+    public void testBinarySnapshotWithLargeDoubleColumns() throws IOException {
+        MzTab mzTab = new MzTab().metadata(new Metadata().mzTabID(
+            "large-double-columns"));
+        List<SmallMoleculeSummary> rows = new ArrayList<>();
+        // more doubles than fit into one conversion chunk
+        for (int i = 0; i < 10000; i++) {
+            rows.add(new SmallMoleculeSummary().smlId(i + 1).
+                reliability(i % 2 == 0 ? "1" : "2").
+                bestIdConfidenceValue(i % 7 == 0 ? null : i * 0.5).
+                abundanceAssay(Arrays.asList(i * 1.0, null, -i / 3.0)));
+        }
+        mzTab.setSmallMoleculeSummary(rows);
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        new MzTabBinaryWriter().write(snapshot, mzTab);
+        MzTab reloaded = new MzTabBinaryReader().read(new ByteArrayInputStream(
+            snapshot.toByteArray()));
+        Assert.assertEquals(rows, reloaded.getSmallMoleculeSummary());
+        Assert.assertSame(reloaded.getSmallMoleculeSummary().
+            get(0).
+            getReliability(), reloaded.getSmallMoleculeSummary().
+                get(2).
+                getReliability());
+    }
+
+    @Test
+    public void testParseWithHeapBudgetMTBLS263() throws IOException, URISyntaxException, MZTabException {
+        MzTab mzTabFile = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info,
+            0);
+        try (MzTabFileParser parser = new MzTabFileParser(new File(
+            EXTRACT_FILES.getBaseDir(), "MTBLS263.mztab"))) {
+            parser.setHeapBudget(0);
+            parser.setSpillDirectory(temporaryFolder.getRoot().toPath());
+            MZTabErrorList errors = parser.parse(System.out,
+                MZTabErrorType.Level.Info, 500);
+            Assert.assertTrue(errors.toString(), errors.isEmpty());
+            MzTab spilled = parser.getMZTabFile();
+            Assert.assertEquals(3, temporaryFolder.getRoot().
+                list().length);
+            compareMzTabModels(mzTabFile, spilled);
+            Assert.assertEquals(mzTabFile.getSmallMoleculeSummary(), spilled.
+                getSmallMoleculeSummary());
+            Assert.assertEquals(mzTabFile.getSmallMoleculeFeature(), spilled.
+                getSmallMoleculeFeature());
+            Assert.assertEquals(mzTabFile.getSmallMoleculeEvidence(), spilled.
+                getSmallMoleculeEvidence());
+        }
+        Assert.assertEquals(0, temporaryFolder.getRoot().
+            list().length);
+    }
+
+    @Test
+    public void testFailedParseWithHeapBudgetDeletesSpillFiles() throws IOException {
+        File spillDirectory = temporaryFolder.newFolder("spill");
+        File corruptFile = temporaryFolder.newFile("MTBLS263-corrupt.mztab");
+        List<String> lines = new ArrayList<>(Files.readAllLines(new File(
+            EXTRACT_FILES.getBaseDir(), "MTBLS263.mztab").toPath(),
+            StandardCharsets.UTF_8));
+        // the summary section is spilled before the broken evidence row
+        lines.add("SME\t99");
+        Files.write(corruptFile.toPath(), lines, StandardCharsets.UTF_8);
+        try (MzTabFileParser parser = new MzTabFileParser(corruptFile)) {
+            parser.setHeapBudget(0);
+            parser.setSpillDirectory(spillDirectory.toPath());
+            MZTabErrorList errors = parser.parse(System.out,
+                MZTabErrorType.Level.Info, 500);
+            Assert.assertFalse(errors.isEmpty());
+            Assert.assertNull(parser.getMZTabFile());
+            Assert.assertEquals(0, spillDirectory.list().length);
+        }
+    }
+
+    @Test
+    public void testJsonStreamingRoundtripMTBLS263() throws IOException, URISyntaxException, MZTabException {
+        MzTab mzTabFile = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info,
+            0);
+        File jsonFile = File.createTempFile(
+            "testJsonStreamingRoundtripMTBLS263",
+            ".json");
+        new MzTabJsonWriter(true).write(jsonFile.toPath(), mzTabFile);
+        MzTab fromObjectMapper = new ObjectMapper().readValue(jsonFile,
+            MzTab.class);
+        Assert.assertEquals(mzTabFile.getSmallMoleculeEvidence().
+            size(), fromObjectMapper.getSmallMoleculeEvidence().
+                size());
+        File tempFile = File.createTempFile(
+            "testJsonStreamingRoundtripMTBLS263",
+            ".mztab");
+        new MzTabJsonReader().convert(jsonFile.toPath(), tempFile.toPath());
+        MzTabFileParser parser = new MzTabFileParser(tempFile);
+        MZTabErrorList errors = parser.parse(System.out,
+            MZTabErrorType.Level.Info, 500);
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        compareMzTabModels(mzTabFile, parser.getMZTabFile());
+    }
+
+    @Test
+    public void testJsonStreamingToParserMTBLS263() throws IOException, URISyntaxException, MZTabException {
+        MzTab mzTabFile = TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info,
+            0);
+        File jsonFile = temporaryFolder.newFile(
+            "testJsonStreamingToParserMTBLS263.json");
+        new MzTabJsonWriter(true).write(jsonFile.toPath(), mzTabFile);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        MzTabFileParser parser = new MzTabFileParser(new MzTabJsonReader().
+            openAsMzTab(jsonFile.toPath(), copy));
+        MZTabErrorList errors = parser.parse(System.out,
+            MZTabErrorType.Level.Info, 500);
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        compareMzTabModels(mzTabFile, parser.getMZTabFile());
+        // only the json file, the conversion does not write other files
+        Assert.assertEquals(1, temporaryFolder.getRoot().
+            list().length);
+        MzTabFileParser copyParser = new MzTabFileParser(
+            new ByteArrayInputStream(copy.toByteArray()));
+        Assert.assertTrue(copyParser.parse(System.out,
+            MZTabErrorType.Level.Info, 500).
+            isEmpty());
+        compareMzTabModels(mzTabFile, copyParser.getMZTabFile());
+    }
+
+    @Test(expected = IOException.class)
+    public void testJsonStreamingToParserFailsForInvalidJson() throws IOException {
+        File jsonFile = temporaryFolder.newFile(
+            "testJsonStreamingToParserFailsForInvalidJson.json");
+        Files.write(jsonFile.toPath(), "{\"metadata\": [".getBytes(
+            StandardCharsets.UTF_8));
+        try (InputStream is = new MzTabJsonReader().openAsMzTab(jsonFile.
+            toPath())) {
+            while (is.read() >= 0) {
+            }
+        }
+    }
+
     void compareMzTabModels(MzTab model1, MzTab model2
     ) {
 
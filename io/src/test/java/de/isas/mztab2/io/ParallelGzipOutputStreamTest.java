@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test class for ParallelGzipOutputStream.
+ *
+ * @author nilshoffmann
+ */
+public class ParallelGzipOutputStreamTest {
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(
+            compressed))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                bos.write(buffer, 0, n);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static byte[] createRows(int nRows) {
+        Random r = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= nRows; i++) {
+            sb.append("SMF\t").
+                append(i).
+                append("\t").
+                append(r.nextDouble() * 1000.0d).
+                append("\n");
+        }
+        return sb.toString().
+            getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMultiBlockRoundtrip() throws IOException {
+        byte[] data = createRows(100000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ParallelGzipOutputStream os = new ParallelGzipOutputStream(bos,
+            executor, 64 * 1024, 6)) {
+            os.write(data, 0, 1000);
+            os.write(data[1000]);
+            os.write(data, 1001, data.length - 1001);
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(bos.size() < data.length);
+        Assert.assertArrayEquals(data, gunzip(bos.toByteArray()));
+    }
+
+    @Test
+    public void testPendingBlocksBoundedForProvidedExecutor() throws
+        IOException {
+        byte[] data = createRows(100000);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        CountingExecutor executor = new CountingExecutor();
+        try (ParallelGzipOutputStream os = new ParallelGzipOutputStream(bos,
+            executor, 32 * 1024, 6, 3)) {
+            os.write(data);
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(executor.maxInFlight.get() >= 1);
+        Assert.assertTrue("Expected at most 3 blocks in flight, was "
+            + executor.maxInFlight.get(), executor.maxInFlight.get() <= 3);
+        Assert.assertArrayEquals(data, gunzip(bos.toByteArray()));
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(bos).close();
+        Assert.assertEquals(0, gunzip(bos.toByteArray()).length);
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws IOException {
+        ParallelGzipOutputStream os = new ParallelGzipOutputStream(
+            new ByteArrayOutputStream());
+        os.close();
+        os.write(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBlockSize() {
+        new ParallelGzipOutputStream(new ByteArrayOutputStream(), null, 1024, 6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxPendingBlocks() {
+        new ParallelGzipOutputStream(new ByteArrayOutputStream(), null,
+            64 * 1024, 6, 0);
+    }
+
+    /**
+     * A single threaded, slow executor that records the maximum number of
+     * tasks that were submitted but whose result was not yet available.
+     */
+    private static class CountingExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate = Executors.
+            newSingleThreadExecutor();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return new FutureTask<T>(callable) {
+                @Override
+                protected void set(T v) {
+                    // count down before the result becomes visible to get()
+                    inFlight.decrementAndGet();
+                    super.set(v);
+                }
+
+                @Override
+                protected void setException(Throwable t) {
+                    inFlight.decrementAndGet();
+                    super.setException(t);
+                }
+            };
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().
+                        interrupt();
+                }
+                command.run();
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws
+            InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io;
+
+import de.isas.lipidomics.mztab2.aggregation.StudyVariableAggregator;
+import de.isas.mztab2.model.Assay;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import de.isas.mztab2.model.StudyVariable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class SpillingListTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private SpillingList<SmallMoleculeSummary> createList(int rows) {
+        SpillingList<SmallMoleculeSummary> list = new SpillingList<>(
+            temporaryFolder.getRoot().
+                toPath(), new SpillingList.Budget(0), new HashMap<>(),
+            MzTabBinaryWriter::writeSmallMoleculeSummary,
+            MzTabBinaryReader::readSmallMoleculeSummary);
+        for (int i = 0; i < rows; i++) {
+            list.add(new SmallMoleculeSummary().smlId(i + 1).
+                abundanceAssay(Arrays.asList((double) i, i + 2.0)), 100);
+        }
+        list.complete();
+        return list;
+    }
+
+    @Test
+    public void testSetWritesBackSpilledRows() throws IOException {
+        int rows = (SpillingList.CACHED_BLOCKS + 1) * SpillingList.BLOCK_SIZE + 5;
+        try (SpillingList<SmallMoleculeSummary> list = createList(rows)) {
+            Assert.assertEquals(rows, list.getSpilledRowCount());
+            // spilled rows are copies, changes are kept once they are set
+            int unset = SpillingList.BLOCK_SIZE;
+            list.get(unset).
+                setReliability("2");
+            list.set(1, list.get(1).
+                reliability("3"));
+            for (int i = 0; i < rows; i++) {
+                Assert.assertEquals(Integer.valueOf(i + 1), list.get(i).
+                    getSmlId());
+            }
+            Assert.assertNull(list.get(unset).
+                getReliability());
+            Assert.assertEquals("3", list.get(1).
+                getReliability());
+        }
+        Assert.assertEquals(0, temporaryFolder.getRoot().
+            list().length);
+    }
+
+    @Test
+    public void testFillSpilledRows() throws IOException {
+        Metadata metadata = new Metadata().addAssayItem(new Assay().id(1)).
+            addAssayItem(new Assay().id(2)).
+            addStudyVariableItem(new StudyVariable().id(1).
+                addAssayRefsItem(new Assay().id(1)).
+                addAssayRefsItem(new Assay().id(2)));
+        int rows = (SpillingList.CACHED_BLOCKS + 1) * SpillingList.BLOCK_SIZE + 5;
+        try (SpillingList<SmallMoleculeSummary> list = createList(rows)) {
+            StudyVariableAggregator.of(metadata).
+                fill(list, null);
+            for (int i = 0; i < rows; i++) {
+                Assert.assertEquals(Arrays.asList(i + 1.0), list.get(i).
+                    getAbundanceStudyVariable());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.io.validators;
+
+import de.isas.mztab2.io.TestResources;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.SmallMoleculeSummary;
+import static de.isas.mztab2.test.utils.ClassPathFile.MTBLS263;
+import de.isas.mztab2.test.utils.ExtractClassPathFiles;
+import de.isas.mztab2.test.utils.LogMethodName;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.ac.ebi.pride.jmztab2.utils.errors.FormatErrorType;
+import uk.ac.ebi.pride.jmztab2.utils.errors.LogicalErrorType;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabError;
+import uk.ac.ebi.pride.jmztab2.utils.errors.MZTabErrorType;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class MzTabModelValidatorTest {
+
+    @Rule
+    public LogMethodName methodNameLogger = new LogMethodName();
+
+    @ClassRule
+    public static ExtractClassPathFiles EXTRACT_FILES = new ExtractClassPathFiles(
+        MTBLS263);
+
+    private MzTab parseMTBLS263() throws Exception {
+        return TestResources.parseResource(EXTRACT_FILES.getBaseDir(),
+            "MTBLS263.mztab", MZTabErrorType.Level.Info, 0);
+    }
+
+    @Test
+    public void testValidateParsedFile() throws Exception {
+        MzTab mzTab = parseMTBLS263();
+        assertTrue(new MzTabModelValidator().validate(mzTab).
+            isEmpty());
+        assertTrue(new MzTabModelValidator(MZTabErrorType.Level.Info, 100, true).
+            validate(mzTab).
+            isEmpty());
+    }
+
+    @Test
+    public void testValidateUnknownRefIdsParallel() throws Exception {
+        MzTab mzTab = parseMTBLS263();
+        for (SmallMoleculeSummary sms : mzTab.getSmallMoleculeSummary()) {
+            List<Integer> smfIdRefs = new ArrayList<>(sms.getSmfIdRefs());
+            smfIdRefs.add(100000 + sms.getSmlId());
+            sms.setSmfIdRefs(smfIdRefs);
+        }
+        List<MZTabError> sequential = new MzTabModelValidator(
+            MZTabErrorType.Level.Info, 100, false).
+            validateModel(mzTab).
+            getErrorList();
+        List<MZTabError> parallel = new MzTabModelValidator(
+            MZTabErrorType.Level.Info, 100, true).
+            validateModel(mzTab).
+            getErrorList();
+        assertEquals(mzTab.getSmallMoleculeSummary().
+            size(), sequential.size());
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertEquals(LogicalErrorType.UnknownRefId, parallel.get(i).
+                getType());
+            assertEquals(sequential.get(i).
+                toString(), parallel.get(i).
+                    toString());
+        }
+    }
+
+    @Test
+    public void testValidateReliability() throws Exception {
+        MzTab mzTab = parseMTBLS263();
+        mzTab.getMetadata().
+            setSmallMoleculeIdentificationReliability(null);
+        mzTab.getSmallMoleculeSummary().
+            get(0).
+            setReliability("5");
+        List<MZTabError> errors = new MzTabModelValidator().
+            validateModel(mzTab).
+            getErrorList();
+        assertEquals(1, errors.size());
+        assertEquals(FormatErrorType.RegexMismatch, errors.get(0).
+            getType());
+    }
+
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.jxpath.Pointer;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * <p>
+ * Selects the elements of simple JXPath expressions, such as
+ * <code>/metadata/sample/@tissue</code>, without JXPath. Each expression is
+ * compiled once against the model classes into a chain of bean property read
+ * methods. The chains of all expressions form a tree, so that the elements
+ * selected by all expressions are collected in one traversal of the object
+ * graph.</p>
+ *
+ * <p>
+ * Supported are absolute paths of property names, where only the last step
+ * may use the attribute axis <code>@</code>. Collection valued properties are
+ * iterated in order, null values are not selected, as with JXPath. The
+ * pointers of the selected elements render the same paths as JXPath's
+ * {@link Pointer#asPath()}: collection elements are written as child steps
+ * with their one-based position, including null elements, e.g.
+ * <code>/metadata/sample[1]/custom[2]</code>, and single valued properties
+ * keep the axis of the expression, e.g. <code>/metadata/msRun[1]/@format</code>.
+ * Paths using other constructs, or properties that do not exist or do not have
+ * the requested element type, are not compiled and should be evaluated with
+ * {@link JxPathElement#toList(org.apache.commons.jxpath.JXPathContext, java.lang.String, java.lang.Class)}
+ * instead.</p>
+ *
+ * @param <T> the type of the selected elements
+ * @author nilshoffmann
+ */
+@Slf4j
+public final class CompiledPaths<T> {
+
+    private final Class<T> type;
+    private final Node root = new Node(null, null, false, false);
+    private final Map<String, Integer> pathIndex = new LinkedHashMap<>();
+
+    private CompiledPaths(Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * Compile the given path expressions against the root type.
+     *
+     * @param <T> the type of the selected elements
+     * @param rootType the type of the root object
+     * @param paths the path expressions
+     * @param type the type of the selected elements
+     * @return the compiled paths
+     */
+    public static <T> CompiledPaths<T> compile(Class<?> rootType,
+        Collection<String> paths, Class<T> type) {
+        CompiledPaths<T> compiled = new CompiledPaths<>(type);
+        for (String path : paths) {
+            if (!compiled.pathIndex.containsKey(path) && !compiled.add(rootType,
+                path)) {
+                log.debug("Path {} will be evaluated with JXPath", path);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns true, if the path was compiled.
+     *
+     * @param path the path expression
+     * @return true if the path was compiled
+     */
+    public boolean isCompiled(String path) {
+        return pathIndex.containsKey(path);
+    }
+
+    /**
+     * Select the elements of all compiled paths in one traversal of the
+     * object graph.
+     *
+     * @param rootObject the root object
+     * @return the selected elements and their pointers by path expression, in
+     * document order
+     */
+    public Map<String, List<Pair<Pointer, T>>> select(Object rootObject) {
+        List<List<Pair<Pointer, T>>> selections = new ArrayList<>(pathIndex.
+            size());
+        for (int i = 0; i < pathIndex.size(); i++) {
+            selections.add(new ArrayList<>());
+        }
+        visit(root, rootObject, rootObject, "", selections);
+        Map<String, List<Pair<Pointer, T>>> result = new LinkedHashMap<>();
+        pathIndex.forEach((path, index) ->
+        {
+            result.put(path, selections.get(index));
+        });
+        return result;
+    }
+
+    private boolean add(Class<?> rootType, String path) {
+        if (!path.startsWith("/") || path.length() == 1) {
+            return false;
+        }
+        String[] steps = path.substring(1).
+            split("/", -1);
+        Node node = root;
+        Class<?> currentType = rootType;
+        for (int i = 0; i < steps.length; i++) {
+            String step = steps[i];
+            boolean attribute = step.startsWith("@");
+            String name = attribute ? step.substring(1) : step;
+            if ((attribute && i < steps.length - 1) || !isPropertyName(name)) {
+                return false;
+            }
+            Method readMethod = readMethod(currentType, name);
+            if (readMethod == null) {
+                return false;
+            }
+            boolean collection = Collection.class.isAssignableFrom(readMethod.
+                getReturnType());
+            Class<?> valueType = collection ? elementType(readMethod.
+                getGenericReturnType()) : readMethod.getReturnType();
+            if (valueType == null || (i == steps.length - 1 && !type.
+                isAssignableFrom(valueType))) {
+                return false;
+            }
+            node = node.child(name, readMethod, attribute, collection);
+            currentType = valueType;
+        }
+        int index = pathIndex.size();
+        pathIndex.put(path, index);
+        node.paths.add(index);
+        return true;
+    }
+
+    private static boolean isPropertyName(String name) {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Method readMethod(Class<?> beanType, String name) {
+        try {
+            BeanInfo beanInfo = Introspector.getBeanInfo(beanType);
+            for (PropertyDescriptor descriptor : beanInfo.
+                getPropertyDescriptors()) {
+                if (descriptor.getName().
+                    equals(name)) {
+                    return descriptor.getReadMethod();
+                }
+            }
+            return null;
+        } catch (IntrospectionException ex) {
+            log.debug("Could not introspect " + beanType, ex);
+            return null;
+        }
+    }
+
+    private static Class<?> elementType(Type collectionType) {
+        if (collectionType instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) collectionType).
+                getActualTypeArguments();
+            if (arguments.length == 1 && arguments[0] instanceof Class) {
+                return (Class<?>) arguments[0];
+            }
+        }
+        return null;
+    }
+
+    private void visit(Node node, Object rootObject, Object bean, String path,
+        List<List<Pair<Pointer, T>>> selections) {
+        for (Node child : node.children) {
+            Object value = child.get(bean);
+            if (value == null) {
+                continue;
+            }
+            if (child.collection) {
+                // JXPath counts null elements and drops the attribute axis
+                int position = 0;
+                for (Object element : (Collection<?>) value) {
+                    position++;
+                    if (element != null) {
+                        String elementPath = path + "/" + child.name + "[" + position + "]";
+                        accept(child, rootObject, element, elementPath,
+                            selections);
+                    }
+                }
+            } else {
+                String valuePath = path + (child.attribute ? "/@" : "/") + child.name;
+                accept(child, rootObject, value, valuePath, selections);
+            }
+        }
+    }
+
+    private void accept(Node node, Object rootObject, Object value,
+        String path, List<List<Pair<Pointer, T>>> selections) {
+        if (!node.paths.isEmpty()) {
+            Pointer pointer = new SelectedPointer(rootObject, value, path);
+            for (int index : node.paths) {
+                selections.get(index).
+                    add(Pair.of(pointer, type.cast(value)));
+            }
+        }
+        if (!node.children.isEmpty()) {
+            visit(node, rootObject, value, path, selections);
+        }
+    }
+
+    /*
+     * A step in the tree of compiled paths.
+     */
+    private static final class Node {
+
+        private final String name;
+        private final Method readMethod;
+        private final boolean attribute;
+        private final boolean collection;
+        private final List<Node> children = new ArrayList<>();
+        private final List<Integer> paths = new ArrayList<>();
+
+        Node(String name, Method readMethod, boolean attribute,
+            boolean collection) {
+            this.name = name;
+            this.readMethod = readMethod;
+            this.attribute = attribute;
+            this.collection = collection;
+        }
+
+        Node child(String name, Method readMethod, boolean attribute,
+            boolean collection) {
+            for (Node child : children) {
+                if (child.name.equals(name) && child.attribute == attribute) {
+                    return child;
+                }
+            }
+            Node child = new Node(name, readMethod, attribute, collection);
+            children.add(child);
+            return child;
+        }
+
+        Object get(Object bean) {
+            try {
+                return readMethod.invoke(bean);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new IllegalStateException(
+                    "Could not read property '" + name + "' of " + bean.
+                        getClass(), ex);
+            }
+        }
+    }
+
+    /*
+     * A read-only pointer to a selected element.
+     */
+    private static final class SelectedPointer implements Pointer {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Object rootNode;
+        private final transient Object value;
+        private final String path;
+
+        SelectedPointer(Object rootNode, Object value, String path) {
+            this.rootNode = rootNode;
+            this.value = value;
+            this.path = path;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public Object getNode() {
+            return value;
+        }
+
+        @Override
+        public void setValue(Object value) {
+            throw new UnsupportedOperationException(
+                "Selected elements are read-only: " + path);
+        }
+
+        @Override
+        public Object getRootNode() {
+            return rootNode;
+        }
+
+        @Override
+        public String asPath() {
+            return path;
+        }
+
+        @Override
+        public Object clone() {
+            return new SelectedPointer(rootNode, value, path);
+        }
+
+        @Override
+        public int compareTo(Object o) {
+            return path.compareTo(((Pointer) o).asPath());
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+}
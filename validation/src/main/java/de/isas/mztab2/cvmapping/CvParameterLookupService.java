@@ -16,36 +16,42 @@
 package de.isas.mztab2.cvmapping;
 
 import de.isas.mztab2.model.Parameter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import uk.ac.ebi.pride.utilities.ols.web.service.client.OLSClient;
 import uk.ac.ebi.pride.utilities.ols.web.service.config.OLSWsConfig;
-import uk.ac.ebi.pride.utilities.ols.web.service.model.Identifier;
 
 /**
  * Abstraction over OLSClient to autoconvert Terms to Parameters and to allow
  * easy matching of Parameters against parent terms and their children.
  *
+ * Lookups are delegated to a {@link CvTermResolver}, by default to the
+ * {@link OlsCvTermResolver}. Use the {@link OboCvTermResolver} to resolve terms
+ * from local ontology files without network access.
+ *
+ * Results of remote resolvers are kept in a thread-safe {@link CvTermCache},
+ * which may be backed by a file to keep lookups across restarts. Concurrent
+ * requests for the same term are coalesced into one lookup, so that instances
+ * of this service can be shared by rules that are evaluated concurrently.
+ *
  * @author nilshoffmann
  */
 @Slf4j
 public class CvParameterLookupService {
 
-    private final OLSClient client;
-    private final Map<Parameter, List<Parameter>> childCache;
-    private final Map<Parameter, List<Parameter>> parentCache;
-
-    private static <K, V> Map<K, V> lruCache(final int maxSize) {
-        return new LinkedHashMap<K, V>(maxSize * 4 / 3, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-                return size() > maxSize;
-            }
-        };
-    }
+    private final CvTermResolver resolver;
+    private final CvTermCache cache;
 
     /**
      * Create a new instance of the lookup service with default OLS configuration.
@@ -59,9 +65,29 @@ public class CvParameterLookupService {
      * @param client the custom OLS client
      */
     public CvParameterLookupService(OLSClient client) {
-        this.client = client;
-        this.childCache = lruCache(4096);
-        this.parentCache = lruCache(4096);
+        this(new OlsCvTermResolver(client));
+    }
+
+    /**
+     * Create a new instance of the lookup service with a custom resolver.
+     * Results of remote resolvers are cached.
+     * @param resolver the resolver
+     */
+    public CvParameterLookupService(CvTermResolver resolver) {
+        this(resolver, CvTermCache.builder().
+            maximumSize(8192).
+            build());
+    }
+
+    /**
+     * Create a new instance of the lookup service with a custom resolver and
+     * cache. Results of remote resolvers are cached.
+     * @param resolver the resolver
+     * @param cache the cache
+     */
+    public CvParameterLookupService(CvTermResolver resolver, CvTermCache cache) {
+        this.resolver = resolver;
+        this.cache = cache;
     }
 
     /**
@@ -72,12 +98,42 @@ public class CvParameterLookupService {
         this(new OLSClient(config));
     }
     
+    /**
+     * Returns true, if the resolver of this service queries a remote service.
+     * @return true if the resolver is remote
+     */
+    public boolean isRemote() {
+        return resolver.isRemote();
+    }
+
     /**
      * Clears all query result caches (parent and child).
      */
     public void clearCaches() {
-        this.childCache.clear();
-        this.parentCache.clear();
+        this.cache.clear();
+    }
+
+    /**
+     * Writes the query result cache to its file, if it is backed by one.
+     * @throws IOException if the file can not be written
+     */
+    public void persistCaches() throws IOException {
+        this.cache.persist();
+    }
+
+    /**
+     * Returns the query result cache statistics.
+     * @return the statistics
+     */
+    public CvTermCache.Statistics getCacheStatistics() {
+        return this.cache.getStatistics();
+    }
+
+    private static String cacheKey(String direction, Parameter parameter,
+        int levels) {
+        return direction + "|" + parameter.getCvLabel().
+            toUpperCase(Locale.ROOT) + "|" + parameter.getCvAccession().
+            toUpperCase(Locale.ROOT) + "|" + levels;
     }
 
     /**
@@ -103,18 +159,86 @@ public class CvParameterLookupService {
             throw new IllegalArgumentException(
                 "Parameter must provide cvAccession and cvLabel!");
         }
-        if(parentCache.containsKey(parameter)) {
-            log.debug("Cache hit for parameter "+parameter+" in parent cache!");
-            return parentCache.get(parameter);
+        if (!resolver.isRemote()) {
+            return resolver.resolveParents(parameter, levels);
         }
-        Identifier ident = new Identifier(parameter.getCvAccession(),
-            Identifier.IdentifierType.OBO);
-        List<Parameter> parents = client.getTermParents(ident, parameter.getCvLabel(), levels).
-            stream().
-            map(CvMappingUtils::asParameter).
-            collect(Collectors.toList());
-        parentCache.put(parameter, parents);
-        return parents;
+        return cache.get(cacheKey("parents", parameter, levels), (key) ->
+        {
+            return resolver.resolveParents(parameter, levels);
+        });
+    }
+
+    /**
+     * Resolve all parents of the given parameters concurrently and store them in the cache, so that later calls of
+     * {@link #resolveParents(de.isas.mztab2.model.Parameter)} and {@link #isChildOfOrSame(de.isas.mztab2.model.Parameter, de.isas.mztab2.model.Parameter)}
+     * do not need to wait for the resolver. At most maxConcurrentRequests requests are sent at the same time, parameters
+     * that are already cached and duplicate parameters are skipped. Does nothing for local resolvers.
+     * 
+     * Failed requests are not cached, they fail again when the parameter is resolved.
+     * @param parameters the parameters to resolve the parents of
+     * @param maxConcurrentRequests the maximum number of concurrent requests
+     * @return the number of requested parameters
+     */
+    public int prefetchParents(Collection<Parameter> parameters,
+        int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException(
+                "maxConcurrentRequests must be positive: " + maxConcurrentRequests);
+        }
+        if (!resolver.isRemote()) {
+            return 0;
+        }
+        Map<String, Parameter> pending = new LinkedHashMap<>();
+        for (Parameter parameter : parameters) {
+            if (parameter.getCvAccession() == null || parameter.getCvAccession().
+                isEmpty() || parameter.getCvLabel() == null) {
+                // user parameter
+                continue;
+            }
+            String key = cacheKey("parents", parameter, -1);
+            if (cache.getIfPresent(key) == null) {
+                pending.putIfAbsent(key, parameter);
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+            maxConcurrentRequests, pending.size()), (runnable) ->
+        {
+            Thread thread = new Thread(runnable, "cv-term-prefetch-" + threadCount.
+                incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(pending.size());
+            for (Parameter parameter : pending.values()) {
+                futures.add(executor.submit(() ->
+                {
+                    try {
+                        resolveParents(parameter, -1);
+                    } catch (RuntimeException ex) {
+                        log.debug("Could not prefetch parents of " + parameter, ex);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().
+                interrupt();
+        } catch (ExecutionException ex) {
+            log.debug("Prefetch task failed", ex.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        log.debug("Prefetched parents of {} parameters in {} ms", pending.size(),
+            System.currentTimeMillis() - start);
+        return pending.size();
     }
 
     /**
@@ -129,18 +253,13 @@ public class CvParameterLookupService {
             throw new IllegalArgumentException(
                 "Parameter must provide cvAccession and cvLabel!");
         }
-        if(childCache.containsKey(parameter)) {
-            log.debug("Cache hit for parameter "+parameter+" in child cache!");
-            return childCache.get(parameter);
+        if (!resolver.isRemote()) {
+            return resolver.resolveChildren(parameter, levels);
         }
-        Identifier ident = new Identifier(parameter.getCvAccession(),
-            Identifier.IdentifierType.OBO);
-        List<Parameter> children = client.getTermChildren(ident, parameter.getCvLabel(), levels).
-            stream().
-            map(CvMappingUtils::asParameter).
-            collect(Collectors.toList());
-        childCache.put(parameter, children);
-        return children;
+        return cache.get(cacheKey("children", parameter, levels), (key) ->
+        {
+            return resolver.resolveChildren(parameter, levels);
+        });
     }
 
     /**
@@ -170,6 +289,9 @@ public class CvParameterLookupService {
                 toUpperCase())) {
             return ParameterComparisonResult.IDENTICAL;
         }
+        if (!resolver.isRemote()) {
+            return resolver.isChildOfOrSame(parent, potentialChild);
+        }
         List<Parameter> parentsOf = resolveParents(potentialChild);
         boolean result = parentsOf.stream().
             anyMatch((potentialParent) ->
@@ -0,0 +1,542 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Parameter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * A thread-safe cache for resolved cv terms, used by the
+ * {@link CvParameterLookupService} for remote resolvers.</p>
+ *
+ * <p>
+ * Entries are evicted least recently used first once the maximum size is
+ * exceeded, and expire a fixed time after they were loaded. Concurrent requests
+ * for the same key are coalesced, so that only one of them loads the value
+ * while the others wait for it. Hits, misses, loads and load times are
+ * recorded in {@link Statistics}.</p>
+ *
+ * <p>
+ * Optionally, the cache is backed by a file. The file is read when the cache is
+ * created, entries that have expired in the meantime are skipped, and
+ * {@link #persist()} writes the current entries back. A missing or unreadable
+ * file results in an empty cache.</p>
+ *
+ * @author nilshoffmann
+ */
+@Slf4j
+public final class CvTermCache {
+
+    private static final int MAGIC = 0x4d5a4343; // "MZCC"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * A snapshot of the cache statistics.
+     */
+    public static final class Statistics {
+
+        private final long hitCount;
+        private final long missCount;
+        private final long loadFailureCount;
+        private final long totalLoadTimeNanos;
+        private final long evictionCount;
+        private final long persistedEntryCount;
+
+        private Statistics(long hitCount, long missCount,
+            long loadFailureCount, long totalLoadTimeNanos, long evictionCount,
+            long persistedEntryCount) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadFailureCount = loadFailureCount;
+            this.totalLoadTimeNanos = totalLoadTimeNanos;
+            this.evictionCount = evictionCount;
+            this.persistedEntryCount = persistedEntryCount;
+        }
+
+        /**
+         * Returns the number of lookups answered from the cache, including
+         * lookups that waited for a concurrent load of the same key.
+         *
+         * @return the hit count
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * Returns the number of lookups that loaded the value.
+         *
+         * @return the miss count
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * Returns the number of loads that failed with an exception.
+         *
+         * @return the load failure count
+         */
+        public long getLoadFailureCount() {
+            return loadFailureCount;
+        }
+
+        /**
+         * Returns the total time spent loading values.
+         *
+         * @return the total load time in nanoseconds
+         */
+        public long getTotalLoadTimeNanos() {
+            return totalLoadTimeNanos;
+        }
+
+        /**
+         * Returns the number of entries evicted because of the maximum size
+         * or their age.
+         *
+         * @return the eviction count
+         */
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Returns the number of entries read from the cache file.
+         *
+         * @return the number of persisted entries
+         */
+        public long getPersistedEntryCount() {
+            return persistedEntryCount;
+        }
+
+        /**
+         * Returns the ratio of hits to all lookups, or 1 if there were no
+         * lookups.
+         *
+         * @return the hit rate
+         */
+        public double getHitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1.0 : (double) hitCount / requests;
+        }
+
+        /**
+         * Returns the average time spent loading a value.
+         *
+         * @return the average load time in nanoseconds, or 0 if there were no
+         * loads
+         */
+        public double getAverageLoadTimeNanos() {
+            return missCount == 0 ? 0.0 : (double) totalLoadTimeNanos / missCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" + "hitCount=" + hitCount + ", missCount=" + missCount + ", loadFailureCount=" + loadFailureCount + ", totalLoadTimeNanos=" + totalLoadTimeNanos + ", evictionCount=" + evictionCount + ", persistedEntryCount=" + persistedEntryCount + '}';
+        }
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<List<Parameter>> value;
+        private final long writeTime;
+        private volatile long lastAccess;
+
+        Entry(CompletableFuture<List<Parameter>> value, long writeTime,
+            long lastAccess) {
+            this.value = value;
+            this.writeTime = writeTime;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private final int maximumSize;
+    private final long expireAfterWriteMillis;
+    private final Path file;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong accessCounter = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTimeNanos = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final long persistedEntryCount;
+
+    private CvTermCache(Builder builder) {
+        this.maximumSize = builder.maximumSize;
+        this.expireAfterWriteMillis = builder.expireAfterWrite == null ? Long.MAX_VALUE : builder.expireAfterWrite.
+            toMillis();
+        this.file = builder.file;
+        this.clock = builder.clock;
+        this.persistedEntryCount = file == null ? 0 : load();
+    }
+
+    /**
+     * Create a new builder.
+     *
+     * @return the builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the cached value for the key, or loads, caches and returns it.
+     * Exceptions thrown by the loader are passed on and the value is not
+     * cached.
+     *
+     * @param key the key
+     * @param loader the function to load the value of the key
+     * @return the value
+     */
+    public List<Parameter> get(String key,
+        Function<String, List<Parameter>> loader) {
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null && isExpired(entry)) {
+                if (entries.remove(key, entry)) {
+                    evictionCount.increment();
+                }
+                entry = null;
+            }
+            if (entry != null) {
+                hitCount.increment();
+                entry.lastAccess = accessCounter.incrementAndGet();
+                return join(entry.value);
+            }
+            Entry created = new Entry(new CompletableFuture<>(), clock.
+                getAsLong(), accessCounter.incrementAndGet());
+            if (entries.putIfAbsent(key, created) != null) {
+                // lost the race against a concurrent request, retry
+                continue;
+            }
+            missCount.increment();
+            long start = System.nanoTime();
+            try {
+                List<Parameter> value = Collections.unmodifiableList(
+                    new ArrayList<>(loader.apply(key)));
+                created.value.complete(value);
+                return value;
+            } catch (RuntimeException | Error e) {
+                loadFailureCount.increment();
+                entries.remove(key, created);
+                created.value.completeExceptionally(e);
+                throw e;
+            } finally {
+                totalLoadTimeNanos.add(System.nanoTime() - start);
+                evictIfNecessary();
+            }
+        }
+    }
+
+    /**
+     * Returns the cached value for the key without loading it.
+     *
+     * @param key the key
+     * @return the value, or null if the key is not cached, expired or still
+     * loading
+     */
+    public List<Parameter> getIfPresent(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || isExpired(entry) || !entry.value.isDone() || entry.value.
+            isCompletedExceptionally()) {
+            return null;
+        }
+        entry.lastAccess = accessCounter.incrementAndGet();
+        return entry.value.join();
+    }
+
+    /**
+     * Returns the number of entries, including entries that are still
+     * loading.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries. The cache file is not changed until the next call
+     * of {@link #persist()}.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns a snapshot of the cache statistics.
+     *
+     * @return the statistics
+     */
+    public Statistics getStatistics() {
+        return new Statistics(hitCount.sum(), missCount.sum(), loadFailureCount.
+            sum(), totalLoadTimeNanos.sum(), evictionCount.sum(),
+            persistedEntryCount);
+    }
+
+    /**
+     * Writes all loaded, unexpired entries to the cache file. Does nothing if
+     * the cache is not backed by a file. The file is replaced atomically, if
+     * supported by the file system.
+     *
+     * @throws IOException if the file can not be written
+     */
+    public void persist() throws IOException {
+        if (file == null) {
+            return;
+        }
+        Path parent = file.toAbsolutePath().
+            getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = Files.createTempFile(parent, file.getFileName().
+            toString(), ".tmp");
+        try {
+            int count = 0;
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    if (!entry.value.isDone() || entry.value.
+                        isCompletedExceptionally() || isExpired(entry)) {
+                        continue;
+                    }
+                    List<Parameter> parameters = entry.value.join();
+                    out.writeBoolean(true);
+                    out.writeUTF(e.getKey());
+                    out.writeLong(entry.writeTime);
+                    out.writeInt(parameters.size());
+                    for (Parameter parameter : parameters) {
+                        writeNullable(out, parameter.getCvLabel());
+                        writeNullable(out, parameter.getCvAccession());
+                        writeNullable(out, parameter.getName());
+                    }
+                    count++;
+                }
+                out.writeBoolean(false);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (java.nio.file.AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            log.debug("Persisted {} cv term cache entries to {}", count, file);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private long load() {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        long count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a cv term cache file: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(
+                    "Unsupported cv term cache version " + version + " in " + file);
+            }
+            while (in.readBoolean()) {
+                String key = in.readUTF();
+                long writeTime = in.readLong();
+                int size = in.readInt();
+                List<Parameter> parameters = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    parameters.add(new Parameter().cvLabel(readNullable(in)).
+                        cvAccession(readNullable(in)).
+                        name(readNullable(in)));
+                }
+                Entry entry = new Entry(CompletableFuture.completedFuture(
+                    Collections.unmodifiableList(parameters)), writeTime,
+                    accessCounter.incrementAndGet());
+                if (!isExpired(entry)) {
+                    entries.put(key, entry);
+                    count++;
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("Could not read cv term cache file " + file + ", starting with an empty cache!",
+                ex);
+            entries.clear();
+            return 0;
+        }
+        evictIfNecessary();
+        log.debug("Read {} cv term cache entries from {}", count, file);
+        return count;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return expireAfterWriteMillis != Long.MAX_VALUE && clock.getAsLong() - entry.writeTime >= expireAfterWriteMillis;
+    }
+
+    private static List<Parameter> join(
+        CompletableFuture<List<Parameter>> value) {
+        try {
+            return value.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /*
+     * Removes the least recently used tenth of the entries once the maximum
+     * size is exceeded. Only one thread evicts at a time, the others continue.
+     */
+    private void evictIfNecessary() {
+        if (entries.size() <= maximumSize || !evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int target = maximumSize - maximumSize / 10;
+            int excess = entries.size() - target;
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<>(
+                entries.entrySet());
+            candidates.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.
+                getValue().lastAccess));
+            for (int i = 0; i < candidates.size() && excess > 0; i++) {
+                Map.Entry<String, Entry> candidate = candidates.get(i);
+                if (candidate.getValue().value.isDone() && entries.remove(
+                    candidate.getKey(), candidate.getValue())) {
+                    evictionCount.increment();
+                    excess--;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Configures a {@link CvTermCache}.
+     */
+    public static final class Builder {
+
+        private int maximumSize = 4096;
+        private Duration expireAfterWrite;
+        private Path file;
+        private LongSupplier clock = System::currentTimeMillis;
+
+        private Builder() {
+
+        }
+
+        /**
+         * Set the maximum number of entries, 4096 by default.
+         *
+         * @param maximumSize the maximum number of entries
+         * @return this builder
+         */
+        public Builder maximumSize(int maximumSize) {
+            if (maximumSize < 1) {
+                throw new IllegalArgumentException(
+                    "maximumSize must be positive: " + maximumSize);
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Let entries expire the given time after they were loaded. Entries do
+         * not expire by default.
+         *
+         * @param expireAfterWrite the time to live of an entry
+         * @return this builder
+         */
+        public Builder expireAfterWrite(Duration expireAfterWrite) {
+            this.expireAfterWrite = expireAfterWrite;
+            return this;
+        }
+
+        /**
+         * Back the cache with the given file.
+         *
+         * @param file the cache file
+         * @return this builder
+         */
+        public Builder file(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Create the cache, reading the cache file if it exists.
+         *
+         * @return the cache
+         */
+        public CvTermCache build() {
+            return new CvTermCache(this);
+        }
+    }
+}
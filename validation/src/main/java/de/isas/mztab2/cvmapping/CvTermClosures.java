@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Parameter;
+import info.psidev.cvmapping.CvMappingRule;
+import info.psidev.cvmapping.CvTerm;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Precomputed closures of the cv terms of mapping rules, i.e. the accessions
+ * of all descendants of a term, stored as hashed sets. Once the closure of a
+ * term is known, testing whether a selected parameter is a child of that term
+ * is a single set membership test.
+ *
+ * Closures are computed on first use with a single request for all children
+ * of the term to the provided {@link CvParameterLookupService}, and are kept
+ * for the lifetime of this object, so that they can be reused for the
+ * validation of many files against the same mapping file and ontology
+ * snapshot. Call {@link #clear()} after the ontologies changed.
+ *
+ * Closures are only computed if the service uses a remote resolver, such as
+ * OLS. There, checking a selected parameter otherwise requires a request for
+ * its parents, while the closure of a rule's term takes a single request for
+ * all of its descendants. Local resolvers, like the {@link OboCvTermResolver},
+ * answer {@link CvParameterLookupService#isChildOfOrSame(de.isas.mztab2.model.Parameter, de.isas.mztab2.model.Parameter)}
+ * from memory and have no closures. Terms with more than maximumSize
+ * descendants, e.g. the root of the NCBI taxonomy, and terms whose children
+ * can not be resolved have no closure either. Use
+ * {@link #compare(de.isas.mztab2.model.Parameter, de.isas.mztab2.model.Parameter)},
+ * which answers from a closure if there is one, and fall back to the lookup
+ * service otherwise.
+ *
+ * Instances are safe for concurrent use.
+ *
+ * @author nilshoffmann
+ */
+@Slf4j
+public final class CvTermClosures {
+
+    /**
+     * The default maximum number of descendants of a term with a closure.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+    private final CvParameterLookupService service;
+    private final int maximumSize;
+    private final Map<String, Optional<Set<String>>> closures = new ConcurrentHashMap<>();
+
+    /**
+     * Create a new instance with the default maximum closure size.
+     *
+     * @param service the lookup service to resolve children with
+     */
+    public CvTermClosures(CvParameterLookupService service) {
+        this(service, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param service the lookup service to resolve children with
+     * @param maximumSize the maximum number of descendants of a term with a
+     * closure
+     */
+    public CvTermClosures(CvParameterLookupService service, int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException(
+                "maximumSize must not be negative: " + maximumSize);
+        }
+        this.service = service;
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Returns the accessions of all descendants of the given term, in upper
+     * case.
+     *
+     * @param term the term
+     * @return the closure, or an empty optional if the service uses a local
+     * resolver, the term has too many descendants or they could not be
+     * resolved
+     */
+    public Optional<Set<String>> getClosure(Parameter term) {
+        if (!service.isRemote()) {
+            return Optional.empty();
+        }
+        String key = key(term.getCvAccession());
+        Optional<Set<String>> closure = closures.get(key);
+        if (closure == null) {
+            // resolved outside of the map, concurrent callers may resolve the same term
+            closure = resolveClosure(term);
+            Optional<Set<String>> previous = closures.putIfAbsent(key, closure);
+            if (previous != null) {
+                closure = previous;
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * Compares the potential child to the parent using the closure of the
+     * parent. Since closures are complete, a potential child that is not
+     * contained in it is not related to the parent, without another lookup.
+     *
+     * @param parent the parent term
+     * @param potentialChild the potential child
+     * @return {@link ParameterComparisonResult#IDENTICAL} for equal
+     * accessions, {@link ParameterComparisonResult#CHILD_OF} if the potential
+     * child is contained in the closure of the parent,
+     * {@link ParameterComparisonResult#NOT_RELATED} if it is not, or an empty
+     * optional if the parent has no closure or the potential child no
+     * accession
+     */
+    public Optional<ParameterComparisonResult> compare(Parameter parent,
+        Parameter potentialChild) {
+        String childKey = key(potentialChild.getCvAccession());
+        if (childKey.isEmpty()) {
+            return Optional.empty();
+        }
+        if (childKey.equals(key(parent.getCvAccession()))) {
+            return Optional.of(ParameterComparisonResult.IDENTICAL);
+        }
+        return getClosure(parent).
+            map((closure) -> closure.contains(childKey) ? ParameterComparisonResult.CHILD_OF : ParameterComparisonResult.NOT_RELATED);
+    }
+
+    /**
+     * Returns true, if the potential child is contained in the closure of the
+     * parent. Returns false if it is not, or if the parent has no closure.
+     *
+     * @param parent the parent term
+     * @param potentialChild the potential child
+     * @return true if the potential child is a descendant of the parent
+     */
+    public boolean isChildOf(Parameter parent, Parameter potentialChild) {
+        return compare(parent, potentialChild).
+            map((result) -> result == ParameterComparisonResult.CHILD_OF).
+            orElse(false);
+    }
+
+    /**
+     * Returns true, if all terms of the given rule that allow children have a
+     * closure, so that parameters selected by the rule can be compared to its
+     * terms without the lookup service.
+     *
+     * @param rule the rule
+     * @return true if the closures of the rule's terms are known
+     */
+    public boolean hasClosures(CvMappingRule rule) {
+        return rule.getCvTerm().
+            stream().
+            filter(CvTerm::isAllowChildren).
+            allMatch((cvTerm) -> getClosure(CvMappingUtils.asParameter(cvTerm)).
+            isPresent());
+    }
+
+    /**
+     * Removes all closures, e.g. after the ontologies were updated.
+     */
+    public void clear() {
+        closures.clear();
+    }
+
+    private static String key(String accession) {
+        return accession == null ? "" : accession.trim().
+            toUpperCase(Locale.ROOT);
+    }
+
+    private Optional<Set<String>> resolveClosure(Parameter term) {
+        long start = System.currentTimeMillis();
+        Set<String> closure = new HashSet<>();
+        try {
+            for (Parameter child : service.resolveChildren(term, -1)) {
+                if (closure.add(key(child.getCvAccession())) && closure.
+                    size() > maximumSize) {
+                    log.debug(
+                        "Term {} has more than {} descendants, not computing its closure",
+                        term.getCvAccession(), maximumSize);
+                    return Optional.empty();
+                }
+            }
+        } catch (RuntimeException ex) {
+            log.debug("Could not resolve descendants of " + term.
+                getCvAccession(), ex);
+            return Optional.empty();
+        }
+        log.debug("Computed closure of {} with {} descendants in {} ms", term.
+            getCvAccession(), closure.size(), System.currentTimeMillis() - start);
+        return Optional.of(Collections.unmodifiableSet(closure));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Parameter;
+import java.util.List;
+
+/**
+ * Resolves parent and child terms of controlled vocabulary parameters. Used as
+ * the backend of the {@link CvParameterLookupService}.
+ *
+ * @author nilshoffmann
+ * @see OlsCvTermResolver
+ * @see OboCvTermResolver
+ */
+public interface CvTermResolver {
+
+    /**
+     * Resolve all parents of a parameter up to a given maximum depth (1
+     * meaning the immediate parents, -1 meaning all).
+     *
+     * @param parameter the parameter to start from
+     * @param levels maximum levels to query
+     * @return a list of all parent parameters for the given parameter
+     */
+    List<Parameter> resolveParents(Parameter parameter, int levels);
+
+    /**
+     * Resolve all children of a parameter up to a given maximum depth (1
+     * meaning the immediate children, -1 meaning all).
+     *
+     * @param parameter the parameter to start from
+     * @param levels maximum levels to query
+     * @return a list of all child parameters for the given parameter
+     */
+    List<Parameter> resolveChildren(Parameter parameter, int levels);
+
+    /**
+     * Compares two parameters for their parent to child relationship. The
+     * default implementation resolves all parents of the potential child.
+     *
+     * @param parent the parent
+     * @param potentialChild the potential child
+     * @return the comparison result
+     */
+    default ParameterComparisonResult isChildOfOrSame(Parameter parent,
+        Parameter potentialChild) {
+        if (parent.getCvAccession().
+            toUpperCase().
+            equals(potentialChild.getCvAccession().
+                toUpperCase())) {
+            return ParameterComparisonResult.IDENTICAL;
+        }
+        boolean result = resolveParents(potentialChild, -1).
+            stream().
+            anyMatch((potentialParent) ->
+            {
+                return CvMappingUtils.isEqualTo(potentialParent, parent);
+            });
+        return result ? ParameterComparisonResult.CHILD_OF : ParameterComparisonResult.NOT_RELATED;
+    }
+
+    /**
+     * Whether this resolver queries a remote service. Results of remote
+     * resolvers are cached by the {@link CvParameterLookupService}, local
+     * resolvers are queried directly.
+     *
+     * @return true if this resolver queries a remote service
+     */
+    default boolean isRemote() {
+        return true;
+    }
+}
@@ -0,0 +1,565 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Parameter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Resolves parent and child terms from local ontology snapshots in OBO format,
+ * e.g. PSI-MS, UO or NCBITaxon, without network access.</p>
+ *
+ * <p>
+ * All terms of the loaded files are kept in one immutable directed acyclic
+ * graph over <code>is_a</code> and, optionally, selected
+ * <code>relationship</code> edges. Every term is labelled with the pre and post
+ * order interval of a spanning tree of the graph, so that ancestors reachable
+ * along the tree are found in constant time. Ancestors that are only reachable
+ * via a second parent are kept in small sorted arrays, which are shared between
+ * all terms with the same non-tree ancestors. For tree shaped ontologies such
+ * as NCBITaxon these arrays are empty.</p>
+ *
+ * <p>
+ * Terms are looked up by accession (case-insensitive), including their
+ * <code>alt_id</code> values. Requests for unknown terms raise an
+ * {@link IllegalArgumentException}.</p>
+ *
+ * @author nilshoffmann
+ */
+@Slf4j
+public final class OboCvTermResolver implements CvTermResolver {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final String[] accessions;
+    private final String[] names;
+    private final Map<String, Integer> termsByAccession;
+    private final int[] parentOffsets;
+    private final int[] parents;
+    private final int[] childOffsets;
+    private final int[] children;
+    private final int[] pre;
+    private final int[] post;
+    private final int[][] extraAncestors;
+
+    private OboCvTermResolver(String[] accessions, String[] names,
+        Map<String, Integer> termsByAccession, int[] parentOffsets,
+        int[] parents) {
+        this.accessions = accessions;
+        this.names = names;
+        this.termsByAccession = termsByAccession;
+        this.parentOffsets = parentOffsets;
+        this.parents = parents;
+        int n = accessions.length;
+        this.childOffsets = new int[n + 1];
+        this.children = new int[parents.length];
+        for (int parent : parents) {
+            childOffsets[parent + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+        }
+        int[] position = Arrays.copyOf(childOffsets, n);
+        for (int term = 0; term < n; term++) {
+            for (int i = parentOffsets[term]; i < parentOffsets[term + 1]; i++) {
+                children[position[parents[i]]++] = term;
+            }
+        }
+        this.pre = new int[n];
+        this.post = new int[n];
+        labelSpanningTree();
+        this.extraAncestors = new int[n][];
+        computeExtraAncestors(topologicalOrder());
+    }
+
+    /**
+     * Create a new builder.
+     *
+     * @return the builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Load the given OBO files, following <code>is_a</code> relations only.
+     * Files ending in <code>.gz</code> are decompressed.
+     *
+     * @param oboFiles the OBO files
+     * @return the resolver
+     * @throws IOException if a file can not be read
+     */
+    public static OboCvTermResolver load(Path... oboFiles) throws IOException {
+        Builder builder = builder();
+        for (Path oboFile : oboFiles) {
+            builder.add(oboFile);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of terms.
+     *
+     * @return the number of terms
+     */
+    public int getTermCount() {
+        return accessions.length;
+    }
+
+    /**
+     * Returns the term with the given accession or alternative id.
+     *
+     * @param accession the accession
+     * @return the parameter for the term, or null if the term is unknown
+     */
+    public Parameter getTerm(String accession) {
+        Integer term = termsByAccession.get(key(accession));
+        return term == null ? null : asParameter(term);
+    }
+
+    @Override
+    public List<Parameter> resolveParents(Parameter parameter, int levels) {
+        return traverse(termOf(parameter), levels, parentOffsets, parents);
+    }
+
+    @Override
+    public List<Parameter> resolveChildren(Parameter parameter, int levels) {
+        return traverse(termOf(parameter), levels, childOffsets, children);
+    }
+
+    /**
+     * Compares two parameters for their parent to child relationship in
+     * constant time for ancestors along the spanning tree, or by a binary
+     * search otherwise.
+     *
+     * @param parent the parent
+     * @param potentialChild the potential child
+     * @return the comparison result
+     */
+    @Override
+    public ParameterComparisonResult isChildOfOrSame(Parameter parent,
+        Parameter potentialChild) {
+        int parentTerm = termOf(parent);
+        int childTerm = termOf(potentialChild);
+        if (parentTerm == childTerm) {
+            return ParameterComparisonResult.IDENTICAL;
+        }
+        return isAncestor(parentTerm, childTerm) ? ParameterComparisonResult.CHILD_OF : ParameterComparisonResult.NOT_RELATED;
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    private boolean isAncestor(int ancestor, int term) {
+        return (pre[ancestor] < pre[term] && post[term] < post[ancestor]) || Arrays.
+            binarySearch(extraAncestors[term], ancestor) >= 0;
+    }
+
+    private static String key(String accession) {
+        return accession.trim().
+            toUpperCase(Locale.ROOT);
+    }
+
+    private int termOf(Parameter parameter) {
+        if (parameter.getCvAccession() == null) {
+            throw new IllegalArgumentException(
+                "Parameter must provide cvAccession!");
+        }
+        Integer term = termsByAccession.get(key(parameter.getCvAccession()));
+        if (term == null) {
+            throw new IllegalArgumentException(
+                "Term '" + parameter.getCvAccession() + "' with cv label '" + parameter.
+                    getCvLabel() + "' is not defined in the loaded ontologies!");
+        }
+        return term;
+    }
+
+    private Parameter asParameter(int term) {
+        String accession = accessions[term];
+        int colon = accession.indexOf(':');
+        return new Parameter().cvLabel(colon > 0 ? accession.substring(0,
+            colon) : accession).
+            cvAccession(accession).
+            name(names[term]);
+    }
+
+    private List<Parameter> traverse(int start, int levels, int[] offsets,
+        int[] edges) {
+        Set<Integer> visited = new HashSet<>();
+        List<Parameter> result = new ArrayList<>();
+        int[] level = {start};
+        for (int depth = 0; level.length > 0 && (levels < 0 || depth < levels); depth++) {
+            int[] next = new int[8];
+            int size = 0;
+            for (int term : level) {
+                for (int i = offsets[term]; i < offsets[term + 1]; i++) {
+                    int related = edges[i];
+                    if (visited.add(related)) {
+                        result.add(asParameter(related));
+                        if (size == next.length) {
+                            next = Arrays.copyOf(next, size * 2);
+                        }
+                        next[size++] = related;
+                    }
+                }
+            }
+            level = Arrays.copyOf(next, size);
+        }
+        return result;
+    }
+
+    /*
+     * Assigns pre and post order numbers along the spanning tree formed by the
+     * first parent of each term.
+     */
+    private void labelSpanningTree() {
+        int n = accessions.length;
+        int[] treeChildOffsets = new int[n + 1];
+        for (int term = 0; term < n; term++) {
+            if (parentOffsets[term] < parentOffsets[term + 1]) {
+                treeChildOffsets[parents[parentOffsets[term]] + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            treeChildOffsets[i + 1] += treeChildOffsets[i];
+        }
+        int[] treeChildren = new int[treeChildOffsets[n]];
+        int[] position = Arrays.copyOf(treeChildOffsets, n);
+        for (int term = 0; term < n; term++) {
+            if (parentOffsets[term] < parentOffsets[term + 1]) {
+                treeChildren[position[parents[parentOffsets[term]]]++] = term;
+            }
+        }
+        int counter = 0;
+        int[] stack = new int[16];
+        int[] next = new int[16];
+        for (int root = 0; root < n; root++) {
+            if (parentOffsets[root] != parentOffsets[root + 1]) {
+                continue;
+            }
+            int depth = 0;
+            stack[0] = root;
+            next[0] = treeChildOffsets[root];
+            pre[root] = counter++;
+            while (depth >= 0) {
+                int term = stack[depth];
+                if (next[depth] < treeChildOffsets[term + 1]) {
+                    int child = treeChildren[next[depth]++];
+                    if (++depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                        next = Arrays.copyOf(next, depth * 2);
+                    }
+                    stack[depth] = child;
+                    next[depth] = treeChildOffsets[child];
+                    pre[child] = counter++;
+                } else {
+                    post[term] = counter++;
+                    depth--;
+                }
+            }
+        }
+    }
+
+    private int[] topologicalOrder() {
+        int n = accessions.length;
+        int[] pending = new int[n];
+        int[] order = new int[n];
+        int size = 0;
+        for (int term = 0; term < n; term++) {
+            pending[term] = parentOffsets[term + 1] - parentOffsets[term];
+            if (pending[term] == 0) {
+                order[size++] = term;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int term = order[i];
+            for (int j = childOffsets[term]; j < childOffsets[term + 1]; j++) {
+                if (--pending[children[j]] == 0) {
+                    order[size++] = children[j];
+                }
+            }
+        }
+        if (size < n) {
+            for (int term = 0; term < n; term++) {
+                if (pending[term] > 0) {
+                    throw new IllegalStateException(
+                        "Cyclic parent relation involving term " + accessions[term] + "!");
+                }
+            }
+        }
+        return order;
+    }
+
+    /*
+     * The non-tree ancestors of a term with a single parent are those of its
+     * parent. For further parents, the parent itself, its tree ancestors and
+     * its non-tree ancestors are added, minus the tree ancestors of the term.
+     */
+    private void computeExtraAncestors(int[] order) {
+        for (int term : order) {
+            int from = parentOffsets[term];
+            int to = parentOffsets[term + 1];
+            if (from == to) {
+                extraAncestors[term] = EMPTY;
+            } else if (to - from == 1) {
+                extraAncestors[term] = extraAncestors[parents[from]];
+            } else {
+                Set<Integer> ancestors = new HashSet<>();
+                for (int a : extraAncestors[parents[from]]) {
+                    ancestors.add(a);
+                }
+                for (int i = from + 1; i < to; i++) {
+                    int parent = parents[i];
+                    for (int a : extraAncestors[parent]) {
+                        ancestors.add(a);
+                    }
+                    int ancestor = parent;
+                    while (ancestor >= 0 && ancestors.add(ancestor)) {
+                        ancestor = parentOffsets[ancestor] < parentOffsets[ancestor + 1] ? parents[parentOffsets[ancestor]] : -1;
+                    }
+                }
+                int[] extra = new int[ancestors.size()];
+                int size = 0;
+                for (int ancestor : ancestors) {
+                    if (!(pre[ancestor] < pre[term] && post[term] < post[ancestor])) {
+                        extra[size++] = ancestor;
+                    }
+                }
+                extra = Arrays.copyOf(extra, size);
+                Arrays.sort(extra);
+                extraAncestors[term] = extra.length == 0 ? EMPTY : extra;
+            }
+        }
+    }
+
+    /**
+     * Collects the terms of one or more OBO files. Instances are not
+     * thread-safe.
+     */
+    public static final class Builder {
+
+        private final Set<String> relationships = new HashSet<>();
+        private final Map<String, Integer> termsByAccession = new HashMap<>();
+        private final List<String> accessions = new ArrayList<>();
+        private final List<String> names = new ArrayList<>();
+        private final List<Set<String>> parentRefs = new ArrayList<>();
+        private final Map<String, String> altIds = new HashMap<>();
+
+        private Builder() {
+
+        }
+
+        /**
+         * Follow the given relationship type, e.g. <code>part_of</code>, in
+         * addition to <code>is_a</code> when resolving parents and children.
+         *
+         * @param relationshipType the relationship type
+         * @return this builder
+         */
+        public Builder relationship(String relationshipType) {
+            relationships.add(relationshipType);
+            return this;
+        }
+
+        /**
+         * Add the terms of an OBO file. Files ending in <code>.gz</code> are
+         * decompressed.
+         *
+         * @param oboFile the OBO file
+         * @return this builder
+         * @throws IOException if the file can not be read
+         */
+        public Builder add(Path oboFile) throws IOException {
+            log.debug("Loading ontology from {}", oboFile);
+            try (InputStream is = Files.newInputStream(oboFile)) {
+                InputStream in = oboFile.getFileName().
+                    toString().
+                    endsWith(".gz") ? new GZIPInputStream(is) : is;
+                return add(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+        }
+
+        /**
+         * Add the terms of an OBO document. The reader is not closed.
+         *
+         * @param reader the reader
+         * @return this builder
+         * @throws IOException if the document can not be read
+         */
+        public Builder add(Reader reader) throws IOException {
+            BufferedReader br = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(
+                reader);
+            String line;
+            boolean inTerm = false;
+            String id = null;
+            String name = null;
+            List<String> termAltIds = new ArrayList<>();
+            Set<String> termParents = new LinkedHashSet<>();
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("[")) {
+                    if (inTerm) {
+                        addTerm(id, name, termAltIds, termParents);
+                    }
+                    inTerm = "[Term]".equals(line);
+                    id = null;
+                    name = null;
+                    termAltIds = new ArrayList<>();
+                    termParents = new LinkedHashSet<>();
+                    continue;
+                }
+                int colon = line.indexOf(':');
+                if (!inTerm || colon < 0 || line.startsWith("!")) {
+                    continue;
+                }
+                String tag = line.substring(0, colon);
+                String value = stripComment(line.substring(colon + 1));
+                switch (tag) {
+                    case "id":
+                        id = value;
+                        break;
+                    case "name":
+                        name = value;
+                        break;
+                    case "alt_id":
+                        termAltIds.add(value);
+                        break;
+                    case "is_a":
+                        termParents.add(firstToken(value));
+                        break;
+                    case "relationship":
+                        String[] typeAndTarget = value.split("\\s+");
+                        if (typeAndTarget.length > 1 && relationships.contains(
+                            typeAndTarget[0])) {
+                            termParents.add(typeAndTarget[1]);
+                        }
+                        break;
+                }
+            }
+            if (inTerm) {
+                addTerm(id, name, termAltIds, termParents);
+            }
+            return this;
+        }
+
+        private static String stripComment(String value) {
+            int comment = value.indexOf(" !");
+            return (comment < 0 ? value : value.substring(0, comment)).trim();
+        }
+
+        private static String firstToken(String value) {
+            int space = value.indexOf(' ');
+            return space < 0 ? value : value.substring(0, space);
+        }
+
+        private void addTerm(String id, String name, List<String> termAltIds,
+            Set<String> termParents) {
+            if (id == null || id.isEmpty()) {
+                return;
+            }
+            int term = termOf(id);
+            if (name != null) {
+                names.set(term, name);
+            }
+            parentRefs.get(term).
+                addAll(termParents);
+            for (String altId : termAltIds) {
+                altIds.put(key(altId), id);
+            }
+        }
+
+        private int termOf(String accession) {
+            return termsByAccession.computeIfAbsent(key(accession), (k) ->
+            {
+                accessions.add(accession);
+                names.add(null);
+                parentRefs.add(new LinkedHashSet<>());
+                return accessions.size() - 1;
+            });
+        }
+
+        /**
+         * Create the resolver. Terms that are referenced as parents, but not
+         * defined, are added without name.
+         *
+         * @return the resolver
+         * @throws IllegalStateException if the parent relations contain a
+         * cycle
+         */
+        public OboCvTermResolver build() {
+            int n = accessions.size();
+            List<int[]> resolved = new ArrayList<>(n);
+            for (int term = 0; term < n; term++) {
+                int[] termParents = new int[parentRefs.get(term).
+                    size()];
+                int size = 0;
+                for (String ref : parentRefs.get(term)) {
+                    int parent = termOf(ref);
+                    if (parent != term && Arrays.stream(termParents, 0, size).
+                        noneMatch((p) -> p == parent)) {
+                        termParents[size++] = parent;
+                    }
+                }
+                resolved.add(Arrays.copyOf(termParents, size));
+            }
+            // undefined parents were appended while resolving
+            n = accessions.size();
+            int[] parentOffsets = new int[n + 1];
+            for (int term = 0; term < n; term++) {
+                parentOffsets[term + 1] = parentOffsets[term] + (term < resolved.
+                    size() ? resolved.get(term).length : 0);
+            }
+            int[] parents = new int[parentOffsets[n]];
+            for (int term = 0; term < resolved.size(); term++) {
+                System.arraycopy(resolved.get(term), 0, parents,
+                    parentOffsets[term], resolved.get(term).length);
+            }
+            Map<String, Integer> lookup = new HashMap<>(termsByAccession);
+            altIds.forEach((altId, id) ->
+            {
+                lookup.putIfAbsent(altId, termsByAccession.get(key(id)));
+            });
+            log.debug("Created ontology graph with {} terms and {} parent relations", n,
+                parents.length);
+            return new OboCvTermResolver(accessions.toArray(new String[0]),
+                names.toArray(new String[0]), lookup, parentOffsets, parents);
+        }
+    }
+}
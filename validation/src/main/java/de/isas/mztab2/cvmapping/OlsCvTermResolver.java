@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Parameter;
+import java.util.List;
+import java.util.stream.Collectors;
+import uk.ac.ebi.pride.utilities.ols.web.service.client.OLSClient;
+import uk.ac.ebi.pride.utilities.ols.web.service.model.Identifier;
+
+/**
+ * Resolves parent and child terms via the Ontology Lookup Service (OLS). This
+ * requires an active internet connection.
+ *
+ * @author nilshoffmann
+ */
+public class OlsCvTermResolver implements CvTermResolver {
+
+    private final OLSClient client;
+
+    /**
+     * Create a new resolver using the provided OLS client.
+     *
+     * @param client the OLS client
+     */
+    public OlsCvTermResolver(OLSClient client) {
+        this.client = client;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws org.springframework.web.client.HttpClientErrorException
+     */
+    @Override
+    public List<Parameter> resolveParents(Parameter parameter, int levels) throws org.springframework.web.client.HttpClientErrorException {
+        Identifier ident = new Identifier(parameter.getCvAccession(),
+            Identifier.IdentifierType.OBO);
+        return client.getTermParents(ident, parameter.getCvLabel(), levels).
+            stream().
+            map(CvMappingUtils::asParameter).
+            collect(Collectors.toList());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws org.springframework.web.client.HttpClientErrorException
+     */
+    @Override
+    public List<Parameter> resolveChildren(Parameter parameter, int levels) throws org.springframework.web.client.HttpClientErrorException {
+        Identifier ident = new Identifier(parameter.getCvAccession(),
+            Identifier.IdentifierType.OBO);
+        return client.getTermChildren(ident, parameter.getCvLabel(), levels).
+            stream().
+            map(CvMappingUtils::asParameter).
+            collect(Collectors.toList());
+    }
+
+}
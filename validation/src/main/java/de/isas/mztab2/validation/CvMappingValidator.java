@@ -16,9 +16,12 @@
 package de.isas.mztab2.validation;
 
 import de.isas.lipidomics.mztab2.validation.Validator;
+import de.isas.mztab2.cvmapping.CompiledPaths;
 import de.isas.mztab2.cvmapping.CvMappingUtils;
 import de.isas.mztab2.cvmapping.CvParameterLookupService;
+import de.isas.mztab2.cvmapping.CvTermResolver;
 import de.isas.mztab2.cvmapping.JxPathElement;
+import de.isas.mztab2.cvmapping.OboCvTermResolver;
 import de.isas.mztab2.cvmapping.RemoveUserParams;
 import de.isas.mztab2.cvmapping.RuleEvaluationResult;
 import de.isas.mztab2.model.MzTab;
@@ -35,10 +38,19 @@ import info.psidev.cvmapping.CvMapping;
 import info.psidev.cvmapping.CvMappingRule;
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
@@ -58,6 +70,11 @@ import uk.ac.ebi.pride.utilities.ols.web.service.config.OLSWsConfig;
  * 
  * First, all preValidators are run, then, the cv parameter validation is executed, before finally, 
  * the postValidators are run. Each validator can add validation messages to the output.
+ * 
+ * The cv rules are independent of each other. If a rule executor is set, with the builder's
+ * {@code ruleExecutor(Executor)} or with {@link #withRuleExecutor(Executor)}, the rules are
+ * evaluated concurrently on that executor, otherwise on the calling thread. In both cases, 
+ * the messages of the rules are reported in the order of the rules in the mapping file.
  *
  * @author nilshoffmann
  */
@@ -75,8 +92,14 @@ public class CvMappingValidator implements Validator<MzTab> {
     private final CvTermValidationHandler sharedHandler;
     private final EmptyRuleHandler emptyRuleHandler;
     private final RemoveUserParams cvTermSelectionHandler;
+    /**
+     * The executor to evaluate the cv rules on, or null to evaluate them on
+     * the calling thread.
+     */
+    private volatile Executor ruleExecutor;
     private final List<Validator<MzTab>> preValidators = new LinkedList<>();
     private final List<Validator<MzTab>> postValidators = new LinkedList<>();
+    private final AtomicReference<CompiledPaths<Parameter>> compiledPaths = new AtomicReference<>();
 
     /**
      * Create a new instance of CvMappingValidator. 
@@ -128,6 +151,24 @@ public class CvMappingValidator implements Validator<MzTab> {
             withPreValidator(new CvDefinitionValidationHandler());
     }
 
+    /**
+     * Create a new instance of CvMappingValidator. 
+     * 
+     * Uses a {@link CvParameterLookupService} with the provided resolver, e.g. an
+     * {@link OboCvTermResolver} for validation without network access.
+     * 
+     * @param mappingFile the mapping file to use
+     * @param resolver the cv term resolver
+     * @param errorIfTermNotInRule raise an error if a term is not defined within an otherwise matching rule for the element
+     * @return a new CvMappingValidator instance
+     * @throws JAXBException if errors occur during unmarshalling of the mapping xml file.
+     */
+    public static CvMappingValidator of(File mappingFile,
+        CvTermResolver resolver, boolean errorIfTermNotInRule) throws JAXBException {
+        return of(mappingFile, new CvParameterLookupService(resolver),
+            errorIfTermNotInRule);
+    }
+
     /**
      * Add the provided validator implementation to the list of validators that run <b>first</b>.
      * @param preValidator the validator
@@ -138,6 +179,19 @@ public class CvMappingValidator implements Validator<MzTab> {
         return this;
     }
 
+    /**
+     * Evaluate the cv rules concurrently on the provided executor. The messages
+     * are reported in the order of the rules in the mapping file, as for the
+     * sequential evaluation. The rule handlers and the
+     * {@link CvParameterLookupService} are safe for concurrent use.
+     * @param ruleExecutor the executor, or null to evaluate the rules on the calling thread
+     * @return an instance of this object
+     */
+    public CvMappingValidator withRuleExecutor(Executor ruleExecutor) {
+        this.ruleExecutor = ruleExecutor;
+        return this;
+    }
+
     /**
      * Add the provided validator implementation to the list of validators that run <b>last</b>.
      * @param postValidator the validator
@@ -197,6 +251,24 @@ public class CvMappingValidator implements Validator<MzTab> {
             withPreValidator(new CvDefinitionValidationHandler());
     }
 
+    /**
+     * Create a new instance of CvMappingValidator. 
+     * 
+     * Uses a {@link CvParameterLookupService} with the provided resolver, e.g. an
+     * {@link OboCvTermResolver} for validation without network access.
+     * 
+     * @param mappingFile the mapping file URL to use
+     * @param resolver the cv term resolver
+     * @param errorIfTermNotInRule raise an error if a term is not defined within an otherwise matching rule for the element
+     * @return a new CvMappingValidator instance
+     * @throws JAXBException if errors occur during unmarshalling of the mapping xml file.
+     */
+    public static CvMappingValidator of(URL mappingFile,
+        CvTermResolver resolver, boolean errorIfTermNotInRule) throws JAXBException {
+        return of(mappingFile, new CvParameterLookupService(resolver),
+            errorIfTermNotInRule);
+    }
+
     /**
      * Create a new instance of CvMappingValidator. 
      * 
@@ -235,17 +307,70 @@ public class CvMappingValidator implements Validator<MzTab> {
                 messages.addAll(validator.validate(mzTab));
             });
         messages.addAll(new CvDefinitionValidationHandler().validate(mzTab));
-        JXPathContext context = JXPathContext.newContext(mzTab);
         log.debug("Applying {} cv rule mapping steps.", mapping.
             getCvMappingRuleList().
             getCvMappingRule().
             size());
-        mapping.getCvMappingRuleList().
-            getCvMappingRule().
-            forEach((rule) ->
+        List<CvMappingRule> rules = mapping.getCvMappingRuleList().
+            getCvMappingRule();
+        // select the parameters of all rules first, to allow the rule handler
+        // to resolve them in one batch
+        final Map<String, List<Pair<Pointer, Parameter>>> compiledSelections = getCompiledPaths().
+            select(mzTab);
+        JXPathContext context = rules.stream().
+            allMatch((rule) -> compiledSelections.containsKey(rule.
+                getCvElementPath())) ? null : JXPathContext.newContext(mzTab);
+        final Map<CvMappingRule, List<ValidationMessage>> emptyRuleMessages = new HashMap<>();
+        final Map<CvMappingRule, List<Pair<Pointer, Parameter>>> filteredSelections = new LinkedHashMap<>();
+        rules.forEach((rule) ->
+        {
+            String path = rule.getCvElementPath();
+            List<Pair<Pointer, Parameter>> selection = compiledSelections.
+                containsKey(path) ? compiledSelections.get(path) : JxPathElement.
+                toList(context, path, Parameter.class);
+            List<ValidationMessage> ruleMessages = emptyRuleHandler.handleRule(
+                rule, selection);
+            if (ruleMessages.isEmpty()) {
+                filteredSelections.put(rule, cvTermSelectionHandler.
+                    handleSelection(selection));
+            } else {
+                emptyRuleMessages.put(rule, ruleMessages);
+            }
+        });
+        ruleHandler.prefetch(filteredSelections);
+        Executor executor = ruleExecutor;
+        if (executor == null) {
+            rules.forEach((rule) ->
             {
-                messages.addAll(handleRule(context, rule, errorIfTermNotInRule));
+                if (filteredSelections.containsKey(rule)) {
+                    messages.addAll(handleRule(rule, filteredSelections.get(
+                        rule), errorIfTermNotInRule));
+                } else {
+                    messages.addAll(emptyRuleMessages.get(rule));
+                }
             });
+        } else {
+            List<CompletableFuture<List<ValidationMessage>>> ruleMessages = new ArrayList<>(
+                rules.size());
+            rules.forEach((rule) ->
+            {
+                if (filteredSelections.containsKey(rule)) {
+                    List<Pair<Pointer, Parameter>> selection = filteredSelections.
+                        get(rule);
+                    ruleMessages.add(CompletableFuture.supplyAsync(
+                        () -> handleRule(rule, selection, errorIfTermNotInRule),
+                        executor));
+                } else {
+                    ruleMessages.add(CompletableFuture.completedFuture(
+                        emptyRuleMessages.get(rule)));
+                }
+            });
+            // merge in rule order, independent of the completion order
+            ruleMessages.forEach((future) ->
+            {
+                messages.addAll(join(future));
+            });
+        }
         log.debug("Applying {} post validation steps.", preValidators.size());
         postValidators.stream().
             forEach((validator) ->
@@ -255,20 +380,41 @@ public class CvMappingValidator implements Validator<MzTab> {
         return messages;
     }
 
-    private List<ValidationMessage> handleRule(JXPathContext context,
-        CvMappingRule rule, boolean errorOnTermNotInRule) {
-        String path = rule.getCvElementPath();
-        List<Pair<Pointer, Parameter>> selection = JxPathElement.
-            toList(context, path, Parameter.class);
+    /*
+     * Compiles the cv element paths of all rules once, paths that can not be
+     * compiled are evaluated with JXPath.
+     */
+    private CompiledPaths<Parameter> getCompiledPaths() {
+        CompiledPaths<Parameter> paths = compiledPaths.get();
+        if (paths == null) {
+            paths = CompiledPaths.compile(MzTab.class, mapping.
+                getCvMappingRuleList().
+                getCvMappingRule().
+                stream().
+                map(CvMappingRule::getCvElementPath).
+                collect(Collectors.toList()), Parameter.class);
+            compiledPaths.compareAndSet(null, paths);
+        }
+        return paths;
+    }
 
-        final List<ValidationMessage> messages = emptyRuleHandler.handleRule(
-            rule, selection);
-        if (!messages.isEmpty()) {
-            return messages;
+    private static List<ValidationMessage> join(
+        CompletableFuture<List<ValidationMessage>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            // handleRule reports runtime exceptions as messages, pass on anything else
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
         }
+    }
 
-        final List<Pair<Pointer, Parameter>> filteredSelection = cvTermSelectionHandler.
-            handleSelection(selection);
+    private List<ValidationMessage> handleRule(CvMappingRule rule,
+        List<Pair<Pointer, Parameter>> filteredSelection,
+        boolean errorOnTermNotInRule) {
+        final List<ValidationMessage> messages = new LinkedList<>();
 
         // and logic means that ALL of the defined terms or their children MUST appear
         // we only compare valid CVParameters here, user Params (no cv accession), are not compared!
@@ -19,6 +19,7 @@ import de.isas.mztab2.cvmapping.RuleEvaluationResult;
 import de.isas.mztab2.model.Parameter;
 import info.psidev.cvmapping.CvMappingRule;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.jxpath.Pointer;
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -36,4 +37,15 @@ public interface CvRuleHandler {
      */
     RuleEvaluationResult handleRule(CvMappingRule rule,
         List<Pair<Pointer, Parameter>> filteredSelection);
+
+    /**
+     * Prepare the evaluation of all rules, before the first rule is handled,
+     * e.g. by resolving the selected parameters in one batch. The default
+     * implementation does nothing.
+     * @param filteredSelections the filtered selections of all rules that will be handled
+     */
+    default void prefetch(
+        Map<CvMappingRule, List<Pair<Pointer, Parameter>>> filteredSelections) {
+
+    }
 }
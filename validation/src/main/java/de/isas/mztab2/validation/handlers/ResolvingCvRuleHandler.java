@@ -17,12 +17,14 @@ package de.isas.mztab2.validation.handlers;
 
 import de.isas.mztab2.cvmapping.CvMappingUtils;
 import de.isas.mztab2.cvmapping.CvParameterLookupService;
+import de.isas.mztab2.cvmapping.CvTermClosures;
 import de.isas.mztab2.cvmapping.ParameterComparisonResult;
 import de.isas.mztab2.cvmapping.RuleEvaluationResult;
 import de.isas.mztab2.model.Parameter;
 import de.isas.mztab2.validation.CvRuleHandler;
 import info.psidev.cvmapping.CvMappingRule;
 import info.psidev.cvmapping.CvTerm;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,15 +34,81 @@ import org.apache.commons.lang3.tuple.Pair;
 
 /**
  * Implements resolution of cv parameters using the provided lookup service.
+ * 
+ * Parameters selected by rules that allow children are first looked up in the
+ * precomputed {@link CvTermClosures} of the rule's terms, if the lookup service
+ * uses a remote resolver. A closure is complete, so parameters that are not
+ * contained in it are not related to the term, without another request. Only
+ * parameters selected by rules with terms without a closure are resolved with
+ * the lookup service. Before
+ * the rules are handled, the parents of these parameters are prefetched
+ * concurrently, with at most maxConcurrentRequests requests at the same time.
  * @author nilshoffmann
  */
 @Slf4j
 public class ResolvingCvRuleHandler implements CvRuleHandler {
 
+    /**
+     * The default maximum number of concurrent lookup requests.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 8;
+
     private final CvParameterLookupService client;
+    private final CvTermClosures closures;
+    private final int maxConcurrentRequests;
 
     public ResolvingCvRuleHandler(CvParameterLookupService client) {
+        this(client, DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    public ResolvingCvRuleHandler(CvParameterLookupService client,
+        int maxConcurrentRequests) {
+        this(client, new CvTermClosures(client), maxConcurrentRequests);
+    }
+
+    /**
+     * Create a new instance that uses the provided closures, e.g. to share
+     * them between validators for the same ontology snapshot.
+     * @param client the lookup service
+     * @param closures the closures of the cv terms
+     * @param maxConcurrentRequests the maximum number of concurrent lookup requests
+     */
+    public ResolvingCvRuleHandler(CvParameterLookupService client,
+        CvTermClosures closures, int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException(
+                "maxConcurrentRequests must be positive: " + maxConcurrentRequests);
+        }
         this.client = client;
+        this.closures = closures;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    @Override
+    public void prefetch(
+        Map<CvMappingRule, List<Pair<Pointer, Parameter>>> filteredSelections) {
+        List<Parameter> parameters = new ArrayList<>();
+        filteredSelections.forEach((rule, selection) ->
+        {
+            boolean allowChildren = rule.getCvTerm().
+                stream().
+                anyMatch(CvTerm::isAllowChildren);
+            if (allowChildren) {
+                //terms with closures are compared without the lookup service
+                boolean resolved = closures.hasClosures(rule);
+                for (Pair<Pointer, Parameter> pair : selection) {
+                    String accession = pair.getValue().
+                        getCvAccession();
+                    if (!resolved || accession == null || accession.trim().
+                        isEmpty()) {
+                        parameters.add(pair.getValue());
+                    }
+                }
+            }
+        });
+        log.debug("Prefetching parents of {} selected parameters", parameters.
+            size());
+        client.prefetchParents(parameters, maxConcurrentRequests);
     }
 
     @Override
@@ -71,12 +139,14 @@ public class ResolvingCvRuleHandler implements CvRuleHandler {
                         log.debug("Resolving children of " + cvTerm.
                             getTermAccession() + " against " + pair.getValue().
                                 getCvAccession());
-                        //resolve children
+                        //resolve children, the closure of the term decides if there is one
                         try {
-                            ParameterComparisonResult result = client.
-                                isChildOfOrSame(CvMappingUtils.asParameter(
-                                    cvTerm),
-                                    pair.getValue());
+                            Parameter parent = CvMappingUtils.asParameter(
+                                cvTerm);
+                            ParameterComparisonResult result = closures.
+                                compare(parent, pair.getValue()).
+                                orElseGet(() -> client.isChildOfOrSame(parent,
+                                    pair.getValue()));
                             switch (result) {
                                 case CHILD_OF:
                                     log.debug(pair.getValue().
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Instrument;
+import de.isas.mztab2.model.Metadata;
+import de.isas.mztab2.model.MsRun;
+import de.isas.mztab2.model.MzTab;
+import de.isas.mztab2.model.Parameter;
+import de.isas.mztab2.model.Sample;
+import de.isas.mztab2.model.SmallMoleculeEvidence;
+import info.psidev.cvmapping.CvMapping;
+import info.psidev.cvmapping.CvMappingRule;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.xml.bind.JAXBContext;
+import org.apache.commons.jxpath.JXPathContext;
+import org.apache.commons.jxpath.Pointer;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class CompiledPathsTest {
+
+    private static Parameter param(String cvLabel, String accession,
+        String name) {
+        return new Parameter().cvLabel(cvLabel).
+            cvAccession(accession).
+            name(name);
+    }
+
+    private static MzTab createTestData() {
+        Metadata metadata = new Metadata().
+            quantificationMethod(param("MS", "MS:1001838",
+                "SRM quantitation analysis")).
+            addMsRunItem(new MsRun().id(1).
+                format(param("MS", "MS:1000584", "mzML format"))).
+            addMsRunItem(new MsRun().id(2)).
+            addSampleItem(new Sample().id(1).
+                addSpeciesItem(param("NCBITaxon", "NCBITaxon:9606",
+                    "Homo sapiens (Human)")).
+                addCustomItem(param("", "", "Extraction date")).
+                addCustomItem(param("", "", "Extraction reason"))).
+            addInstrumentItem(new Instrument().id(1).
+                addAnalyzerItem(param("MS", "MS:1000484", "orbitrap")).
+                addAnalyzerItem(param("MS", "MS:1000084", "time-of-flight")));
+        return new MzTab().metadata(metadata).
+            addSmallMoleculeEvidenceItem(new SmallMoleculeEvidence().smeId(1).
+                msLevel(param("MS", "MS:1000511", "ms level")));
+    }
+
+    private static List<String> paths(
+        List<Pair<Pointer, Parameter>> selection) {
+        return selection.stream().
+            map((pair) -> pair.getKey().
+                asPath()).
+            collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSelect() {
+        List<String> expressions = Arrays.asList("/metadata/msRun/@format",
+            "/metadata/sample/@custom", "/metadata/sample/@species",
+            "/metadata/instrument/@analyzer", "/metadata/instrument/@name",
+            "/metadata/@quantificationMethod",
+            "/smallMoleculeEvidence/@msLevel");
+        CompiledPaths<Parameter> compiled = CompiledPaths.compile(MzTab.class,
+            expressions, Parameter.class);
+        for (String expression : expressions) {
+            Assert.assertTrue(expression, compiled.isCompiled(expression));
+        }
+        Map<String, List<Pair<Pointer, Parameter>>> selections = compiled.
+            select(createTestData());
+        Assert.assertEquals(expressions, selections.keySet().
+            stream().
+            collect(Collectors.toList()));
+        Assert.assertEquals(Arrays.asList("/metadata/msRun[1]/@format"), paths(
+            selections.get("/metadata/msRun/@format")));
+        Assert.assertEquals(Arrays.asList("/metadata/sample[1]/custom[1]",
+            "/metadata/sample[1]/custom[2]"), paths(selections.get(
+                "/metadata/sample/@custom")));
+        Assert.assertEquals("Extraction reason", selections.get(
+            "/metadata/sample/@custom").
+            get(1).
+            getValue().
+            getName());
+        Assert.assertEquals(2, selections.get("/metadata/instrument/@analyzer").
+            size());
+        // null values are not selected
+        Assert.assertTrue(selections.get("/metadata/instrument/@name").
+            isEmpty());
+        Assert.assertEquals(Arrays.asList("/metadata/@quantificationMethod"),
+            paths(selections.get("/metadata/@quantificationMethod")));
+        Assert.assertEquals(Arrays.asList("/smallMoleculeEvidence[1]/@msLevel"),
+            paths(selections.get("/smallMoleculeEvidence/@msLevel")));
+        Assert.assertEquals("MS:1001838", selections.get(
+            "/metadata/@quantificationMethod").
+            get(0).
+            getValue().
+            getCvAccession());
+        Assert.assertEquals("MS:1000511", selections.get(
+            "/smallMoleculeEvidence/@msLevel").
+            get(0).
+            getValue().
+            getCvAccession());
+    }
+
+    @Test
+    public void testUnsupportedPaths() {
+        List<String> expressions = Arrays.asList("/metadata/msRun[1]/@format",
+            "//format", "/metadata/@msRun/format", "/metadata/@unknown",
+            "/metadata/@title", "metadata/@quantificationMethod");
+        CompiledPaths<Parameter> compiled = CompiledPaths.compile(MzTab.class,
+            expressions, Parameter.class);
+        for (String expression : expressions) {
+            Assert.assertFalse(expression, compiled.isCompiled(expression));
+        }
+        Assert.assertTrue(compiled.select(createTestData()).
+            isEmpty());
+    }
+
+    @Test
+    public void testSelectionsMatchJxPath() throws Exception {
+        CvMapping mapping = (CvMapping) JAXBContext.newInstance(CvMapping.class).
+            createUnmarshaller().
+            unmarshal(CompiledPathsTest.class.getResource(
+                "/mappings/mzTab-M-mapping.xml"));
+        List<String> expressions = mapping.getCvMappingRuleList().
+            getCvMappingRule().
+            stream().
+            map(CvMappingRule::getCvElementPath).
+            collect(Collectors.toList());
+        CompiledPaths<Parameter> compiled = CompiledPaths.compile(MzTab.class,
+            expressions, Parameter.class);
+        MzTab mzTab = createTestData();
+        Map<String, List<Pair<Pointer, Parameter>>> selections = compiled.
+            select(mzTab);
+        JXPathContext context = JXPathContext.newContext(mzTab);
+        for (String expression : expressions) {
+            Assert.assertTrue(expression, compiled.isCompiled(expression));
+            List<Pair<Pointer, Parameter>> expected = JxPathElement.toList(
+                context, expression, Parameter.class);
+            List<Pair<Pointer, Parameter>> actual = selections.get(expression);
+            Assert.assertEquals(expression, expected.stream().
+                map(Pair::getValue).
+                collect(Collectors.toList()), actual.stream().
+                    map(Pair::getValue).
+                    collect(Collectors.toList()));
+            Assert.assertEquals(expression, paths(expected), paths(actual));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Parameter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class CvParameterLookupServicePrefetchTest {
+
+    /**
+     * Stands in for a remote lookup service, answering every parent request
+     * after a delay with the root term.
+     */
+    private static class StandInResolver implements CvTermResolver {
+
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+
+        @Override
+        public List<Parameter> resolveParents(Parameter parameter, int levels) {
+            requests.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            } finally {
+                active.decrementAndGet();
+            }
+            if ("MS:9999999".equals(parameter.getCvAccession())) {
+                throw new IllegalArgumentException("Unknown term");
+            }
+            return Arrays.asList(ms("MS:0000000"));
+        }
+
+        @Override
+        public List<Parameter> resolveChildren(Parameter parameter, int levels) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static Parameter ms(String accession) {
+        return new Parameter().cvLabel("MS").
+            cvAccession(accession);
+    }
+
+    @Test
+    public void testPrefetchParents() {
+        StandInResolver resolver = new StandInResolver();
+        CvParameterLookupService service = new CvParameterLookupService(
+            resolver);
+        List<Parameter> parameters = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            parameters.add(ms("MS:10000" + (10 + i)));
+            // duplicates differing in case only are requested once
+            parameters.add(ms("ms:10000" + (10 + i)));
+        }
+        parameters.add(new Parameter().name("user parameter"));
+        long start = System.currentTimeMillis();
+        Assert.assertEquals(20, service.prefetchParents(parameters, 4));
+        long duration = System.currentTimeMillis() - start;
+        Assert.assertEquals(20, resolver.requests.get());
+        Assert.assertTrue(resolver.maxActive.get() <= 4);
+        Assert.assertTrue(resolver.maxActive.get() > 1);
+        // 5 batches of 50 ms instead of 20 sequential requests
+        Assert.assertTrue("Prefetch took " + duration + " ms", duration < 20 * 50);
+
+        for (Parameter parameter : parameters.subList(0, 40)) {
+            Assert.assertSame(ParameterComparisonResult.CHILD_OF, service.
+                isChildOfOrSame(ms("MS:0000000"), parameter));
+        }
+        Assert.assertEquals(20, resolver.requests.get());
+        Assert.assertEquals(0, service.prefetchParents(parameters, 4));
+    }
+
+    @Test
+    public void testFailedPrefetchIsNotCached() {
+        StandInResolver resolver = new StandInResolver();
+        CvParameterLookupService service = new CvParameterLookupService(
+            resolver);
+        Assert.assertEquals(1, service.prefetchParents(Arrays.asList(ms(
+            "MS:9999999")), 2));
+        try {
+            service.isChildOfOrSame(ms("MS:0000000"), ms("MS:9999999"));
+            Assert.fail("Expected exception");
+        } catch (IllegalArgumentException ex) {
+            Assert.assertEquals("Unknown term", ex.getMessage());
+        }
+        Assert.assertEquals(2, resolver.requests.get());
+    }
+
+    @Test
+    public void testPrefetchWithLocalResolver() throws Exception {
+        CvParameterLookupService service = new CvParameterLookupService(
+            OboCvTermResolver.builder().
+                add(new java.io.StringReader("[Term]\nid: MS:0000000\n")).
+                build());
+        Assert.assertEquals(0, service.prefetchParents(Arrays.asList(ms(
+            "MS:0000000")), 2));
+    }
+}
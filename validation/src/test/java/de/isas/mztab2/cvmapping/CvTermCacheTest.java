@@ -0,0 +1,243 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Parameter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class CvTermCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static List<Parameter> parameters(String... accessions) {
+        List<Parameter> parameters = new ArrayList<>();
+        for (String accession : accessions) {
+            parameters.add(new Parameter().cvLabel("MS").
+                cvAccession(accession).
+                name("term " + accession));
+        }
+        return parameters;
+    }
+
+    @Test
+    public void testSizeEviction() {
+        CvTermCache cache = CvTermCache.builder().
+            maximumSize(10).
+            build();
+        for (int i = 0; i < 10; i++) {
+            cache.get("key" + i, (key) -> parameters(key));
+        }
+        // keep key0 recently used
+        Assert.assertNotNull(cache.getIfPresent("key0"));
+        cache.get("key10", (key) -> parameters(key));
+        Assert.assertTrue(cache.size() <= 10);
+        Assert.assertNotNull(cache.getIfPresent("key0"));
+        Assert.assertNull(cache.getIfPresent("key1"));
+        CvTermCache.Statistics statistics = cache.getStatistics();
+        Assert.assertEquals(11, statistics.getMissCount());
+        Assert.assertEquals(0, statistics.getHitCount());
+        Assert.assertEquals(2, statistics.getEvictionCount());
+    }
+
+    @Test
+    public void testExpiry() {
+        AtomicLong now = new AtomicLong(1000);
+        AtomicInteger loads = new AtomicInteger();
+        CvTermCache cache = CvTermCache.builder().
+            expireAfterWrite(Duration.ofSeconds(10)).
+            clock(now::get).
+            build();
+        cache.get("key", (key) -> parameters("MS:" + loads.incrementAndGet()));
+        now.addAndGet(9999);
+        Assert.assertEquals("MS:1", cache.get("key", (key) -> parameters("MS:" + loads.
+            incrementAndGet())).
+            get(0).
+            getCvAccession());
+        now.addAndGet(1);
+        Assert.assertNull(cache.getIfPresent("key"));
+        Assert.assertEquals("MS:2", cache.get("key", (key) -> parameters("MS:" + loads.
+            incrementAndGet())).
+            get(0).
+            getCvAccession());
+        Assert.assertEquals(1, cache.getStatistics().
+            getHitCount());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+        CvTermCache cache = CvTermCache.builder().
+            build();
+        try {
+            cache.get("key", (key) ->
+            {
+                throw new IllegalArgumentException("unknown term");
+            });
+            Assert.fail("Expected exception");
+        } catch (IllegalArgumentException ex) {
+            Assert.assertEquals("unknown term", ex.getMessage());
+        }
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(1, cache.getStatistics().
+            getLoadFailureCount());
+        Assert.assertEquals(1, cache.get("key", (key) -> parameters("MS:1")).
+            size());
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        CvTermCache cache = CvTermCache.builder().
+            build();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<Parameter>>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> cache.get("key", (key) ->
+            {
+                loads.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                return parameters("MS:1");
+            })));
+            loading.await();
+            for (int i = 0; i < 3; i++) {
+                futures.add(executor.submit(() -> cache.get("key", (key) ->
+                {
+                    loads.incrementAndGet();
+                    return parameters("MS:2");
+                })));
+            }
+            release.countDown();
+            for (Future<List<Parameter>> future : futures) {
+                Assert.assertEquals("MS:1", future.get(10, TimeUnit.SECONDS).
+                    get(0).
+                    getCvAccession());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(3, cache.getStatistics().
+            getHitCount());
+    }
+
+    @Test
+    public void testPersistence() throws Exception {
+        Path file = temporaryFolder.getRoot().
+            toPath().
+            resolve("cache").
+            resolve("cvterms.cache");
+        AtomicLong now = new AtomicLong(1000);
+        CvTermCache cache = CvTermCache.builder().
+            file(file).
+            expireAfterWrite(Duration.ofMillis(100)).
+            clock(now::get).
+            build();
+        cache.get("fresh", (key) -> parameters("MS:1000560", "MS:1001459"));
+        now.addAndGet(50);
+        cache.get("old", (key) -> Collections.singletonList(new Parameter().
+            cvLabel("MS").
+            cvAccession("MS:0000000")));
+        cache.persist();
+        Assert.assertTrue(Files.isRegularFile(file));
+
+        now.addAndGet(60);
+        CvTermCache reread = CvTermCache.builder().
+            file(file).
+            expireAfterWrite(Duration.ofMillis(100)).
+            clock(now::get).
+            build();
+        Assert.assertEquals(1, reread.getStatistics().
+            getPersistedEntryCount());
+        Assert.assertNull(reread.getIfPresent("fresh"));
+        List<Parameter> old = reread.getIfPresent("old");
+        Assert.assertEquals("MS:0000000", old.get(0).
+            getCvAccession());
+        Assert.assertNull(old.get(0).
+            getName());
+    }
+
+    @Test
+    public void testUnreadableFileIsIgnored() throws Exception {
+        Path file = temporaryFolder.newFile("cvterms.cache").
+            toPath();
+        Files.write(file, Arrays.asList("not a cache file"));
+        CvTermCache cache = CvTermCache.builder().
+            file(file).
+            build();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLookupServiceCachesRemoteResults() {
+        AtomicInteger requests = new AtomicInteger();
+        CvTermResolver remote = new CvTermResolver() {
+            @Override
+            public List<Parameter> resolveParents(Parameter parameter,
+                int levels) {
+                requests.incrementAndGet();
+                return parameters("MS:1000560");
+            }
+
+            @Override
+            public List<Parameter> resolveChildren(Parameter parameter,
+                int levels) {
+                requests.incrementAndGet();
+                return parameters();
+            }
+        };
+        CvParameterLookupService service = new CvParameterLookupService(remote);
+        Parameter parameter = new Parameter().cvLabel("MS").
+            cvAccession("MS:1000564");
+        service.resolveParents(parameter);
+        service.resolveParents(parameter);
+        service.resolveParents(parameter, 1);
+        service.resolveChildren(parameter);
+        Assert.assertEquals(3, requests.get());
+        Assert.assertEquals(1, service.getCacheStatistics().
+            getHitCount());
+        service.clearCaches();
+        service.resolveParents(parameter);
+        Assert.assertEquals(4, requests.get());
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Parameter;
+import info.psidev.cvmapping.CvMappingRule;
+import info.psidev.cvmapping.CvReference;
+import info.psidev.cvmapping.CvTerm;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class CvTermClosuresTest {
+
+    private static final String OBO = "format-version: 1.2\n"
+        + "ontology: ms\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:0000000\n"
+        + "name: Proteomics Standards Initiative Mass Spectrometry Vocabularies\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:1001459\n"
+        + "name: file format\n"
+        + "is_a: MS:0000000 ! Proteomics Standards Initiative Mass Spectrometry Vocabularies\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:1000560\n"
+        + "name: mass spectrometer file format\n"
+        + "is_a: MS:1001459 ! file format\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:1000584\n"
+        + "name: mzML format\n"
+        + "is_a: MS:1000560 ! mass spectrometer file format\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:1000564\n"
+        + "name: PSI mzData format\n"
+        + "is_a: MS:1000560 ! mass spectrometer file format\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:1000539\n"
+        + "name: software\n"
+        + "is_a: MS:0000000 ! Proteomics Standards Initiative Mass Spectrometry Vocabularies\n";
+
+    private static Parameter ms(String accession) {
+        return new Parameter().cvLabel("MS").
+            cvAccession(accession);
+    }
+
+    private static CvParameterLookupService createService(
+        AtomicInteger childRequests, AtomicInteger parentRequests,
+        boolean remote) throws IOException {
+        OboCvTermResolver resolver = OboCvTermResolver.builder().
+            add(new StringReader(OBO)).
+            build();
+        return new CvParameterLookupService(new CvTermResolver() {
+            @Override
+            public List<Parameter> resolveParents(Parameter parameter,
+                int levels) {
+                parentRequests.incrementAndGet();
+                return resolver.resolveParents(parameter, levels);
+            }
+
+            @Override
+            public List<Parameter> resolveChildren(Parameter parameter,
+                int levels) {
+                childRequests.incrementAndGet();
+                return resolver.resolveChildren(parameter, levels);
+            }
+
+            @Override
+            public boolean isRemote() {
+                return remote;
+            }
+        });
+    }
+
+    private static CvMappingRule createRule() {
+        CvReference ref = new CvReference();
+        ref.setCvIdentifier("MS");
+        CvTerm fileFormat = new CvTerm();
+        fileFormat.setTermAccession("MS:1000560");
+        fileFormat.setAllowChildren(true);
+        fileFormat.setCvIdentifierRef(ref);
+        CvTerm software = new CvTerm();
+        software.setTermAccession("MS:1000539");
+        software.setAllowChildren(false);
+        software.setCvIdentifierRef(ref);
+        CvMappingRule rule = new CvMappingRule();
+        rule.setId("ms_run_format");
+        rule.getCvTerm().
+            addAll(Arrays.asList(fileFormat, software));
+        return rule;
+    }
+
+    @Test
+    public void testClosure() throws IOException {
+        AtomicInteger childRequests = new AtomicInteger();
+        AtomicInteger parentRequests = new AtomicInteger();
+        CvTermClosures closures = new CvTermClosures(createService(
+            childRequests, parentRequests, true));
+        Assert.assertEquals(Optional.of(new HashSet<>(Arrays.asList(
+            "MS:1000560", "MS:1000584", "MS:1000564"))), closures.getClosure(ms(
+                "MS:1001459")));
+        // one request for all descendants of a term
+        Assert.assertEquals(1, childRequests.get());
+        Assert.assertTrue(closures.isChildOf(ms("MS:1001459"), ms("ms:1000584")));
+        Assert.assertTrue(closures.isChildOf(ms("MS:1000560"), ms("MS:1000564")));
+        // a term is not its own child
+        Assert.assertFalse(closures.isChildOf(ms("MS:1000560"), ms("MS:1000560")));
+        Assert.assertFalse(closures.isChildOf(ms("MS:1001459"), ms("MS:1000539")));
+        Assert.assertFalse(closures.isChildOf(ms("MS:1001459"), new Parameter().
+            name("user parameter")));
+        // closures are computed once per term
+        Assert.assertEquals(2, childRequests.get());
+        Assert.assertEquals(0, parentRequests.get());
+    }
+
+    @Test
+    public void testCompareWithoutLookups() throws IOException {
+        AtomicInteger childRequests = new AtomicInteger();
+        AtomicInteger parentRequests = new AtomicInteger();
+        CvParameterLookupService service = createService(childRequests,
+            parentRequests, true);
+        CvTermClosures closures = new CvTermClosures(service);
+        Parameter fileFormat = ms("MS:1000560");
+        Assert.assertEquals(Optional.of(ParameterComparisonResult.CHILD_OF),
+            closures.compare(fileFormat, ms("MS:1000584")));
+        Assert.assertEquals(Optional.of(ParameterComparisonResult.IDENTICAL),
+            closures.compare(fileFormat, ms("ms:1000560")));
+        // misses of a complete closure are not related
+        Assert.assertEquals(Optional.of(ParameterComparisonResult.NOT_RELATED),
+            closures.compare(fileFormat, ms("MS:1000539")));
+        Assert.assertEquals(Optional.of(ParameterComparisonResult.NOT_RELATED),
+            closures.compare(fileFormat, ms("MS:1001459")));
+        Assert.assertFalse(closures.compare(fileFormat, new Parameter().
+            name("user parameter")).
+            isPresent());
+        Assert.assertEquals(1, childRequests.get());
+        Assert.assertEquals(0, parentRequests.get());
+        // the closures agree with the lookup service
+        for (String accession : Arrays.asList("MS:1000584", "MS:1000560",
+            "MS:1000539", "MS:1001459")) {
+            Assert.assertEquals(service.isChildOfOrSame(fileFormat, ms(
+                accession)), closures.compare(fileFormat, ms(accession)).
+                get());
+        }
+    }
+
+    @Test
+    public void testLocalResolverHasNoClosures() throws IOException {
+        AtomicInteger childRequests = new AtomicInteger();
+        CvTermClosures closures = new CvTermClosures(createService(
+            childRequests, new AtomicInteger(), false));
+        Assert.assertFalse(closures.getClosure(ms("MS:1001459")).
+            isPresent());
+        Assert.assertFalse(closures.compare(ms("MS:1001459"), ms("MS:1000584")).
+            isPresent());
+        Assert.assertFalse(closures.hasClosures(createRule()));
+        Assert.assertEquals(0, childRequests.get());
+    }
+
+    @Test
+    public void testClosureExceedingMaximumSize() throws IOException {
+        CvTermClosures closures = new CvTermClosures(createService(
+            new AtomicInteger(), new AtomicInteger(), true), 2);
+        Assert.assertFalse(closures.getClosure(ms("MS:0000000")).
+            isPresent());
+        Assert.assertFalse(closures.compare(ms("MS:0000000"), ms("MS:1000584")).
+            isPresent());
+        Assert.assertTrue(closures.getClosure(ms("MS:1000560")).
+            isPresent());
+        // unknown terms have no closure
+        Assert.assertFalse(closures.getClosure(ms("MS:9999999")).
+            isPresent());
+    }
+
+    @Test
+    public void testHasClosures() throws IOException {
+        AtomicInteger childRequests = new AtomicInteger();
+        CvTermClosures closures = new CvTermClosures(createService(
+            childRequests, new AtomicInteger(), true));
+        CvMappingRule rule = createRule();
+        Assert.assertTrue(closures.hasClosures(rule));
+        // only terms that allow children have closures
+        Assert.assertEquals(1, childRequests.get());
+        Assert.assertTrue(closures.hasClosures(rule));
+        Assert.assertEquals(1, childRequests.get());
+        CvTermClosures tooSmall = new CvTermClosures(createService(
+            new AtomicInteger(), new AtomicInteger(), true), 1);
+        Assert.assertFalse(tooSmall.hasClosures(rule));
+    }
+}
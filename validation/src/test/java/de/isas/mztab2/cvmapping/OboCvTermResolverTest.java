@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Leibniz-Institut für Analytische Wissenschaften – ISAS – e.V..
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.isas.mztab2.cvmapping;
+
+import de.isas.mztab2.model.Parameter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author nilshoffmann
+ */
+public class OboCvTermResolverTest {
+
+    private static final String OBO = "format-version: 1.2\n"
+        + "ontology: ms\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:0000000\n"
+        + "name: Proteomics Standards Initiative Mass Spectrometry Vocabularies\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:1000560\n"
+        + "name: mass spectrometer file format\n"
+        + "is_a: MS:1001459 ! file format\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:1001459\n"
+        + "name: file format\n"
+        + "is_a: MS:0000000 ! Proteomics Standards Initiative Mass Spectrometry Vocabularies\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:1000564\n"
+        + "name: PSI mzData format\n"
+        + "alt_id: MS:1999999\n"
+        + "is_a: MS:1000560 ! mass spectrometer file format\n"
+        + "is_a: MS:1000539 ! software\n"
+        + "\n"
+        + "[Term]\n"
+        + "id: MS:1000539\n"
+        + "name: software\n"
+        + "relationship: part_of MS:0000000 ! Proteomics Standards Initiative Mass Spectrometry Vocabularies\n"
+        + "\n"
+        + "[Typedef]\n"
+        + "id: part_of\n"
+        + "name: part of\n";
+
+    private static Parameter ms(String accession) {
+        return new Parameter().cvLabel("MS").
+            cvAccession(accession);
+    }
+
+    private static List<String> accessions(List<Parameter> parameters) {
+        return parameters.stream().
+            map(Parameter::getCvAccession).
+            sorted().
+            collect(Collectors.toList());
+    }
+
+    @Test
+    public void testIsChildOfOrSame() throws IOException {
+        OboCvTermResolver resolver = OboCvTermResolver.builder().
+            add(new StringReader(OBO)).
+            build();
+        Assert.assertEquals(5, resolver.getTermCount());
+        Assert.assertSame(ParameterComparisonResult.CHILD_OF, resolver.
+            isChildOfOrSame(ms("MS:1000560"), ms("MS:1000564")));
+        Assert.assertSame(ParameterComparisonResult.CHILD_OF, resolver.
+            isChildOfOrSame(ms("MS:0000000"), ms("MS:1000564")));
+        // reachable via the second parent only
+        Assert.assertSame(ParameterComparisonResult.CHILD_OF, resolver.
+            isChildOfOrSame(ms("MS:1000539"), ms("MS:1000564")));
+        Assert.assertSame(ParameterComparisonResult.NOT_RELATED, resolver.
+            isChildOfOrSame(ms("MS:1000564"), ms("MS:1000560")));
+        // part_of is not followed by default
+        Assert.assertSame(ParameterComparisonResult.NOT_RELATED, resolver.
+            isChildOfOrSame(ms("MS:0000000"), ms("MS:1000539")));
+        Assert.assertSame(ParameterComparisonResult.IDENTICAL, resolver.
+            isChildOfOrSame(ms("ms:1000564"), ms("MS:1999999")));
+        Assert.assertEquals("PSI mzData format", resolver.getTerm("MS:1999999").
+            getName());
+    }
+
+    @Test
+    public void testResolveParentsAndChildren() throws IOException {
+        OboCvTermResolver resolver = OboCvTermResolver.builder().
+            relationship("part_of").
+            add(new StringReader(OBO)).
+            build();
+        Assert.assertSame(ParameterComparisonResult.CHILD_OF, resolver.
+            isChildOfOrSame(ms("MS:0000000"), ms("MS:1000539")));
+        List<Parameter> parents = resolver.resolveParents(ms("MS:1000564"), 1);
+        Assert.assertEquals(2, parents.size());
+        Assert.assertTrue(CvMappingUtils.isEqualTo(parents.get(0), ms(
+            "MS:1000560").
+            name("mass spectrometer file format")));
+        Assert.assertEquals(accessions(parents), accessions(resolver.
+            resolveParents(ms("MS:1000564"), 1)));
+        List<Parameter> ancestors = resolver.
+            resolveParents(ms("MS:1000564"), -1);
+        Assert.assertEquals(4, ancestors.size());
+        List<Parameter> children = resolver.resolveChildren(ms("MS:0000000"),
+            -1);
+        Assert.assertEquals(4, children.size());
+        Assert.assertEquals(2, resolver.resolveChildren(ms("MS:0000000"), 1).
+            size());
+    }
+
+    @Test
+    public void testLookupService() throws IOException {
+        CvParameterLookupService service = new CvParameterLookupService(
+            OboCvTermResolver.builder().
+                add(new StringReader(OBO)).
+                build());
+        Assert.assertSame(ParameterComparisonResult.CHILD_OF, service.
+            isChildOfOrSame(ms("MS:1001459"), ms("MS:1000564")));
+        Assert.assertEquals(3, service.resolveParents(ms("MS:1000560")).
+            size() + service.resolveChildren(ms("MS:1000560")).
+                size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownTerm() throws IOException {
+        OboCvTermResolver resolver = OboCvTermResolver.builder().
+            add(new StringReader(OBO)).
+            build();
+        resolver.isChildOfOrSame(ms("MS:1000560"), ms("MS:1234567"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCycle() throws IOException {
+        OboCvTermResolver.builder().
+            add(new StringReader("[Term]\nid: X:1\nis_a: X:2\n\n[Term]\nid: X:2\nis_a: X:1\n")).
+            build();
+    }
+}
@@ -16,20 +16,32 @@
 package de.isas.mztab2.validation;
 
 import de.isas.mztab2.cvmapping.CvParameterLookupService;
+import de.isas.mztab2.cvmapping.CvTermResolver;
 import de.isas.mztab2.cvmapping.JxPathElement;
+import de.isas.mztab2.cvmapping.RemoveUserParams;
 import de.isas.mztab2.cvmapping.RuleEvaluationResult;
 import de.isas.mztab2.model.CV;
 import de.isas.mztab2.model.Instrument;
 import de.isas.mztab2.model.MzTab;
 import de.isas.mztab2.model.Parameter;
 import de.isas.mztab2.model.ValidationMessage;
+import de.isas.mztab2.validation.handlers.AndValidationHandler;
 import de.isas.mztab2.validation.handlers.EmptyRuleHandler;
+import de.isas.mztab2.validation.handlers.ExtraParametersValidationHandler;
+import de.isas.mztab2.validation.handlers.OrValidationHandler;
 import de.isas.mztab2.validation.handlers.ResolvingCvRuleHandler;
+import de.isas.mztab2.validation.handlers.SharedParametersValidationHandler;
+import de.isas.mztab2.validation.handlers.XorValidationHandler;
+import info.psidev.cvmapping.CvMapping;
 import info.psidev.cvmapping.CvMappingRule;
 import info.psidev.cvmapping.CvReference;
 import info.psidev.cvmapping.CvTerm;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.xml.bind.JAXBContext;
 import org.apache.commons.jxpath.JXPathContext;
 import org.apache.commons.jxpath.Pointer;
 import org.apache.commons.lang3.tuple.Pair;
@@ -96,6 +108,89 @@ public class CvMappingValidatorTest {
                 getCategory());
     }
 
+    /**
+     * Resolves every term as unrelated, without network access.
+     */
+    private static CvTermResolver createUnrelatedResolver() {
+        return new CvTermResolver() {
+            @Override
+            public List<Parameter> resolveParents(Parameter parameter,
+                int levels) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public List<Parameter> resolveChildren(Parameter parameter,
+                int levels) {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public boolean isRemote() {
+                return false;
+            }
+        };
+    }
+
+    @Test
+    public void testParallelRuleEvaluation() throws Exception {
+        CvTermResolver resolver = createUnrelatedResolver();
+        MzTab mzTab = createTestData();
+        List<ValidationMessage> expected = CvMappingValidator.of(
+            CvMappingValidatorTest.class.getResource(
+                "/mappings/mzTab-M-mapping.xml"), resolver, true).
+            validate(mzTab);
+        assertFalse(expected.isEmpty());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CvMappingValidator validator = CvMappingValidator.of(
+                CvMappingValidatorTest.class.getResource(
+                    "/mappings/mzTab-M-mapping.xml"), resolver, true).
+                withRuleExecutor(executor);
+            for (int i = 0; i < 10; i++) {
+                assertEquals(expected, validator.validate(mzTab));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testParallelRuleEvaluationWithBuilder() throws Exception {
+        CvParameterLookupService service = new CvParameterLookupService(
+            createUnrelatedResolver());
+        MzTab mzTab = createTestData();
+        List<ValidationMessage> expected = CvMappingValidator.of(
+            CvMappingValidatorTest.class.getResource(
+                "/mappings/mzTab-M-mapping.xml"), service, true).
+            validate(mzTab);
+        CvMapping mapping = (CvMapping) JAXBContext.newInstance(
+            CvMapping.class).
+            createUnmarshaller().
+            unmarshal(CvMappingValidatorTest.class.getResource(
+                "/mappings/mzTab-M-mapping.xml"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CvMappingValidator validator = CvMappingValidator.builder().
+                mapping(mapping).
+                ruleHandler(new ResolvingCvRuleHandler(service)).
+                errorIfTermNotInRule(true).
+                andHandler(new AndValidationHandler()).
+                orHandler(new OrValidationHandler()).
+                xorHandler(new XorValidationHandler()).
+                extraHandler(new ExtraParametersValidationHandler()).
+                sharedHandler(new SharedParametersValidationHandler()).
+                cvTermSelectionHandler(new RemoveUserParams()).
+                emptyRuleHandler(new EmptyRuleHandler()).
+                ruleExecutor(executor).
+                build().
+                withPreValidator(new CvDefinitionValidationHandler());
+            assertEquals(expected, validator.validate(mzTab));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     public void testCheckCvDefinitions() {
         MzTab mzTabFile = createTestData();